@@ -0,0 +1,92 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Classifies a whole vector of bytes (32 or 64 depending on the platform) per step into
+ * delimiter/digit/alphabet/hex masks. Run ends are the first set lanes of the (non-)delimiter masks, and
+ * a token contains a character class if that class' first set lane is before the token's end. Bytes past
+ * the last full vector are handled by ScalarTokenScanner.
+ *
+ * Kept in the src-vector source root so that the default build of src doesn't need the incubating
+ * jdk.incubator.vector module (and its warning). To use it, compile it after src into the same output:
+ *   javac --add-modules jdk.incubator.vector -cp out -d out $(find src-vector -name '*.java')
+ * and run with --add-modules jdk.incubator.vector. Otherwise LogMessageTokenizer falls back to
+ * ScalarTokenScanner.
+ */
+class VectorTokenScanner implements TokenScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int NUM_LANES = SPECIES.length();
+    // Narrower vectors aren't worth it over the scalar loop
+    private static final int MIN_NUM_LANES = 16;
+    private static final ScalarTokenScanner SCALAR = new ScalarTokenScanner();
+
+    VectorTokenScanner() {
+        if (NUM_LANES < MIN_NUM_LANES) {
+            throw new UnsupportedOperationException("Unsupported vector species " + SPECIES);
+        }
+    }
+
+    @Override
+    public int skipDelimiters(byte[] bytes, int pos, int endPos) {
+        for (; pos + NUM_LANES <= endPos; pos += NUM_LANES) {
+            VectorMask<Byte> nonDelimiters = nonDelimiterMask(ByteVector.fromArray(SPECIES, bytes, pos));
+            if (nonDelimiters.anyTrue()) {
+                return pos + nonDelimiters.firstTrue();
+            }
+        }
+        return SCALAR.skipDelimiters(bytes, pos, endPos);
+    }
+
+    @Override
+    public int scanToken(byte[] bytes, int pos, int endPos, LogMessageTokenizer.TokenBounds token) {
+        boolean containsDecimalDigit = false;
+        boolean containsAlphabet = false;
+        boolean containsNonHexCharacter = false;
+        for (; pos + NUM_LANES <= endPos; pos += NUM_LANES) {
+            ByteVector v = ByteVector.fromArray(SPECIES, bytes, pos);
+            // Setting bit 5 maps upper case letters (and only them) onto lower case letters
+            ByteVector lowerCased = v.or((byte) 0x20);
+            VectorMask<Byte> digits = inRange(v, '0', '9');
+            VectorMask<Byte> alphabets = inRange(lowerCased, 'a', 'z');
+            VectorMask<Byte> nonDelimiters = digits.or(alphabets).or(inRange(v, '-', '/'))
+                    .or(v.compare(VectorOperators.EQ, (byte) '+'))
+                    .or(v.compare(VectorOperators.EQ, (byte) '\\'))
+                    .or(v.compare(VectorOperators.EQ, (byte) '_'));
+            VectorMask<Byte> hexCharacters = digits.or(inRange(lowerCased, 'a', 'f'));
+
+            // firstTrue() returns NUM_LANES if no lane is set
+            int tokenLength = nonDelimiters.not().firstTrue();
+            containsDecimalDigit |= digits.firstTrue() < tokenLength;
+            containsAlphabet |= alphabets.firstTrue() < tokenLength;
+            containsNonHexCharacter |= hexCharacters.not().firstTrue() < tokenLength;
+            if (tokenLength < NUM_LANES) {
+                token.containsDecimalDigit |= containsDecimalDigit;
+                token.containsAlphabet |= containsAlphabet;
+                token.containsNonHexCharacter |= containsNonHexCharacter;
+                return pos + tokenLength;
+            }
+        }
+        token.containsDecimalDigit |= containsDecimalDigit;
+        token.containsAlphabet |= containsAlphabet;
+        token.containsNonHexCharacter |= containsNonHexCharacter;
+        return SCALAR.scanToken(bytes, pos, endPos, token);
+    }
+
+    private static VectorMask<Byte> nonDelimiterMask(ByteVector v) {
+        return inRange(v, '-', '9').or(inRange(v.or((byte) 0x20), 'a', 'z'))
+                .or(v.compare(VectorOperators.EQ, (byte) '+'))
+                .or(v.compare(VectorOperators.EQ, (byte) '\\'))
+                .or(v.compare(VectorOperators.EQ, (byte) '_'));
+    }
+
+    /**
+     * @return mask of the lanes in [low, high]
+     */
+    private static VectorMask<Byte> inRange(ByteVector v, char low, char high) {
+        return v.compare(VectorOperators.GE, (byte) low).and(v.compare(VectorOperators.LE, (byte) high));
+    }
+}
@@ -67,7 +67,7 @@ public class ByteArrayViewDictionaryKey {
         this.endIndex = endIndex;
 
         // Since view changed, we need to recompute the digest and hash code
-        messageDigestInstance.update(bytes, beginIndex, endIndex);
+        messageDigestInstance.update(bytes, beginIndex, endIndex - beginIndex);
         messageDigestInstance.digest(digest, 0, 32);
         return this;
     }
@@ -104,4 +104,9 @@ public abstract class BaseAggregationOutputStreamIR extends BufferedFileOutputSt
     }
 
     public abstract void putEncodedVariable(ByteArrayViewDictionaryKey variable) throws IOException;
+
+    /**
+     * @param encodedVariable integer/float encoding, an int widened to a long for the compact encoding
+     */
+    public abstract void putEncodedVariable(long encodedVariable) throws IOException;
 }
@@ -14,8 +14,12 @@ public class CompactAggregationOutputStreamIR extends BaseAggregationOutputStrea
 
     @Override
     public void putEncodedVariable(ByteArrayViewDictionaryKey variable) throws IOException {
+        putEncodedVariable(((CompactVariableByteArrayViewDictionaryKey) variable).getCompactVariableEncoding());
+    }
+
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
         bufferedDataOutputStream.writeByte(0x50);
-        bufferedDataOutputStream.writeInt(
-                ((CompactVariableByteArrayViewDictionaryKey) variable).getCompactVariableEncoding());
+        bufferedDataOutputStream.writeInt((int) encodedVariable);
     }
 }
@@ -14,8 +14,12 @@ public class StandardAggregationOutputStreamIR extends BaseAggregationOutputStre
 
     @Override
     public void putEncodedVariable(ByteArrayViewDictionaryKey variable) throws IOException {
+        putEncodedVariable(((StandardVariableByteArrayViewDictionaryKey)variable).getStandardVariableEncoding());
+    }
+
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
         bufferedDataOutputStream.writeByte(0x40);
-        bufferedDataOutputStream.writeLong(
-                ((StandardVariableByteArrayViewDictionaryKey)variable).getStandardVariableEncoding());
+        bufferedDataOutputStream.writeLong(encodedVariable);
     }
 }
@@ -1,14 +1,16 @@
 package com.yscope.log4j.appenders.compressedLogAggregationAppender.v5;
 
 import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.CompressedLogFilePatternLayoutContainer;
-import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.HashMapKey.CompactVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.HashMapKey.ByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.HashMapKey.LogtypeByteArrayViewDictionaryKey;
-import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.HashMapKey.StandardVariableByteArrayViewDictionaryKey;
-import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.HashMapKey.VariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.intermediateRepresentation.aggregation.BaseAggregationOutputStreamIR;
 import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.intermediateRepresentation.aggregation.CompactAggregationOutputStreamIR;
 import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.intermediateRepresentation.aggregation.StandardAggregationOutputStreamIR;
 import com.yscope.log4j.appenders.compressedLogAggregationAppender.v1.utilityClasses.PatternLayoutBufferDestination;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.concurrent.AsyncEventProcessor;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.*;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.appender.AppenderLoggingException;
@@ -32,6 +34,10 @@ import java.util.concurrent.TimeUnit;
  *    - Apparently, apache DigestUtil is couple times faster than JDK
  *      - https://stackoverflow.com/q/58404400
  *    - It turns out that apache DigestUtils isn't any faster than JDK's built-in.
+ *    - Tokenization and integer/float encoding are done in a single pass by CompressedLogFileV5's
+ *      LogMessageTokenizer, only dictionary variables are hashed
+ *    - async: append only renders the message into a preallocated ring slot, a dedicated encoder thread
+ *      tokenizes and writes to the aggregation stream (see AsyncEventProcessor)
  */
 @Plugin(name = "CompressedLogAggregationV5", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
 public final class CompressedLogAggregationV5 extends AbstractAppender {
@@ -45,25 +51,32 @@ public final class CompressedLogAggregationV5 extends AbstractAppender {
 
     private PatternLayoutBufferDestination patternLayoutBufferDestination;
 
-    VariableByteArrayViewDictionaryKey variableDictionaryKey;
+    ByteArrayViewDictionaryKey variableDictionaryKey;
     LogtypeByteArrayViewDictionaryKey logtypeDictionaryKey;
 
     private ByteBuffer logtype;
-    private TokenBounds tokenBounds;
+    private final LogMessageTokenizer tokenizer;
+
+    private final boolean async;
+    private AsyncEventProcessor asyncEventProcessor;
 
     private CompressedLogAggregationV5(String name, Filter filter,
                                        CompressedLogFilePatternLayoutContainer compressedLogPatternLayoutContainer,
                                        String fileName, int compressionLevel, boolean useCompactVariableEncoding,
+                                       boolean async, int ringBufferSize,
+                                       AsyncEventProcessor.WaitStrategy waitStrategy,
+                                       AsyncEventProcessor.FullRingPolicy fullRingPolicy, Level dropBelowLevel,
                                        boolean enableDebugOutput, final boolean ignoreExceptions) throws IOException {
         super(name, filter, compressedLogPatternLayoutContainer.getCompressedLogPatternLayout(), ignoreExceptions,
                 Property.EMPTY_ARRAY);
         this.compressionLevel = compressionLevel;
         this.useCompactVariableEncoding = useCompactVariableEncoding;
         this.enableDebugOutput = enableDebugOutput;
+        this.async = async;
         this.patternLayoutBufferDestination = new PatternLayoutBufferDestination(8192);
 
         logtype = ByteBuffer.allocate(8192);
-        tokenBounds = new TokenBounds();
+        tokenizer = new LogMessageTokenizer(useCompactVariableEncoding);
 
         // Create directory for log file if it doesn't exist
         if (compressionLevel != 0) {
@@ -74,16 +87,21 @@ public final class CompressedLogAggregationV5 extends AbstractAppender {
 
         try {
             logtypeDictionaryKey = new LogtypeByteArrayViewDictionaryKey();
+            variableDictionaryKey = new ByteArrayViewDictionaryKey();
             if (useCompactVariableEncoding) {
                 aggregationOutputStreamIR = new CompactAggregationOutputStreamIR(compressedLogFile, compressionLevel);
-                variableDictionaryKey = new CompactVariableByteArrayViewDictionaryKey();
             } else {
                 aggregationOutputStreamIR = new StandardAggregationOutputStreamIR(compressedLogFile, compressionLevel);
-                variableDictionaryKey = new StandardVariableByteArrayViewDictionaryKey();
             }
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
         }
+
+        if (async) {
+            asyncEventProcessor = new AsyncEventProcessor(name + "-encoder", ringBufferSize, waitStrategy,
+                    fullRingPolicy, dropBelowLevel, this::compressRenderedEvent);
+            asyncEventProcessor.start();
+        }
     }
 
     @PluginFactory
@@ -94,6 +112,11 @@ public final class CompressedLogAggregationV5 extends AbstractAppender {
             @PluginAttribute("fileName") final String fileName,
             @PluginAttribute(value = "compressionLevel", defaultInt = 0) int compressionLevel,
             @PluginAttribute(value = "useCompactVariableEncoding", defaultBoolean = true) boolean useCompactVariableEncoding,
+            @PluginAttribute(value = "async", defaultBoolean = false) boolean async,
+            @PluginAttribute(value = "ringBufferSize", defaultInt = 4096) int ringBufferSize,
+            @PluginAttribute(value = "waitStrategy", defaultString = "PARK") String waitStrategy,
+            @PluginAttribute(value = "fullRingPolicy", defaultString = "BLOCK") String fullRingPolicy,
+            @PluginAttribute(value = "dropBelowLevel", defaultString = "WARN") String dropBelowLevel,
             @PluginAttribute(value = "enableDebugOutput", defaultBoolean = false) boolean enableDebugOutput,
             @PluginAttribute(value = "ignoreExceptions", defaultBoolean = false) boolean ignoreExceptions
     ) throws IOException {
@@ -114,150 +137,109 @@ public final class CompressedLogAggregationV5 extends AbstractAppender {
         }
 
         return new CompressedLogAggregationV5(name, filter, compressedLogPatternLayoutContainer,
-                fileName, compressionLevel, useCompactVariableEncoding, enableDebugOutput, ignoreExceptions);
+                fileName, compressionLevel, useCompactVariableEncoding, async, ringBufferSize,
+                AsyncEventProcessor.WaitStrategy.valueOf(waitStrategy.toUpperCase()),
+                AsyncEventProcessor.FullRingPolicy.valueOf(fullRingPolicy.toUpperCase()),
+                Level.toLevel(dropBelowLevel, Level.WARN), enableDebugOutput, ignoreExceptions);
     }
 
     @Override
     public boolean stop(long timeout, TimeUnit timeUnit) {
-        try {
-            aggregationOutputStreamIR.close();
-            System.out.println("Gracefully Stopped " +  this.getName() + " appender");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return true;
-    }
-
-    private static class TokenBounds {
-        public int beginPos = 0;
-        public int endPos = 0;
-
-        public void reset() {
-            beginPos = 0;
-            endPos = 0;
-        }
-    }
-
-    private static boolean isDelimiter(byte c) {
-        return !('+' == c || ('-' <= c && c <= '9') || ('A' <= c && c <= 'Z') || '\\' == c || '_' == c || ('a' <= c && c <= 'z'));
-    }
-
-    private static boolean couldBeMultiDigitHexValue(byte[] str, int beginPos, int endPos) {
-        if (endPos - beginPos < 2) {
-            return false;
-        }
-
-        for (int i = beginPos; i < endPos; ++i) {
-            byte c = str[i];
-            if (!(('a' <= c && c <= 'f') || ('A' <= c && c <= 'F') || ('0' <= c && c <= '9'))) {
+        if (async) {
+            boolean drained = asyncEventProcessor.stop(timeout, timeUnit, this::closeOutput);
+            if (asyncEventProcessor.getNumDroppedEvents() > 0) {
+                LOGGER.warn(getName() + " appender dropped " + asyncEventProcessor.getNumDroppedEvents()
+                        + " events because its ring buffer was full");
+            }
+            if (!drained) {
+                LOGGER.error("Encoder thread of " + getName() + " appender did not finish in time, the output"
+                        + " is closed once it has drained the ring");
                 return false;
             }
+        } else {
+            closeOutput();
         }
-
+        System.out.println("Gracefully Stopped " +  this.getName() + " appender");
         return true;
     }
 
-    private boolean getBoundsOfNextVar(ByteBuffer logMessage) {
-        if (tokenBounds.endPos >= logMessage.position()) {
-            return false;
+    private synchronized void closeOutput() {
+        try {
+            aggregationOutputStreamIR.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+    }
 
-        while (true) {
-            tokenBounds.beginPos = tokenBounds.endPos;
-            // Find next non-delimiter
-            for (; tokenBounds.beginPos < logMessage.position(); ++tokenBounds.beginPos) {
-                if (!isDelimiter(logMessage.get(tokenBounds.beginPos))) {
-                    break;
-                }
-            }
-            if (logMessage.position() == tokenBounds.beginPos) {
-                // Early exit for performance
-                return false;
-            }
-
-            boolean containsDecimalDigit = false;
-            boolean containsAlphabet = false;
-
-            // Find next delimiter
-            tokenBounds.endPos = tokenBounds.beginPos;
-            for (; tokenBounds.endPos < logMessage.position(); ++tokenBounds.endPos) {
-                byte c = logMessage.get(tokenBounds.endPos);
-                if ('0' <= c && c <= '9') {
-                    // Contains number, so treat token as a variable
-                    containsDecimalDigit = true;
-                } else if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) {
-                    containsAlphabet = true;
-                } else if (isDelimiter(c)) {
-                    break;
+    @Override
+    public void append(LogEvent event) {
+        if (async) {
+            try {
+                asyncEventProcessor.publish(event, getLayout());
+            } catch (Exception ex) {
+                if (!ignoreExceptions()) {
+                    throw new AppenderLoggingException(ex);
                 }
             }
-
-            if (containsDecimalDigit ||
-                    (tokenBounds.beginPos > 0 && '=' == logMessage.get(tokenBounds.beginPos - 1) && containsAlphabet) ||
-                    couldBeMultiDigitHexValue(logMessage.array(), tokenBounds.beginPos, tokenBounds.endPos)) {
-                break;
-            }
-        }
-        return true;
-    }
-
-    private boolean parseNextVar(ByteBuffer logMessage) {
-        int lastVarEndPos = tokenBounds.endPos;
-        if (getBoundsOfNextVar(logMessage)) {
-            logtype.put(logMessage.array(), lastVarEndPos, tokenBounds.beginPos - lastVarEndPos);
-            return true;
         } else {
-            logtype.put(logMessage.array(), lastVarEndPos, tokenBounds.beginPos - lastVarEndPos);
+            appendSynchronously(event);
         }
-        return false;
     }
 
-    @Override
-    public synchronized void append(LogEvent event) {
+    private synchronized void appendSynchronously(LogEvent event) {
         // Using a global lock for now. Locks are to handle when multiple threads print log messages
         try {
-            logtype.rewind();
-            tokenBounds.reset();
-            patternLayoutBufferDestination.getByteBuffer().clear();
-
             // Parsing log message. Note log message here does not contain timestamp
             // Parse log message into destination buffer
+            patternLayoutBufferDestination.getByteBuffer().clear();
             getLayout().encode(event, patternLayoutBufferDestination);
-            ByteBuffer logMessage = patternLayoutBufferDestination.getByteBuffer();
-
-            // Reset (and potentially extend) buffers and token bounds
-            if (logtype.capacity() < logMessage.capacity()) {
-                logtype = ByteBuffer.allocate(logMessage.capacity());
-            }
-
-            if (enableDebugOutput) {
-                System.out.write(logMessage.array(), 0, logMessage.position());
-            }
-
-            // Insert into timestamp column right away, no parsing required
-            // Will encode the format into metadata in future implementation
-            final byte integerEncodedVariableDelim = 17;
-            final byte floatEncodedVariableDelim = 19;
-            final byte variableIdDelim = 18;
-            while (parseNextVar(logMessage)) {
-                variableDictionaryKey.wrap(logMessage.array(), tokenBounds.beginPos, tokenBounds.endPos);
-                if (variableDictionaryKey.encodeAsIntegerType()) {
-                    logtype.put(integerEncodedVariableDelim);
-                    aggregationOutputStreamIR.putEncodedVariable(variableDictionaryKey);
-                } else if (variableDictionaryKey.encodeAsFloatType()) {
-                    logtype.put(floatEncodedVariableDelim);
-                    aggregationOutputStreamIR.putEncodedVariable(variableDictionaryKey);
-                } else {
-                    logtype.put(variableIdDelim);
-                    aggregationOutputStreamIR.putDictionaryVariable(variableDictionaryKey);
-                }
-            }
-            aggregationOutputStreamIR.putLogtype(logtypeDictionaryKey.wrap(logtype));
-            aggregationOutputStreamIR.putTimestamp(event.getTimeMillis());
+            compress(patternLayoutBufferDestination.getByteBuffer(), event.getTimeMillis());
         } catch (Exception ex) {
             if (!ignoreExceptions()) {
                 throw new AppenderLoggingException(ex);
             }
         }
     }
+
+    /**
+     * Runs on the encoder thread in async mode
+     */
+    private void compressRenderedEvent(EncodedEvent event, long sequence, boolean endOfBatch) {
+        if (event.discarded) {
+            return;
+        }
+        try {
+            compress(event.getMessage(), event.timestamp);
+        } catch (Exception ex) {
+            // The event may belong to another logging thread, so we can only report the failure
+            LOGGER.error("Failed to write event to " + getName() + " appender", ex);
+        }
+    }
+
+    private void compress(ByteBuffer logMessage, long timestamp) throws Exception {
+        logtype.rewind();
+        tokenizer.reset();
+
+        // Reset (and potentially extend) buffers and token bounds
+        if (logtype.capacity() < logMessage.capacity()) {
+            logtype = ByteBuffer.allocate(logMessage.capacity());
+        }
+
+        if (enableDebugOutput) {
+            System.out.write(logMessage.array(), 0, logMessage.position());
+        }
+
+        while (tokenizer.parseNextVar(logMessage, logtype)) {
+            byte varType = tokenizer.getVarType();
+            logtype.put(varType);
+            if (EncodedEvent.VARIABLE_ID_DELIM == varType) {
+                variableDictionaryKey.wrap(logMessage.array(), tokenizer.getVarBeginPos(), tokenizer.getVarEndPos());
+                aggregationOutputStreamIR.putDictionaryVariable(variableDictionaryKey);
+            } else {
+                aggregationOutputStreamIR.putEncodedVariable(tokenizer.getVarEncoding());
+            }
+        }
+        aggregationOutputStreamIR.putLogtype(logtypeDictionaryKey.wrap(logtype));
+        aggregationOutputStreamIR.putTimestamp(timestamp);
+    }
 }
@@ -0,0 +1,76 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.NumericPredicate;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.WildcardQuery;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Prints the log messages of a compressed log matching a wildcard pattern (see WildcardQuery), searching the
+ * archives without decompressing them (see Decompressor.search). Matching log messages are written to the
+ * standard output, the number of matches to the standard error.
+ * With a template containing '{}', an operator and a number instead of the pattern, prints the log messages
+ * whose variable at the placeholder satisfies the comparison instead (see NumericPredicate), e.g.
+ * ArchiveSearcher test.cla "completed in {} ms" ">=" 500
+ * Usage: ArchiveSearcher <compressed log file> <pattern> [number of threads]
+ *        ArchiveSearcher <compressed log file> <template> <operator> <number> [number of threads]
+ */
+public class ArchiveSearcher {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: ArchiveSearcher <compressed log file> <pattern> [number of threads]");
+            System.err.println("       ArchiveSearcher <compressed log file> <template> <operator> <number> "
+                    + "[number of threads]");
+            return;
+        }
+        Path compressedLogDir = Path.of(args[0]).getParent();
+        boolean isPredicate = args.length > 3 && args[1].contains(NumericPredicate.PLACEHOLDER);
+        WildcardQuery query = isPredicate ? null : new WildcardQuery(args[1]);
+        NumericPredicate predicate = isPredicate
+                ? new NumericPredicate(args[1], NumericPredicate.Operator.fromString(args[2]), args[3]) : null;
+        int threadsArg = isPredicate ? 4 : 2;
+        int numThreads = args.length > threadsArg
+                ? Integer.parseInt(args[threadsArg]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+        try {
+            List<Path> rolledArchives = Decompressor.listRolledArchives(compressedLogDir);
+            if (rolledArchives.isEmpty()) {
+                rolledArchives.add(compressedLogDir);
+            }
+            Map<Long, ZstdDictDecompress> trainedDictionaries = Decompressor.loadTrainedDictionaries(compressedLogDir);
+            long numMatchingEvents = 0;
+            long start = System.nanoTime();
+            BufferedOutputStream matchingLogStream = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out));
+            for (Path archiveDir : rolledArchives) {
+                Decompressor decompressor = new Decompressor(archiveDir, trainedDictionaries);
+                if (isPredicate) {
+                    numMatchingEvents += null != pool
+                            ? decompressor.search(predicate, matchingLogStream, pool)
+                            : decompressor.search(predicate, matchingLogStream);
+                } else {
+                    numMatchingEvents += null != pool
+                            ? decompressor.search(query, matchingLogStream, pool)
+                            : decompressor.search(query, matchingLogStream);
+                }
+            }
+            matchingLogStream.flush();
+            System.err.println(numMatchingEvents + " log messages matching "
+                    + (isPredicate ? predicate.toString() : query.getPattern()) + " found in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (null != pool) {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.MessageSplitPatternLayout;
 import org.apache.logging.log4j.core.layout.PatternLayout;
 
+import java.nio.charset.Charset;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -15,27 +18,37 @@ import java.util.regex.Pattern;
  */
 public class CompressedLogFilePatternLayoutContainer {
     private final String originalPatternLayoutStr;
+    // Charset of the configured layout, kept by the layouts derived from it
+    private final Charset charset;
     private final PatternLayout compressedLogPatternLayout;
     private final String timestampPattern;
+    private final MessageSplitPatternLayout messageSplitPatternLayout;
+    private final CompiledPatternLayout compiledPatternLayout;
 
     public CompressedLogFilePatternLayoutContainer(PatternLayout patternLayout) {
         // Parse the timestamp out into 3 parts: before tsPattern (prefix), tsPattern, afterTsPattern (suffix)
         // In the future we may inject a literal timestamp mark here to signify the position of timestamp
         this.originalPatternLayoutStr = patternLayout.getConversionPattern();
+        this.charset = patternLayout.getCharset();
         final String timestampExtractionRegex = "(?<prefix>.*)%d\\{(?<timestampPattern>\\S+)\\}(?<suffix>.*)";
         final Pattern pattern = Pattern.compile(timestampExtractionRegex, Pattern.MULTILINE);
         final Matcher matcher = pattern.matcher(originalPatternLayoutStr);
         if (matcher.find()) {
             String transformedPatternLayoutString = matcher.group("prefix") + matcher.group("suffix");
-            compressedLogPatternLayout = PatternLayout.newBuilder().withPattern(transformedPatternLayoutString).build();
+            compressedLogPatternLayout = PatternLayout.newBuilder().withPattern(transformedPatternLayoutString)
+                    .withCharset(charset).build();
             timestampPattern = matcher.group("timestampPattern");
+            messageSplitPatternLayout =
+                    MessageSplitPatternLayout.create(compressedLogPatternLayout, transformedPatternLayoutString);
+            compiledPatternLayout =
+                    CompiledPatternLayout.create(compressedLogPatternLayout, transformedPatternLayoutString);
         } else {
             throw new UnsupportedOperationException("Pattern layout must contain timestamp converter");
         }
     }
 
     public PatternLayout getOriginalPatternLayout() {
-        return PatternLayout.newBuilder().withPattern(this.originalPatternLayoutStr).build();
+        return PatternLayout.newBuilder().withPattern(this.originalPatternLayoutStr).withCharset(charset).build();
     }
 
     public PatternLayout getCompressedLogPatternLayout() {
@@ -45,4 +58,18 @@ public class CompressedLogFilePatternLayoutContainer {
     public String getTimestampPattern() {
         return timestampPattern;
     }
+
+    /**
+     * @return the compressed log pattern layout split around its message, null if it can't be split
+     */
+    public MessageSplitPatternLayout getMessageSplitPatternLayout() {
+        return messageSplitPatternLayout;
+    }
+
+    /**
+     * @return the compressed log pattern layout compiled into columns, null if it can't be compiled
+     */
+    public CompiledPatternLayout getCompiledPatternLayout() {
+        return compiledPatternLayout;
+    }
 }
@@ -1,20 +1,21 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
 
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.BufferedDataOutputStreamCompressionDictionary;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.MemoryMappedCompressionDictionary;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.CompactVariableByteArrayViewDictionaryKey;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.LogtypeByteArrayViewDictionaryKey;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.StandardVariableByteArrayViewDictionaryKey;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeBufferedFileOutputStreamIR;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeIR;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeMemoryMappedIR;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampBufferedFileOutputStreamIR;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampIR;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampMemoryMappedIR;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.*;
-import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.PatternLayoutBufferDestination;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveFinalizer;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveSettings;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.CommitLog;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.RollingPolicy;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TrainedDictionaries;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.DictionaryShard;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.ShardedCompressionDictionaries;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.concurrent.AsyncEventProcessor;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.concurrent.MultiProducerRingBuffer;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EventEncoder;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.MessageSplitPatternLayout;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.*;
 import org.apache.logging.log4j.core.appender.AbstractAppender;
 import org.apache.logging.log4j.core.appender.AppenderLoggingException;
@@ -30,113 +31,153 @@ import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.stream.Stream;
 
 /**
  * v5 - variation of v4. Storage of sha256 digest using byteArray rather than 4 long
  *      - marginally higher performance compared to v4, about 1-2%.
  *      - will use v5 as basis for compressed log aggregation
+ *    - async: events are written by an encoder thread draining a ring (see AsyncEventProcessor)
  */
 @Plugin(name = "CompressedLogFileV5", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE, printObject = true)
 public final class CompressedLogFileV5 extends AbstractAppender {
-    private Integer bufferSize;
-    private final boolean useCompactVariableEncoding;
-    private Integer compressionLevel;
-    private final boolean useMemoryMappedIO;
-    private CompressionDictionary logtypeDict;
-    private CompressionDictionary variableDict;
-    private TimestampIR timestampIR;
-    private LogtypeIR logtypeIR;
-    private VariableIR variableIR;
+    private ArchiveWriter archiveWriter;
     private Path compressedLogFile;
     private Path compressedLogDir;
 
-    private boolean enableDebugOutput;
-
-    private PatternLayoutBufferDestination patternLayoutBufferDestination;
-
-    VariableByteArrayViewDictionaryKey variableDictionaryKey;
-    LogtypeByteArrayViewDictionaryKey logtypeDictionaryKey;
-
-    private ByteBuffer logtype;
-    private TokenBounds tokenBounds;
+    // Settings of every archive written
+    private final ArchiveSettings archiveSettings;
+    // Rolling state, only used by whichever thread writes the archive. Null if rolling is disabled.
+    private RollingPolicy rollingPolicy;
+    private ArchiveFinalizer archiveFinalizer;
+    private long nextArchiveNum;
+    // Shared by all archives of the log, null unless dictionaries are trained
+    private TrainedDictionaries trainedDictionaries;
 
-    private String logtypeDictFilename = "logtype.dict";
-    private String variableDictFilename = "variable.dict";
-    private String timestampIRFilename = "ts.bin";
-    private String logtypeIRFilename = "logtype.bin";
-    private String variableIRFilename = "var.bin";
+    private boolean enableDebugOutput;
+    // Null if the fast path is disabled or the (message) layout can't be split around its message
+    private final MessageSplitPatternLayout messageSplitPatternLayout;
+    // Null if the layout isn't compiled into columns
+    private final CompiledPatternLayout compiledPatternLayout;
+
+    // Synchronous path state, guarded by the appender lock
+    private EventEncoder eventEncoder;
+    private final EncodedEvent encodedEvent;
+
+    // Concurrent ingestion path state
+    private final boolean useConcurrentIngestion;
+    private final boolean useShardedDictionaries;
+    private MultiProducerRingBuffer<EncodedEvent> ringBuffer;
+    private ThreadLocal<EventEncoder> threadLocalEventEncoder;
+    private ThreadLocal<EncodedEvent> threadLocalEncodedEvent;
+    private ThreadLocal<ThreadDictionaryShard> threadLocalDictionaryShard;
+    // Dictionaries of the archive being written, events resolved in older archives' shards are resolved again
+    private volatile ShardedCompressionDictionaries currentShardedDictionaries;
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final MultiProducerRingBuffer.EventHandler<EncodedEvent> archiveWriterHandler = this::writeToArchive;
+    // Set when the appender stops, later events are dropped. Events that were published anyway once the archive
+    // is closed (archiveClosed, guarded by drainLock) are drained without being written.
+    private volatile boolean stopped = false;
+    private boolean archiveClosed = false;
+    private final MultiProducerRingBuffer.EventHandler<EncodedEvent> discardingHandler =
+            (event, sequence, endOfBatch) -> {
+            };
+
+    // Asynchronous encoder thread state, the encoder thread uses eventEncoder
+    private final boolean async;
+    private AsyncEventProcessor asyncEventProcessor;
+
+    /**
+     * How the appender takes in events and rolls its archives, the archives themselves are configured by
+     * ArchiveSettings
+     */
+    private static final class IngestionSettings {
+        private boolean useConcurrentIngestion;
+        private int ringBufferSize;
+        private boolean useParameterizedMessageFastPath;
+        private boolean useCompiledPatternLayout;
+        private boolean async;
+        private AsyncEventProcessor.WaitStrategy waitStrategy;
+        private AsyncEventProcessor.FullRingPolicy fullRingPolicy;
+        private Level dropBelowLevel;
+        private RollingPolicy rollingPolicy;
+        private boolean enableDebugOutput;
+    }
 
     private CompressedLogFileV5(String name, Filter filter,
                                 CompressedLogFilePatternLayoutContainer compressedLogPatternLayoutContainer,
-                                String fileName, int bufferSize, int compressionLevel,
-                                boolean useCompactVariableEncoding, boolean useMemoryMappedIO,
-                                boolean enableDebugOutput, final boolean ignoreExceptions) {
+                                String fileName, ArchiveSettings archiveSettings, IngestionSettings ingestion,
+                                final boolean ignoreExceptions) {
         super(name, filter, compressedLogPatternLayoutContainer.getCompressedLogPatternLayout(), ignoreExceptions, Property.EMPTY_ARRAY);
-        this.compressionLevel = compressionLevel;
-        this.useCompactVariableEncoding = useCompactVariableEncoding;
-        this.useMemoryMappedIO = useMemoryMappedIO;
-        this.enableDebugOutput = enableDebugOutput;
-        this.bufferSize = bufferSize;
-        this.patternLayoutBufferDestination = new PatternLayoutBufferDestination(8192);
-
-        logtype = ByteBuffer.allocate(8192);
-        tokenBounds = new TokenBounds();
+        this.archiveSettings = archiveSettings;
+        boolean useShardedDictionaries = archiveSettings.useShardedDictionaries;
+        // Shards are only useful if the logging threads don't serialize on the appender lock
+        this.useConcurrentIngestion = ingestion.useConcurrentIngestion || useShardedDictionaries;
+        this.useShardedDictionaries = useShardedDictionaries;
+        this.async = ingestion.async;
+        this.enableDebugOutput = ingestion.enableDebugOutput;
+        this.encodedEvent = new EncodedEvent(8192);
+        this.compiledPatternLayout = ingestion.useCompiledPatternLayout
+                ? compressedLogPatternLayoutContainer.getCompiledPatternLayout() : null;
+        if (!ingestion.useParameterizedMessageFastPath) {
+            this.messageSplitPatternLayout = null;
+        } else if (null != compiledPatternLayout) {
+            this.messageSplitPatternLayout = compiledPatternLayout.getMessageSplitPatternLayout();
+        } else {
+            this.messageSplitPatternLayout = compressedLogPatternLayoutContainer.getMessageSplitPatternLayout();
+        }
 
         try {
             // Create directory for log file if it doesn't exist
             compressedLogFile = Path.of(fileName);
             compressedLogDir = compressedLogFile.getParent();
-            Files.createDirectories(compressedLogDir);
-
-            if (compressionLevel != 0) {
-                logtypeDictFilename += ".zst";
-                variableDictFilename += ".zst";
-                timestampIRFilename += ".zst";
-                logtypeIRFilename += ".zst";
-                variableIRFilename += ".zst";
+            RollingPolicy policy = ingestion.rollingPolicy;
+            recoverArchives(policy.isEnabled());
+            if (archiveSettings.useTrainedDictionaries && archiveSettings.useArchiveContainer
+                    && archiveSettings.compressionLevel != 0) {
+                trainedDictionaries = new TrainedDictionaries(compressedLogDir, archiveSettings.compressionLevel,
+                        archiveSettings.trainedDictionarySampleBytes, archiveSettings.trainedDictionarySize);
             }
-
-            if (useMemoryMappedIO) {
-                logtypeDict = new MemoryMappedCompressionDictionary(
-                        compressedLogDir.resolve(logtypeDictFilename), bufferSize, compressionLevel);
-                variableDict = new MemoryMappedCompressionDictionary(
-                        compressedLogDir.resolve(variableDictFilename), bufferSize, compressionLevel);
-                timestampIR = new TimestampMemoryMappedIR(
-                        compressedLogDir.resolve(timestampIRFilename), bufferSize, compressionLevel);
-                logtypeIR = new LogtypeMemoryMappedIR(
-                        compressedLogDir.resolve(logtypeIRFilename), bufferSize, compressionLevel);
-                if (useCompactVariableEncoding) {
-                    variableIR = new CompactVariableMemoryMappedIR(
-                            compressedLogDir.resolve(variableIRFilename), bufferSize, compressionLevel);
-                } else {
-                    variableIR = new StandardVariableMemoryMappedIR(
-                            compressedLogDir.resolve(variableIRFilename), bufferSize, compressionLevel);
-                }
+            if (policy.isEnabled()) {
+                rollingPolicy = policy;
+                archiveFinalizer = new ArchiveFinalizer(name + "-finalizer");
+                nextArchiveNum = findLastArchiveNum() + 1;
+                archiveWriter = new ArchiveWriter(nextArchiveDir(), archiveSettings, compiledPatternLayout,
+                        trainedDictionaries);
             } else {
-                logtypeDict = new BufferedDataOutputStreamCompressionDictionary(
-                        compressedLogDir.resolve(logtypeDictFilename), compressionLevel);
-                variableDict = new BufferedDataOutputStreamCompressionDictionary(
-                        compressedLogDir.resolve(variableDictFilename), compressionLevel);
-                timestampIR = new TimestampBufferedFileOutputStreamIR(
-                        compressedLogDir.resolve(timestampIRFilename), compressionLevel);
-                logtypeIR = new LogtypeBufferedFileOutputStreamIR(
-                        compressedLogDir.resolve(logtypeIRFilename), compressionLevel);
-                if (useCompactVariableEncoding) {
-                    variableIR = new CompactVariableBufferedFileOutputStreamIR(
-                            compressedLogDir.resolve(variableIRFilename), compressionLevel);
-                } else {
-                    variableIR = new StandardVariableBufferedFileOutputStreamIR(
-                            compressedLogDir.resolve(variableIRFilename), compressionLevel);
-                }
+                archiveWriter = new ArchiveWriter(compressedLogDir, archiveSettings, compiledPatternLayout,
+                        trainedDictionaries);
             }
-
-            logtypeDictionaryKey = new LogtypeByteArrayViewDictionaryKey();
-            if (useCompactVariableEncoding) {
-                variableDictionaryKey = new CompactVariableByteArrayViewDictionaryKey();
-            } else {
-                variableDictionaryKey = new StandardVariableByteArrayViewDictionaryKey();
+            boolean useCompactVariableEncoding = archiveSettings.useCompactVariableEncoding;
+            KeyHashAlgorithm keyHashAlgorithm = archiveSettings.keyHashAlgorithm;
+            eventEncoder = new EventEncoder(useCompactVariableEncoding, keyHashAlgorithm);
+
+            if (async) {
+                asyncEventProcessor = new AsyncEventProcessor(name + "-encoder", ingestion.ringBufferSize,
+                        ingestion.waitStrategy, ingestion.fullRingPolicy, ingestion.dropBelowLevel,
+                        this::encodeAndWriteToArchive);
+                asyncEventProcessor.start();
+            } else if (this.useConcurrentIngestion) {
+                ringBuffer = new MultiProducerRingBuffer<>(ingestion.ringBufferSize, () -> new EncodedEvent(8192));
+                threadLocalEncodedEvent = ThreadLocal.withInitial(() -> new EncodedEvent(8192));
+                threadLocalEventEncoder = ThreadLocal.withInitial(() -> {
+                    try {
+                        return new EventEncoder(useCompactVariableEncoding, keyHashAlgorithm);
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            if (useShardedDictionaries && !async) {
+                currentShardedDictionaries = archiveWriter.getShardedDictionaries();
+                threadLocalDictionaryShard = ThreadLocal.withInitial(ThreadDictionaryShard::new);
             }
         } catch (IOException | NoSuchAlgorithmException e) {
             e.printStackTrace();
@@ -153,6 +194,41 @@ public final class CompressedLogFileV5 extends AbstractAppender {
             @PluginAttribute(value = "compressionLevel", defaultInt = 0) int compressionLevel,
             @PluginAttribute(value = "useCompactVariableEncoding", defaultBoolean = true) boolean useCompactVariableEncoding,
             @PluginAttribute(value = "useMemoryMappedIO", defaultBoolean = true) boolean useMemoryMappedIO,
+            @PluginAttribute(value = "useConcurrentIngestion", defaultBoolean = false) boolean useConcurrentIngestion,
+            @PluginAttribute(value = "ringBufferSize", defaultInt = 4096) int ringBufferSize,
+            @PluginAttribute(value = "useShardedDictionaries", defaultBoolean = false) boolean useShardedDictionaries,
+            @PluginAttribute(value = "keyHashAlgorithm", defaultString = "SHA_256") String keyHashAlgorithm,
+            @PluginAttribute(value = "useOffHeapDictionaryIndex", defaultBoolean = false) boolean useOffHeapDictionaryIndex,
+            @PluginAttribute(value = "useParameterizedMessageFastPath", defaultBoolean = false) boolean useParameterizedMessageFastPath,
+            @PluginAttribute(value = "useCompiledPatternLayout", defaultBoolean = false) boolean useCompiledPatternLayout,
+            @PluginAttribute(value = "compressionThreads", defaultInt = 0) int compressionThreads,
+            @PluginAttribute(value = "compressionBufferSize", defaultInt = 1024 * 1024) int compressionBufferSize,
+            @PluginAttribute(value = "timestampCompressionBuffers", defaultInt = 2) int timestampCompressionBuffers,
+            @PluginAttribute(value = "logtypeCompressionBuffers", defaultInt = 2) int logtypeCompressionBuffers,
+            @PluginAttribute(value = "variableCompressionBuffers", defaultInt = 4) int variableCompressionBuffers,
+            @PluginAttribute(value = "dictionaryCompressionBuffers", defaultInt = 2) int dictionaryCompressionBuffers,
+            @PluginAttribute(value = "useArchiveContainer", defaultBoolean = false) boolean useArchiveContainer,
+            @PluginAttribute(value = "containerChunkSize", defaultInt = 64 * 1024) int containerChunkSize,
+            @PluginAttribute(value = "useDeltaTimestampEncoding", defaultBoolean = false) boolean useDeltaTimestampEncoding,
+            @PluginAttribute(value = "useVarintIds", defaultBoolean = false) boolean useVarintIds,
+            @PluginAttribute(value = "useTemplateGroupedVariables", defaultBoolean = false) boolean useTemplateGroupedVariables,
+            @PluginAttribute(value = "useTrainedDictionaries", defaultBoolean = false) boolean useTrainedDictionaries,
+            @PluginAttribute(value = "trainedDictionarySampleBytes", defaultInt = 1024 * 1024) int trainedDictionarySampleBytes,
+            @PluginAttribute(value = "trainedDictionarySize", defaultInt = 16 * 1024) int trainedDictionarySize,
+            @PluginAttribute(value = "groupCommitIntervalMillis", defaultLong = 0) long groupCommitIntervalMillis,
+            @PluginAttribute(value = "groupCommitEvents", defaultLong = 0) long groupCommitEvents,
+            @PluginAttribute(value = "useGatheringWrites", defaultBoolean = false) boolean useGatheringWrites,
+            @PluginAttribute(value = "gatheringBufferSize", defaultInt = 256 * 1024) int gatheringBufferSize,
+            @PluginAttribute(value = "timeIndexInterval", defaultInt = 8 * 1024) int timeIndexInterval,
+            @PluginAttribute(value = "usePostingsIndex", defaultBoolean = false) boolean usePostingsIndex,
+            @PluginAttribute(value = "postingsBufferSize", defaultInt = 16 * 1024 * 1024) int postingsBufferSize,
+            @PluginAttribute(value = "rollingMaxBytes", defaultLong = 0) long rollingMaxBytes,
+            @PluginAttribute(value = "rollingMaxEvents", defaultLong = 0) long rollingMaxEvents,
+            @PluginAttribute(value = "rollingIntervalSeconds", defaultLong = 0) long rollingIntervalSeconds,
+            @PluginAttribute(value = "async", defaultBoolean = false) boolean async,
+            @PluginAttribute(value = "waitStrategy", defaultString = "PARK") String waitStrategy,
+            @PluginAttribute(value = "fullRingPolicy", defaultString = "BLOCK") String fullRingPolicy,
+            @PluginAttribute(value = "dropBelowLevel", defaultString = "WARN") String dropBelowLevel,
             @PluginAttribute(value = "enableDebugOutput", defaultBoolean = false) boolean enableDebugOutput,
             @PluginAttribute(value = "ignoreExceptions", defaultBoolean = false) boolean ignoreExceptions
     ) {
@@ -172,156 +248,377 @@ public final class CompressedLogFileV5 extends AbstractAppender {
             return null;
         }
 
-        return new CompressedLogFileV5(name, filter, compressedLogPatternLayoutContainer,
-                fileName, bufferSize, compressionLevel, useCompactVariableEncoding,
-                useMemoryMappedIO, enableDebugOutput, ignoreExceptions);
+        ArchiveSettings archiveSettings = new ArchiveSettings();
+        archiveSettings.bufferSize = bufferSize;
+        archiveSettings.compressionLevel = compressionLevel;
+        archiveSettings.useCompactVariableEncoding = useCompactVariableEncoding;
+        archiveSettings.useMemoryMappedIO = useMemoryMappedIO;
+        archiveSettings.useShardedDictionaries = useShardedDictionaries;
+        archiveSettings.timestampPattern = compressedLogPatternLayoutContainer.getTimestampPattern();
+        archiveSettings.keyHashAlgorithm = KeyHashAlgorithm.fromString(keyHashAlgorithm);
+        archiveSettings.useOffHeapDictionaryIndex = useOffHeapDictionaryIndex;
+        archiveSettings.compressionThreads = compressionThreads;
+        archiveSettings.compressionBufferSize = compressionBufferSize;
+        archiveSettings.timestampCompressionBuffers = timestampCompressionBuffers;
+        archiveSettings.logtypeCompressionBuffers = logtypeCompressionBuffers;
+        archiveSettings.variableCompressionBuffers = variableCompressionBuffers;
+        archiveSettings.dictionaryCompressionBuffers = dictionaryCompressionBuffers;
+        archiveSettings.useArchiveContainer = useArchiveContainer;
+        archiveSettings.containerChunkSize = containerChunkSize;
+        archiveSettings.useDeltaTimestampEncoding = useDeltaTimestampEncoding;
+        archiveSettings.useVarintIds = useVarintIds;
+        archiveSettings.useTemplateGroupedVariables = useTemplateGroupedVariables;
+        archiveSettings.useTrainedDictionaries = useTrainedDictionaries;
+        archiveSettings.trainedDictionarySampleBytes = trainedDictionarySampleBytes;
+        archiveSettings.trainedDictionarySize = trainedDictionarySize;
+        archiveSettings.groupCommitIntervalMillis = groupCommitIntervalMillis;
+        archiveSettings.groupCommitEvents = groupCommitEvents;
+        archiveSettings.useGatheringWrites = useGatheringWrites;
+        archiveSettings.gatheringBufferSize = gatheringBufferSize;
+        archiveSettings.timeIndexInterval = timeIndexInterval;
+        archiveSettings.usePostingsIndex = usePostingsIndex;
+        archiveSettings.postingsBufferSize = postingsBufferSize;
+
+        IngestionSettings ingestion = new IngestionSettings();
+        ingestion.useConcurrentIngestion = useConcurrentIngestion;
+        ingestion.ringBufferSize = ringBufferSize;
+        ingestion.useParameterizedMessageFastPath = useParameterizedMessageFastPath;
+        ingestion.useCompiledPatternLayout = useCompiledPatternLayout;
+        ingestion.async = async;
+        ingestion.waitStrategy = AsyncEventProcessor.WaitStrategy.valueOf(waitStrategy.toUpperCase());
+        ingestion.fullRingPolicy = AsyncEventProcessor.FullRingPolicy.valueOf(fullRingPolicy.toUpperCase());
+        ingestion.dropBelowLevel = Level.toLevel(dropBelowLevel, Level.WARN);
+        ingestion.rollingPolicy = new RollingPolicy(rollingMaxBytes, rollingMaxEvents,
+                TimeUnit.SECONDS.toMillis(rollingIntervalSeconds));
+        ingestion.enableDebugOutput = enableDebugOutput;
+
+        return new CompressedLogFileV5(name, filter, compressedLogPatternLayoutContainer, fileName, archiveSettings,
+                ingestion, ignoreExceptions);
     }
 
     @Override
     public boolean stop(long timeout, TimeUnit timeUnit) {
         try {
-            variableDict.close();
-            logtypeDict.close();
-            timestampIR.close();
-            logtypeIR.close();
-            variableIR.close();
+            if (async) {
+                boolean drained = asyncEventProcessor.stop(timeout, timeUnit,
+                        () -> closeDrainedArchive(timeout, timeUnit));
+                if (asyncEventProcessor.getNumDroppedEvents() > 0) {
+                    LOGGER.warn(getName() + " appender dropped " + asyncEventProcessor.getNumDroppedEvents()
+                            + " events because its ring buffer was full");
+                }
+                if (!drained) {
+                    LOGGER.error("Encoder thread of " + getName() + " appender did not finish in time, the archive"
+                            + " is closed once it has drained the ring");
+                    return false;
+                }
+            } else if (useConcurrentIngestion) {
+                stopped = true;
+                // Flush whatever is still sitting in the ring before closing the columns. The drain lock is
+                // held until the archive is closed, so late producers can't write into it while it's closing.
+                drainLock.lock();
+                try {
+                    while (ringBuffer.size() > 0) {
+                        if (ringBuffer.drain(archiveWriterHandler, ringBuffer.getCapacity()) == 0) {
+                            Thread.yield();   // A producer claimed a slot but has not published it yet
+                        }
+                    }
+                    closeArchive(timeout, timeUnit);
+                } finally {
+                    archiveClosed = true;
+                    drainLock.unlock();
+                }
+            } else {
+                closeArchive(timeout, timeUnit);
+            }
             System.out.println("Gracefully Stopped " +  this.getName() + " appender");
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            e.printStackTrace();
         }
         return true;
     }
 
-    private static class TokenBounds {
-        public int beginPos = 0;
-        public int endPos = 0;
+    /**
+     * Closes the archive once the encoder thread has drained the ring, possibly on the encoder thread itself
+     */
+    private void closeDrainedArchive(long timeout, TimeUnit timeUnit) {
+        try {
+            closeArchive(timeout, timeUnit);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            e.printStackTrace();
+        }
+    }
 
-        public void reset() {
-            beginPos = 0;
-            endPos = 0;
+    private synchronized void closeArchive(long timeout, TimeUnit timeUnit)
+            throws IOException, InterruptedException {
+        if (enableDebugOutput) {
+            System.out.println(getName() + " " + archiveWriter.getDictionaryMemoryUsage());
+        }
+        if (null != rollingPolicy) {
+            archiveFinalizer.finalizeArchive(archiveWriter);
+            if (!archiveFinalizer.close(timeout, timeUnit)) {
+                LOGGER.error("Archives of " + getName() + " appender were not finalized in time");
+            }
+        } else {
+            archiveWriter.close();
+        }
+        if (enableDebugOutput && null != archiveWriter.getCompressionStatistics()) {
+            System.out.println(getName() + " " + archiveWriter.getCompressionStatistics());
         }
     }
 
-    private static boolean isDelimiter(byte c) {
-        return !('+' == c || ('-' <= c && c <= '9') || ('A' <= c && c <= 'Z') || '\\' == c || '_' == c || ('a' <= c && c <= 'z'));
+    @Override
+    public void append(LogEvent event) {
+        if (async) {
+            try {
+                if (null != compiledPatternLayout) {
+                    asyncEventProcessor.publish(event, compiledPatternLayout, messageSplitPatternLayout);
+                } else {
+                    asyncEventProcessor.publish(event, getLayout(), messageSplitPatternLayout);
+                }
+            } catch (Exception ex) {
+                if (!ignoreExceptions()) {
+                    throw new AppenderLoggingException(ex);
+                }
+            }
+        } else if (useConcurrentIngestion) {
+            appendConcurrently(event);
+        } else {
+            appendSynchronously(event);
+        }
     }
 
-    private static boolean couldBeMultiDigitHexValue(byte[] str, int beginPos, int endPos) {
-        if (endPos - beginPos < 2) {
-            return false;
+    private void encode(EventEncoder encoder, LogEvent event, EncodedEvent encodedEvent) throws DigestException {
+        if (null != compiledPatternLayout) {
+            encoder.encode(event, compiledPatternLayout, messageSplitPatternLayout, encodedEvent);
+        } else {
+            encoder.encode(event, getLayout(), messageSplitPatternLayout, encodedEvent);
         }
+    }
 
-        for (int i = beginPos; i < endPos; ++i) {
-            byte c = str[i];
-            if (!(('a' <= c && c <= 'f') || ('A' <= c && c <= 'F') || ('0' <= c && c <= '9'))) {
-                return false;
+    private synchronized void appendSynchronously(LogEvent event) {
+        // Using a global lock for now. Locks are to handle when multiple threads print log messages
+        try {
+            encode(eventEncoder, event, encodedEvent);
+            if (enableDebugOutput) {
+                ByteBuffer logMessage = encodedEvent.getMessage();
+                System.out.write(logMessage.array(), 0, logMessage.position());
+            }
+            writeEvent(encodedEvent);
+        } catch (Exception ex) {
+            if (!ignoreExceptions()) {
+                throw new AppenderLoggingException(ex);
             }
         }
-
-        return true;
     }
 
-    private boolean getBoundsOfNextVar(ByteBuffer logMessage) {
-        if (tokenBounds.endPos >= logMessage.position()) {
-            return false;
+    private void appendConcurrently(LogEvent event) {
+        if (stopped) {
+            return;
         }
-
-        while (true) {
-            tokenBounds.beginPos = tokenBounds.endPos;
-            // Find next non-delimiter
-            for (; tokenBounds.beginPos < logMessage.position(); ++tokenBounds.beginPos) {
-                if (!isDelimiter(logMessage.get(tokenBounds.beginPos))) {
-                    break;
-                }
+        // Everything up to publishing runs without any lock, in thread-local scratch buffers
+        EncodedEvent threadLocalEvent = threadLocalEncodedEvent.get();
+        try {
+            encode(threadLocalEventEncoder.get(), event, threadLocalEvent);
+            if (null != threadLocalDictionaryShard) {
+                resolveInDictionaryShard(threadLocalEvent);
             }
-            if (logMessage.position() == tokenBounds.beginPos) {
-                // Early exit for performance
-                return false;
+        } catch (Exception ex) {
+            if (!ignoreExceptions()) {
+                throw new AppenderLoggingException(ex);
             }
-
-            boolean containsDecimalDigit = false;
-            boolean containsAlphabet = false;
-
-            // Find next delimiter
-            tokenBounds.endPos = tokenBounds.beginPos;
-            for (; tokenBounds.endPos < logMessage.position(); ++tokenBounds.endPos) {
-                byte c = logMessage.get(tokenBounds.endPos);
-                if ('0' <= c && c <= '9') {
-                    // Contains number, so treat token as a variable
-                    containsDecimalDigit = true;
-                } else if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) {
-                    containsAlphabet = true;
-                } else if (isDelimiter(c)) {
-                    break;
-                }
+            return;
+        }
+        if (enableDebugOutput) {
+            ByteBuffer logMessage = threadLocalEvent.getMessage();
+            synchronized (System.out) {
+                System.out.write(logMessage.array(), 0, logMessage.position());
             }
+        }
 
-            if (containsDecimalDigit ||
-                    (tokenBounds.beginPos > 0 && '=' == logMessage.get(tokenBounds.beginPos - 1) && containsAlphabet) ||
-                    couldBeMultiDigitHexValue(logMessage.array(), tokenBounds.beginPos, tokenBounds.endPos)) {
-                break;
-            }
+        long sequence;
+        while ((sequence = ringBuffer.tryClaim()) < 0) {
+            // Ring is full, help draining instead of just waiting for whoever holds the drain lock
+            drainRingBuffer();
+            Thread.yield();
         }
-        return true;
+        // Swap the encoded event into the ring, the slot's previous (already consumed) event becomes this
+        // thread's scratch space, so no copy or allocation is needed
+        threadLocalEncodedEvent.set(ringBuffer.exchange(sequence, threadLocalEvent));
+        ringBuffer.publish(sequence);
+
+        drainRingBuffer();
     }
 
-    private boolean parseNextVar(ByteBuffer logMessage) {
-        int lastVarEndPos = tokenBounds.endPos;
-        if (getBoundsOfNextVar(logMessage)) {
-            logtype.put(logMessage.array(), lastVarEndPos, tokenBounds.beginPos - lastVarEndPos);
-            return true;
-        } else {
-            logtype.put(logMessage.array(), lastVarEndPos, tokenBounds.beginPos - lastVarEndPos);
+    /**
+     * Dictionary shard of a logging thread among the shards of an archive
+     */
+    private static final class ThreadDictionaryShard {
+        private ShardedCompressionDictionaries dictionaries;
+        // Null if the thread didn't get a shard
+        private DictionaryShard shard;
+    }
+
+    /**
+     * Resolves the event's dictionary ids in the logging thread's shard of the current archive. Events that
+     * can't be resolved there (e.g. all shard indices are taken) are resolved by the thread writing the
+     * archive.
+     */
+    private void resolveInDictionaryShard(EncodedEvent event) throws IOException, NoSuchAlgorithmException {
+        ThreadDictionaryShard threadShard = threadLocalDictionaryShard.get();
+        ShardedCompressionDictionaries dictionaries = currentShardedDictionaries;
+        if (threadShard.dictionaries != dictionaries) {
+            threadShard.dictionaries = dictionaries;
+            threadShard.shard = dictionaries.acquireShard();
+        }
+        if (null != threadShard.shard && !threadShard.shard.resolveIds(event)) {
+            // The shard is full, or was merged because the archive rolled
+            threadShard.shard = dictionaries.acquireShard();
+            if (null != threadShard.shard) {
+                threadShard.shard.resolveIds(event);
+            }
         }
-        return false;
     }
 
-    @Override
-    public synchronized void append(LogEvent event) {
-        // Using a global lock for now. Locks are to handle when multiple threads print log messages
-        try {
-            logtype.rewind();
-            tokenBounds.reset();
-            patternLayoutBufferDestination.getByteBuffer().clear();
-
-            // Parsing log message. Note log message here does not contain timestamp
-            // Parse log message into destination buffer
-            getLayout().encode(event, patternLayoutBufferDestination);
-            ByteBuffer logMessage = patternLayoutBufferDestination.getByteBuffer();
-
-            // Reset (and potentially extend) buffers and token bounds
-            if (logtype.capacity() < logMessage.capacity()) {
-                logtype = ByteBuffer.allocate(logMessage.capacity());
+    private void drainRingBuffer() {
+        // If another thread holds the drain lock it will pick up our event. The re-check after releasing
+        // the lock guarantees an event published while the drainer was finishing up is not left behind.
+        while (ringBuffer.hasPublishedEvents() && drainLock.tryLock()) {
+            try {
+                // Events published after the archive was closed are dropped, like the ones appended after stop
+                ringBuffer.drain(archiveClosed ? discardingHandler : archiveWriterHandler,
+                        ringBuffer.getCapacity());
+            } finally {
+                drainLock.unlock();
             }
+        }
+    }
 
+    private void encodeAndWriteToArchive(EncodedEvent event, long sequence, boolean endOfBatch) {
+        if (event.discarded) {
+            return;
+        }
+        try {
+            eventEncoder.tokenize(event);
             if (enableDebugOutput) {
+                ByteBuffer logMessage = event.getMessage();
                 System.out.write(logMessage.array(), 0, logMessage.position());
             }
+            writeEvent(event);
+        } catch (Exception ex) {
+            LOGGER.error("Failed to write event to " + getName() + " appender", ex);
+        }
+    }
 
-            // Insert into timestamp column right away, no parsing required
-            // Will encode the format into metadata in future implementation
-            timestampIR.putTimestamp(event.getTimeMillis());
-            final byte integerEncodedVariableDelim = 17;
-            final byte floatEncodedVariableDelim = 19;
-            final byte variableIdDelim = 18;
-            while (parseNextVar(logMessage)) {
-                variableDictionaryKey.wrap(logMessage.array(), tokenBounds.beginPos, tokenBounds.endPos);
-                if (variableDictionaryKey.encodeAsIntegerType()) {
-                    logtype.put(integerEncodedVariableDelim);
-                    variableIR.putIntegerEncodedVariable(variableDictionaryKey);
-                } else if (variableDictionaryKey.encodeAsFloatType()) {
-                    logtype.put(floatEncodedVariableDelim);
-                    variableIR.putDecimalEncodedVariable(variableDictionaryKey);
-                } else {
-                    logtype.put(variableIdDelim);
-                    variableIR.putVariableID(variableDictionaryKey, variableDict);
+    private void writeEvent(EncodedEvent event) throws Exception {
+        if (null != rollingPolicy && rollingPolicy.shouldRoll(archiveWriter, event.timestamp)) {
+            rollArchive();
+        }
+        archiveWriter.write(event);
+    }
+
+    /**
+     * Starts writing into a new archive, the rolled one is finalized in the background
+     */
+    private void rollArchive() throws IOException, NoSuchAlgorithmException {
+        ArchiveWriter rolledArchiveWriter = archiveWriter;
+        archiveWriter = new ArchiveWriter(nextArchiveDir(), archiveSettings, compiledPatternLayout,
+                trainedDictionaries);
+        if (null != threadLocalDictionaryShard) {
+            currentShardedDictionaries = archiveWriter.getShardedDictionaries();
+        }
+        archiveFinalizer.finalizeArchive(rolledArchiveWriter);
+    }
+
+    private Path nextArchiveDir() {
+        return compressedLogDir.resolve(String.format(ArchiveWriter.ROLLED_ARCHIVE_DIR_FORMAT, nextArchiveNum++));
+    }
+
+    /**
+     * @return number of the newest archive already in the log directory (e.g. written before a restart), 0 if
+     * there is none
+     */
+    private long findLastArchiveNum() throws IOException {
+        if (!Files.isDirectory(compressedLogDir)) {
+            return 0;
+        }
+        long lastArchiveNum = 0;
+        try (Stream<Path> paths = Files.list(compressedLogDir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Matcher matcher = ArchiveWriter.ROLLED_ARCHIVE_DIR_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    lastArchiveNum = Math.max(lastArchiveNum, Long.parseLong(matcher.group(1)));
                 }
             }
-            logtypeIR.putLogtype(logtypeDict.getCompactId(logtypeDictionaryKey.wrap(logtype)));
-        } catch (Exception ex) {
-            if (!ignoreExceptions()) {
-                throw new AppenderLoggingException(ex);
+        }
+        return lastArchiveNum;
+    }
+
+    /**
+     * Truncates the archives in the log directory that weren't closed (e.g. because the application crashed)
+     * to their last group commit
+     * @param rolling whether the new archives are rolled, otherwise the log directory's own archive is moved
+     *                aside before it's overwritten by the new one
+     */
+    private void recoverArchives(boolean rolling) throws IOException {
+        if (!Files.isDirectory(compressedLogDir)) {
+            return;
+        }
+        ArrayList<Path> archiveDirs = new ArrayList<>();
+        archiveDirs.add(compressedLogDir);
+        try (Stream<Path> paths = Files.list(compressedLogDir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (ArchiveWriter.ROLLED_ARCHIVE_DIR_PATTERN.matcher(path.getFileName().toString()).matches()) {
+                    archiveDirs.add(path);
+                }
+            }
+        }
+        for (Path archiveDir : archiveDirs) {
+            if (CommitLog.needsRecovery(archiveDir)) {
+                CommitLog.Commit commit = CommitLog.recover(archiveDir);
+                Path recoveredArchiveDir = archiveDir;
+                if (!rolling && archiveDir.equals(compressedLogDir)) {
+                    recoveredArchiveDir = moveRecoveredArchive(commit);
+                }
+                LOGGER.warn("Recovered " + commit.numEvents + " events of " + archiveDir + ", which wasn't closed"
+                        + (recoveredArchiveDir != archiveDir ? ", into " + recoveredArchiveDir : ""));
             }
         }
     }
+
+    /**
+     * Moves the files of the log directory's recovered archive into a recovered-<time> directory
+     * @return the directory
+     */
+    private Path moveRecoveredArchive(CommitLog.Commit commit) throws IOException {
+        Path recoveredArchiveDir = compressedLogDir.resolve(
+                String.format(ArchiveWriter.RECOVERED_ARCHIVE_DIR_FORMAT, System.currentTimeMillis()));
+        Files.createDirectory(recoveredArchiveDir);
+        String[] filenames = commit.getFilenames();
+        filenames = Arrays.copyOf(filenames, filenames.length + 1);
+        filenames[filenames.length - 1] = ArchiveSettings.METADATA_FILENAME;
+        for (String filename : filenames) {
+            Path path = compressedLogDir.resolve(filename);
+            if (Files.exists(path)) {
+                Files.move(path, recoveredArchiveDir.resolve(filename));
+            }
+        }
+        ArchiveFinalizer.sync(recoveredArchiveDir);
+        ArchiveFinalizer.sync(compressedLogDir);
+        return recoveredArchiveDir;
+    }
+
+    private void writeToArchive(EncodedEvent event, long sequence, boolean endOfBatch) {
+        try {
+            writeEvent(event);
+        } catch (Exception ex) {
+            // The event may belong to another logging thread, so we can only report the failure
+            LOGGER.error("Failed to write event to " + getName() + " appender", ex);
+        }
+    }
 }
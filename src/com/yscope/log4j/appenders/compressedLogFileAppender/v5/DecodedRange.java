@@ -0,0 +1,16 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Events decoded by a RangeDecoder
+ */
+class DecodedRange {
+    final ByteArrayOutputStream bytes;
+    final long numEvents;
+
+    DecodedRange(ByteArrayOutputStream bytes, long numEvents) {
+        this.bytes = bytes;
+        this.numEvents = numEvents;
+    }
+}
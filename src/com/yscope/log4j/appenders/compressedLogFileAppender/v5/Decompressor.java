@@ -1,205 +1,595 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
 
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveContainerReader;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveSettings;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.CommitLog;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TimeIndex;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TrainedDictionaries;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.VariablePostings;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.DictionaryShard;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.NumericPredicate;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.WildcardQuery;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.DecompressionDictionaryEntry;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdStreamingReader;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.logging.log4j.core.layout.PatternLayout;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.stream.Stream;
 
 /**
  * Extremely basic implementation of decompression from CLP-IR format
- * Assumptions: hard-coded log timestamp format and location
+ * Assumptions: timestamp is always at the front of the log message
  * Purpose: Studying ball-park memory efficiency and performance of decompression logic in JAVA
+ * The column encodings and timestamp pattern are read from the archive's metadata. Events are decoded by
+ * RangeDecoders, in parallel if a pool is passed (see OrderedRangeWriter), and searches only decode the
+ * events their QueryPlan or PredicatePlan can't rule out. Archives that were never closed are read up to
+ * their last commit (see CommitLog.readLastCommit).
  */
 public class Decompressor {
-    private static final ArrayList<DecompressionDictionaryEntry> logtypeDict = new ArrayList<>();
-    private static final ArrayList<DecompressionDictionaryEntry> varDict = new ArrayList<>();
-
-    public static byte[] getBytesFrom64bitDecimalVariableEncoding(long decimalEncoding) {
-        // Since java only offers signed number support except for char, we must be very careful
-        // about parsing due to automatic sign extension, zero extension, truncation. Typically,
-        // narrowing primitive conversion (long->int or long->byte) simply discards all but the
-        // n lowest order bits. As a result, the sign of the input value may differ.
-        // https://docs.oracle.com/javase/specs/jls/se7/html/jls-5.html
-
-        // Cast decimalEncoding to int, mask, shift, +1 to fetch upper 4bits of unsigned byte (bit 4-7)
-        int numDigits = ((((int)decimalEncoding) & 0xFF) >> 4) + 1;
-
-        byte[] bytes;
-        if (decimalEncoding < 0) {
-            decimalEncoding &= Long.MAX_VALUE;   // Remove top negative bit
-            bytes = new byte[numDigits + 2];  // + negative sign and decimal
+    // Size of the window each streamed column is decompressed into
+    private static final int STREAMING_WINDOW_SIZE = 1024 * 1024;
+
+    final ArchiveSettings settings;
+    private final Path compressedLogDir;
+    // Only set if the archive was written as a single container file
+    private ArchiveContainerReader container;
+    final ArrayList<DecompressionDictionaryEntry> logtypeDict = new ArrayList<>();
+    final ArrayList<DecompressionDictionaryEntry> varDict = new ArrayList<>();
+    // Only set if the archive was written with sharded dictionaries
+    int[][] logtypeRemap;
+    int[][] varRemap;
+
+    // Only set if the archive was written with a compiled pattern layout
+    byte[][] prefixLiterals;
+    byte[][][] columnValues;
+    private String[] columnIRFilenames = new String[0];
+
+    // Only set if the archive was never closed, the committed files are only read up to their committed length
+    private final CommitLog.Commit lastCommit;
+
+    public Decompressor(Path compressedLogDir) throws IOException {
+        this(compressedLogDir, loadTrainedDictionaries(compressedLogDir));
+    }
+
+    /**
+     * @param trainedDictionaries dictionaries by id the archive's chunks may have been compressed with
+     */
+    public Decompressor(Path compressedLogDir, Map<Long, ZstdDictDecompress> trainedDictionaries)
+            throws IOException {
+        lastCommit = CommitLog.needsRecovery(compressedLogDir) ? CommitLog.readLastCommit(compressedLogDir) : null;
+        if (null != lastCommit) {
+            System.out.println("Reading the " + lastCommit.numEvents + " committed events of unclosed archive "
+                    + compressedLogDir);
+        }
+        Path containerPath = compressedLogDir.resolve(ArchiveWriter.CONTAINER_FILENAME);
+        if (Files.exists(containerPath)) {
+            container = new ArchiveContainerReader(containerPath, trainedDictionaries);
+            settings = ArchiveSettings.load(container);
         } else {
-            bytes = new byte[numDigits + 1];
-        }
-        // Cast decimalEncoding to int, mask, +1 to fetch lower 4bits of unsigned byte (bit 0-3)
-        int decimalPos = (((int)decimalEncoding) & 0x0F) + 1;
-        long digits = decimalEncoding >> 8;   // convert representation to digits
-
-        // Fill each byte of byteArray in reverse order
-        for (int j = bytes.length - 1; j > decimalPos; --j) {
-            // mod digits by 10, then cast '0' from char (16bit unsigned short) to 32bit signed integer,
-            // add two operands together, truncate result down to a signed byte to get an ascii-digit
-            bytes[j] = (byte) (digits % 10 + '0');
-            digits /= 10;
-        }
-        // Fill decimal point
-        bytes[decimalPos] = '.';
-        // Fill the rest of the byteArray in reverse order until we run out of digits,
-        // then we need to zero (the ascii-digit) fill them the rest of the array
-        for(int j = decimalPos - 1; j >= 0; --j) {
-            bytes[j] = (byte) (digits % 10 + '0');
-            digits /= 10;
+            settings = ArchiveSettings.load(compressedLogDir);
+        }
+        settings.checkFormatVersion(compressedLogDir);
+        this.compressedLogDir = compressedLogDir;
+
+        loadDictionary(readFile(ArchiveWriter.LOGTYPE_DICT_FILENAME), logtypeDict);
+        loadDictionary(readFile(ArchiveWriter.VARIABLE_DICT_FILENAME), varDict);
+        if (settings.useShardedDictionaries) {
+            logtypeRemap = loadRemap(readUncompressedFile(ArchiveWriter.LOGTYPE_REMAP_FILENAME));
+            varRemap = loadRemap(readUncompressedFile(ArchiveWriter.VARIABLE_REMAP_FILENAME));
+        }
+
+        if (!settings.compiledPattern.isEmpty()) {
+            PatternLayout layout = PatternLayout.newBuilder().withPattern(settings.compiledPattern)
+                    .withCharset(Charset.forName(settings.compiledPatternCharset)).build();
+            CompiledPatternLayout compiledPatternLayout =
+                    CompiledPatternLayout.create(layout, settings.compiledPattern);
+            if (null == compiledPatternLayout) {
+                throw new IOException("Can't compile archive's pattern " + settings.compiledPattern);
+            }
+            prefixLiterals = compiledPatternLayout.getPrefixLiterals();
+            CompiledPatternLayout.Column[] columns = compiledPatternLayout.getColumns();
+            columnValues = new byte[columns.length][][];
+            columnIRFilenames = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                String columnName = columns[i].type.columnName;
+                ArrayList<DecompressionDictionaryEntry> columnDict = new ArrayList<>();
+                loadDictionary(readFile(columnName + ArchiveWriter.COLUMN_DICT_FILE_EXTENSION), columnDict);
+                columnValues[i] = new byte[columnDict.size()][];
+                for (int id = 0; id < columnDict.size(); id++) {
+                    columnValues[i][id] = columnDict.get(id).getBytes();
+                }
+                columnIRFilenames[i] = columnName + ArchiveWriter.COLUMN_IR_FILE_EXTENSION;
+            }
+        }
+    }
+
+    /**
+     * Memory maps uncompressed files, zstd compressed files are decompressed onto the heap. Sections of a
+     * container are decompressed chunk by chunk.
+     * @param filename name of the file without the compression extension
+     */
+    private ByteBuffer readFile(String filename) throws IOException {
+        if (null != container && container.hasSection(filename)) {
+            return container.readSection(filename);
+        }
+        if (settings.compressionLevel == 0) {
+            return readUncompressedFile(filename);
+        }
+        filename += ".zst";
+        InputStream compressedStream = null != container
+                ? new ByteArrayInputStream(toByteArray(container.readFile(filename)))
+                : new BufferedInputStream(Files.newInputStream(compressedLogDir.resolve(filename)));
+        try (InputStream inputStream = new ZstdCompressorInputStream(compressedStream)) {
+            return ByteBuffer.wrap(inputStream.readAllBytes());
         }
-        return bytes;
     }
 
-    public static byte[] getBytesFrom32bitDecimalVariableEncoding(int decimalEncoding) {
-        // Since java only offers signed number support except for char, we must be very careful
-        // about parsing due to automatic sign extension, zero extension, truncation. Typically,
-        // narrowing primitive conversion (long->int or long->byte) simply discards all but the
-        // n lowest order bits. As a result, the sign of the input value may differ.
-        // https://docs.oracle.com/javase/specs/jls/se7/html/jls-5.html
+    /**
+     * Reads an IR column, in the byte order it was written in
+     */
+    private ByteBuffer readColumn(String filename) throws IOException {
+        return readFile(filename).order(settings.getColumnByteOrder());
+    }
 
-        // Cast decimalEncoding to int, mask, shift, +1 to compute numDigits
-        int numDigits = ((((int)decimalEncoding) & 0x38) >> 3) + 1;
+    private ZstdStreamingReader openStreamingColumn(String filename) throws IOException {
+        return new ZstdStreamingReader(compressedLogDir.resolve(filename + ".zst"), STREAMING_WINDOW_SIZE,
+                settings.getColumnByteOrder());
+    }
 
-        byte[] bytes;
-        if (decimalEncoding < 0) {
-            decimalEncoding &= Integer.MAX_VALUE;   // Remove top negative bit
-            bytes = new byte[numDigits + 2];  // + negative sign and decimal
-        } else {
-            bytes = new byte[numDigits + 1];
-        }
-        // Cast decimalEncoding to int, mask, +1 to compute decimalPos
-        int decimalPos = (((int)decimalEncoding) & 0x3) + 1;
-        long digits = decimalEncoding >> 6;   // convert representation to digits
-
-        // Fill each byte of byteArray in reverse order
-        for (int j = bytes.length - 1; j > decimalPos; --j) {
-            // mod digits by 10, then cast '0' from char (16bit unsigned short) to 32bit signed integer,
-            // add two operands together, truncate result down to a signed byte to get an ascii-digit
-            bytes[j] = (byte) (digits % 10 + '0');
-            digits /= 10;
-        }
-        // Fill decimal point
-        bytes[decimalPos] = '.';
-        // Fill the rest of the byteArray in reverse order until we run out of digits,
-        // then we need to zero (the ascii-digit) fill them the rest of the array
-        for(int j = decimalPos - 1; j >= 0; --j) {
-            bytes[j] = (byte) (digits % 10 + '0');
-            digits /= 10;
+    /**
+     * @return decoder of all the archive's events, streaming zstd compressed loose columns
+     */
+    private RangeDecoder openColumns() throws IOException {
+        if (null == container && settings.compressionLevel != 0) {
+            ZstdStreamingReader[] columnReaders = new ZstdStreamingReader[columnIRFilenames.length];
+            for (int i = 0; i < columnReaders.length; i++) {
+                columnReaders[i] = openStreamingColumn(columnIRFilenames[i]);
+            }
+            return new RangeDecoder(this, openStreamingColumn(ArchiveWriter.TIMESTAMP_IR_FILENAME),
+                    openStreamingColumn(ArchiveWriter.LOGTYPE_IR_FILENAME),
+                    openStreamingColumn(ArchiveWriter.VARIABLE_IR_FILENAME), columnReaders);
+        }
+        ByteBuffer[] columnBufs = new ByteBuffer[columnIRFilenames.length];
+        for (int i = 0; i < columnBufs.length; i++) {
+            columnBufs[i] = readColumn(columnIRFilenames[i]);
+        }
+        return new RangeDecoder(this, readColumn(ArchiveWriter.TIMESTAMP_IR_FILENAME),
+                readColumn(ArchiveWriter.LOGTYPE_IR_FILENAME), readColumn(ArchiveWriter.VARIABLE_IR_FILENAME),
+                columnBufs);
+    }
+
+    private ByteBuffer readChunkColumn(ArchiveContainerReader.Chunk chunk, String sectionName) throws IOException {
+        return container.readChunkSection(chunk, sectionName).order(settings.getColumnByteOrder());
+    }
+
+    /**
+     * @param logtypeBuf the chunk's logtype column, which may have been read already
+     * @return decoder of the events of a container's chunk
+     */
+    private RangeDecoder openChunkColumns(ArchiveContainerReader.Chunk chunk, ByteBuffer logtypeBuf)
+            throws IOException {
+        ByteBuffer[] columnBufs = new ByteBuffer[columnIRFilenames.length];
+        for (int i = 0; i < columnBufs.length; i++) {
+            columnBufs[i] = readChunkColumn(chunk, columnIRFilenames[i]);
+        }
+        return new RangeDecoder(this, readChunkColumn(chunk, ArchiveWriter.TIMESTAMP_IR_FILENAME),
+                logtypeBuf, readChunkColumn(chunk, ArchiveWriter.VARIABLE_IR_FILENAME), columnBufs);
+    }
+
+    /**
+     * Searches a container's chunk, unless the plan rules out all of its logtypes, in which case only the
+     * chunk's logtype column is decompressed
+     */
+    private DecodedRange searchChunk(ArchiveContainerReader.Chunk chunk, QueryPlan plan) throws IOException {
+        ByteBuffer logtypeBuf = readChunkColumn(chunk, ArchiveWriter.LOGTYPE_IR_FILENAME);
+        // A match may start in the text in front of the message whatever the logtype
+        if (null == prefixLiterals && !anyLogtypeMayMatch(logtypeBuf, plan::mayMatch)) {
+            return new DecodedRange(new ByteArrayOutputStream(0), 0);
+        }
+        return openChunkColumns(chunk, logtypeBuf).searchRange(plan, chunk.numEvents);
+    }
+
+    /**
+     * Filters a container's chunk, unless the plan's predicate applies to none of its logtypes
+     */
+    private DecodedRange filterChunk(ArchiveContainerReader.Chunk chunk, PredicatePlan plan) throws IOException {
+        ByteBuffer logtypeBuf = readChunkColumn(chunk, ArchiveWriter.LOGTYPE_IR_FILENAME);
+        if (!anyLogtypeMayMatch(logtypeBuf, plan::mayMatch)) {
+            return new DecodedRange(new ByteArrayOutputStream(0), 0);
+        }
+        return openChunkColumns(chunk, logtypeBuf).filterRange(plan, chunk.numEvents);
+    }
+
+    /**
+     * @param mayMatch whether events of a global logtype id may match
+     * @return whether events of any logtype of the chunk's logtype column may match
+     */
+    private boolean anyLogtypeMayMatch(ByteBuffer logtypeBuf, IntPredicate mayMatch) {
+        for (ByteBuffer ids = logtypeBuf.duplicate().order(logtypeBuf.order()); ids.hasRemaining(); ) {
+            long logtypeId = settings.useVarintIds ? VarintEncoding.getVarint(ids) : ids.getLong();
+            if (mayMatch.test(toGlobalId(logtypeRemap, logtypeId))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer readUncompressedFile(String filename) throws IOException {
+        if (null != container) {
+            return container.readFile(filename);
+        }
+        try (FileChannel fileChannel = FileChannel.open(compressedLogDir.resolve(filename),
+                StandardOpenOption.READ)) {
+            long length = fileChannel.size();
+            if (null != lastCommit && lastCommit.getLength(filename) >= 0) {
+                length = Math.min(length, lastCommit.getLength(filename));
+            }
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    /**
+     * @return the archive's time index, null if it has none or was never closed (the index may cover events
+     * that weren't committed)
+     */
+    private TimeIndex loadTimeIndex() throws IOException {
+        return null == lastCommit ? TimeIndex.load(compressedLogDir) : null;
+    }
+
+    /**
+     * @param mayMatch whether a global variable id may be part of a match
+     * @return blocks of the postings index holding any of the variables that may match, null if the archive
+     * has no postings index to look them up in
+     */
+    BitSet findPostingsBlocks(IntPredicate mayMatch) throws IOException {
+        // Only matches in dictionary variables are in the postings
+        if (!settings.usePostingsIndex || null != prefixLiterals || null != lastCommit
+                || (null == container && !Files.exists(compressedLogDir.resolve(VariablePostings.FILENAME)))) {
+            return null;
         }
+        return VariablePostings.findBlocks(readUncompressedFile(VariablePostings.FILENAME),
+                id -> mayMatch.test(toGlobalId(varRemap, id)));
+    }
+
+    private static byte[] toByteArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
         return bytes;
     }
 
-    public static void decompress(Path decompressedLogFile,
-                                  MappedByteBuffer tsBuf, MappedByteBuffer logtypeBuf, MappedByteBuffer varBuf) {
+    private static void loadDictionary(ByteBuffer dictBuf, ArrayList<DecompressionDictionaryEntry> dict) {
+        while (dictBuf.hasRemaining()) {
+            int entryLength = dictBuf.getChar();   // Entry length is encoded as 16bit unsigned int
+            int bufPosition = dictBuf.position();
+            dict.add(new DecompressionDictionaryEntry(dictBuf, bufPosition, entryLength));
+            dictBuf.position(entryLength + bufPosition);
+        }
+    }
+
+    private static int[][] loadRemap(ByteBuffer remapBuf) {
+        int[][] remap = new int[remapBuf.getInt()][];
+        for (int shard = 0; shard < remap.length; shard++) {
+            remap[shard] = new int[remapBuf.getInt()];
+            for (int localId = 0; localId < remap[shard].length; localId++) {
+                remap[shard][localId] = remapBuf.getInt();
+            }
+        }
+        return remap;
+    }
+
+    static int toGlobalId(int[][] remap, long id) {
+        if (null == remap) {
+            return (int) id;
+        }
+        return remap[(int) (id >>> DictionaryShard.LOCAL_ID_BITS)][(int) (id & DictionaryShard.LOCAL_ID_MASK)];
+    }
+
+    public void decompress(Path decompressedLogFile) throws IOException {
         // Create decompressed log file stream
-        DateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss.SSS");
+        try (BufferedOutputStream decompressedLogStream =
+                     new BufferedOutputStream(new FileOutputStream(String.valueOf(decompressedLogFile)))) {
+            decompress(decompressedLogStream);
+        }
+    }
+
+    public void decompress(Path decompressedLogFile, ForkJoinPool pool) throws IOException {
+        try (BufferedOutputStream decompressedLogStream =
+                     new BufferedOutputStream(new FileOutputStream(String.valueOf(decompressedLogFile)))) {
+            decompress(decompressedLogStream, pool);
+        }
+    }
+
+    /**
+     * Appends the archive's log messages to the stream
+     */
+    public void decompress(OutputStream decompressedLogStream) throws IOException {
+        long numEvents = 0;
         System.out.println("Decompression started");
-        try {
-            BufferedOutputStream decompressedLogStream =
-                    new BufferedOutputStream(new FileOutputStream(String.valueOf(decompressedLogFile)));
+        try (RangeDecoder decoder = openColumns()) {
+            while (decoder.hasRemaining()) {
+                System.out.println("Decompressed " + numEvents + " log messages");
+                numEvents += decoder.decode(decompressedLogStream, 250000);
+            }
+        }
+        System.out.println("Decompression of " + numEvents + " log messages finished");
+    }
+
+    /**
+     * Appends the archive's log messages to the stream, decoding ranges of events on the pool while they are
+     * written (at most two ranges per thread of the pool are buffered ahead of the stream)
+     */
+    public void decompress(OutputStream decompressedLogStream, ForkJoinPool pool) throws IOException {
+        OrderedRangeWriter writer =
+                new OrderedRangeWriter(pool, decompressedLogStream, 2 * pool.getParallelism(), true);
+        System.out.println("Decompression started");
+        if (null != container) {
+            for (ArchiveContainerReader.Chunk chunk : container.getChunks()) {
+                writer.submit(() -> openChunkColumns(chunk, readChunkColumn(chunk, ArchiveWriter.LOGTYPE_IR_FILENAME))
+                        .decodeRange(chunk.numEvents));
+            }
+        } else {
+            // Ranges start at block boundaries of delta encoded timestamps
+            int rangeSize = settings.containerChunkSize;
+            try (RangeDecoder scanner = openColumns()) {
+                while (scanner.hasRemaining()) {
+                    RangeDecoder decoder = scanner.split(rangeSize);
+                    writer.submit(() -> decoder.decodeRange(rangeSize));
+                }
+            }
+        }
+        System.out.println("Decompression of " + writer.finish() + " log messages finished");
+    }
 
-            byte[] digitBuf = new byte[19];   // 9,223,372,036,854,775,808 -> 19 digits
-            for (int eventNum = 0; eventNum < logtypeBuf.limit() / Character.BYTES; eventNum++) {
-                if (eventNum % 250000 == 0) {
-                    System.out.println("Decompressed " + eventNum + " log messages");
+    /**
+     * Appends the archive's log messages with timestamps in [beginTimestamp, endTimestamp] to the stream.
+     * Only the chunks of a container, or the intervals of the TimeIndex of loose files, whose timestamps
+     * overlap the range are read, archives without an index are read as a whole.
+     * @return number of log messages appended
+     */
+    public long decompress(OutputStream decompressedLogStream, long beginTimestamp, long endTimestamp)
+            throws IOException {
+        long numEvents = 0;
+        if (null != container) {
+            for (ArchiveContainerReader.Chunk chunk : container.getChunks()) {
+                if (chunk.maxTimestamp >= beginTimestamp && chunk.minTimestamp <= endTimestamp) {
+                    numEvents += openChunkColumns(chunk, readChunkColumn(chunk, ArchiveWriter.LOGTYPE_IR_FILENAME))
+                            .decode(decompressedLogStream, chunk.numEvents, beginTimestamp, endTimestamp);
                 }
+            }
+            return numEvents;
+        }
+        TimeIndex index = loadTimeIndex();
+        try (RangeDecoder decoder = openColumns()) {
+            if (null == index) {
+                return decoder.decode(decompressedLogStream, Long.MAX_VALUE, beginTimestamp, endTimestamp);
+            }
+            for (TimeIndex.Interval interval : index.find(beginTimestamp, endTimestamp)) {
+                decoder.seek(interval);
+                numEvents += decoder.decode(decompressedLogStream, index.getInterval(), beginTimestamp,
+                        endTimestamp);
+            }
+        }
+        return numEvents;
+    }
+
+    /**
+     * Appends the archive's log messages matching the query to the stream, see WildcardQuery
+     * @return number of matching log messages
+     */
+    public long search(WildcardQuery query, OutputStream matchingLogStream) throws IOException {
+        QueryPlan plan = new QueryPlan(this, query);
+        long numMatchingEvents = 0;
+        if (null != container) {
+            for (ArchiveContainerReader.Chunk chunk : container.getChunks()) {
+                if (null != plan.blocks && !plan.blocks.get(chunk.chunkNum)) {
+                    continue;
+                }
+                DecodedRange range = searchChunk(chunk, plan);
+                range.bytes.writeTo(matchingLogStream);
+                numMatchingEvents += range.numEvents;
+            }
+            return numMatchingEvents;
+        }
+        TimeIndex index = null != plan.blocks ? loadTimeIndex() : null;
+        try (RangeDecoder decoder = openColumns()) {
+            if (null != index) {
+                List<TimeIndex.Interval> intervals = index.getIntervals();
+                for (int block = plan.blocks.nextSetBit(0); block >= 0 && block < intervals.size();
+                     block = plan.blocks.nextSetBit(block + 1)) {
+                    decoder.seek(intervals.get(block));
+                    numMatchingEvents += decoder.search(plan, matchingLogStream, index.getInterval());
+                }
+                return numMatchingEvents;
+            }
+            while (decoder.hasRemaining()) {
+                numMatchingEvents += decoder.search(plan, matchingLogStream, Long.MAX_VALUE);
+            }
+        }
+        return numMatchingEvents;
+    }
 
-                // Re-generate timestamp (assume timestamp is always in the front for now)
-                byte[] timestampBytes = dateFormatter.format(tsBuf.getLong()).getBytes(StandardCharsets.UTF_8);
-                decompressedLogStream.write(timestampBytes);
-
-                // Regenerate log message
-                DecompressionDictionaryEntry logtype = logtypeDict.get((int) logtypeBuf.getChar());
-                for (int i = 0; i < logtype.length; i++) {
-                    byte b = logtype.getByte(i);
-                    if (b == 17) {
-                        // Delimiter for unsigned long variable encoding
-                        // Note: to be able to decompressed unsigned long representation of variable
-                        // from signed long, manual parsing is necessary.
-                        long unsignedLongEncoding = varBuf.getLong();
-                        int j = digitBuf.length;
-                        for (; unsignedLongEncoding != 0; --j) {
-                            digitBuf[j] = (byte) (unsignedLongEncoding % 10);
-                            unsignedLongEncoding /= 10;
-                        }
-                        j += 1;   // Increment offset to the first valid character
-                        decompressedLogStream.write(digitBuf, j, digitBuf.length - j);
-                    } else if (b == 18) {
-                        // Delimiter for id variable type
-                        decompressedLogStream.write(varDict.get((int) varBuf.getLong()).getBytes());
-                    } else if (b == 19) {
-                        // Note: if we use memory mapped file, we don't need to create a temporary byteArray
-                        decompressedLogStream.write(getBytesFrom64bitDecimalVariableEncoding(varBuf.getLong()));
-                    } else
-                    {
-                        decompressedLogStream.write(b);
+    /**
+     * Appends the archive's log messages matching the query to the stream, searching ranges of events on the
+     * pool (see decompress(OutputStream, ForkJoinPool))
+     * @return number of matching log messages
+     */
+    public long search(WildcardQuery query, OutputStream matchingLogStream, ForkJoinPool pool) throws IOException {
+        QueryPlan plan = new QueryPlan(this, query);
+        OrderedRangeWriter writer =
+                new OrderedRangeWriter(pool, matchingLogStream, 2 * pool.getParallelism(), false);
+        if (null != container) {
+            for (ArchiveContainerReader.Chunk chunk : container.getChunks()) {
+                if (null == plan.blocks || plan.blocks.get(chunk.chunkNum)) {
+                    writer.submit(() -> searchChunk(chunk, plan));
+                }
+            }
+        } else {
+            TimeIndex index = null != plan.blocks ? loadTimeIndex() : null;
+            try (RangeDecoder scanner = openColumns()) {
+                if (null != index) {
+                    // Ranges are the intervals of the postings' blocks
+                    int rangeSize = index.getInterval();
+                    List<TimeIndex.Interval> intervals = index.getIntervals();
+                    for (int block = plan.blocks.nextSetBit(0); block >= 0 && block < intervals.size();
+                         block = plan.blocks.nextSetBit(block + 1)) {
+                        scanner.seek(intervals.get(block));
+                        RangeDecoder decoder = scanner.split(rangeSize);
+                        writer.submit(() -> decoder.searchRange(plan, rangeSize));
+                    }
+                } else {
+                    int rangeSize = settings.containerChunkSize;
+                    while (scanner.hasRemaining()) {
+                        RangeDecoder decoder = scanner.split(rangeSize);
+                        writer.submit(() -> decoder.searchRange(plan, rangeSize));
                     }
                 }
             }
-            decompressedLogStream.close();
-            System.out.println("Decompression of " + logtypeBuf.limit() / Character.BYTES + " log messages finished");
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        return writer.finish();
+    }
+
+    /**
+     * Appends the archive's log messages whose variables satisfy the predicate to the stream, see
+     * NumericPredicate
+     * @return number of matching log messages
+     */
+    public long search(NumericPredicate predicate, OutputStream matchingLogStream) throws IOException {
+        PredicatePlan plan = new PredicatePlan(predicate, logtypeDict);
+        long numMatchingEvents = 0;
+        if (null != container) {
+            for (ArchiveContainerReader.Chunk chunk : container.getChunks()) {
+                DecodedRange range = filterChunk(chunk, plan);
+                range.bytes.writeTo(matchingLogStream);
+                numMatchingEvents += range.numEvents;
+            }
+            return numMatchingEvents;
+        }
+        try (RangeDecoder decoder = openColumns()) {
+            while (decoder.hasRemaining()) {
+                numMatchingEvents += decoder.filter(plan, matchingLogStream, Long.MAX_VALUE);
+            }
+        }
+        return numMatchingEvents;
+    }
+
+    /**
+     * Appends the archive's log messages whose variables satisfy the predicate to the stream, filtering ranges
+     * of events on the pool (see decompress(OutputStream, ForkJoinPool))
+     * @return number of matching log messages
+     */
+    public long search(NumericPredicate predicate, OutputStream matchingLogStream, ForkJoinPool pool)
+            throws IOException {
+        PredicatePlan plan = new PredicatePlan(predicate, logtypeDict);
+        OrderedRangeWriter writer =
+                new OrderedRangeWriter(pool, matchingLogStream, 2 * pool.getParallelism(), false);
+        if (null != container) {
+            for (ArchiveContainerReader.Chunk chunk : container.getChunks()) {
+                writer.submit(() -> filterChunk(chunk, plan));
+            }
+        } else {
+            int rangeSize = settings.containerChunkSize;
+            try (RangeDecoder scanner = openColumns()) {
+                while (scanner.hasRemaining()) {
+                    RangeDecoder decoder = scanner.split(rangeSize);
+                    writer.submit(() -> decoder.filterRange(plan, rangeSize));
+                }
+            }
+        }
+        return writer.finish();
+    }
+
+    /**
+     * @return trained dictionaries stored in the archive directory, or in the log directory for rolled
+     * archives, by id
+     */
+    public static Map<Long, ZstdDictDecompress> loadTrainedDictionaries(Path compressedLogDir) throws IOException {
+        Map<Long, ZstdDictDecompress> dictionaries = TrainedDictionaries.load(compressedLogDir);
+        if (null != compressedLogDir.getParent()) {
+            dictionaries.putAll(TrainedDictionaries.load(compressedLogDir.getParent()));
+        }
+        return dictionaries;
+    }
+
+    /**
+     * @return directories of the archives rolled into the log directory, in the order they were written
+     */
+    public static List<Path> listRolledArchives(Path compressedLogDir) throws IOException {
+        TreeMap<Long, Path> archiveDirs = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(compressedLogDir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Matcher matcher = ArchiveWriter.ROLLED_ARCHIVE_DIR_PATTERN.matcher(path.getFileName().toString());
+                if (matcher.matches() && Files.isDirectory(path)) {
+                    archiveDirs.put(Long.parseLong(matcher.group(1)), path);
+                }
+            }
+        }
+        return new ArrayList<>(archiveDirs.values());
     }
 
     public static void main(String[] args) {
-        String appenderName = "CompressedLogFileV3";
-        Path compressedLogFile = Path.of("logs/throughputTests/" + appenderName + "/test.cla");
+        Path compressedLogFile = Path.of(args.length > 0 ? args[0] : "logs/throughputTests/CompressedLogFileV5/test.cla");
         Path compressedLogDir = compressedLogFile.getParent();
         Path decompressedLogFile = compressedLogDir.resolve("test.txt");
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        // Optional time range, in milliseconds since the epoch
+        boolean hasTimeRange = args.length > 3;
+        long beginTimestamp = hasTimeRange ? Long.parseLong(args[2]) : Long.MIN_VALUE;
+        long endTimestamp = hasTimeRange ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+        // Decoding is only split into ranges if there are several threads to decode them
+        ForkJoinPool pool = numThreads > 1 && !hasTimeRange ? new ForkJoinPool(numThreads) : null;
         try {
-            // Regenerate memory mapped views of dictionary entries
-            // Log type and variable type dictionary and the three data columns mmapped buffer
-            FileChannel logtypeDictFC = FileChannel.open(compressedLogDir.resolve("logtype.dict"),
-                    StandardOpenOption.CREATE, StandardOpenOption.READ);
-            MappedByteBuffer logtypeDictBuf = logtypeDictFC.map(FileChannel.MapMode.READ_ONLY, 0, logtypeDictFC.size());
-            logtypeDictBuf.load();
-            while (logtypeDictBuf.hasRemaining()) {
-                int entryLength = logtypeDictBuf.getChar();   // Entry length is encoded as 16bit unsigned int
-                int bufPosition = logtypeDictBuf.position();
-                logtypeDict.add(new DecompressionDictionaryEntry(logtypeDictBuf, bufPosition, entryLength));
-                logtypeDictBuf.position(entryLength + bufPosition);
-            }
-
-            FileChannel varDictFC = FileChannel.open(compressedLogDir.resolve("var.dict"),
-                    StandardOpenOption.CREATE, StandardOpenOption.READ);
-            MappedByteBuffer varDictBuf = varDictFC.map(FileChannel.MapMode.READ_ONLY, 0, varDictFC.size());
-            varDictBuf.load();
-            while (varDictBuf.hasRemaining()) {
-                int entryLength = varDictBuf.getChar();   // Entry length is encoded as 16bit unsigned int
-                int bufPosition = varDictBuf.position();
-                varDict.add(new DecompressionDictionaryEntry(varDictBuf, bufPosition, entryLength));
-                varDictBuf.position(entryLength + bufPosition);
-            }
-
-            // Map in log data entries
-            FileChannel tsFC = FileChannel.open(compressedLogDir.resolve("ts.bin"),
-                    StandardOpenOption.CREATE, StandardOpenOption.READ);
-            MappedByteBuffer tsBuf = tsFC.map(FileChannel.MapMode.READ_ONLY, 0, tsFC.size());
-            FileChannel logtypeFC = FileChannel.open(compressedLogDir.resolve("logtype.bin"),
-                    StandardOpenOption.CREATE, StandardOpenOption.READ);
-            MappedByteBuffer logtypeBuf = logtypeFC.map(FileChannel.MapMode.READ_ONLY, 0, logtypeFC.size());
-            FileChannel varFC = FileChannel.open(compressedLogDir.resolve("var.bin"),
-                    StandardOpenOption.CREATE, StandardOpenOption.READ);
-            MappedByteBuffer varBuf = varFC.map(FileChannel.MapMode.READ_ONLY, 0, varFC.size());
-
-            // Perform decompression
-            decompress(decompressedLogFile, tsBuf, logtypeBuf, varBuf);
+            List<Path> rolledArchives = listRolledArchives(compressedLogDir);
+            if (rolledArchives.isEmpty()) {
+                rolledArchives.add(compressedLogDir);
+            }
+            // The appender may have rolled its archives, concatenate them
+            Map<Long, ZstdDictDecompress> trainedDictionaries = loadTrainedDictionaries(compressedLogDir);
+            try (BufferedOutputStream decompressedLogStream =
+                         new BufferedOutputStream(new FileOutputStream(String.valueOf(decompressedLogFile)))) {
+                for (Path archiveDir : rolledArchives) {
+                    Decompressor decompressor = new Decompressor(archiveDir, trainedDictionaries);
+                    if (hasTimeRange) {
+                        System.out.println("Decompressed " + decompressor.decompress(decompressedLogStream,
+                                beginTimestamp, endTimestamp) + " log messages of " + archiveDir);
+                    } else if (null != pool) {
+                        decompressor.decompress(decompressedLogStream, pool);
+                    } else {
+                        decompressor.decompress(decompressedLogStream);
+                    }
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            if (null != pool) {
+                pool.shutdown();
+            }
         }
     }
 }
@@ -0,0 +1,75 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Decodes ranges on a pool, at most maxPendingRanges ahead of the range being written, and writes them to
+ * the stream in the order they were submitted
+ */
+class OrderedRangeWriter {
+    private final ForkJoinPool pool;
+    private final OutputStream outputStream;
+    private final int maxPendingRanges;
+    private final boolean printProgress;
+    private final ArrayDeque<ForkJoinTask<DecodedRange>> pendingRanges = new ArrayDeque<>();
+    private long numEvents = 0;
+
+    OrderedRangeWriter(ForkJoinPool pool, OutputStream outputStream, int maxPendingRanges,
+                       boolean printProgress) {
+        this.pool = pool;
+        this.outputStream = outputStream;
+        this.maxPendingRanges = maxPendingRanges;
+        this.printProgress = printProgress;
+    }
+
+    void submit(Callable<DecodedRange> range) throws IOException {
+        if (pendingRanges.size() == maxPendingRanges) {
+            writeNext();
+        }
+        pendingRanges.add(pool.submit(range));
+    }
+
+    /**
+     * Writes the remaining ranges
+     * @return number of events written
+     */
+    long finish() throws IOException {
+        while (!pendingRanges.isEmpty()) {
+            writeNext();
+        }
+        return numEvents;
+    }
+
+    private void writeNext() throws IOException {
+        DecodedRange range;
+        try {
+            range = pendingRanges.poll().get();
+        } catch (InterruptedException e) {
+            cancelPendingRanges();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (ExecutionException e) {
+            cancelPendingRanges();
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        range.bytes.writeTo(outputStream);
+        if (printProgress && numEvents / 250000 != (numEvents + range.numEvents) / 250000) {
+            System.out.println("Decompressed " + (numEvents + range.numEvents) + " log messages");
+        }
+        numEvents += range.numEvents;
+    }
+
+    private void cancelPendingRanges() {
+        for (ForkJoinTask<DecodedRange> pendingRange : pendingRanges) {
+            pendingRange.cancel(true);
+        }
+        pendingRanges.clear();
+    }
+}
@@ -0,0 +1,59 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.NumericPredicate;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.DecompressionDictionaryEntry;
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.List;
+
+/**
+ * Which variables of each logtype a numeric predicate applies to
+ */
+class PredicatePlan {
+    final NumericPredicate predicate;
+    // By global logtype id, indices of the variables the predicate applies to (see
+    // RangeDecoder.readVariables), null if none
+    final int[][] variableIndices;
+    // By global logtype id, whether each of these variables is float encoded
+    final boolean[][] floatVariables;
+
+    PredicatePlan(NumericPredicate predicate, List<DecompressionDictionaryEntry> logtypeDict) {
+        this.predicate = predicate;
+        variableIndices = new int[logtypeDict.size()][];
+        floatVariables = new boolean[logtypeDict.size()][];
+        IntArrayList indices = new IntArrayList();
+        BooleanArrayList floats = new BooleanArrayList();
+        for (int id = 0; id < logtypeDict.size(); id++) {
+            DecompressionDictionaryEntry logtype = logtypeDict.get(id);
+            indices.clear();
+            floats.clear();
+            int variable = 0;
+            for (int i = 0; i < logtype.length; i++) {
+                byte b = logtype.getByte(i);
+                if (b == EncodedEvent.VARIABLE_ID_DELIM) {
+                    variable++;
+                } else if (b == EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM
+                        || b == EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM) {
+                    if (predicate.appliesTo(logtype, i)) {
+                        indices.add(variable);
+                        floats.add(b == EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM);
+                    }
+                    variable++;
+                }
+            }
+            if (!indices.isEmpty()) {
+                variableIndices[id] = indices.toIntArray();
+                floatVariables[id] = floats.toBooleanArray();
+            }
+        }
+    }
+
+    /**
+     * @return whether the predicate applies to any variable of the logtype
+     */
+    boolean mayMatch(int logtypeId) {
+        return null != variableIndices[logtypeId];
+    }
+}
@@ -0,0 +1,102 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.WildcardQuery;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.DecompressionDictionaryEntry;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Which events of the archive may match a query, as far as their logtype and dictionary variable ids tell
+ */
+class QueryPlan {
+    final WildcardQuery query;
+    // By global logtype id, whether its events may match whatever their variables are
+    private final boolean[] matchingLogtypes;
+    // By global logtype id, whether its events may only match if one of their dictionary variables does
+    private final boolean[] variableMatchingLogtypes;
+    // By global variable id, whether the variable may be part of a match. Only set if any logtype needs it.
+    private boolean[] matchingVariables;
+    // Bits of each column value id in keys of column value ids, 0 if they don't fit into a long
+    final int prefixKeyBits;
+    // Blocks of the postings index holding the events that may match, null if any event may
+    final BitSet blocks;
+    // Translates the shard-local variable ids of archives with sharded dictionaries
+    private final int[][] varRemap;
+
+    QueryPlan(Decompressor archive, WildcardQuery query) throws IOException {
+        this.query = query;
+        varRemap = archive.varRemap;
+        List<DecompressionDictionaryEntry> logtypeDict = archive.logtypeDict;
+        List<DecompressionDictionaryEntry> varDict = archive.varDict;
+        boolean anyMatchingLogtype = false;
+        matchingLogtypes = new boolean[logtypeDict.size()];
+        variableMatchingLogtypes = new boolean[logtypeDict.size()];
+        for (int id = 0; id < logtypeDict.size(); id++) {
+            DecompressionDictionaryEntry logtype = logtypeDict.get(id);
+            if (!query.canMatch(logtype)) {
+                continue;
+            }
+            if (query.canMatchOutsideDictionaryVariables(logtype)) {
+                matchingLogtypes[id] = true;
+                anyMatchingLogtype = true;
+            } else {
+                variableMatchingLogtypes[id] = true;
+                if (null == matchingVariables) {
+                    matchingVariables = new boolean[varDict.size()];
+                    for (int variableId = 0; variableId < varDict.size(); variableId++) {
+                        matchingVariables[variableId] = query.mayBePartOfMatch(varDict.get(variableId));
+                    }
+                }
+            }
+        }
+        byte[][][] columnValues = archive.columnValues;
+        int keyBits = null != columnValues
+                ? Math.min(Integer.SIZE, Long.SIZE / Math.max(1, columnValues.length)) : 0;
+        for (int i = 0; null != columnValues && i < columnValues.length; i++) {
+            if (columnValues[i].length > 1L << keyBits) {
+                keyBits = 0;
+            }
+        }
+        prefixKeyBits = keyBits;
+
+        // The postings only narrow down queries that can only match in dictionary variables
+        boolean[] variables = matchingVariables;
+        blocks = anyMatchingLogtype ? null : archive.findPostingsBlocks(id -> null != variables && variables[id]);
+    }
+
+    /**
+     * @return whether events of the logtype may match
+     */
+    boolean mayMatch(int logtypeId) {
+        return matchingLogtypes[logtypeId] || variableMatchingLogtypes[logtypeId];
+    }
+
+    /**
+     * @param variables the event's variables (see RangeDecoder.readVariables)
+     * @return whether the event may match
+     */
+    boolean mayMatch(int logtypeId, DecompressionDictionaryEntry logtype, long[] variables) {
+        if (matchingLogtypes[logtypeId]) {
+            return true;
+        }
+        if (!variableMatchingLogtypes[logtypeId]) {
+            return false;
+        }
+        int variable = 0;
+        for (int i = 0; i < logtype.length; i++) {
+            byte b = logtype.getByte(i);
+            if (b == EncodedEvent.VARIABLE_ID_DELIM) {
+                if (matchingVariables[Decompressor.toGlobalId(varRemap, variables[variable++])]) {
+                    return true;
+                }
+            } else if (b == EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM
+                    || b == EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM) {
+                variable++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,571 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveSettings;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TemplateGroupedVariables;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TimeIndex;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.DeltaTimestampCodec;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.NumericPredicate;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.DecompressionDictionaryEntry;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdStreamingReader;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Decodes the events from the positions its columns are at. Decoders have their own column views and
+ * formatting state, so several can decode different ranges of an archive concurrently, while the
+ * dictionaries are shared (read only). Ranges must start at a chunk (i.e. timestamp block) boundary.
+ * Streamed columns are read through the windows of their readers, refilled before every event.
+ * Variables of archives with template grouped variables are read from the sub-columns of their logtype and
+ * placeholder (see TemplateGroupedVariables), and the text in front of the message of archives with a
+ * compiled pattern layout is rebuilt from the pattern's literals and the column values.
+ */
+class RangeDecoder implements Closeable {
+    // Most bytes a value of a column takes (the longest varint, fixed width values take at most 8)
+    private static final int MAX_VALUE_BYTES = 10;
+
+    private final Decompressor archive;
+    private final ArchiveSettings settings;
+    private final List<DecompressionDictionaryEntry> logtypeDict;
+    private final List<DecompressionDictionaryEntry> varDict;
+    private final int[][] logtypeRemap;
+    private final int[][] varRemap;
+    // Only set if the archive was written with a compiled pattern layout
+    private final byte[][] prefixLiterals;
+    private final byte[][][] columnValues;
+
+    private ByteBuffer tsBuf;
+    // Only set if the timestamps are delta encoded
+    private final DeltaTimestampCodec timestampCodec;
+    private ByteBuffer logtypeBuf;
+    private ByteBuffer varBuf;
+    private final ByteBuffer[] columnBufs;
+    // Only set if the columns are streamed
+    private ZstdStreamingReader tsReader;
+    private ZstdStreamingReader logtypeReader;
+    private ZstdStreamingReader varReader;
+    private ZstdStreamingReader[] columnReaders;
+    private final DateFormat dateFormatter;
+    // Events decoded or skipped so far, to know where the chunks of template grouped variables start
+    private long numEvents = 0;
+    // Sub-columns of the current chunk, by logtype id
+    private HashMap<Long, ByteBuffer[]> chunkSlots;
+    // Sub-columns of the current event's variables, only set with template grouped variables
+    private ByteBuffer[] slots;
+    // Current event's column value ids and variables (see readVariables)
+    private final int[] columnIds;
+    private long[] variables = new long[16];
+    // Current event's text after the timestamp, while searching
+    private final LineBuffer lineBuffer = new LineBuffer();
+    // Whether a match may start in front of the message, by column value ids (see prefixMayStartMatch)
+    private final Long2BooleanOpenHashMap prefixMatches = new Long2BooleanOpenHashMap();
+
+    // 9,223,372,036,854,775,808 -> 19 digits, +1 negative sign, +1 decimal point
+    private final byte[] digitBuf = new byte[21];
+
+    RangeDecoder(Decompressor archive, ByteBuffer tsBuf, ByteBuffer logtypeBuf, ByteBuffer varBuf,
+                 ByteBuffer[] columnBufs) {
+        this.archive = archive;
+        settings = archive.settings;
+        logtypeDict = archive.logtypeDict;
+        varDict = archive.varDict;
+        logtypeRemap = archive.logtypeRemap;
+        varRemap = archive.varRemap;
+        prefixLiterals = archive.prefixLiterals;
+        columnValues = archive.columnValues;
+        this.tsBuf = tsBuf;
+        this.logtypeBuf = logtypeBuf;
+        this.varBuf = varBuf;
+        this.columnBufs = columnBufs;
+        columnIds = new int[columnBufs.length];
+        dateFormatter = new SimpleDateFormat(settings.timestampPattern);
+        timestampCodec = settings.useDeltaTimestampEncoding
+                ? new DeltaTimestampCodec(settings.containerChunkSize) : null;
+    }
+
+    RangeDecoder(Decompressor archive, ZstdStreamingReader tsReader, ZstdStreamingReader logtypeReader,
+                 ZstdStreamingReader varReader, ZstdStreamingReader[] columnReaders) throws IOException {
+        this(archive, tsReader.fill(0), logtypeReader.fill(0), varReader.fill(0),
+                new ByteBuffer[columnReaders.length]);
+        this.tsReader = tsReader;
+        this.logtypeReader = logtypeReader;
+        this.varReader = varReader;
+        this.columnReaders = columnReaders;
+        for (int i = 0; i < columnReaders.length; i++) {
+            columnBufs[i] = columnReaders[i].fill(0);
+        }
+    }
+
+    boolean hasRemaining() throws IOException {
+        if (null != logtypeReader) {
+            logtypeBuf = logtypeReader.fill(1);
+        }
+        return logtypeBuf.hasRemaining();
+    }
+
+    /**
+     * Refills the windows of streamed columns with as much as the next event may read, except for the
+     * variables which are refilled once the event's logtype is known (see fillVariables)
+     */
+    private void fillEvent() throws IOException {
+        if (null == logtypeReader) {
+            return;
+        }
+        tsBuf = tsReader.fill(MAX_VALUE_BYTES);
+        logtypeBuf = logtypeReader.fill(MAX_VALUE_BYTES);
+        for (int i = 0; i < columnReaders.length; i++) {
+            columnBufs[i] = columnReaders[i].fill(MAX_VALUE_BYTES);
+        }
+    }
+
+    private void fillVariables(DecompressionDictionaryEntry logtype) throws IOException {
+        if (null != varReader) {
+            varBuf = varReader.fill(logtype.length * MAX_VALUE_BYTES);
+        }
+    }
+
+    /**
+     * Moves past up to maxEvents events
+     * @return decoder of the events moved past, which reads copies of them if the columns are streamed
+     */
+    RangeDecoder split(long maxEvents) throws IOException {
+        if (null == logtypeReader) {
+            RangeDecoder decoder = fork();
+            skip(maxEvents);
+            return decoder;
+        }
+        tsReader.startCapture();
+        logtypeReader.startCapture();
+        varReader.startCapture();
+        for (ZstdStreamingReader columnReader : columnReaders) {
+            columnReader.startCapture();
+        }
+        skip(maxEvents);
+        ByteBuffer[] capturedColumnBufs = new ByteBuffer[columnReaders.length];
+        for (int i = 0; i < columnReaders.length; i++) {
+            capturedColumnBufs[i] = columnReaders[i].endCapture();
+        }
+        return new RangeDecoder(archive, tsReader.endCapture(), logtypeReader.endCapture(),
+                varReader.endCapture(), capturedColumnBufs);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null == logtypeReader) {
+            return;
+        }
+        tsReader.close();
+        logtypeReader.close();
+        varReader.close();
+        for (ZstdStreamingReader columnReader : columnReaders) {
+            columnReader.close();
+        }
+    }
+
+    /**
+     * @return decoder of the events from this decoder's current position on
+     */
+    private RangeDecoder fork() {
+        ByteBuffer[] columnViews = new ByteBuffer[columnBufs.length];
+        for (int i = 0; i < columnBufs.length; i++) {
+            columnViews[i] = view(columnBufs[i]);
+        }
+        return new RangeDecoder(archive, view(tsBuf), view(logtypeBuf), view(varBuf), columnViews);
+    }
+
+    private ByteBuffer view(ByteBuffer buf) {
+        // Duplicates don't keep the byte order
+        return buf.duplicate().order(buf.order());
+    }
+
+    DecodedRange decodeRange(long maxEvents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long numDecodedEvents = decode(bytes, maxEvents);
+        return new DecodedRange(bytes, numDecodedEvents);
+    }
+
+    /**
+     * Moves past up to maxEvents events without decoding their messages
+     * @return number of events skipped
+     */
+    long skip(long maxEvents) throws IOException {
+        long numSkippedEvents = 0;
+        for (; numSkippedEvents < maxEvents && hasRemaining(); numSkippedEvents++, numEvents++) {
+            fillEvent();
+            readTimestamp();
+            readColumnIds();
+            readVariables(logtypeDict.get(readLogtypeId()));
+        }
+        return numSkippedEvents;
+    }
+
+    /**
+     * Decodes up to maxEvents log messages into the stream
+     * @return number of log messages decoded
+     */
+    long decode(OutputStream decompressedLogStream, long maxEvents) throws IOException {
+        long numDecodedEvents = 0;
+        for (; numDecodedEvents < maxEvents && hasRemaining(); numDecodedEvents++, numEvents++) {
+            fillEvent();
+            // Re-generate timestamp (assume timestamp is always in the front for now)
+            writeTimestamp(decompressedLogStream, readTimestamp());
+            readColumnIds();
+            writePrefix(decompressedLogStream);
+
+            // Regenerate log message
+            DecompressionDictionaryEntry logtype = logtypeDict.get(readLogtypeId());
+            readVariables(logtype);
+            writeMessage(decompressedLogStream, logtype);
+        }
+        return numDecodedEvents;
+    }
+
+    /**
+     * Decodes the log messages of up to maxEvents events whose timestamps are in [beginTimestamp,
+     * endTimestamp] into the stream
+     * @return number of log messages decoded
+     */
+    long decode(OutputStream decompressedLogStream, long maxEvents, long beginTimestamp,
+                        long endTimestamp) throws IOException {
+        long numDecodedEvents = 0;
+        for (long numScannedEvents = 0; numScannedEvents < maxEvents && hasRemaining();
+             numScannedEvents++, numEvents++) {
+            fillEvent();
+            long timestamp = readTimestamp();
+            readColumnIds();
+            DecompressionDictionaryEntry logtype = logtypeDict.get(readLogtypeId());
+            readVariables(logtype);
+            if (timestamp >= beginTimestamp && timestamp <= endTimestamp) {
+                writeTimestamp(decompressedLogStream, timestamp);
+                writePrefix(decompressedLogStream);
+                writeMessage(decompressedLogStream, logtype);
+                numDecodedEvents++;
+            }
+        }
+        return numDecodedEvents;
+    }
+
+    /**
+     * Moves forward to the first event of the interval, the decoder must be at or before it
+     */
+    void seek(TimeIndex.Interval interval) throws IOException {
+        long[] offsets = interval.offsets;
+        if (null != logtypeReader) {
+            tsReader.skipTo(offsets[0]);
+            logtypeReader.skipTo(offsets[1]);
+            varReader.skipTo(offsets[2]);
+            for (int i = 0; i < columnReaders.length; i++) {
+                columnReaders[i].skipTo(offsets[3 + i]);
+            }
+        } else {
+            tsBuf.position((int) offsets[0]);
+            logtypeBuf.position((int) offsets[1]);
+            varBuf.position((int) offsets[2]);
+            for (int i = 0; i < columnBufs.length; i++) {
+                columnBufs[i].position((int) offsets[3 + i]);
+            }
+        }
+        numEvents = interval.firstEventNum;
+    }
+
+    DecodedRange searchRange(QueryPlan plan, long maxEvents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long numMatchingEvents = search(plan, bytes, maxEvents);
+        return new DecodedRange(bytes, numMatchingEvents);
+    }
+
+    /**
+     * Writes the log messages of up to maxEvents events that match the plan's query into the stream. Only
+     * the events the plan can't rule out from their logtype and dictionary variable ids are decoded.
+     * @return number of matching log messages
+     */
+    long search(QueryPlan plan, OutputStream matchingLogStream, long maxEvents) throws IOException {
+        long numMatchingEvents = 0;
+        for (long numScannedEvents = 0; numScannedEvents < maxEvents && hasRemaining();
+             numScannedEvents++, numEvents++) {
+            fillEvent();
+            long timestamp = readTimestamp();
+            readColumnIds();
+            int logtypeId = readLogtypeId();
+            DecompressionDictionaryEntry logtype = logtypeDict.get(logtypeId);
+            readVariables(logtype);
+
+            // A match may also start in the text in front of the message
+            if (!plan.mayMatch(logtypeId, logtype, variables)
+                    && (null == prefixLiterals || !prefixMayStartMatch(plan))) {
+                continue;
+            }
+            lineBuffer.reset();
+            writePrefix(lineBuffer);
+            writeMessage(lineBuffer, logtype);
+            if (plan.query.matches(lineBuffer.getBuffer(), 0, lineBuffer.size())) {
+                writeTimestamp(matchingLogStream, timestamp);
+                lineBuffer.writeTo(matchingLogStream);
+                numMatchingEvents++;
+            }
+        }
+        return numMatchingEvents;
+    }
+
+    DecodedRange filterRange(PredicatePlan plan, long maxEvents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long numMatchingEvents = filter(plan, bytes, maxEvents);
+        return new DecodedRange(bytes, numMatchingEvents);
+    }
+
+    /**
+     * Writes the log messages of up to maxEvents events whose variables satisfy the plan's predicate into
+     * the stream. The predicate is tested on the encoded variables, only satisfying events are decoded.
+     * @return number of matching log messages
+     */
+    long filter(PredicatePlan plan, OutputStream matchingLogStream, long maxEvents) throws IOException {
+        long numMatchingEvents = 0;
+        for (long numScannedEvents = 0; numScannedEvents < maxEvents && hasRemaining();
+             numScannedEvents++, numEvents++) {
+            fillEvent();
+            long timestamp = readTimestamp();
+            readColumnIds();
+            int logtypeId = readLogtypeId();
+            DecompressionDictionaryEntry logtype = logtypeDict.get(logtypeId);
+            readVariables(logtype);
+            if (satisfies(plan, logtypeId)) {
+                writeTimestamp(matchingLogStream, timestamp);
+                writePrefix(matchingLogStream);
+                writeMessage(matchingLogStream, logtype);
+                numMatchingEvents++;
+            }
+        }
+        return numMatchingEvents;
+    }
+
+    /**
+     * @return whether any of the current event's variables the plan's predicate applies to satisfies it
+     */
+    private boolean satisfies(PredicatePlan plan, int logtypeId) {
+        int[] variableIndices = plan.variableIndices[logtypeId];
+        if (null == variableIndices) {
+            return false;
+        }
+        boolean[] floatVariables = plan.floatVariables[logtypeId];
+        for (int i = 0; i < variableIndices.length; i++) {
+            long variable = variables[variableIndices[i]];
+            if (floatVariables[i] ? testFloat(plan.predicate, variable) : plan.predicate.testInteger(variable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests the float encoding's value, decoded like fillBytesFrom64bitDecimalVariableEncoding and
+     * fillBytesFrom32bitDecimalVariableEncoding but without rendering it
+     */
+    private boolean testFloat(NumericPredicate predicate, long decimalEncoding) {
+        if (settings.useCompactVariableEncoding) {
+            int compactEncoding = (int) decimalEncoding;
+            return predicate.testFloat(compactEncoding < 0, (compactEncoding & Integer.MAX_VALUE) >>> 6,
+                    (compactEncoding & 0x07) + 1);
+        }
+        return predicate.testFloat(decimalEncoding < 0, (decimalEncoding & Long.MAX_VALUE) >>> 8,
+                (int) (decimalEncoding & 0x0F) + 1);
+    }
+
+    /**
+     * @return whether a match of the plan's query may start in the text in front of the current event's
+     * message, remembered by column value ids if they fit into a key
+     */
+    private boolean prefixMayStartMatch(QueryPlan plan) throws IOException {
+        long key = 0;
+        for (int i = 0; i < columnIds.length && plan.prefixKeyBits > 0; i++) {
+            key = (key << plan.prefixKeyBits) | columnIds[i];
+        }
+        if (plan.prefixKeyBits > 0 && prefixMatches.containsKey(key)) {
+            return prefixMatches.get(key);
+        }
+        lineBuffer.reset();
+        writePrefix(lineBuffer);
+        boolean mayStartMatch = plan.query.mayStartMatchIn(lineBuffer.getBuffer(), lineBuffer.size());
+        if (plan.prefixKeyBits > 0) {
+            prefixMatches.put(key, mayStartMatch);
+        }
+        return mayStartMatch;
+    }
+
+    private long readTimestamp() {
+        return null != timestampCodec ? timestampCodec.decode(tsBuf) : tsBuf.getLong();
+    }
+
+    private void writeTimestamp(OutputStream outputStream, long timestamp) throws IOException {
+        outputStream.write(dateFormatter.format(timestamp).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void readColumnIds() {
+        for (int i = 0; i < columnBufs.length; i++) {
+            columnIds[i] = settings.useVarintIds
+                    ? (int) VarintEncoding.getVarint(columnBufs[i]) : columnBufs[i].getInt();
+        }
+    }
+
+    /**
+     * Writes the text in front of the message of archives with a compiled pattern layout
+     */
+    private void writePrefix(OutputStream outputStream) throws IOException {
+        if (null == prefixLiterals) {
+            return;
+        }
+        for (int i = 0; i < columnBufs.length; i++) {
+            outputStream.write(prefixLiterals[i]);
+            outputStream.write(columnValues[i][columnIds[i]]);
+        }
+        outputStream.write(prefixLiterals[columnBufs.length]);
+    }
+
+    /**
+     * Reads the event's logtype id, and with template grouped variables, finds the sub-columns of its
+     * variables (reading the chunk's sub-columns at the start of a chunk)
+     * @return global logtype id
+     */
+    private int readLogtypeId() {
+        long logtypeId = settings.useVarintIds ? VarintEncoding.getVarint(logtypeBuf) : logtypeBuf.getLong();
+        if (settings.useTemplateGroupedVariables) {
+            if (numEvents % settings.containerChunkSize == 0) {
+                chunkSlots = TemplateGroupedVariables.readChunk(varBuf);
+            }
+            slots = chunkSlots.get(logtypeId);
+        }
+        return Decompressor.toGlobalId(logtypeRemap, logtypeId);
+    }
+
+    /**
+     * Reads the values of the event's variables into variables, in the order of the logtype's placeholders:
+     * integers, float encodings and dictionary variable ids
+     */
+    private void readVariables(DecompressionDictionaryEntry logtype) throws IOException {
+        fillVariables(logtype);
+        if (variables.length < logtype.length) {
+            variables = new long[logtype.length];
+        }
+        int slot = 0;
+        int numVariables = 0;
+        for (int i = 0; i < logtype.length; i++) {
+            byte b = logtype.getByte(i);
+            if (b == EncodedEvent.VARIABLE_ID_DELIM) {
+                ByteBuffer buf = null != slots ? slots[slot++] : varBuf;
+                variables[numVariables++] =
+                        settings.useVarintIds ? VarintEncoding.getVarint(buf) : getVariable(buf);
+            } else if (b == EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM
+                    || b == EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM) {
+                variables[numVariables++] = getVariable(null != slots ? slots[slot++] : varBuf);
+            }
+        }
+    }
+
+    private void writeMessage(OutputStream outputStream, DecompressionDictionaryEntry logtype) throws IOException {
+        int variable = 0;
+        for (int i = 0; i < logtype.length; i++) {
+            byte b = logtype.getByte(i);
+            if (b == EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM) {
+                int j = fillIntegerBytes(variables[variable++]);
+                outputStream.write(digitBuf, j, digitBuf.length - j);
+            } else if (b == EncodedEvent.VARIABLE_ID_DELIM) {
+                outputStream.write(varDict.get(Decompressor.toGlobalId(varRemap, variables[variable++])).getBytes());
+            } else if (b == EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM) {
+                int j = settings.useCompactVariableEncoding
+                        ? fillBytesFrom32bitDecimalVariableEncoding((int) variables[variable++])
+                        : fillBytesFrom64bitDecimalVariableEncoding(variables[variable++]);
+                outputStream.write(digitBuf, j, digitBuf.length - j);
+            } else {
+                outputStream.write(b);
+            }
+        }
+    }
+
+    private long getVariable(ByteBuffer buf) {
+        return settings.useCompactVariableEncoding ? buf.getInt() : buf.getLong();
+    }
+
+    /**
+     * Writes the decimal representation of value into digitBuf, right aligned
+     * @return offset of the first character
+     */
+    private int fillIntegerBytes(long value) {
+        int j = digitBuf.length;
+        boolean negative = value < 0;
+        // Accumulate negatively so no value overflows
+        if (!negative) {
+            value = -value;
+        }
+        do {
+            digitBuf[--j] = (byte) ('0' - (value % 10));
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            digitBuf[--j] = '-';
+        }
+        return j;
+    }
+
+    /**
+     * Writes the decimal representation of the 64bit float encoding into digitBuf, right aligned
+     * See StandardVariableByteArrayViewDictionaryKey for the format
+     * @return offset of the first character
+     */
+    private int fillBytesFrom64bitDecimalVariableEncoding(long decimalEncoding) {
+        int numDigits = (int) ((decimalEncoding >> 4) & 0x0F) + 1;
+        int numDigitsAfterDecimalPoint = (int) (decimalEncoding & 0x0F) + 1;
+        long digits = (decimalEncoding & Long.MAX_VALUE) >>> 8;
+        return fillDecimalBytes(decimalEncoding < 0, digits, numDigits, numDigitsAfterDecimalPoint);
+    }
+
+    /**
+     * Writes the decimal representation of the 32bit float encoding into digitBuf, right aligned
+     * See CompactVariableByteArrayViewDictionaryKey for the format
+     * @return offset of the first character
+     */
+    private int fillBytesFrom32bitDecimalVariableEncoding(int decimalEncoding) {
+        int numDigits = ((decimalEncoding >> 3) & 0x07) + 1;
+        int numDigitsAfterDecimalPoint = (decimalEncoding & 0x07) + 1;
+        long digits = (decimalEncoding & Integer.MAX_VALUE) >>> 6;
+        return fillDecimalBytes(decimalEncoding < 0, digits, numDigits, numDigitsAfterDecimalPoint);
+    }
+
+    private int fillDecimalBytes(boolean negative, long digits, int numDigits, int numDigitsAfterDecimalPoint) {
+        // Fill digits in reverse order, zero-padding up to the original number of digits
+        int j = digitBuf.length;
+        for (int i = 0; i < numDigits; i++) {
+            if (i == numDigitsAfterDecimalPoint) {
+                digitBuf[--j] = '.';
+            }
+            digitBuf[--j] = (byte) (digits % 10 + '0');
+            digits /= 10;
+        }
+        if (numDigitsAfterDecimalPoint == numDigits) {
+            // No digits before the decimal point, e.g. ".5"
+            digitBuf[--j] = '.';
+        }
+        if (negative) {
+            digitBuf[--j] = '-';
+        }
+        return j;
+    }
+
+    /**
+     * Buffer giving access to the bytes written so far, to match them without copying
+     */
+    private static class LineBuffer extends ByteArrayOutputStream {
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
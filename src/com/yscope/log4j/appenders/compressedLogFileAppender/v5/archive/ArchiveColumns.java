@@ -0,0 +1,298 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.BufferedDataOutputStreamCompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.MemoryMappedCompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column.ColumnBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column.ColumnGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column.ColumnIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column.ColumnMemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeMemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.DeltaTimestampBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.DeltaTimestampGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.DeltaTimestampMemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampMemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.*;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dictionaries and IR columns of an archive, written as sections of its container, memory mapped, with
+ * gathering writes or through (compressed) output streams, depending on the archive's settings.
+ * With a CompiledPatternLayout, every column of the layout is written as <column>.bin (one id per event)
+ * and <column>.dict (same format as the other dictionaries, written when the archive is closed).
+ * Gathering writes accumulate the columns in direct buffers and write them in native byte order (see
+ * GatheringFileChannelIR), the dictionaries keep their stream writers.
+ * The dictionaries are null with sharded dictionaries, which are only written when the archive is closed.
+ */
+class ArchiveColumns {
+    final Path logtypeDictPath;
+    final Path variableDictPath;
+    private final Path timestampIRPath;
+    private final Path logtypeIRPath;
+    private final Path variableIRPath;
+
+    final CompressionDictionary logtypeDict;
+    final CompressionDictionary variableDict;
+    final TimestampIR timestampIR;
+    final LogtypeIR logtypeIR;
+    final VariableIR variableIR;
+    // Null unless the archive is written as a single container file
+    final OutputStream variableSection;
+    final ColumnIR[] columnIRs;
+
+    private final Path archiveDir;
+    private final int compressionLevel;
+    private final boolean useVarintIds;
+    private final CompiledPatternLayout compiledPatternLayout;
+
+    /**
+     * @param settings the archive's settings, useGatheringWrites must only be set if the archive can apply it
+     * (the column byte order is set to the native one then)
+     * @param container container the archive is written into, null to write loose files
+     * @param pipeline pipeline compressing the loose files, null to compress them on the writing thread
+     * @param compiledPatternLayout layout whose columns are written along with each event, null if the events
+     *                              were rendered with the full layout
+     */
+    ArchiveColumns(Path archiveDir, ArchiveSettings settings, ArchiveContainerWriter container,
+                   ZstdCompressionPipeline pipeline, CompiledPatternLayout compiledPatternLayout) throws IOException {
+        this.archiveDir = archiveDir;
+        this.compiledPatternLayout = compiledPatternLayout;
+        int bufferSize = settings.bufferSize;
+        compressionLevel = settings.compressionLevel;
+        useVarintIds = settings.useVarintIds;
+        boolean useCompactVariableEncoding = settings.useCompactVariableEncoding;
+        String fileExtension = compressionLevel != 0 ? ".zst" : "";
+        logtypeDictPath = archiveDir.resolve(ArchiveWriter.LOGTYPE_DICT_FILENAME + fileExtension);
+        variableDictPath = archiveDir.resolve(ArchiveWriter.VARIABLE_DICT_FILENAME + fileExtension);
+        timestampIRPath = archiveDir.resolve(ArchiveWriter.TIMESTAMP_IR_FILENAME + fileExtension);
+        logtypeIRPath = archiveDir.resolve(ArchiveWriter.LOGTYPE_IR_FILENAME + fileExtension);
+        variableIRPath = archiveDir.resolve(ArchiveWriter.VARIABLE_IR_FILENAME + fileExtension);
+
+        int dictionaryBuffers = settings.dictionaryCompressionBuffers;
+        int timestampBuffers = settings.timestampCompressionBuffers;
+        int logtypeBuffers = settings.logtypeCompressionBuffers;
+        int variableBuffers = settings.variableCompressionBuffers;
+        boolean useRegularDictionaries = !settings.useShardedDictionaries;
+
+        if (null != container) {
+            logtypeDict = useRegularDictionaries ? new BufferedDataOutputStreamCompressionDictionary(
+                    container.addSection(ArchiveWriter.LOGTYPE_DICT_FILENAME)) : null;
+            variableDict = useRegularDictionaries ? new BufferedDataOutputStreamCompressionDictionary(
+                    container.addSection(ArchiveWriter.VARIABLE_DICT_FILENAME)) : null;
+            OutputStream timestampSection = container.addSection(ArchiveWriter.TIMESTAMP_IR_FILENAME);
+            timestampIR = settings.useDeltaTimestampEncoding
+                    ? new DeltaTimestampBufferedFileOutputStreamIR(timestampSection, settings.containerChunkSize)
+                    : new TimestampBufferedFileOutputStreamIR(timestampSection);
+            logtypeIR = new LogtypeBufferedFileOutputStreamIR(
+                    container.addSection(ArchiveWriter.LOGTYPE_IR_FILENAME));
+            variableSection = container.addSection(ArchiveWriter.VARIABLE_IR_FILENAME);
+            if (useCompactVariableEncoding) {
+                variableIR = new CompactVariableBufferedFileOutputStreamIR(variableSection);
+            } else {
+                variableIR = new StandardVariableBufferedFileOutputStreamIR(variableSection);
+            }
+        } else if (settings.useMemoryMappedIO) {
+            variableSection = null;
+            logtypeDict = useRegularDictionaries ? new MemoryMappedCompressionDictionary(logtypeDictPath, bufferSize,
+                    compressionLevel, pipeline, dictionaryBuffers) : null;
+            variableDict = useRegularDictionaries ? new MemoryMappedCompressionDictionary(variableDictPath, bufferSize,
+                    compressionLevel, pipeline, dictionaryBuffers) : null;
+            timestampIR = settings.useDeltaTimestampEncoding
+                    ? new DeltaTimestampMemoryMappedIR(timestampIRPath, bufferSize, compressionLevel,
+                            pipeline, timestampBuffers, settings.containerChunkSize)
+                    : new TimestampMemoryMappedIR(timestampIRPath, bufferSize, compressionLevel,
+                            pipeline, timestampBuffers);
+            logtypeIR = new LogtypeMemoryMappedIR(logtypeIRPath, bufferSize, compressionLevel,
+                    pipeline, logtypeBuffers);
+            if (useCompactVariableEncoding) {
+                variableIR = new CompactVariableMemoryMappedIR(variableIRPath, bufferSize, compressionLevel,
+                        pipeline, variableBuffers);
+            } else {
+                variableIR = new StandardVariableMemoryMappedIR(variableIRPath, bufferSize, compressionLevel,
+                        pipeline, variableBuffers);
+            }
+        } else if (settings.useGatheringWrites) {
+            settings.columnByteOrder = ByteOrder.nativeOrder().toString();
+            variableSection = null;
+            logtypeDict = useRegularDictionaries ? new BufferedDataOutputStreamCompressionDictionary(logtypeDictPath,
+                    compressionLevel, pipeline, dictionaryBuffers) : null;
+            variableDict = useRegularDictionaries ? new BufferedDataOutputStreamCompressionDictionary(variableDictPath,
+                    compressionLevel, pipeline, dictionaryBuffers) : null;
+            int gatheringBufferSize = settings.gatheringBufferSize;
+            timestampIR = settings.useDeltaTimestampEncoding
+                    ? new DeltaTimestampGatheringFileChannelIR(timestampIRPath, gatheringBufferSize,
+                            settings.containerChunkSize)
+                    : new TimestampGatheringFileChannelIR(timestampIRPath, gatheringBufferSize);
+            logtypeIR = new LogtypeGatheringFileChannelIR(logtypeIRPath, gatheringBufferSize);
+            if (useCompactVariableEncoding) {
+                variableIR = new CompactVariableGatheringFileChannelIR(variableIRPath, gatheringBufferSize);
+            } else {
+                variableIR = new StandardVariableGatheringFileChannelIR(variableIRPath, gatheringBufferSize);
+            }
+        } else {
+            variableSection = null;
+            logtypeDict = useRegularDictionaries ? new BufferedDataOutputStreamCompressionDictionary(logtypeDictPath,
+                    compressionLevel, pipeline, dictionaryBuffers) : null;
+            variableDict = useRegularDictionaries ? new BufferedDataOutputStreamCompressionDictionary(variableDictPath,
+                    compressionLevel, pipeline, dictionaryBuffers) : null;
+            timestampIR = settings.useDeltaTimestampEncoding
+                    ? new DeltaTimestampBufferedFileOutputStreamIR(timestampIRPath, compressionLevel,
+                            pipeline, timestampBuffers, settings.containerChunkSize)
+                    : new TimestampBufferedFileOutputStreamIR(timestampIRPath, compressionLevel,
+                            pipeline, timestampBuffers);
+            logtypeIR = new LogtypeBufferedFileOutputStreamIR(logtypeIRPath, compressionLevel,
+                    pipeline, logtypeBuffers);
+            if (useCompactVariableEncoding) {
+                variableIR = new CompactVariableBufferedFileOutputStreamIR(variableIRPath, compressionLevel,
+                        pipeline, variableBuffers);
+            } else {
+                variableIR = new StandardVariableBufferedFileOutputStreamIR(variableIRPath, compressionLevel,
+                        pipeline, variableBuffers);
+            }
+        }
+
+        if (null != compiledPatternLayout) {
+            CompiledPatternLayout.Column[] columns = compiledPatternLayout.getColumns();
+            columnIRs = new ColumnIR[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                String columnIRFilename = columns[i].type.columnName + ArchiveWriter.COLUMN_IR_FILE_EXTENSION;
+                Path columnIRPath = archiveDir.resolve(columnIRFilename + fileExtension);
+                // Like the logtype column, one small id per event
+                columnIRs[i] = null != container
+                        ? new ColumnBufferedFileOutputStreamIR(container.addSection(columnIRFilename))
+                        : settings.useMemoryMappedIO
+                        ? new ColumnMemoryMappedIR(columnIRPath, bufferSize, compressionLevel, pipeline,
+                                logtypeBuffers)
+                        : settings.useGatheringWrites
+                        ? new ColumnGatheringFileChannelIR(columnIRPath, settings.gatheringBufferSize)
+                        : new ColumnBufferedFileOutputStreamIR(columnIRPath, compressionLevel, pipeline,
+                                logtypeBuffers);
+            }
+        } else {
+            columnIRs = new ColumnIR[0];
+        }
+
+        if (null != logtypeDict) {
+            if (settings.useOffHeapDictionaryIndex) {
+                logtypeDict.useOffHeapIndex();
+                variableDict.useOffHeapIndex();
+            }
+            if (!settings.keyHashAlgorithm.isCryptographic) {
+                logtypeDict.enableByteExactVerification();
+                variableDict.enableByteExactVerification();
+            }
+        }
+    }
+
+    void putColumnIds(EncodedEvent event) throws IOException {
+        for (int i = 0; i < columnIRs.length; i++) {
+            if (useVarintIds) {
+                VarintEncoding.putVarint(columnIRs[i], event.columnIds[i]);
+            } else {
+                columnIRs[i].putId(event.columnIds[i]);
+            }
+        }
+    }
+
+    /**
+     * @return number of bytes the IR columns were given so far, before compression
+     */
+    long getNumBytes() {
+        long numBytes = timestampIR.getNumBytes() + logtypeIR.getNumBytes() + variableIR.getNumBytes();
+        for (ColumnIR columnIR : columnIRs) {
+            numBytes += columnIR.getNumBytes();
+        }
+        return numBytes;
+    }
+
+    /**
+     * @return names of the files sync writes to disk, in the order of its lengths
+     */
+    String[] getSyncedFilenames() {
+        return new String[] {logtypeDictPath.getFileName().toString(), variableDictPath.getFileName().toString(),
+                timestampIRPath.getFileName().toString(), logtypeIRPath.getFileName().toString(),
+                variableIRPath.getFileName().toString()};
+    }
+
+    /**
+     * Forces the dictionaries and the columns written so far to disk, the dictionaries first so that ids in
+     * the columns never refer to entries that aren't on disk
+     * @return lengths of the files on disk (see getSyncedFilenames)
+     */
+    long[] sync() throws IOException {
+        return new long[] {logtypeDict.sync(), variableDict.sync(), timestampIR.sync(), logtypeIR.sync(),
+                variableIR.sync()};
+    }
+
+    void close() throws IOException {
+        if (null != logtypeDict) {
+            variableDict.close();
+            logtypeDict.close();
+        }
+        timestampIR.close();
+        logtypeIR.close();
+        variableIR.close();
+        for (ColumnIR columnIR : columnIRs) {
+            columnIR.close();
+        }
+    }
+
+    /**
+     * Writes the dictionaries of the compiled pattern layout's columns into the archive directory
+     * @return paths of the dictionary files
+     */
+    List<Path> writeColumnDictionaries() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        if (null != compiledPatternLayout) {
+            for (CompiledPatternLayout.Column column : compiledPatternLayout.getColumns()) {
+                paths.add(writeColumnDictionary(column));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return path of the dictionary file
+     */
+    private Path writeColumnDictionary(CompiledPatternLayout.Column column) throws IOException {
+        String fileExtension = compressionLevel != 0 ? ".zst" : "";
+        Path path = archiveDir.resolve(column.type.columnName + ArchiveWriter.COLUMN_DICT_FILE_EXTENSION
+                + fileExtension);
+        OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path));
+        if (compressionLevel != 0) {
+            outputStream = new ZstdCompressorOutputStream(outputStream, compressionLevel);
+        }
+        // Format: <unsigned short length><encoded value>... like the other dictionaries
+        try (DataOutputStream dictionaryStream = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+            List<byte[]> values = column.getValues();
+            for (byte[] value : values) {
+                if (value.length > Character.MAX_VALUE) {
+                    throw new StringIndexOutOfBoundsException("Dictionary key's length exceeds encoding capability");
+                }
+                dictionaryStream.writeChar(value.length);
+                dictionaryStream.write(value);
+            }
+        }
+        return path;
+    }
+}
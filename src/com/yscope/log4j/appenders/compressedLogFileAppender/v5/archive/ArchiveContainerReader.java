@@ -0,0 +1,207 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads archives written by ArchiveContainerWriter. The file is memory-mapped and only the footer is parsed
+ * upfront, chunk sections are decompressed on demand (each chunk independently of the others).
+ * Files up to 2GB. Chunks compressed with a trained dictionary (see TrainedDictionaries) need that dictionary
+ * among the ones the reader was given.
+ */
+public class ArchiveContainerReader implements Closeable {
+    /**
+     * Index entry of one chunk
+     */
+    public static class Chunk {
+        public final int chunkNum;
+        public final long firstEventNum;
+        public final int numEvents;
+        public final long minTimestamp;
+        public final long maxTimestamp;
+        private final long[] offsets;
+        private final int[] lengths;
+        private final int[] uncompressedLengths;
+
+        private Chunk(int chunkNum, DataInputStream footerStream, int numSections) throws IOException {
+            this.chunkNum = chunkNum;
+            firstEventNum = footerStream.readLong();
+            numEvents = footerStream.readInt();
+            minTimestamp = footerStream.readLong();
+            maxTimestamp = footerStream.readLong();
+            offsets = new long[numSections];
+            lengths = new int[numSections];
+            uncompressedLengths = new int[numSections];
+            for (int i = 0; i < numSections; i++) {
+                offsets[i] = footerStream.readLong();
+                lengths[i] = footerStream.readInt();
+                uncompressedLengths[i] = footerStream.readInt();
+            }
+        }
+    }
+
+    private final FileChannel fc;
+    private final MappedByteBuffer file;
+    private final boolean compressed;
+    // Trained dictionaries by id
+    private final Map<Long, ZstdDictDecompress> dictionaries;
+    private final HashMap<String, Integer> sectionIndices = new HashMap<>();
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    // Offset and length of each file
+    private final HashMap<String, long[]> files = new HashMap<>();
+
+    public ArchiveContainerReader(Path path) throws IOException {
+        this(path, Collections.emptyMap());
+    }
+
+    /**
+     * @param dictionaries trained dictionaries by id (see TrainedDictionaries.load)
+     */
+    public ArchiveContainerReader(Path path, Map<Long, ZstdDictDecompress> dictionaries) throws IOException {
+        this.dictionaries = dictionaries;
+        fc = FileChannel.open(path, StandardOpenOption.READ);
+        if (fc.size() > Integer.MAX_VALUE) {
+            throw new IOException(path + " is too large to be mapped");
+        }
+        file = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        int trailerOffset = file.limit() - ArchiveContainerWriter.TRAILER_SIZE;
+        if (file.getInt(0) != ArchiveContainerWriter.MAGIC || trailerOffset < 0
+                || file.getInt(trailerOffset + Long.BYTES) != ArchiveContainerWriter.MAGIC) {
+            throw new IOException(path + " is not a complete archive container");
+        }
+        if (file.getInt(Integer.BYTES) != ArchiveContainerWriter.VERSION) {
+            throw new IOException("Unsupported archive container version " + file.getInt(Integer.BYTES));
+        }
+
+        int footerOffset = (int) file.getLong(trailerOffset);
+        byte[] footer = new byte[trailerOffset - footerOffset];
+        file.get(footerOffset, footer);
+        DataInputStream footerStream = new DataInputStream(new ByteArrayInputStream(footer));
+        compressed = footerStream.readBoolean();
+        int numSections = footerStream.readInt();
+        for (int i = 0; i < numSections; i++) {
+            sectionIndices.put(footerStream.readUTF(), i);
+        }
+        int numChunks = footerStream.readInt();
+        for (int i = 0; i < numChunks; i++) {
+            chunks.add(new Chunk(i, footerStream, numSections));
+        }
+        int numFiles = footerStream.readInt();
+        for (int i = 0; i < numFiles; i++) {
+            String name = footerStream.readUTF();
+            files.put(name, new long[] {footerStream.readLong(), footerStream.readInt()});
+        }
+    }
+
+    public List<Chunk> getChunks() {
+        return Collections.unmodifiableList(chunks);
+    }
+
+    public boolean hasSection(String name) {
+        return sectionIndices.containsKey(name);
+    }
+
+    /**
+     * @return the chunk's (uncompressed) data of the section
+     */
+    public ByteBuffer readChunkSection(Chunk chunk, String name) throws IOException {
+        int sectionIndex = getSectionIndex(name);
+        ByteBuffer data = ByteBuffer.allocateDirect(chunk.uncompressedLengths[sectionIndex]);
+        readChunkSection(chunk, sectionIndex, data);
+        return data.flip();
+    }
+
+    /**
+     * @return the section's data of all chunks, i.e. the content of the corresponding loose archive file
+     */
+    public ByteBuffer readSection(String name) throws IOException {
+        int sectionIndex = getSectionIndex(name);
+        long size = 0;
+        for (Chunk chunk : chunks) {
+            size += chunk.uncompressedLengths[sectionIndex];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Section " + name + " is too large to be read at once");
+        }
+        ByteBuffer data = ByteBuffer.allocateDirect((int) size);
+        for (Chunk chunk : chunks) {
+            readChunkSection(chunk, sectionIndex, data);
+        }
+        return data.flip();
+    }
+
+    private void readChunkSection(Chunk chunk, int sectionIndex, ByteBuffer data) throws IOException {
+        int offset = (int) chunk.offsets[sectionIndex];
+        int length = chunk.lengths[sectionIndex];
+        int uncompressedLength = chunk.uncompressedLengths[sectionIndex];
+        if (0 == length) {
+            return;
+        }
+        if (!compressed) {
+            data.put(file.slice(offset, length));
+            return;
+        }
+        ZstdDictDecompress dictionary = null;
+        if (!dictionaries.isEmpty()) {
+            long dictionaryId = Zstd.getDictIdFromFrameBuffer(file.slice(offset, length));
+            if (dictionaryId != 0) {
+                dictionary = dictionaries.get(dictionaryId);
+                if (null == dictionary) {
+                    throw new IOException("Chunk " + chunk.chunkNum + " needs missing dictionary " + dictionaryId);
+                }
+            }
+        }
+        long result = null != dictionary
+                ? Zstd.decompressDirectByteBufferFastDict(data, data.position(), uncompressedLength,
+                        file, offset, length, dictionary)
+                : Zstd.decompressDirectByteBuffer(data, data.position(), uncompressedLength, file, offset, length);
+        if (Zstd.isError(result) || result != uncompressedLength) {
+            throw new IOException("Failed to decompress chunk " + chunk.chunkNum + ": "
+                    + (Zstd.isError(result) ? Zstd.getErrorName(result) : "unexpected length " + result));
+        }
+        data.position(data.position() + uncompressedLength);
+    }
+
+    private int getSectionIndex(String name) throws IOException {
+        Integer sectionIndex = sectionIndices.get(name);
+        if (null == sectionIndex) {
+            throw new IOException("Archive container has no section " + name);
+        }
+        return sectionIndex;
+    }
+
+    public boolean hasFile(String name) {
+        return files.containsKey(name);
+    }
+
+    /**
+     * @return content of the file, as it was stored
+     */
+    public ByteBuffer readFile(String name) throws IOException {
+        long[] location = files.get(name);
+        if (null == location) {
+            throw new IOException("Archive container has no file " + name);
+        }
+        return file.slice((int) location[0], (int) location[1]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        fc.close();
+    }
+}
@@ -0,0 +1,190 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Writes an archive as a single file of chunks: every column (and the entries each dictionary gained) is
+ * buffered per section and, every chunk of events, each section is written as an independent zstd frame
+ * (or as is without compression). Concatenating a section's chunks gives the content of the corresponding
+ * loose archive file, so the column formats don't change. Files only known when the archive is closed
+ * (column dictionaries, merged sharded dictionaries and remaps, the metadata) are stored once, as is.
+ * The footer indexes every chunk (event range, min/max timestamp and where each section is), readers
+ * (see ArchiveContainerReader) can seek straight to a chunk and decompress chunks independently.
+ * With TrainedDictionaries, sections are compressed with their trained dictionary once there is one.
+ * Format (big-endian):
+ * <int MAGIC><int VERSION> chunk sections... files...
+ * footer: <boolean compressed><int numSections><UTF sectionName>...
+ *         <int numChunks> per chunk <long firstEventNum><int numEvents><long minTimestamp><long maxTimestamp>
+ *                          then per section <long offset><int length><int uncompressedLength>
+ *         <int numFiles> per file <UTF name><long offset><int length>
+ * <long footerOffset><int MAGIC>
+ */
+public class ArchiveContainerWriter implements Closeable {
+    public static final int MAGIC = 0x434C5043;   // "CLPC"
+    public static final int VERSION = 1;
+    public static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    /**
+     * Buffers a section until the chunk is written
+     */
+    private static class Section extends ByteArrayOutputStream {
+        private final String name;
+
+        private Section(String name) {
+            super(64 * 1024);
+            this.name = name;
+        }
+
+        // Avoids copying the buffered data like toByteArray does
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private final FileChannel fc;
+    private final int compressionLevel;
+    private final TrainedDictionaries trainedDictionaries;
+    private final ArrayList<Section> sections = new ArrayList<>();
+    private final ByteArrayOutputStream chunkIndex = new ByteArrayOutputStream();
+    private final DataOutputStream chunkIndexStream = new DataOutputStream(chunkIndex);
+    private int numChunks = 0;
+    private final ByteArrayOutputStream fileIndex = new ByteArrayOutputStream();
+    private final DataOutputStream fileIndexStream = new DataOutputStream(fileIndex);
+    private int numFiles = 0;
+    private long position;
+    private byte[] compressedBuffer = new byte[0];
+
+    public ArchiveContainerWriter(Path path, int compressionLevel) throws IOException {
+        this(path, compressionLevel, null);
+    }
+
+    /**
+     * @param trainedDictionaries dictionaries to compress (and train) sections with, null to compress them
+     *                            without dictionary
+     */
+    public ArchiveContainerWriter(Path path, int compressionLevel, TrainedDictionaries trainedDictionaries)
+            throws IOException {
+        this.compressionLevel = compressionLevel;
+        this.trainedDictionaries = trainedDictionaries;
+        fc = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(VERSION);
+        write(header.flip());
+    }
+
+    /**
+     * Must be called before the first chunk is written
+     * @return stream buffering the section's data of the current chunk
+     */
+    public OutputStream addSection(String name) {
+        if (numChunks > 0) {
+            throw new IllegalStateException("Sections must be added before the first chunk");
+        }
+        Section section = new Section(name);
+        sections.add(section);
+        return section;
+    }
+
+    /**
+     * Writes the data buffered in every section as the next chunk
+     */
+    public void writeChunk(long firstEventNum, int numEvents, long minTimestamp, long maxTimestamp)
+            throws IOException {
+        chunkIndexStream.writeLong(firstEventNum);
+        chunkIndexStream.writeInt(numEvents);
+        chunkIndexStream.writeLong(minTimestamp);
+        chunkIndexStream.writeLong(maxTimestamp);
+        for (Section section : sections) {
+            chunkIndexStream.writeLong(position);
+            int length = writeSection(section);
+            chunkIndexStream.writeInt(length);
+            chunkIndexStream.writeInt(section.size());
+            section.reset();
+        }
+        numChunks++;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    private int writeSection(Section section) throws IOException {
+        int size = section.size();
+        if (0 == size) {
+            return 0;
+        }
+        if (0 == compressionLevel) {
+            write(ByteBuffer.wrap(section.getBuffer(), 0, size));
+            return size;
+        }
+        int compressedBound = (int) Zstd.compressBound(size);
+        if (compressedBuffer.length < compressedBound) {
+            compressedBuffer = new byte[compressedBound];
+        }
+        ZstdDictCompress dictionary = null != trainedDictionaries
+                ? trainedDictionaries.getCompressor(section.name) : null;
+        long result = null != dictionary
+                ? Zstd.compressFastDict(compressedBuffer, 0, section.getBuffer(), 0, size, dictionary)
+                : Zstd.compressByteArray(compressedBuffer, 0, compressedBuffer.length,
+                        section.getBuffer(), 0, size, compressionLevel);
+        if (Zstd.isError(result)) {
+            throw new IOException("Failed to compress " + section.name + ": " + Zstd.getErrorName(result));
+        }
+        if (null != trainedDictionaries && null == dictionary) {
+            trainedDictionaries.addSample(section.name, section.getBuffer(), size);
+        }
+        write(ByteBuffer.wrap(compressedBuffer, 0, (int) result));
+        return (int) result;
+    }
+
+    /**
+     * Stores content as the file called name, as is
+     */
+    public void addFile(String name, byte[] content) throws IOException {
+        fileIndexStream.writeUTF(name);
+        fileIndexStream.writeLong(position);
+        fileIndexStream.writeInt(content.length);
+        write(ByteBuffer.wrap(content));
+        numFiles++;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += fc.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the footer, the chunks have to be written before
+     */
+    @Override
+    public void close() throws IOException {
+        long footerOffset = position;
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        DataOutputStream footerStream = new DataOutputStream(footer);
+        footerStream.writeBoolean(compressionLevel != 0);
+        footerStream.writeInt(sections.size());
+        for (Section section : sections) {
+            footerStream.writeUTF(section.name);
+        }
+        footerStream.writeInt(numChunks);
+        chunkIndex.writeTo(footerStream);
+        footerStream.writeInt(numFiles);
+        fileIndex.writeTo(footerStream);
+        footerStream.writeLong(footerOffset);
+        footerStream.writeInt(MAGIC);
+        write(ByteBuffer.wrap(footer.toByteArray()));
+        fc.close();
+    }
+}
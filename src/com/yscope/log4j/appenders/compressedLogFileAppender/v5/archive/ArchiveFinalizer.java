@@ -0,0 +1,89 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Closes rolled archives on a background thread, so a rollover only costs the writing thread the creation
+ * of the next archive: closing flushes and compresses the rest of the columns, merges sharded dictionaries,
+ * truncates memory-mapped files and writes the metadata. Every file of the archive (and the archive
+ * directory itself) is then fsync'd, so a finalized archive survives a crash.
+ * Archives are finalized one at a time, in the order they were rolled. Rolled archives keep their files and
+ * buffers until they're finalized, so once MAX_PENDING_ARCHIVES are waiting, rolling waits for the oldest.
+ */
+public class ArchiveFinalizer {
+    private static final int MAX_PENDING_ARCHIVES = 4;
+
+    private final ExecutorService finalizerThread;
+    // Permits of the archives that may still be handed over before the finalizer catches up
+    private final Semaphore pendingArchives = new Semaphore(MAX_PENDING_ARCHIVES);
+
+    public ArchiveFinalizer(String threadName) {
+        finalizerThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hands the archive over to the finalizer thread, archiveWriter must not be used by the caller anymore.
+     * Waits while MAX_PENDING_ARCHIVES archives are already waiting to be finalized.
+     */
+    public void finalizeArchive(ArchiveWriter archiveWriter) {
+        pendingArchives.acquireUninterruptibly();
+        finalizerThread.execute(() -> {
+            try {
+                archiveWriter.close();
+                sync(archiveWriter.getArchiveDir());
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                pendingArchives.release();
+            }
+        });
+    }
+
+    /**
+     * Flushes every file of the archive and the archive directory to disk
+     */
+    public static void sync(Path archiveDir) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            paths = files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            try (FileChannel fc = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                fc.force(true);
+            }
+        }
+        try (FileChannel fc = FileChannel.open(archiveDir, StandardOpenOption.READ)) {
+            fc.force(true);
+        } catch (IOException e) {
+            // Not every platform can open (and sync) directories, the files themselves are on disk already
+        }
+    }
+
+    /**
+     * Waits for the archives handed over so far to be finalized
+     * @param timeout 0 to wait as long as it takes
+     * @return false if they weren't finalized in time
+     */
+    public boolean close(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        finalizerThread.shutdown();
+        if (timeout <= 0) {
+            return finalizerThread.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return finalizerThread.awaitTermination(timeout, timeUnit);
+    }
+}
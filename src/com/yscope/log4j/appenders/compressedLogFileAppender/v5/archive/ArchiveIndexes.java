@@ -0,0 +1,113 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Indexes of an archive, fed with every event as it's written.
+ * Loose archives record the column offsets and timestamp range of every timeIndexInterval events in a
+ * TimeIndex, so readers can seek to a time range. Intervals of delta encoded timestamps are rounded up to
+ * whole blocks, readers can only start decoding at a block. Containers are indexed by their chunks instead.
+ * With usePostingsIndex, the chunks of a container, or the time index intervals of loose files, each
+ * dictionary variable appears in are recorded in VariablePostings. Loose archives without a time index have
+ * nothing to point the postings at and aren't indexed.
+ */
+class ArchiveIndexes {
+    // Null unless loose archive files are indexed
+    private final TimeIndex timeIndex;
+    private final long[] columnOffsets;
+    // Null unless dictionary variables are indexed
+    private final VariablePostings variablePostings;
+    private final int postingsBlockSize;
+
+    /**
+     * @param settings the archive's settings, the indexes it can't apply are turned off
+     * @param isContainer whether the archive is written as a single container file
+     * @param numColumns number of compiled pattern layout columns
+     */
+    ArchiveIndexes(Path archiveDir, ArchiveSettings settings, boolean isContainer, int numColumns) {
+        int requestedTimeIndexInterval = settings.timeIndexInterval;
+        if (requestedTimeIndexInterval > 0 && !isContainer) {
+            int interval = requestedTimeIndexInterval;
+            if (settings.useDeltaTimestampEncoding) {
+                interval = (interval + settings.containerChunkSize - 1) / settings.containerChunkSize
+                        * settings.containerChunkSize;
+                if (interval != requestedTimeIndexInterval) {
+                    ArchiveWriter.warnIgnoredSetting("timeIndexInterval " + requestedTimeIndexInterval,
+                            "intervals of delta encoded timestamps are rounded up to " + interval
+                                    + " events, whole blocks of timestamps");
+                }
+            }
+            settings.timeIndexInterval = interval;
+            // Timestamps, logtypes, variables, then the compiled layout's columns
+            columnOffsets = new long[3 + numColumns];
+            timeIndex = new TimeIndex(columnOffsets.length, interval);
+        } else {
+            if (isContainer && requestedTimeIndexInterval > 0
+                    && requestedTimeIndexInterval != ArchiveSettings.DEFAULT_TIME_INDEX_INTERVAL) {
+                ArchiveWriter.warnIgnoredSetting("timeIndexInterval", "archive containers are indexed by their"
+                        + " chunks");
+            }
+            settings.timeIndexInterval = 0;
+            columnOffsets = null;
+            timeIndex = null;
+        }
+
+        if (settings.usePostingsIndex && (isContainer || null != timeIndex)) {
+            variablePostings = new VariablePostings(archiveDir, settings.postingsBufferSize);
+            postingsBlockSize = isContainer ? settings.containerChunkSize : settings.timeIndexInterval;
+        } else {
+            if (settings.usePostingsIndex) {
+                ArchiveWriter.warnIgnoredSetting("usePostingsIndex", "loose archives without a time index"
+                        + " (timeIndexInterval 0) have no blocks to index");
+            }
+            variablePostings = null;
+            postingsBlockSize = 0;
+            settings.usePostingsIndex = false;
+        }
+    }
+
+    /**
+     * Adds the event about to be written to the time index
+     * @param eventNum number of events written before it
+     */
+    void indexEvent(long eventNum, long timestamp, ArchiveColumns columns) {
+        if (null == timeIndex) {
+            return;
+        }
+        if (eventNum % timeIndex.getInterval() == 0) {
+            columnOffsets[0] = columns.timestampIR.getNumBytes();
+            columnOffsets[1] = columns.logtypeIR.getNumBytes();
+            columnOffsets[2] = columns.variableIR.getNumBytes();
+            for (int i = 0; i < columns.columnIRs.length; i++) {
+                columnOffsets[3 + i] = columns.columnIRs[i].getNumBytes();
+            }
+        }
+        timeIndex.add(eventNum, timestamp, columnOffsets);
+    }
+
+    boolean hasPostings() {
+        return null != variablePostings;
+    }
+
+    /**
+     * Adds the block of the event being written to the postings of a dictionary variable it holds
+     * @param eventNum number of events written before it
+     */
+    void postVariable(long eventNum, long variableId) throws IOException {
+        if (null != variablePostings) {
+            variablePostings.add(variableId, (int) (eventNum / postingsBlockSize));
+        }
+    }
+
+    /**
+     * Writes the indexes into the archive directory
+     * @return path of the postings file, null if dictionary variables aren't indexed
+     */
+    Path write(Path archiveDir) throws IOException {
+        if (null != timeIndex) {
+            timeIndex.write(archiveDir);
+        }
+        return null != variablePostings ? variablePostings.write() : null;
+    }
+}
@@ -0,0 +1,243 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Settings used to write an archive. They are persisted as metadata.properties inside the archive
+ * directory so readers (e.g. Decompressor) know how the columns were encoded.
+ */
+public class ArchiveSettings {
+    public static final String METADATA_FILENAME = "metadata.properties";
+    public static final int DEFAULT_TIME_INDEX_INTERVAL = 8 * 1024;
+    // Layout of the archives written, to be bumped whenever older readers can't read them the same way
+    public static final int FORMAT_VERSION = 1;
+    // Version of archives written before the version was stored, read with their settings (or the defaults)
+    public static final int UNVERSIONED_FORMAT = 0;
+
+    // Version of the archive's layout, FORMAT_VERSION unless the settings were loaded from an older archive
+    public int formatVersion = FORMAT_VERSION;
+
+    public int bufferSize = 64 * 1024 * 1024;   // Size of each memory-mapped window with useMemoryMappedIO
+    public int compressionLevel = 0;
+    public boolean useCompactVariableEncoding = true;
+    public boolean useMemoryMappedIO = true;
+    public boolean useShardedDictionaries = false;
+    public String timestampPattern = "HH:mm:ss.SSS";
+    public KeyHashAlgorithm keyHashAlgorithm = KeyHashAlgorithm.SHA_256;
+    public boolean useOffHeapDictionaryIndex = false;
+    // Pattern (without timestamp) compiled into columns by a CompiledPatternLayout, empty if not compiled
+    public String compiledPattern = "";
+    public String compiledPatternCharset = "UTF-8";
+    // Zstd compression on a pool of compressionThreads threads (0 compresses on the writing thread), in frames
+    // of compressionBufferSize bytes with the given number of buffers per column
+    public int compressionThreads = 0;
+    public int compressionBufferSize = 1024 * 1024;
+    public int timestampCompressionBuffers = 2;
+    public int logtypeCompressionBuffers = 2;
+    public int variableCompressionBuffers = 4;
+    public int dictionaryCompressionBuffers = 2;
+    // Single file archive (see ArchiveContainerWriter) with chunks of containerChunkSize events
+    public boolean useArchiveContainer = false;
+    public int containerChunkSize = 64 * 1024;
+    // Timestamps as delta-of-delta varints in blocks of containerChunkSize events (see DeltaTimestampCodec)
+    public boolean useDeltaTimestampEncoding = false;
+    // Logtype, dictionary variable and column ids as varints (see VarintEncoding) rather than fixed width
+    public boolean useVarintIds = false;
+    // Variables of each container chunk grouped by logtype and placeholder (see TemplateGroupedVariables)
+    public boolean useTemplateGroupedVariables = false;
+    // Container sections compressed with zstd dictionaries trained on their first trainedDictionarySampleBytes
+    // (see TrainedDictionaries)
+    public boolean useTrainedDictionaries = false;
+    public int trainedDictionarySampleBytes = 1024 * 1024;
+    public int trainedDictionarySize = 16 * 1024;
+    // Group commit every groupCommitIntervalMillis or groupCommitEvents events, 0 disables the trigger (see
+    // CommitLog). Only uncompressed loose archives without sharded dictionaries or compiled layout apply it.
+    public long groupCommitIntervalMillis = 0;
+    public long groupCommitEvents = 0;
+    // Uncompressed loose columns accumulated in direct buffers of gatheringBufferSize bytes and written with
+    // gathering writes, in native byte order (see GatheringFileChannelIR)
+    public boolean useGatheringWrites = false;
+    public int gatheringBufferSize = 256 * 1024;
+    // Byte order of the fixed width values of the IR columns (ByteOrder.toString())
+    public String columnByteOrder = ByteOrder.BIG_ENDIAN.toString();
+    // Loose archives index their events every timeIndexInterval events, 0 disables the index (see TimeIndex)
+    public int timeIndexInterval = DEFAULT_TIME_INDEX_INTERVAL;
+    // Index the chunks (or time index intervals) each dictionary variable appears in, buffering at most
+    // postingsBufferSize bytes of postings while writing (see VariablePostings)
+    public boolean usePostingsIndex = false;
+    public int postingsBufferSize = 16 * 1024 * 1024;
+
+    public ArchiveSettings copy() {
+        ArchiveSettings copy = new ArchiveSettings();
+        copy.fromProperties(toProperties());
+        return copy;
+    }
+
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("formatVersion", String.valueOf(formatVersion));
+        properties.setProperty("bufferSize", String.valueOf(bufferSize));
+        properties.setProperty("compressionLevel", String.valueOf(compressionLevel));
+        properties.setProperty("useCompactVariableEncoding", String.valueOf(useCompactVariableEncoding));
+        properties.setProperty("useMemoryMappedIO", String.valueOf(useMemoryMappedIO));
+        properties.setProperty("useShardedDictionaries", String.valueOf(useShardedDictionaries));
+        properties.setProperty("timestampPattern", timestampPattern);
+        properties.setProperty("keyHashAlgorithm", keyHashAlgorithm.name());
+        properties.setProperty("useOffHeapDictionaryIndex", String.valueOf(useOffHeapDictionaryIndex));
+        properties.setProperty("compiledPattern", compiledPattern);
+        properties.setProperty("compiledPatternCharset", compiledPatternCharset);
+        properties.setProperty("compressionThreads", String.valueOf(compressionThreads));
+        properties.setProperty("compressionBufferSize", String.valueOf(compressionBufferSize));
+        properties.setProperty("timestampCompressionBuffers", String.valueOf(timestampCompressionBuffers));
+        properties.setProperty("logtypeCompressionBuffers", String.valueOf(logtypeCompressionBuffers));
+        properties.setProperty("variableCompressionBuffers", String.valueOf(variableCompressionBuffers));
+        properties.setProperty("dictionaryCompressionBuffers", String.valueOf(dictionaryCompressionBuffers));
+        properties.setProperty("useArchiveContainer", String.valueOf(useArchiveContainer));
+        properties.setProperty("containerChunkSize", String.valueOf(containerChunkSize));
+        properties.setProperty("useDeltaTimestampEncoding", String.valueOf(useDeltaTimestampEncoding));
+        properties.setProperty("useVarintIds", String.valueOf(useVarintIds));
+        properties.setProperty("useTemplateGroupedVariables", String.valueOf(useTemplateGroupedVariables));
+        properties.setProperty("useTrainedDictionaries", String.valueOf(useTrainedDictionaries));
+        properties.setProperty("trainedDictionarySampleBytes", String.valueOf(trainedDictionarySampleBytes));
+        properties.setProperty("trainedDictionarySize", String.valueOf(trainedDictionarySize));
+        properties.setProperty("groupCommitIntervalMillis", String.valueOf(groupCommitIntervalMillis));
+        properties.setProperty("groupCommitEvents", String.valueOf(groupCommitEvents));
+        properties.setProperty("useGatheringWrites", String.valueOf(useGatheringWrites));
+        properties.setProperty("gatheringBufferSize", String.valueOf(gatheringBufferSize));
+        properties.setProperty("columnByteOrder", columnByteOrder);
+        properties.setProperty("timeIndexInterval", String.valueOf(timeIndexInterval));
+        properties.setProperty("usePostingsIndex", String.valueOf(usePostingsIndex));
+        properties.setProperty("postingsBufferSize", String.valueOf(postingsBufferSize));
+        return properties;
+    }
+
+    public void fromProperties(Properties properties) {
+        formatVersion = Integer.parseInt(properties.getProperty("formatVersion", String.valueOf(UNVERSIONED_FORMAT)));
+        bufferSize = Integer.parseInt(properties.getProperty("bufferSize", String.valueOf(bufferSize)));
+        compressionLevel = Integer.parseInt(
+                properties.getProperty("compressionLevel", String.valueOf(compressionLevel)));
+        useCompactVariableEncoding = Boolean.parseBoolean(properties.getProperty("useCompactVariableEncoding",
+                String.valueOf(useCompactVariableEncoding)));
+        useMemoryMappedIO = Boolean.parseBoolean(
+                properties.getProperty("useMemoryMappedIO", String.valueOf(useMemoryMappedIO)));
+        useShardedDictionaries = Boolean.parseBoolean(
+                properties.getProperty("useShardedDictionaries", String.valueOf(useShardedDictionaries)));
+        timestampPattern = properties.getProperty("timestampPattern", timestampPattern);
+        keyHashAlgorithm = KeyHashAlgorithm.fromString(
+                properties.getProperty("keyHashAlgorithm", keyHashAlgorithm.name()));
+        useOffHeapDictionaryIndex = Boolean.parseBoolean(properties.getProperty("useOffHeapDictionaryIndex",
+                String.valueOf(useOffHeapDictionaryIndex)));
+        compiledPattern = properties.getProperty("compiledPattern", compiledPattern);
+        compiledPatternCharset = properties.getProperty("compiledPatternCharset", compiledPatternCharset);
+        compressionThreads = Integer.parseInt(
+                properties.getProperty("compressionThreads", String.valueOf(compressionThreads)));
+        compressionBufferSize = Integer.parseInt(
+                properties.getProperty("compressionBufferSize", String.valueOf(compressionBufferSize)));
+        timestampCompressionBuffers = Integer.parseInt(properties.getProperty("timestampCompressionBuffers",
+                String.valueOf(timestampCompressionBuffers)));
+        logtypeCompressionBuffers = Integer.parseInt(properties.getProperty("logtypeCompressionBuffers",
+                String.valueOf(logtypeCompressionBuffers)));
+        variableCompressionBuffers = Integer.parseInt(properties.getProperty("variableCompressionBuffers",
+                String.valueOf(variableCompressionBuffers)));
+        dictionaryCompressionBuffers = Integer.parseInt(properties.getProperty("dictionaryCompressionBuffers",
+                String.valueOf(dictionaryCompressionBuffers)));
+        useArchiveContainer = Boolean.parseBoolean(
+                properties.getProperty("useArchiveContainer", String.valueOf(useArchiveContainer)));
+        containerChunkSize = Integer.parseInt(
+                properties.getProperty("containerChunkSize", String.valueOf(containerChunkSize)));
+        useDeltaTimestampEncoding = Boolean.parseBoolean(properties.getProperty("useDeltaTimestampEncoding",
+                String.valueOf(useDeltaTimestampEncoding)));
+        useVarintIds = Boolean.parseBoolean(properties.getProperty("useVarintIds", String.valueOf(useVarintIds)));
+        useTemplateGroupedVariables = Boolean.parseBoolean(properties.getProperty("useTemplateGroupedVariables",
+                String.valueOf(useTemplateGroupedVariables)));
+        useTrainedDictionaries = Boolean.parseBoolean(
+                properties.getProperty("useTrainedDictionaries", String.valueOf(useTrainedDictionaries)));
+        trainedDictionarySampleBytes = Integer.parseInt(properties.getProperty("trainedDictionarySampleBytes",
+                String.valueOf(trainedDictionarySampleBytes)));
+        trainedDictionarySize = Integer.parseInt(
+                properties.getProperty("trainedDictionarySize", String.valueOf(trainedDictionarySize)));
+        groupCommitIntervalMillis = Long.parseLong(
+                properties.getProperty("groupCommitIntervalMillis", String.valueOf(groupCommitIntervalMillis)));
+        groupCommitEvents = Long.parseLong(
+                properties.getProperty("groupCommitEvents", String.valueOf(groupCommitEvents)));
+        useGatheringWrites = Boolean.parseBoolean(
+                properties.getProperty("useGatheringWrites", String.valueOf(useGatheringWrites)));
+        gatheringBufferSize = Integer.parseInt(
+                properties.getProperty("gatheringBufferSize", String.valueOf(gatheringBufferSize)));
+        columnByteOrder = properties.getProperty("columnByteOrder", columnByteOrder);
+        timeIndexInterval = Integer.parseInt(
+                properties.getProperty("timeIndexInterval", String.valueOf(timeIndexInterval)));
+        usePostingsIndex = Boolean.parseBoolean(
+                properties.getProperty("usePostingsIndex", String.valueOf(usePostingsIndex)));
+        postingsBufferSize = Integer.parseInt(
+                properties.getProperty("postingsBufferSize", String.valueOf(postingsBufferSize)));
+    }
+
+    public void store(Path archiveDir) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(archiveDir.resolve(METADATA_FILENAME))) {
+            toProperties().store(outputStream, "Compressed log archive metadata");
+        }
+    }
+
+    /**
+     * @return settings stored in the archive (or in its container file), or the defaults of an unversioned archive
+     * if it has no metadata
+     */
+    public static ArchiveSettings load(Path archiveDir) throws IOException {
+        ArchiveSettings settings = new ArchiveSettings();
+        settings.formatVersion = UNVERSIONED_FORMAT;
+        Path metadataPath = archiveDir.resolve(METADATA_FILENAME);
+        Path containerPath = archiveDir.resolve(ArchiveWriter.CONTAINER_FILENAME);
+        if (Files.exists(metadataPath)) {
+            Properties properties = new Properties();
+            try (InputStream inputStream = Files.newInputStream(metadataPath)) {
+                properties.load(inputStream);
+            }
+            settings.fromProperties(properties);
+        } else if (Files.exists(containerPath)) {
+            try (ArchiveContainerReader container = new ArchiveContainerReader(containerPath)) {
+                settings = load(container);
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * @throws IOException if the archive was written in a newer layout than FORMAT_VERSION
+     */
+    public void checkFormatVersion(Path archivePath) throws IOException {
+        if (formatVersion > FORMAT_VERSION) {
+            throw new IOException(archivePath + " has archive format version " + formatVersion
+                    + ", only versions up to " + FORMAT_VERSION + " can be read");
+        }
+    }
+
+    /**
+     * @return byte order to read the IR columns in
+     */
+    public ByteOrder getColumnByteOrder() {
+        return ByteOrder.LITTLE_ENDIAN.toString().equals(columnByteOrder)
+                ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    public static ArchiveSettings load(ArchiveContainerReader container) throws IOException {
+        ArchiveSettings settings = new ArchiveSettings();
+        ByteBuffer metadata = container.readFile(METADATA_FILENAME);
+        byte[] metadataBytes = new byte[metadata.remaining()];
+        metadata.get(metadataBytes);
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(metadataBytes));
+        settings.fromProperties(properties);
+        return settings;
+    }
+}
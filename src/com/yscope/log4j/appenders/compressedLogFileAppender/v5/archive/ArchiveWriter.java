@@ -0,0 +1,456 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.DictionaryShard;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.ShardedCompressionDictionaries;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.CompactVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.LogtypeByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.StandardVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.*;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.status.StatusLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Owns the dictionaries and the IR columns of one compressed log archive (the five files
+ * logtype.dict, variable.dict, ts.bin, logtype.bin and var.bin inside the archive directory).
+ * Consumes events that were already tokenized by an EventEncoder, so only dictionary lookups and
+ * column writes happen here. Not thread-safe: callers must ensure a single writer at a time.
+ * How the columns are stored is up to ArchiveColumns, and how they're indexed up to ArchiveIndexes. Archives
+ * can be written into a single container file in chunks of containerChunkSize events (see
+ * ArchiveContainerWriter) and group committed (see commit). Settings an archive can't apply are logged and
+ * turned off in the metadata it stores.
+ */
+public class ArchiveWriter {
+    public static final String LOGTYPE_DICT_FILENAME = "logtype.dict";
+    public static final String VARIABLE_DICT_FILENAME = "variable.dict";
+    public static final String TIMESTAMP_IR_FILENAME = "ts.bin";
+    public static final String LOGTYPE_IR_FILENAME = "logtype.bin";
+    public static final String VARIABLE_IR_FILENAME = "var.bin";
+    public static final String LOGTYPE_REMAP_FILENAME = "logtype.remap";
+    public static final String VARIABLE_REMAP_FILENAME = "variable.remap";
+    public static final String COLUMN_IR_FILE_EXTENSION = ".bin";
+    public static final String COLUMN_DICT_FILE_EXTENSION = ".dict";
+    public static final String CONTAINER_FILENAME = "archive.clp";
+    // Directories of rolled archives, numbered in the order they were written
+    public static final String ROLLED_ARCHIVE_DIR_FORMAT = "archive-%08d";
+    public static final Pattern ROLLED_ARCHIVE_DIR_PATTERN = Pattern.compile("archive-(\\d+)");
+    // Archive of the log directory recovered at the given time, moved aside so it isn't overwritten
+    public static final String RECOVERED_ARCHIVE_DIR_FORMAT = "recovered-%d";
+
+    private static final Logger LOGGER = StatusLogger.getLogger();
+    // Settings the archives can't apply, reported once rather than for every rolled archive
+    private static final Set<String> reportedIgnoredSettings = ConcurrentHashMap.newKeySet();
+
+    private final Path archiveDir;
+    private final ArchiveSettings settings;
+    private final ArchiveColumns columns;
+    private final ArchiveIndexes indexes;
+
+    // With sharded dictionaries, ids come from per-thread DictionaryShards and the dictionaries are only
+    // written (with their remaps) when the archive is closed
+    private ShardedCompressionDictionaries shardedDictionaries;
+    // Resolves events that were not resolved by their logging thread, or in another archive's shards
+    private DictionaryShard writerShard;
+    private final CompiledPatternLayout compiledPatternLayout;
+    private final ZstdCompressionPipeline compressionPipeline;
+    // Null unless the archive is written as a single container file
+    private final ArchiveContainerWriter container;
+    private long chunkFirstEventNum = 0;
+    private long chunkMinTimestamp = Long.MAX_VALUE;
+    private long chunkMaxTimestamp = Long.MIN_VALUE;
+    // Null unless the variables of each chunk are grouped by template
+    private final TemplateGroupedVariables templateGroupedVariables;
+
+    private final VariableByteArrayViewDictionaryKey variableDictionaryKey;
+    private final LogtypeByteArrayViewDictionaryKey logtypeDictionaryKey;
+    // Ids of the dictionary variables of the event being written
+    private long[] variableIds = new long[16];
+
+    private long numEvents = 0;
+
+    // Null unless the archive is group committed
+    private final CommitLog commitLog;
+    private long numCommittedEvents = 0;
+    private long lastCommitMillis;
+
+    public ArchiveWriter(Path archiveDir, ArchiveSettings settings) throws IOException, NoSuchAlgorithmException {
+        this(archiveDir, settings, null);
+    }
+
+    /**
+     * @param compiledPatternLayout layout whose columns are written along with each event, null if the events
+     *                              were rendered with the full layout
+     */
+    public ArchiveWriter(Path archiveDir, ArchiveSettings settings, CompiledPatternLayout compiledPatternLayout)
+            throws IOException, NoSuchAlgorithmException {
+        this(archiveDir, settings, compiledPatternLayout, null);
+    }
+
+    /**
+     * @param trainedDictionaries dictionaries shared with the other archives of the log (e.g. rolled
+     *                            archives), null to train them in the archive directory if the settings ask for
+     *                            them
+     */
+    public ArchiveWriter(Path archiveDir, ArchiveSettings settings, CompiledPatternLayout compiledPatternLayout,
+                         TrainedDictionaries trainedDictionaries) throws IOException, NoSuchAlgorithmException {
+        this.archiveDir = archiveDir;
+        this.settings = settings.copy();
+        this.compiledPatternLayout = compiledPatternLayout;
+        Files.createDirectories(archiveDir);
+        int compressionLevel = settings.compressionLevel;
+
+        if (compressionLevel != 0 && settings.compressionThreads > 0 && !settings.useArchiveContainer) {
+            compressionPipeline = new ZstdCompressionPipeline(archiveDir.getFileName().toString(),
+                    settings.compressionThreads, compressionLevel, settings.compressionBufferSize);
+        } else {
+            compressionPipeline = null;
+        }
+
+        if (settings.useShardedDictionaries) {
+            shardedDictionaries = new ShardedCompressionDictionaries(settings.keyHashAlgorithm,
+                    settings.useOffHeapDictionaryIndex);
+            writerShard = shardedDictionaries.createShard();
+        }
+
+        if (settings.useArchiveContainer) {
+            if (!settings.useTrainedDictionaries || compressionLevel == 0) {
+                trainedDictionaries = null;
+            } else if (null == trainedDictionaries) {
+                trainedDictionaries = new TrainedDictionaries(archiveDir, compressionLevel,
+                        settings.trainedDictionarySampleBytes, settings.trainedDictionarySize);
+            }
+            container = new ArchiveContainerWriter(archiveDir.resolve(CONTAINER_FILENAME), compressionLevel,
+                    trainedDictionaries);
+        } else {
+            container = null;
+        }
+
+        // Loose files are compressed as a whole, trained dictionaries only pay off for chunks
+        this.settings.useTrainedDictionaries = null != container && null != trainedDictionaries;
+        if (settings.useTrainedDictionaries && !this.settings.useTrainedDictionaries) {
+            warnIgnoredSetting("useTrainedDictionaries", "trained dictionaries only apply to compressed archive"
+                    + " containers");
+        }
+
+        if (null != container || settings.useMemoryMappedIO || compressionLevel != 0) {
+            // Only the uncompressed stream-written columns are gathered
+            if (settings.useGatheringWrites) {
+                warnIgnoredSetting("useGatheringWrites", "gathering writes only apply to uncompressed loose"
+                        + " archives written without memory mapping");
+            }
+            this.settings.useGatheringWrites = false;
+        }
+
+        if (null != container && settings.useTemplateGroupedVariables) {
+            templateGroupedVariables = new TemplateGroupedVariables(settings.useCompactVariableEncoding);
+        } else {
+            // Variables are only regrouped at chunk boundaries, loose archive files keep the arrival order
+            if (settings.useTemplateGroupedVariables) {
+                warnIgnoredSetting("useTemplateGroupedVariables", "variables are only grouped by template in"
+                        + " archive containers");
+            }
+            templateGroupedVariables = null;
+            this.settings.useTemplateGroupedVariables = false;
+        }
+
+        if (null != compiledPatternLayout) {
+            this.settings.compiledPattern = compiledPatternLayout.getPattern();
+            this.settings.compiledPatternCharset = compiledPatternLayout.getMessageLayout().getCharset().name();
+        }
+        columns = new ArchiveColumns(archiveDir, this.settings, container, compressionPipeline,
+                compiledPatternLayout);
+        indexes = new ArchiveIndexes(archiveDir, this.settings, null != container, columns.columnIRs.length);
+
+        if ((settings.groupCommitIntervalMillis > 0 || settings.groupCommitEvents > 0) && null == container
+                && 0 == compressionLevel && !settings.useShardedDictionaries && null == compiledPatternLayout) {
+            // Readers of a recovered archive need the metadata, which is only written on close otherwise
+            this.settings.store(archiveDir);
+            commitLog = new CommitLog(archiveDir, columns.getSyncedFilenames());
+            lastCommitMillis = System.currentTimeMillis();
+        } else {
+            if (settings.groupCommitIntervalMillis > 0 || settings.groupCommitEvents > 0) {
+                warnIgnoredSetting("groupCommitIntervalMillis/groupCommitEvents", "group commit only applies to"
+                        + " uncompressed loose archives without sharded dictionaries or compiled pattern layout");
+            }
+            commitLog = null;
+            this.settings.groupCommitIntervalMillis = 0;
+            this.settings.groupCommitEvents = 0;
+        }
+
+        KeyHashAlgorithm keyHashAlgorithm = settings.keyHashAlgorithm;
+        logtypeDictionaryKey = new LogtypeByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+        if (settings.useCompactVariableEncoding) {
+            variableDictionaryKey = new CompactVariableByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+        } else {
+            variableDictionaryKey = new StandardVariableByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+        }
+    }
+
+    public Path getArchiveDir() {
+        return archiveDir;
+    }
+
+    public long getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * @return approximate uncompressed size of the archive: the columns plus the dictionary entries written
+     * so far (with sharded dictionaries, the dictionaries are only written when the archive is closed and
+     * aren't included)
+     */
+    public long getUncompressedSize() {
+        long size = columns.getNumBytes();
+        if (null != templateGroupedVariables) {
+            size += templateGroupedVariables.getNumBytes();
+        }
+        if (null != columns.logtypeDict) {
+            size += columns.logtypeDict.getNumEntryBytes() + columns.variableDict.getNumEntryBytes();
+        }
+        return size;
+    }
+
+    /**
+     * @return shard dictionaries of this archive, or null if it doesn't use sharded dictionaries
+     */
+    public ShardedCompressionDictionaries getShardedDictionaries() {
+        return shardedDictionaries;
+    }
+
+    /**
+     * @return human readable summary of the memory held by the dictionaries
+     */
+    public String getDictionaryMemoryUsage() {
+        long heapBytesUsed;
+        long offHeapBytesUsed;
+        if (null != shardedDictionaries) {
+            heapBytesUsed = shardedDictionaries.getHeapBytesUsed();
+            offHeapBytesUsed = shardedDictionaries.getOffHeapBytesUsed();
+        } else {
+            heapBytesUsed = columns.logtypeDict.getHeapBytesUsed() + columns.variableDict.getHeapBytesUsed();
+            offHeapBytesUsed =
+                    columns.logtypeDict.getOffHeapBytesUsed() + columns.variableDict.getOffHeapBytesUsed();
+        }
+        return "dictionaries use ~" + heapBytesUsed + " heap bytes and " + offHeapBytesUsed + " off-heap bytes";
+    }
+
+    /**
+     * @return human readable statistics of the compression pipeline, null if the archive doesn't use one
+     */
+    public String getCompressionStatistics() {
+        return null != compressionPipeline ? compressionPipeline.getStatistics() : null;
+    }
+
+    public void write(EncodedEvent event) throws IOException, CloneNotSupportedException, NoSuchAlgorithmException {
+        if (null != shardedDictionaries) {
+            writeResolved(event);
+            return;
+        }
+
+        CompressionDictionary.checkEntryLengths(event);
+        // Ids are resolved before any column is written, so an id past the compact encoding's cap drops the
+        // event whole
+        logtypeDictionaryKey.wrapWithDigest(event.logtype.array(), 0, event.logtype.position(),
+                event.logtypeDigest, 0);
+        long logtypeId = settings.useVarintIds ? columns.logtypeDict.getId(logtypeDictionaryKey)
+                : columns.logtypeDict.getCompactId(logtypeDictionaryKey);
+        if (variableIds.length < event.numVariables) {
+            variableIds = new long[event.variableTypes.length];
+        }
+        byte[] messageBytes = event.getMessage().array();
+        for (int i = 0; i < event.numVariables; i++) {
+            if (EncodedEvent.VARIABLE_ID_DELIM == event.variableTypes[i]) {
+                long bounds = event.encodedVariables[i];
+                variableDictionaryKey.wrapWithDigest(messageBytes, EncodedEvent.unpackBeginIndex(bounds),
+                        EncodedEvent.unpackEndIndex(bounds), event.variableDigests, i * EncodedEvent.DIGEST_LENGTH);
+                variableIds[i] = settings.useCompactVariableEncoding && !settings.useVarintIds
+                        ? columns.variableDict.getCompactId(variableDictionaryKey)
+                        : columns.variableDict.getId(variableDictionaryKey);
+            }
+        }
+
+        indexes.indexEvent(numEvents, event.timestamp, columns);
+        // Insert into timestamp column right away, no parsing required
+        // Will encode the format into metadata in future implementation
+        columns.timestampIR.putTimestamp(event.timestamp);
+        columns.putColumnIds(event);
+
+        VariableIR[] slots = null != templateGroupedVariables && event.numVariables > 0
+                ? templateGroupedVariables.getSlots(logtypeId, event.numVariables) : null;
+        for (int i = 0; i < event.numVariables; i++) {
+            VariableIR ir = null != slots ? slots[i] : columns.variableIR;
+            if (EncodedEvent.VARIABLE_ID_DELIM == event.variableTypes[i]) {
+                if (settings.useVarintIds) {
+                    VarintEncoding.putVarint(ir, variableIds[i]);
+                } else {
+                    ir.putEncodedVariable(variableIds[i]);
+                }
+                indexes.postVariable(numEvents, variableIds[i]);
+            } else {
+                ir.putEncodedVariable(event.encodedVariables[i]);
+            }
+        }
+
+        if (settings.useVarintIds) {
+            VarintEncoding.putVarint(columns.logtypeIR, logtypeId);
+        } else {
+            columns.logtypeIR.putLogtype(logtypeId);
+        }
+        countEvent(event);
+    }
+
+    private void writeResolved(EncodedEvent event) throws IOException, NoSuchAlgorithmException {
+        if (event.resolvedDictionaries != shardedDictionaries && !writerShard.resolveIds(event)) {
+            // The writer's shard is full, continue in a new one
+            DictionaryShard shard = shardedDictionaries.createShard();
+            if (null == shard || !shard.resolveIds(event)) {
+                throw new StringIndexOutOfBoundsException("Dictionary shards exceed id encoding capability");
+            }
+            writerShard = shard;
+        }
+        indexes.indexEvent(numEvents, event.timestamp, columns);
+        columns.timestampIR.putTimestamp(event.timestamp);
+        columns.putColumnIds(event);
+        VariableIR[] slots = null != templateGroupedVariables && event.numVariables > 0
+                ? templateGroupedVariables.getSlots(event.logtypeId, event.numVariables) : null;
+        for (int i = 0; i < event.numVariables; i++) {
+            VariableIR ir = null != slots ? slots[i] : columns.variableIR;
+            if (EncodedEvent.VARIABLE_ID_DELIM != event.variableTypes[i]) {
+                ir.putEncodedVariable(event.encodedVariables[i]);
+                continue;
+            }
+            long variableId = event.variableIds[i];
+            indexes.postVariable(numEvents, variableId);
+            if (settings.useVarintIds) {
+                VarintEncoding.putVarint(ir, variableId);
+            } else {
+                ir.putEncodedVariable(variableId);
+            }
+        }
+        if (settings.useVarintIds) {
+            VarintEncoding.putVarint(columns.logtypeIR, event.logtypeId);
+        } else {
+            columns.logtypeIR.putLogtype(event.logtypeId);
+        }
+        countEvent(event);
+    }
+
+    private void countEvent(EncodedEvent event) throws IOException {
+        numEvents++;
+        if (null != commitLog) {
+            if ((settings.groupCommitEvents > 0 && numEvents - numCommittedEvents >= settings.groupCommitEvents)
+                    || (settings.groupCommitIntervalMillis > 0
+                    && System.currentTimeMillis() - lastCommitMillis >= settings.groupCommitIntervalMillis)) {
+                commit();
+            }
+        }
+        if (null != container) {
+            chunkMinTimestamp = Math.min(chunkMinTimestamp, event.timestamp);
+            chunkMaxTimestamp = Math.max(chunkMaxTimestamp, event.timestamp);
+            if (numEvents - chunkFirstEventNum == settings.containerChunkSize) {
+                writeChunk();
+            }
+        }
+    }
+
+    /**
+     * Forces the events written so far to disk and records them in the commit log, so they survive a crash
+     * (see CommitLog.recover). Commits are triggered by writes, an idle archive's last events are committed
+     * by the next write or when it's closed.
+     */
+    public void commit() throws IOException {
+        commitLog.commit(numEvents, columns.sync());
+        numCommittedEvents = numEvents;
+        lastCommitMillis = System.currentTimeMillis();
+    }
+
+    private void writeChunk() throws IOException {
+        if (numEvents == chunkFirstEventNum) {
+            return;
+        }
+        if (null != templateGroupedVariables) {
+            templateGroupedVariables.writeChunk(columns.variableSection);
+        }
+        container.writeChunk(chunkFirstEventNum, (int) (numEvents - chunkFirstEventNum), chunkMinTimestamp,
+                chunkMaxTimestamp);
+        chunkFirstEventNum = numEvents;
+        chunkMinTimestamp = Long.MAX_VALUE;
+        chunkMaxTimestamp = Long.MIN_VALUE;
+    }
+
+    /**
+     * Moves a file written into the archive directory into the container
+     */
+    private void moveIntoContainer(Path path) throws IOException {
+        container.addFile(path.getFileName().toString(), Files.readAllBytes(path));
+        Files.delete(path);
+    }
+
+    public void close() throws IOException {
+        if (null != container) {
+            writeChunk();
+        }
+        if (null != shardedDictionaries) {
+            try {
+                shardedDictionaries.merge(columns.logtypeDictPath, archiveDir.resolve(LOGTYPE_REMAP_FILENAME),
+                        columns.variableDictPath, archiveDir.resolve(VARIABLE_REMAP_FILENAME),
+                        settings.compressionLevel);
+            } catch (NoSuchAlgorithmException | DigestException e) {
+                throw new IOException("Failed to merge dictionary shards", e);
+            }
+            if (null != container) {
+                moveIntoContainer(columns.logtypeDictPath);
+                moveIntoContainer(archiveDir.resolve(LOGTYPE_REMAP_FILENAME));
+                moveIntoContainer(columns.variableDictPath);
+                moveIntoContainer(archiveDir.resolve(VARIABLE_REMAP_FILENAME));
+            }
+        }
+        columns.close();
+        if (null != compressionPipeline) {
+            compressionPipeline.close();
+        }
+        for (Path columnDictPath : columns.writeColumnDictionaries()) {
+            if (null != container) {
+                moveIntoContainer(columnDictPath);
+            }
+        }
+        Path variablePostingsPath = indexes.write(archiveDir);
+        if (null != container && null != variablePostingsPath) {
+            moveIntoContainer(variablePostingsPath);
+        }
+        settings.store(archiveDir);
+        if (null != commitLog) {
+            // The archive is only complete once all of it is on disk, until then it's recovered from the log
+            ArchiveFinalizer.sync(archiveDir);
+            commitLog.delete();
+        }
+        if (null != container) {
+            moveIntoContainer(archiveDir.resolve(ArchiveSettings.METADATA_FILENAME));
+            container.close();
+        }
+    }
+
+    /**
+     * Logs that a setting the archive can't apply is ignored, once per setting and reason
+     */
+    static void warnIgnoredSetting(String setting, String reason) {
+        if (reportedIgnoredSettings.add(setting + reason)) {
+            LOGGER.warn(setting + " is ignored, " + reason);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Records the group commits of an archive that is still being written (see ArchiveWriter.commit). Each
+ * record holds the number of events committed and, for every file of the archive, its length and the
+ * CRC32 of the bytes it gained since the previous record. Records are appended (and forced to disk) only
+ * once the files themselves were forced, so after a crash every record whose checksums match the files
+ * describes a consistent state of the archive: readLastCommit finds the last such record, which readers of an
+ * archive that is still (or was being) written read up to, and recover truncates the files to it.
+ * The log is deleted once the archive is closed, an archive with a commit log was never closed.
+ * Format (big-endian):
+ * <int MAGIC><int numFiles> per file <short nameLength><name>
+ * records: <long numEvents> per file <long length><int crc> then <int crc of the record>
+ */
+public class CommitLog implements Closeable {
+    public static final String FILENAME = "commit.log";
+    private static final int MAGIC = 0x434C5047;   // "CLPG"
+
+    private final Path archiveDir;
+    private final FileChannel commitLogChannel;
+    // Used to checksum what the files gained since the previous commit
+    private final FileChannel[] fileChannels;
+    private final long[] committedLengths;
+    private final ByteBuffer record;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final CRC32 crc32 = new CRC32();
+
+    /**
+     * Creates the commit log of a new archive, with the files that are committed (in the order their lengths
+     * are passed to commit)
+     */
+    public CommitLog(Path archiveDir, String[] filenames) throws IOException {
+        this.archiveDir = archiveDir;
+        commitLogChannel = FileChannel.open(archiveDir.resolve(FILENAME), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        int headerSize = 2 * Integer.BYTES;
+        for (String filename : filenames) {
+            headerSize += Short.BYTES + filename.getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerSize).putInt(MAGIC).putInt(filenames.length);
+        for (String filename : filenames) {
+            byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) name.length).put(name);
+        }
+        write(header.flip());
+        commitLogChannel.force(false);
+        ArchiveFinalizer.sync(archiveDir);
+
+        fileChannels = new FileChannel[filenames.length];
+        for (int i = 0; i < filenames.length; i++) {
+            fileChannels[i] = FileChannel.open(archiveDir.resolve(filenames[i]), StandardOpenOption.READ);
+        }
+        committedLengths = new long[filenames.length];
+        record = ByteBuffer.allocate(getRecordSize(filenames.length));
+    }
+
+    private static int getRecordSize(int numFiles) {
+        return Long.BYTES + numFiles * (Long.BYTES + Integer.BYTES) + Integer.BYTES;
+    }
+
+    /**
+     * Appends a record, the files must have been forced to disk up to the given lengths
+     */
+    public void commit(long numEvents, long[] lengths) throws IOException {
+        record.clear();
+        record.putLong(numEvents);
+        for (int i = 0; i < lengths.length; i++) {
+            record.putLong(lengths[i]);
+            record.putInt(checksum(fileChannels[i], committedLengths[i], lengths[i], readBuffer, crc32));
+            committedLengths[i] = lengths[i];
+        }
+        crc32.reset();
+        crc32.update(record.array(), 0, record.position());
+        record.putInt((int) crc32.getValue());
+        write(record.flip());
+        commitLogChannel.force(false);
+    }
+
+    /**
+     * @return CRC32 of the file's bytes in [begin, end), or -1 if the file is shorter than end
+     */
+    private static int checksum(FileChannel fileChannel, long begin, long end, ByteBuffer readBuffer, CRC32 crc32)
+            throws IOException {
+        crc32.reset();
+        long position = begin;
+        while (position < end) {
+            readBuffer.clear().limit((int) Math.min(readBuffer.capacity(), end - position));
+            int numBytes = fileChannel.read(readBuffer, position);
+            if (numBytes < 0) {
+                return -1;
+            }
+            position += numBytes;
+            crc32.update(readBuffer.flip());
+        }
+        return (int) crc32.getValue();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            commitLogChannel.write(buffer);
+        }
+    }
+
+    /**
+     * Deletes the log, to be called once the archive was closed (and its files are complete)
+     */
+    public void delete() throws IOException {
+        close();
+        Files.delete(archiveDir.resolve(FILENAME));
+    }
+
+    @Override
+    public void close() throws IOException {
+        commitLogChannel.close();
+        for (FileChannel fileChannel : fileChannels) {
+            fileChannel.close();
+        }
+    }
+
+    public static boolean needsRecovery(Path archiveDir) {
+        return Files.exists(archiveDir.resolve(FILENAME));
+    }
+
+    /**
+     * Files of an archive and their lengths at a commit
+     */
+    public static class Commit {
+        public final long numEvents;
+        private final String[] filenames;
+        private final long[] lengths;
+
+        private Commit(long numEvents, String[] filenames, long[] lengths) {
+            this.numEvents = numEvents;
+            this.filenames = filenames;
+            this.lengths = lengths;
+        }
+
+        public String[] getFilenames() {
+            return filenames.clone();
+        }
+
+        /**
+         * @return committed length of the file, or -1 if the file isn't committed
+         */
+        public long getLength(String filename) {
+            for (int i = 0; i < filenames.length; i++) {
+                if (filenames[i].equals(filename)) {
+                    return lengths[i];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Finds the last commit whose checksums match the files of an archive that was never closed, without
+     * modifying the archive, which may still be written
+     * @return the commit, or null if the archive was closed in the meantime
+     */
+    public static Commit readLastCommit(Path archiveDir) throws IOException {
+        ByteBuffer log;
+        try {
+            log = ByteBuffer.wrap(Files.readAllBytes(archiveDir.resolve(FILENAME)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (log.remaining() < 2 * Integer.BYTES || log.getInt() != MAGIC) {
+            throw new IOException("Commit log of " + archiveDir + " is corrupt");
+        }
+        String[] filenames = new String[log.getInt()];
+        for (int i = 0; i < filenames.length; i++) {
+            byte[] name = new byte[log.getShort()];
+            log.get(name);
+            filenames[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        long numEvents = 0;
+        long[] lengths = new long[filenames.length];
+        FileChannel[] fileChannels = new FileChannel[filenames.length];
+        try {
+            for (int i = 0; i < filenames.length; i++) {
+                fileChannels[i] = FileChannel.open(archiveDir.resolve(filenames[i]), StandardOpenOption.READ);
+            }
+            ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+            CRC32 crc32 = new CRC32();
+            int recordSize = getRecordSize(filenames.length);
+            while (log.remaining() >= recordSize) {
+                int recordOffset = log.position();
+                crc32.reset();
+                crc32.update(log.array(), recordOffset, recordSize - Integer.BYTES);
+                if (log.getInt(recordOffset + recordSize - Integer.BYTES) != (int) crc32.getValue()) {
+                    break;   // Torn record
+                }
+                long recordNumEvents = log.getLong();
+                long[] recordLengths = new long[filenames.length];
+                boolean consistent = true;
+                for (int i = 0; i < filenames.length; i++) {
+                    recordLengths[i] = log.getLong();
+                    int crc = log.getInt();
+                    if (consistent && (recordLengths[i] < lengths[i]
+                            || checksum(fileChannels[i], lengths[i], recordLengths[i], readBuffer, crc32) != crc)) {
+                        consistent = false;
+                    }
+                }
+                if (!consistent) {
+                    break;
+                }
+                log.getInt();
+                numEvents = recordNumEvents;
+                lengths = recordLengths;
+            }
+        } finally {
+            for (FileChannel fileChannel : fileChannels) {
+                if (null != fileChannel) {
+                    fileChannel.close();
+                }
+            }
+        }
+        return new Commit(numEvents, filenames, lengths);
+    }
+
+    /**
+     * Truncates the files of an archive that was never closed (e.g. after a crash) to its last commit (see
+     * readLastCommit), and deletes the commit log so the archive can be read like a closed one. Only to be
+     * called by the archive's writer, before it writes anything.
+     * @return the commit the archive was recovered to
+     */
+    public static Commit recover(Path archiveDir) throws IOException {
+        Commit commit = readLastCommit(archiveDir);
+        if (null == commit) {
+            throw new NoSuchFileException(archiveDir.resolve(FILENAME).toString());
+        }
+        for (int i = 0; i < commit.filenames.length; i++) {
+            try (FileChannel fileChannel = FileChannel.open(archiveDir.resolve(commit.filenames[i]),
+                    StandardOpenOption.WRITE)) {
+                fileChannel.truncate(commit.lengths[i]);
+                fileChannel.force(true);
+            }
+        }
+        // Indexes written by an interrupted close may cover events that were just truncated
+        Files.deleteIfExists(archiveDir.resolve(TimeIndex.FILENAME));
+        Files.deleteIfExists(archiveDir.resolve(VariablePostings.FILENAME));
+        VariablePostings.deleteRuns(archiveDir);
+        Files.delete(archiveDir.resolve(FILENAME));
+        ArchiveFinalizer.sync(archiveDir);
+        return commit;
+    }
+}
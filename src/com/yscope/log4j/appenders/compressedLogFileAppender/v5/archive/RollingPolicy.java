@@ -0,0 +1,42 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+/**
+ * Decides when the current archive is closed and a new one is started: once it reaches maxBytes
+ * (uncompressed, see ArchiveWriter.getUncompressedSize) or maxEvents, or when an event's timestamp crosses
+ * the next multiple of intervalMillis (in UTC, e.g. every full hour for an interval of 3600000).
+ * A limit of 0 disables that trigger, the policy never rolls if all of them are 0.
+ * Not thread-safe, like ArchiveWriter it is only used by the thread writing the archive.
+ */
+public class RollingPolicy {
+    public final long maxBytes;
+    public final long maxEvents;
+    public final long intervalMillis;
+    // Timestamp from which events belong to the next archive, set by the archive's first event
+    private long nextRolloverTimestamp = Long.MIN_VALUE;
+
+    public RollingPolicy(long maxBytes, long maxEvents, long intervalMillis) {
+        this.maxBytes = maxBytes;
+        this.maxEvents = maxEvents;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0 || maxEvents > 0 || intervalMillis > 0;
+    }
+
+    /**
+     * @param timestamp timestamp of the event about to be written into archiveWriter
+     * @return whether the event has to go into a new archive
+     */
+    public boolean shouldRoll(ArchiveWriter archiveWriter, long timestamp) {
+        boolean isFirstEvent = 0 == archiveWriter.getNumEvents();
+        boolean roll = !isFirstEvent && ((maxEvents > 0 && archiveWriter.getNumEvents() >= maxEvents)
+                || (maxBytes > 0 && archiveWriter.getUncompressedSize() >= maxBytes)
+                || (intervalMillis > 0 && timestamp >= nextRolloverTimestamp));
+        // The event starts an archive either way
+        if ((isFirstEvent || roll) && intervalMillis > 0) {
+            nextRolloverTimestamp = (Math.floorDiv(timestamp, intervalMillis) + 1) * intervalMillis;
+        }
+        return roll;
+    }
+}
@@ -0,0 +1,141 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.CompactVariableBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.StandardVariableBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.VariableIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Buffers the variables of one chunk of events in sub-columns keyed by (logtype id, placeholder index)
+ * rather than in arrival order: all values of a template's n-th placeholder end up next to each other,
+ * which compresses much better and lets readers scan a single placeholder of a single template.
+ * Values keep their usual encoding (see VariableIR), only their order changes. Readers restore the
+ * arrival order from the logtype column: the k-th event of a logtype takes the k-th value of each of
+ * its sub-columns.
+ * Format of a chunk's variables, as written into var.bin:
+ * <varint numGroups> per group <varint logtypeId><varint numEvents><varint numSlots><varint slotLength>...
+ * followed by the data of every slot, group by group and slot by slot.
+ * Groups are in the order of their first event in the chunk, logtypes without variables have no group.
+ * Not thread-safe, only used by the thread writing the archive.
+ */
+public class TemplateGroupedVariables {
+    private class Group {
+        private final long logtypeId;
+        private int numEvents = 0;
+        private final ByteArrayOutputStream[] slotBuffers;
+        private final VariableIR[] slots;
+
+        private Group(long logtypeId, int numSlots) {
+            this.logtypeId = logtypeId;
+            slotBuffers = new ByteArrayOutputStream[numSlots];
+            slots = new VariableIR[numSlots];
+            for (int i = 0; i < numSlots; i++) {
+                slotBuffers[i] = new ByteArrayOutputStream();
+                slots[i] = useCompactVariableEncoding
+                        ? new CompactVariableBufferedFileOutputStreamIR(slotBuffers[i])
+                        : new StandardVariableBufferedFileOutputStreamIR(slotBuffers[i]);
+            }
+        }
+    }
+
+    private final boolean useCompactVariableEncoding;
+    // Groups are kept across chunks so their buffers are reused
+    private final HashMap<Long, Group> groups = new HashMap<>();
+    private final ArrayList<Group> chunkGroups = new ArrayList<>();
+    // Bytes of the values of the chunks already written
+    private long numWrittenBytes = 0;
+
+    public TemplateGroupedVariables(boolean useCompactVariableEncoding) {
+        this.useCompactVariableEncoding = useCompactVariableEncoding;
+    }
+
+    /**
+     * Counts an event of the logtype into the current chunk
+     * @return sub-column of each placeholder of the logtype, the event's i-th variable goes into the i-th
+     */
+    public VariableIR[] getSlots(long logtypeId, int numVariables) {
+        Group group = groups.get(logtypeId);
+        if (null == group) {
+            group = new Group(logtypeId, numVariables);
+            groups.put(logtypeId, group);
+        }
+        if (0 == group.numEvents) {
+            chunkGroups.add(group);
+        }
+        group.numEvents++;
+        return group.slots;
+    }
+
+    /**
+     * @return number of bytes of the values given to the slots so far, before compression
+     */
+    public long getNumBytes() {
+        long numBytes = numWrittenBytes;
+        for (Group group : chunkGroups) {
+            for (ByteArrayOutputStream slotBuffer : group.slotBuffers) {
+                numBytes += slotBuffer.size();
+            }
+        }
+        return numBytes;
+    }
+
+    /**
+     * Writes the variables of the chunk and starts the next one
+     */
+    public void writeChunk(OutputStream outputStream) throws IOException {
+        VarintEncoding.putVarint(outputStream, chunkGroups.size());
+        for (Group group : chunkGroups) {
+            VarintEncoding.putVarint(outputStream, group.logtypeId);
+            VarintEncoding.putVarint(outputStream, group.numEvents);
+            VarintEncoding.putVarint(outputStream, group.slots.length);
+            for (ByteArrayOutputStream slotBuffer : group.slotBuffers) {
+                VarintEncoding.putVarint(outputStream, slotBuffer.size());
+            }
+        }
+        for (Group group : chunkGroups) {
+            for (ByteArrayOutputStream slotBuffer : group.slotBuffers) {
+                slotBuffer.writeTo(outputStream);
+                numWrittenBytes += slotBuffer.size();
+                slotBuffer.reset();
+            }
+            group.numEvents = 0;
+        }
+        chunkGroups.clear();
+    }
+
+    /**
+     * Reads the variables of the next chunk, leaving variableBuffer positioned at the chunk after it
+     * @return sub-columns of every logtype with variables in the chunk, by logtype id, each positioned at the
+     * chunk's first value
+     */
+    public static HashMap<Long, ByteBuffer[]> readChunk(ByteBuffer variableBuffer) {
+        int numGroups = (int) VarintEncoding.getVarint(variableBuffer);
+        long[] logtypeIds = new long[numGroups];
+        int[][] slotLengths = new int[numGroups][];
+        for (int i = 0; i < numGroups; i++) {
+            logtypeIds[i] = VarintEncoding.getVarint(variableBuffer);
+            VarintEncoding.getVarint(variableBuffer);   // Number of events, implied by the logtype column
+            slotLengths[i] = new int[(int) VarintEncoding.getVarint(variableBuffer)];
+            for (int slot = 0; slot < slotLengths[i].length; slot++) {
+                slotLengths[i][slot] = (int) VarintEncoding.getVarint(variableBuffer);
+            }
+        }
+        HashMap<Long, ByteBuffer[]> chunkSlots = new HashMap<>();
+        for (int i = 0; i < numGroups; i++) {
+            ByteBuffer[] slots = new ByteBuffer[slotLengths[i].length];
+            for (int slot = 0; slot < slots.length; slot++) {
+                slots[slot] = variableBuffer.slice(variableBuffer.position(), slotLengths[i][slot]);
+                variableBuffer.position(variableBuffer.position() + slotLengths[i][slot]);
+            }
+            chunkSlots.put(logtypeIds[i], slots);
+        }
+        return chunkSlots;
+    }
+}
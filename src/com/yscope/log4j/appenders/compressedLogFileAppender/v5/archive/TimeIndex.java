@@ -0,0 +1,170 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sparse index of a loose archive's events (time.index): every interval events, the event number, the byte
+ * offsets of the event in each IR column (uncompressed, in the order the writer passes them) and the range of
+ * timestamps of the interval's events. Readers look up the intervals whose timestamps overlap a time range
+ * and read only those (see Decompressor.decompress(OutputStream, long, long)).
+ * Timestamps of an archive are mostly increasing, with small jitter between logging threads, so intervals
+ * are found with binary searches over the running maximum of the intervals' maximum timestamps and the
+ * running minimum (from the end) of their minimum timestamps, both monotonic whatever the jitter.
+ * Format (big-endian): <int numColumns><int interval> then per interval
+ * <long firstEventNum><long minTimestamp><long maxTimestamp> per column <long offset>
+ */
+public class TimeIndex {
+    public static final String FILENAME = "time.index";
+
+    /**
+     * Events [firstEventNum, firstEventNum + interval) of the archive
+     */
+    public static class Interval {
+        public final long firstEventNum;
+        public final long[] offsets;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        private Interval(long firstEventNum, long[] offsets) {
+            this.firstEventNum = firstEventNum;
+            this.offsets = offsets;
+        }
+
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+    }
+
+    private final int numColumns;
+    private final int interval;
+    private final ArrayList<Interval> intervals = new ArrayList<>();
+    // Only set once loaded, see find
+    private long[] runningMaxTimestamps;
+    private long[] runningMinTimestamps;
+
+    public TimeIndex(int numColumns, int interval) {
+        this.numColumns = numColumns;
+        this.interval = interval;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return intervals of the archive, the n-th starting at event n * interval
+     */
+    public List<Interval> getIntervals() {
+        return intervals;
+    }
+
+    /**
+     * Starts the interval of the event about to be written if it's the first of one, then adds its timestamp
+     * @param eventNum number of the event, events are added in order
+     * @param offsets offsets of the event in the columns, only read at the start of an interval
+     */
+    public void add(long eventNum, long timestamp, long[] offsets) {
+        if (eventNum % interval == 0) {
+            intervals.add(new Interval(eventNum, offsets.clone()));
+        }
+        Interval last = intervals.get(intervals.size() - 1);
+        last.minTimestamp = Math.min(last.minTimestamp, timestamp);
+        last.maxTimestamp = Math.max(last.maxTimestamp, timestamp);
+    }
+
+    public void write(Path archiveDir) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(archiveDir.resolve(FILENAME))))) {
+            outputStream.writeInt(numColumns);
+            outputStream.writeInt(interval);
+            for (Interval interval : intervals) {
+                outputStream.writeLong(interval.firstEventNum);
+                outputStream.writeLong(interval.minTimestamp);
+                outputStream.writeLong(interval.maxTimestamp);
+                for (long offset : interval.offsets) {
+                    outputStream.writeLong(offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return index of the archive, or null if it has none (e.g. it was written without, or recovered from its
+     * commit log)
+     */
+    public static TimeIndex load(Path archiveDir) throws IOException {
+        Path path = archiveDir.resolve(FILENAME);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        TimeIndex index = new TimeIndex(buffer.getInt(), buffer.getInt());
+        while (buffer.hasRemaining()) {
+            Interval interval = new Interval(buffer.getLong(), new long[index.numColumns]);
+            interval.minTimestamp = buffer.getLong();
+            interval.maxTimestamp = buffer.getLong();
+            for (int i = 0; i < index.numColumns; i++) {
+                interval.offsets[i] = buffer.getLong();
+            }
+            index.intervals.add(interval);
+        }
+        int numIntervals = index.intervals.size();
+        index.runningMaxTimestamps = new long[numIntervals];
+        index.runningMinTimestamps = new long[numIntervals];
+        for (int i = 0; i < numIntervals; i++) {
+            index.runningMaxTimestamps[i] = Math.max(i > 0 ? index.runningMaxTimestamps[i - 1] : Long.MIN_VALUE,
+                    index.intervals.get(i).maxTimestamp);
+        }
+        for (int i = numIntervals - 1; i >= 0; i--) {
+            index.runningMinTimestamps[i] = Math.min(
+                    i < numIntervals - 1 ? index.runningMinTimestamps[i + 1] : Long.MAX_VALUE,
+                    index.intervals.get(i).minTimestamp);
+        }
+        return index;
+    }
+
+    /**
+     * @return intervals with events in [beginTimestamp, endTimestamp], in order
+     */
+    public ArrayList<Interval> find(long beginTimestamp, long endTimestamp) {
+        // Intervals before the first whose running maximum reaches beginTimestamp end before it
+        int first = 0;
+        for (int high = intervals.size(); first < high; ) {
+            int mid = (first + high) >>> 1;
+            if (runningMaxTimestamps[mid] < beginTimestamp) {
+                first = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // Intervals from the first whose running minimum (from the end) exceeds endTimestamp start after it
+        int end = first;
+        for (int high = intervals.size(); end < high; ) {
+            int mid = (end + high) >>> 1;
+            if (runningMinTimestamps[mid] <= endTimestamp) {
+                end = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        ArrayList<Interval> found = new ArrayList<>();
+        for (int i = first; i < end; i++) {
+            Interval interval = intervals.get(i);
+            if (interval.maxTimestamp >= beginTimestamp && interval.minTimestamp <= endTimestamp) {
+                found.add(interval);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,138 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+/**
+ * Zstd dictionaries trained on the first sampleBytes of each section of archive containers (see
+ * ArchiveContainerWriter), so the small, independently compressed chunks don't each start from an empty
+ * compression context. Until a section's dictionary is trained, its chunks are compressed without one and
+ * sampled. Trained dictionaries are stored as <section><FILE_EXTENSION> in the log directory and used by
+ * every later chunk and archive, including archives written after a restart.
+ * Zstd records the dictionary's id in each frame, readers load the dictionaries once (see load) and pick
+ * the one each frame needs.
+ * Thread-safe: rolled archives are closed (and their last chunk compressed) by the finalizer thread.
+ */
+public class TrainedDictionaries {
+    public static final String FILE_EXTENSION = ".zdict";
+    // Zstd trains on many small samples, so sections are split into samples of at most this size
+    private static final int SAMPLE_SIZE = 8 * 1024;
+
+    private static class SectionDictionary {
+        private ZstdDictTrainer trainer;
+        private ZstdDictCompress compressor;
+    }
+
+    private final Path dictionaryDir;
+    private final int compressionLevel;
+    private final int sampleBytes;
+    private final int dictionarySize;
+    private final HashMap<String, SectionDictionary> sectionDictionaries = new HashMap<>();
+
+    /**
+     * Loads the dictionaries already trained in dictionaryDir
+     * @param sampleBytes number of bytes of each section to train its dictionary on
+     * @param dictionarySize maximum size of each dictionary
+     */
+    public TrainedDictionaries(Path dictionaryDir, int compressionLevel, int sampleBytes, int dictionarySize)
+            throws IOException {
+        this.dictionaryDir = dictionaryDir;
+        this.compressionLevel = compressionLevel;
+        this.sampleBytes = sampleBytes;
+        this.dictionarySize = dictionarySize;
+        for (Path path : listDictionaries(dictionaryDir)) {
+            String filename = path.getFileName().toString();
+            SectionDictionary sectionDictionary = new SectionDictionary();
+            sectionDictionary.compressor = new ZstdDictCompress(Files.readAllBytes(path), compressionLevel);
+            sectionDictionaries.put(filename.substring(0, filename.length() - FILE_EXTENSION.length()),
+                    sectionDictionary);
+        }
+    }
+
+    /**
+     * @return dictionary to compress the section with, null if it isn't trained (yet)
+     */
+    public synchronized ZstdDictCompress getCompressor(String sectionName) {
+        SectionDictionary sectionDictionary = sectionDictionaries.get(sectionName);
+        return null != sectionDictionary ? sectionDictionary.compressor : null;
+    }
+
+    /**
+     * Samples a chunk of the section compressed without dictionary, and trains the section's dictionary once
+     * sampleBytes were sampled
+     */
+    public synchronized void addSample(String sectionName, byte[] data, int length) throws IOException {
+        SectionDictionary sectionDictionary = sectionDictionaries.get(sectionName);
+        if (null == sectionDictionary) {
+            sectionDictionary = new SectionDictionary();
+            sectionDictionary.trainer = new ZstdDictTrainer(sampleBytes, dictionarySize);
+            sectionDictionaries.put(sectionName, sectionDictionary);
+        }
+        if (null == sectionDictionary.trainer) {
+            return;
+        }
+        for (int offset = 0; offset < length; offset += SAMPLE_SIZE) {
+            byte[] sample = Arrays.copyOfRange(data, offset, Math.min(length, offset + SAMPLE_SIZE));
+            if (!sectionDictionary.trainer.addSample(sample)) {
+                train(sectionName, sectionDictionary);
+                return;
+            }
+        }
+    }
+
+    private void train(String sectionName, SectionDictionary sectionDictionary) throws IOException {
+        byte[] dictionary;
+        try {
+            dictionary = sectionDictionary.trainer.trainSamples();
+        } catch (ZstdException e) {
+            // E.g. samples too uniform to build a dictionary from, the section stays without one
+            sectionDictionary.trainer = null;
+            return;
+        }
+        sectionDictionary.trainer = null;
+        // Written aside and moved, so a crash never leaves a partial dictionary behind
+        Path path = dictionaryDir.resolve(sectionName + FILE_EXTENSION);
+        Path tempPath = dictionaryDir.resolve(sectionName + FILE_EXTENSION + ".tmp");
+        Files.write(tempPath, dictionary);
+        try (FileChannel fc = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+            fc.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        sectionDictionary.compressor = new ZstdDictCompress(dictionary, compressionLevel);
+    }
+
+    /**
+     * @return dictionaries stored in dictionaryDir, by dictionary id
+     */
+    public static HashMap<Long, ZstdDictDecompress> load(Path dictionaryDir) throws IOException {
+        HashMap<Long, ZstdDictDecompress> dictionaries = new HashMap<>();
+        for (Path path : listDictionaries(dictionaryDir)) {
+            byte[] dictionary = Files.readAllBytes(path);
+            dictionaries.put(Zstd.getDictIdFromDict(dictionary), new ZstdDictDecompress(dictionary));
+        }
+        return dictionaries;
+    }
+
+    private static Path[] listDictionaries(Path dictionaryDir) throws IOException {
+        if (!Files.isDirectory(dictionaryDir)) {
+            return new Path[0];
+        }
+        try (Stream<Path> paths = Files.list(dictionaryDir)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(FILE_EXTENSION))
+                    .toArray(Path[]::new);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.PriorityQueue;
+import java.util.function.LongPredicate;
+
+/**
+ * Inverted index of an archive's dictionary variables (variable.postings): for every variable id, as written in
+ * the variable column (i.e. shard-local with sharded dictionaries), the blocks of events it appears in. Blocks
+ * are the chunks of a container, or the intervals of the TimeIndex of loose files, so a query that can only
+ * match through some dictionary variables only reads the blocks of these variables (see findBlocks).
+ * Postings are buffered up to a memory budget while the archive is written, then sorted and spilled into a run
+ * file (variable.postings.<run>). Closing merges the runs. Like the containers of a Roaring bitmap, each list
+ * is stored either as the deltas between its blocks or as a bitmap of the blocks from its first one,
+ * whichever is smaller.
+ * Format: per variable, by increasing id
+ * <varint id delta><byte encoding><varint length> then <varint first block> followed by <varint delta>... or
+ * <long bitmap word>...
+ * Not thread-safe, only used by the thread writing the archive.
+ */
+public class VariablePostings {
+    public static final String FILENAME = "variable.postings";
+    private static final String RUN_FILENAME_PREFIX = FILENAME + ".";
+    private static final byte DELTA_ENCODING = 0;
+    private static final byte BITMAP_ENCODING = 1;
+    // Buffered id and block, plus the entry of the id in lastBlocks
+    private static final int BUFFERED_POSTING_BYTES = 2 * (Long.BYTES + Integer.BYTES);
+
+    private final Path archiveDir;
+    private final int maxBufferedPostings;
+    private final LongArrayList ids = new LongArrayList();
+    private final IntArrayList blocks = new IntArrayList();
+    // Last block each variable was posted in since the last spill, so lists don't repeat blocks
+    private final Long2IntOpenHashMap lastBlocks = new Long2IntOpenHashMap();
+    private int numRuns = 0;
+
+    // State of the list being written by write
+    private final IntArrayList listBlocks = new IntArrayList();
+    private long listId;
+    private long previousListId = 0;
+    private final ByteArrayOutputStream listBuffer = new ByteArrayOutputStream();
+
+    /**
+     * @param maxBufferedBytes memory the postings are buffered in before being spilled
+     */
+    public VariablePostings(Path archiveDir, int maxBufferedBytes) {
+        this.archiveDir = archiveDir;
+        maxBufferedPostings = Math.max(1, maxBufferedBytes / BUFFERED_POSTING_BYTES);
+        lastBlocks.defaultReturnValue(-1);
+    }
+
+    /**
+     * Posts the variable in the block, blocks are added in increasing order
+     */
+    public void add(long variableId, int block) throws IOException {
+        if (lastBlocks.put(variableId, block) == block) {
+            return;
+        }
+        ids.add(variableId);
+        blocks.add(block);
+        if (ids.size() >= maxBufferedPostings) {
+            spill();
+        }
+    }
+
+    private void sortBufferedPostings() {
+        long[] idArray = ids.elements();
+        int[] blockArray = blocks.elements();
+        Arrays.quickSort(0, ids.size(), (a, b) -> idArray[a] != idArray[b]
+                ? Long.compare(idArray[a], idArray[b]) : Integer.compare(blockArray[a], blockArray[b]), (a, b) -> {
+            long id = idArray[a];
+            idArray[a] = idArray[b];
+            idArray[b] = id;
+            int block = blockArray[a];
+            blockArray[a] = blockArray[b];
+            blockArray[b] = block;
+        });
+    }
+
+    /**
+     * Writes the buffered postings, sorted, into the next run file
+     * Format: <long id><int block>...
+     */
+    private void spill() throws IOException {
+        sortBufferedPostings();
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(archiveDir.resolve(RUN_FILENAME_PREFIX + numRuns))))) {
+            for (int i = 0; i < ids.size(); i++) {
+                outputStream.writeLong(ids.getLong(i));
+                outputStream.writeInt(blocks.getInt(i));
+            }
+        }
+        numRuns++;
+        ids.clear();
+        blocks.clear();
+        lastBlocks.clear();
+    }
+
+    /**
+     * Sorted postings of a run file
+     */
+    private static class Run implements Comparable<Run> {
+        private final int runNum;
+        private final DataInputStream inputStream;
+        private long id;
+        private int block;
+
+        private Run(int runNum, DataInputStream inputStream) {
+            this.runNum = runNum;
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * @return whether there was another posting
+         */
+        private boolean next() throws IOException {
+            try {
+                id = inputStream.readLong();
+                block = inputStream.readInt();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            // Runs were spilled in block order
+            return id != other.id ? Long.compare(id, other.id) : Integer.compare(runNum, other.runNum);
+        }
+    }
+
+    /**
+     * Writes the index into the archive directory, merging the runs spilled so far
+     * @return path of the index
+     */
+    public Path write() throws IOException {
+        Path path = archiveDir.resolve(FILENAME);
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path))) {
+            if (0 == numRuns) {
+                sortBufferedPostings();
+                for (int i = 0; i < ids.size(); i++) {
+                    post(outputStream, ids.getLong(i), blocks.getInt(i));
+                }
+            } else {
+                if (!ids.isEmpty()) {
+                    spill();
+                }
+                merge(outputStream);
+            }
+            writeList(outputStream);
+        }
+        return path;
+    }
+
+    private void merge(OutputStream outputStream) throws IOException {
+        PriorityQueue<Run> runs = new PriorityQueue<>();
+        try {
+            for (int runNum = 0; runNum < numRuns; runNum++) {
+                Run run = new Run(runNum, new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(archiveDir.resolve(RUN_FILENAME_PREFIX + runNum)))));
+                if (run.next()) {
+                    runs.add(run);
+                } else {
+                    run.inputStream.close();
+                }
+            }
+            while (!runs.isEmpty()) {
+                Run run = runs.poll();
+                post(outputStream, run.id, run.block);
+                if (run.next()) {
+                    runs.add(run);
+                } else {
+                    run.inputStream.close();
+                }
+            }
+        } finally {
+            for (Run run : runs) {
+                run.inputStream.close();
+            }
+            deleteRuns(archiveDir);
+        }
+    }
+
+    /**
+     * Adds a posting to the list being written, postings come by id then block
+     */
+    private void post(OutputStream outputStream, long variableId, int block) throws IOException {
+        if (!listBlocks.isEmpty() && variableId != listId) {
+            writeList(outputStream);
+        }
+        listId = variableId;
+        // The same block may end one run and start the next
+        if (listBlocks.isEmpty() || listBlocks.getInt(listBlocks.size() - 1) != block) {
+            listBlocks.add(block);
+        }
+    }
+
+    private void writeList(OutputStream outputStream) throws IOException {
+        if (listBlocks.isEmpty()) {
+            return;
+        }
+        int firstBlock = listBlocks.getInt(0);
+        int lastBlock = listBlocks.getInt(listBlocks.size() - 1);
+        int deltaLength = 0;
+        for (int i = 1; i < listBlocks.size(); i++) {
+            deltaLength += varintLength(listBlocks.getInt(i) - listBlocks.getInt(i - 1));
+        }
+        int bitmapLength = ((lastBlock - firstBlock) / Long.SIZE + 1) * Long.BYTES;
+
+        listBuffer.reset();
+        VarintEncoding.putVarint(listBuffer, firstBlock);
+        byte encoding;
+        if (deltaLength <= bitmapLength) {
+            encoding = DELTA_ENCODING;
+            for (int i = 1; i < listBlocks.size(); i++) {
+                VarintEncoding.putVarint(listBuffer, listBlocks.getInt(i) - listBlocks.getInt(i - 1));
+            }
+        } else {
+            encoding = BITMAP_ENCODING;
+            long[] words = new long[bitmapLength / Long.BYTES];
+            for (int i = 0; i < listBlocks.size(); i++) {
+                int bit = listBlocks.getInt(i) - firstBlock;
+                words[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+            }
+            DataOutputStream wordStream = new DataOutputStream(listBuffer);
+            for (long word : words) {
+                wordStream.writeLong(word);
+            }
+        }
+        VarintEncoding.putVarint(outputStream, listId - previousListId);
+        outputStream.write(encoding);
+        VarintEncoding.putVarint(outputStream, listBuffer.size());
+        listBuffer.writeTo(outputStream);
+        previousListId = listId;
+        listBlocks.clear();
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Deletes the run files of an archive whose index was never written (e.g. recovered from its commit log)
+     */
+    public static void deleteRuns(Path archiveDir) throws IOException {
+        try (DirectoryStream<Path> runPaths = Files.newDirectoryStream(archiveDir, RUN_FILENAME_PREFIX + "*")) {
+            for (Path runPath : runPaths) {
+                Files.delete(runPath);
+            }
+        }
+    }
+
+    /**
+     * @param postings the index
+     * @param variableMatches whether the blocks of a variable id are wanted
+     * @return blocks any of the wanted variables appears in
+     */
+    public static BitSet findBlocks(ByteBuffer postings, LongPredicate variableMatches) {
+        BitSet foundBlocks = new BitSet();
+        long variableId = 0;
+        while (postings.hasRemaining()) {
+            variableId += VarintEncoding.getVarint(postings);
+            byte encoding = postings.get();
+            int length = (int) VarintEncoding.getVarint(postings);
+            int listEnd = postings.position() + length;
+            if (!variableMatches.test(variableId)) {
+                postings.position(listEnd);
+                continue;
+            }
+            int block = (int) VarintEncoding.getVarint(postings);
+            if (DELTA_ENCODING == encoding) {
+                foundBlocks.set(block);
+                while (postings.position() < listEnd) {
+                    block += (int) VarintEncoding.getVarint(postings);
+                    foundBlocks.set(block);
+                }
+            } else {
+                for (int wordBlock = block; postings.position() < listEnd; wordBlock += Long.SIZE) {
+                    for (long word = postings.getLong(); word != 0; word &= word - 1) {
+                        foundBlocks.set(wordBlock + Long.numberOfTrailingZeros(word));
+                    }
+                }
+            }
+        }
+        return foundBlocks;
+    }
+}
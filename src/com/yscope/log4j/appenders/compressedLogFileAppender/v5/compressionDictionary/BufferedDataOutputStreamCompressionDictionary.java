@@ -1,33 +1,77 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.PipelinedZstdOutputStream;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class BufferedDataOutputStreamCompressionDictionary extends CompressionDictionary {
     protected DataOutputStream bufferedDataOutputStream;
+    // Only set for uncompressed files, which are the only ones that can be synced
+    private FileChannel fileChannel;
 
     public BufferedDataOutputStreamCompressionDictionary(final Path path, int compressionLevel)
             throws IOException {
-        if (compressionLevel != 0) {
+        this(path, compressionLevel, null, 0);
+    }
+
+    /**
+     * @param pipeline if not null (and compressionLevel isn't 0), entries are compressed by the pipeline's threads
+     * @param numBuffers number of buffers the dictionary may have in the pipeline
+     */
+    public BufferedDataOutputStreamCompressionDictionary(final Path path, int compressionLevel,
+                                                         ZstdCompressionPipeline pipeline, int numBuffers)
+            throws IOException {
+        if (compressionLevel != 0 && null != pipeline) {
+            PipelinedZstdOutputStream pipelinedZstdOutputStream = new PipelinedZstdOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(path), 8192), pipeline, numBuffers);
+            bufferedDataOutputStream = new DataOutputStream(new BufferedOutputStream(pipelinedZstdOutputStream, 16384));
+        } else if (compressionLevel != 0) {
             BufferedOutputStream compressedInput = new BufferedOutputStream(Files.newOutputStream(path), 8192);
             ZstdCompressorOutputStream zstdCompressorOutputStream =
                     new ZstdCompressorOutputStream(compressedInput, compressionLevel);
             BufferedOutputStream decompressedInput = new BufferedOutputStream(zstdCompressorOutputStream, 16384);
             bufferedDataOutputStream = new DataOutputStream(decompressedInput);
         } else {
-            bufferedDataOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            bufferedDataOutputStream = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(fileChannel)));
         }
     }
 
+    /**
+     * Writes entries straight into outputStream (e.g. a section of an archive container), without buffering
+     * or compression
+     */
+    public BufferedDataOutputStreamCompressionDictionary(OutputStream outputStream) {
+        bufferedDataOutputStream = new DataOutputStream(outputStream);
+    }
+
     @Override
     public void close() throws IOException {
         bufferedDataOutputStream.close();
+        super.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+        if (null == fileChannel) {
+            throw new IOException("Only uncompressed files can be synced");
+        }
+        bufferedDataOutputStream.flush();
+        fileChannel.force(false);
+        return fileChannel.position();
     }
 
     @Override
@@ -36,7 +80,7 @@ public class BufferedDataOutputStreamCompressionDictionary extends CompressionDi
         // Format: <unsigned short length><utf8 string><unsigned short length><utf8 string>...
         // Java doesn't have unsigned short types except for char (16bit), therefore we cast it to char
         int dictionaryKeyLength = byteArrayViewDictionaryKey.getViewSize();
-        if (dictionaryKeyLength > Character.MAX_VALUE) {
+        if (dictionaryKeyLength > MAX_ENTRY_LENGTH) {
             throw new StringIndexOutOfBoundsException("Dictionary key's length exceeds encoding capability");
         }
         try {
@@ -1,39 +1,162 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 import java.io.IOException;
+import java.util.Arrays;
 
+/**
+ * Hands out ids to dictionary keys and persists every new entry. The lookup is done by a DictionaryIndex:
+ * by default a heap map keyed by digest (see DigestMapDictionaryIndex), or an off-heap arena index
+ * (see OffHeapArenaDictionaryIndex) after useOffHeapIndex. Both must be chosen before the first insertion.
+ */
 public abstract class CompressionDictionary {
+    // Entries are persisted with an unsigned short length prefix
+    public static final int MAX_ENTRY_LENGTH = Character.MAX_VALUE;
+
     protected int nextDictionaryId = 0;
-    protected Object2IntOpenCustomHashMap<byte[]> compressionDictionary =
-            new Object2IntOpenCustomHashMap<>(new Sha256DigestHashStrategy<>());
+    protected long numEntryBytes = 0;   // Uncompressed size of the persisted entries
+    protected DictionaryIndex dictionaryIndex = new DigestMapDictionaryIndex(this);
+
+    // Only allocated if entries need to be kept in memory
+    protected ByteArrayList entryBytes;
+    protected IntArrayList entryOffsets;
 
-    public abstract void close() throws IOException;
+    public void close() throws IOException {
+        dictionaryIndex.close();
+    }
+
+    /**
+     * Forces the entries persisted so far to disk (see ArchiveWriter.commit)
+     * @return length of the dictionary's file on disk
+     */
+    public long sync() throws IOException {
+        throw new IOException(getClass().getSimpleName() + " can't be synced");
+    }
 
     protected abstract void persistDictionaryEntry(ByteArrayViewDictionaryKey byteArrayViewDictionaryKey)
             throws IOException;
 
+    /**
+     * Must be enabled when keys are hashed with a non-cryptographic digest
+     */
+    public void enableByteExactVerification() {
+        if (dictionaryIndex instanceof DigestMapDictionaryIndex) {
+            ((DigestMapDictionaryIndex) dictionaryIndex).enableByteExactVerification();
+            retainEntries();
+        }
+        // The off-heap index always compares key bytes
+    }
+
+    public void useOffHeapIndex() {
+        dictionaryIndex = new OffHeapArenaDictionaryIndex();
+    }
+
+    protected void retainEntries() {
+        if (null == entryBytes) {
+            entryBytes = new ByteArrayList();
+            entryOffsets = new IntArrayList();
+        }
+    }
+
+    /**
+     * Rejects an event whose logtype or dictionary variables are too long to be persisted, so it can be
+     * dropped before any of it is written
+     */
+    public static void checkEntryLengths(EncodedEvent event) {
+        boolean tooLong = event.logtype.position() > MAX_ENTRY_LENGTH;
+        for (int i = 0; i < event.numVariables && !tooLong; i++) {
+            if (EncodedEvent.VARIABLE_ID_DELIM == event.variableTypes[i]) {
+                long bounds = event.encodedVariables[i];
+                tooLong = EncodedEvent.unpackEndIndex(bounds) - EncodedEvent.unpackBeginIndex(bounds)
+                        > MAX_ENTRY_LENGTH;
+            }
+        }
+        if (tooLong) {
+            throw new StringIndexOutOfBoundsException("Dictionary key's length exceeds encoding capability");
+        }
+    }
+
     public int getId(ByteArrayViewDictionaryKey byteArrayViewDictionaryKey) throws IOException {
-        final byte[] digest = byteArrayViewDictionaryKey.digest;
-        int id = compressionDictionary.getOrDefault(digest, nextDictionaryId);
+        return getId(byteArrayViewDictionaryKey, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws DictionaryIdCapException if the key is new and every compact id is taken
+     */
+    public char getCompactId(ByteArrayViewDictionaryKey byteArrayViewDictionaryKey) throws IOException {
+        return (char) getId(byteArrayViewDictionaryKey, Character.MAX_VALUE);
+    }
+
+    /**
+     * @param maxId largest id a new key may get
+     */
+    private int getId(ByteArrayViewDictionaryKey byteArrayViewDictionaryKey, int maxId) throws IOException {
+        // Checked before indexing the key, so an entry that can't be persisted never gets an id
+        if (byteArrayViewDictionaryKey.getViewSize() > MAX_ENTRY_LENGTH) {
+            throw new StringIndexOutOfBoundsException("Dictionary key's length exceeds encoding capability");
+        }
+        if (nextDictionaryId > maxId) {
+            int id = dictionaryIndex.get(byteArrayViewDictionaryKey);
+            if (id < 0) {
+                throw new DictionaryIdCapException(maxId);
+            }
+            return id;
+        }
+        int id = dictionaryIndex.getOrInsert(byteArrayViewDictionaryKey, nextDictionaryId);
         if (id == nextDictionaryId) {
-            // Insert a deep copy of sha256 digest into the dictionary
-            byte[] digestCopy = new byte[32];
-            System.arraycopy(digest, 0, digestCopy, 0, 32);
-            compressionDictionary.put(digestCopy, nextDictionaryId++);
+            if (null != entryBytes) {
+                entryOffsets.add(entryBytes.size());
+                entryBytes.addElements(entryBytes.size(), byteArrayViewDictionaryKey.bytes,
+                        byteArrayViewDictionaryKey.beginIndex, byteArrayViewDictionaryKey.getViewSize());
+            }
             persistDictionaryEntry(byteArrayViewDictionaryKey);
+            numEntryBytes += Character.BYTES + byteArrayViewDictionaryKey.getViewSize();
+            nextDictionaryId++;
         }
         return id;
     }
 
-    public char getCompactId(ByteArrayViewDictionaryKey byteArrayViewDictionaryKey)
-            throws IOException, CloneNotSupportedException {
-        int id = getId(byteArrayViewDictionaryKey);
-        if (id > Character.MAX_VALUE) {
-            throw new StringIndexOutOfBoundsException("Dictionary key's length exceeds encoding capability");
+    public int getNumEntries() {
+        return nextDictionaryId;
+    }
+
+    /**
+     * @return uncompressed size of the dictionary file (entries and their length prefixes)
+     */
+    public long getNumEntryBytes() {
+        return numEntryBytes;
+    }
+
+    /**
+     * @return approximate heap and off-heap bytes held by the index and retained entries
+     */
+    public long getHeapBytesUsed() {
+        long heapBytesUsed = dictionaryIndex.getHeapBytesUsed();
+        if (null != entryBytes) {
+            heapBytesUsed += entryBytes.elements().length + (long) entryOffsets.elements().length * Integer.BYTES;
         }
-        return (char) id;
+        return heapBytesUsed;
+    }
+
+    public long getOffHeapBytesUsed() {
+        return dictionaryIndex.getOffHeapBytesUsed();
+    }
+
+    boolean entryEquals(int id, ByteArrayViewDictionaryKey byteArrayViewDictionaryKey) {
+        return Arrays.equals(entryBytes.elements(), getEntryBeginIndex(id), getEntryEndIndex(id),
+                byteArrayViewDictionaryKey.bytes, byteArrayViewDictionaryKey.beginIndex,
+                byteArrayViewDictionaryKey.endIndex);
+    }
+
+    public int getEntryBeginIndex(int id) {
+        return entryOffsets.getInt(id);
+    }
+
+    public int getEntryEndIndex(int id) {
+        return id + 1 < entryOffsets.size() ? entryOffsets.getInt(id + 1) : entryBytes.size();
     }
 }
@@ -0,0 +1,11 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+/**
+ * Thrown when a new key would need an id past the largest id its encoding can hold (e.g. the 65,535 of
+ * compact ids). The key is neither indexed nor persisted, so the rejected event leaves no trace.
+ */
+public class DictionaryIdCapException extends IndexOutOfBoundsException {
+    public DictionaryIdCapException(int maxId) {
+        super("Dictionary is full, new keys would exceed the id encoding's cap of " + maxId);
+    }
+}
@@ -0,0 +1,25 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+
+/**
+ * Lookup structure behind a CompressionDictionary, maps the bytes of a key to its dictionary id
+ */
+public interface DictionaryIndex {
+    /**
+     * Looks up the key, inserting it with nextId if it isn't indexed yet
+     * @return id of the key, nextId if it was just inserted
+     */
+    int getOrInsert(ByteArrayViewDictionaryKey key, int nextId);
+
+    /**
+     * @return id of the key, -1 if it isn't indexed
+     */
+    int get(ByteArrayViewDictionaryKey key);
+
+    long getHeapBytesUsed();
+
+    long getOffHeapBytesUsed();
+
+    void close();
+}
@@ -0,0 +1,124 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Thread-private pair of logtype/variable dictionaries. Ids handed out by a shard are local to it and
+ * are tagged with the shard index: (shardIndex << LOCAL_ID_BITS) | localId. The ids are translated into
+ * the archive's global id space through the remap tables written when the shards are merged.
+ * A shard is owned by one thread at a time. Once its local ids (or the memory retaining its entries) run
+ * out, it's full and its owner moves on to another shard, and a shard whose owner died is handed to the next
+ * thread asking for one (see ShardedCompressionDictionaries.acquireShard).
+ */
+public class DictionaryShard {
+    public static final int LOCAL_ID_BITS = 24;
+    public static final int LOCAL_ID_MASK = (1 << LOCAL_ID_BITS) - 1;
+    // Keeps composite ids positive when stored as (compact) int variables
+    public static final int MAX_SHARDS = 1 << (31 - LOCAL_ID_BITS);
+
+    public final int shardIndex;
+    final ShardedCompressionDictionaries dictionaries;
+    final InMemoryCompressionDictionary logtypeDict = new InMemoryCompressionDictionary();
+    final InMemoryCompressionDictionary variableDict = new InMemoryCompressionDictionary();
+    private final ByteArrayViewDictionaryKey key;
+
+    // Guarded by dictionaries, null if the shard belongs to the thread writing the archive
+    private WeakReference<Thread> owner;
+    // Guarded by this
+    private boolean full = false;
+    private boolean merged = false;
+
+    DictionaryShard(ShardedCompressionDictionaries dictionaries, int shardIndex, Thread owner,
+                    KeyHashAlgorithm keyHashAlgorithm, boolean useOffHeapIndex) throws NoSuchAlgorithmException {
+        this.dictionaries = dictionaries;
+        this.shardIndex = shardIndex;
+        this.key = new ByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+        setOwner(owner);
+        if (useOffHeapIndex) {
+            logtypeDict.useOffHeapIndex();
+            variableDict.useOffHeapIndex();
+        }
+        if (!keyHashAlgorithm.isCryptographic) {
+            logtypeDict.enableByteExactVerification();
+            variableDict.enableByteExactVerification();
+        }
+    }
+
+    void setOwner(Thread owner) {
+        this.owner = null != owner ? new WeakReference<>(owner) : null;
+    }
+
+    /**
+     * @return whether the shard's owning thread died, so another thread can take the shard over
+     */
+    synchronized boolean isReleased() {
+        if (null == owner || full) {
+            return false;
+        }
+        Thread ownerThread = owner.get();
+        return null == ownerThread || !ownerThread.isAlive();
+    }
+
+    /**
+     * Resolves the ids of the logtype and of the dictionary variables of a tokenized event into
+     * event.logtypeId and event.variableIds, as shard-tagged ids
+     * @return false if nothing was resolved because the shard is full or was already merged, the event must
+     * be resolved in another shard then
+     * @throws StringIndexOutOfBoundsException if an entry is too long to be merged into the archive's
+     * dictionaries
+     */
+    public synchronized boolean resolveIds(EncodedEvent event) throws IOException {
+        // Shards keep their entries in memory, the limit would otherwise only be hit when merging them
+        CompressionDictionary.checkEntryLengths(event);
+        if (merged || full) {
+            return false;
+        }
+        if (!hasRoomFor(event)) {
+            full = true;
+            return false;
+        }
+        byte[] messageBytes = event.getMessage().array();
+        for (int i = 0; i < event.numVariables; i++) {
+            if (EncodedEvent.VARIABLE_ID_DELIM == event.variableTypes[i]) {
+                long bounds = event.encodedVariables[i];
+                key.wrapWithDigest(messageBytes, EncodedEvent.unpackBeginIndex(bounds),
+                        EncodedEvent.unpackEndIndex(bounds), event.variableDigests, i * EncodedEvent.DIGEST_LENGTH);
+                event.variableIds[i] = toCompositeId(variableDict.getId(key));
+            }
+        }
+        key.wrapWithDigest(event.logtype.array(), 0, event.logtype.position(), event.logtypeDigest, 0);
+        event.logtypeId = toCompositeId(logtypeDict.getId(key));
+        event.resolvedDictionaries = dictionaries;
+        return true;
+    }
+
+    /**
+     * @return whether the local ids and the entry storage have room for the event, assuming all of its entries
+     * are new
+     */
+    private boolean hasRoomFor(EncodedEvent event) {
+        // Variables are distinct parts of the message
+        long maxVariableBytes = (long) event.numVariables * Character.BYTES + event.getMessage().position();
+        return logtypeDict.getNumEntries() <= LOCAL_ID_MASK
+                && (long) variableDict.getNumEntries() + event.numVariables <= LOCAL_ID_MASK + 1L
+                && logtypeDict.getNumEntryBytes() + Character.BYTES + event.logtype.position() <= Integer.MAX_VALUE
+                && variableDict.getNumEntryBytes() + maxVariableBytes <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Prevents any further resolution, called before the shard is merged
+     */
+    synchronized void markMerged() {
+        merged = true;
+    }
+
+    private int toCompositeId(int localId) {
+        return (shardIndex << LOCAL_ID_BITS) | localId;
+    }
+}
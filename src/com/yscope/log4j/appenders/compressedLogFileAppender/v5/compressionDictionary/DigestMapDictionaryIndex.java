@@ -0,0 +1,92 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Heap index keyed by a copy of each entry's digest. With a cryptographic digest the digest alone
+ * identifies the entry. Otherwise the owning dictionary retains its entries and every digest hit is
+ * verified byte by byte; the (rare) keys whose digest collides with a different entry are looked up by
+ * content instead.
+ */
+public class DigestMapDictionaryIndex implements DictionaryIndex {
+    private final CompressionDictionary dictionary;
+    private final Object2IntOpenCustomHashMap<byte[]> digestToId =
+            new Object2IntOpenCustomHashMap<>(new Sha256DigestHashStrategy<>());
+    private boolean verifyEntries = false;
+    private Object2IntOpenHashMap<ByteBuffer> collidingEntries;
+    private long digestBytes = 0;
+
+    public DigestMapDictionaryIndex(CompressionDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void enableByteExactVerification() {
+        verifyEntries = true;
+    }
+
+    @Override
+    public int getOrInsert(ByteArrayViewDictionaryKey key, int nextId) {
+        final byte[] digest = key.digest;
+        int id = digestToId.getOrDefault(digest, nextId);
+        if (id == nextId) {
+            // Insert a deep copy of digest into the dictionary
+            byte[] digestCopy = new byte[digest.length];
+            System.arraycopy(digest, 0, digestCopy, 0, digest.length);
+            digestToId.put(digestCopy, nextId);
+            digestBytes += digest.length;
+            return nextId;
+        }
+        if (verifyEntries && !dictionary.entryEquals(id, key)) {
+            return getCollidingEntryId(key, nextId);
+        }
+        return id;
+    }
+
+    @Override
+    public int get(ByteArrayViewDictionaryKey key) {
+        int id = digestToId.getOrDefault(key.digest, -1);
+        if (id >= 0 && verifyEntries && !dictionary.entryEquals(id, key)) {
+            id = null != collidingEntries
+                    ? collidingEntries.getInt(ByteBuffer.wrap(key.bytes, key.beginIndex, key.getViewSize())) : -1;
+        }
+        return id;
+    }
+
+    private int getCollidingEntryId(ByteArrayViewDictionaryKey key, int nextId) {
+        if (null == collidingEntries) {
+            collidingEntries = new Object2IntOpenHashMap<>();
+            collidingEntries.defaultReturnValue(-1);
+        }
+        int viewSize = key.getViewSize();
+        int id = collidingEntries.getInt(ByteBuffer.wrap(key.bytes, key.beginIndex, viewSize));
+        if (id < 0) {
+            // ByteBuffer equality is content based, so the map key must be a private copy
+            byte[] copy = new byte[viewSize];
+            System.arraycopy(key.bytes, key.beginIndex, copy, 0, viewSize);
+            collidingEntries.put(ByteBuffer.wrap(copy), nextId);
+            id = nextId;
+        }
+        return id;
+    }
+
+    @Override
+    public long getHeapBytesUsed() {
+        // Rough estimate: digest copies with their array headers, plus the map's key and value arrays
+        int size = digestToId.size();
+        return digestBytes + 16L * size + (long) (size / Object2IntOpenCustomHashMap.DEFAULT_LOAD_FACTOR) * 8;
+    }
+
+    @Override
+    public long getOffHeapBytesUsed() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+}
@@ -0,0 +1,30 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+
+/**
+ * Dictionary whose entries are only kept in memory (back to back in one growable byte array)
+ * Used for thread-private dictionary shards that are merged into a persisted dictionary later.
+ */
+public class InMemoryCompressionDictionary extends CompressionDictionary {
+    public InMemoryCompressionDictionary() {
+        retainEntries();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to flush
+    }
+
+    @Override
+    protected void persistDictionaryEntry(ByteArrayViewDictionaryKey byteArrayViewDictionaryKey) {
+        // Entries are retained by CompressionDictionary
+    }
+
+    /**
+     * @return backing array of all entries, only valid until the next insertion
+     */
+    public byte[] getEntryStorage() {
+        return entryBytes.elements();
+    }
+}
@@ -1,48 +1,40 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
 
-import com.github.luben.zstd.ZstdDirectBufferCompressingStream;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.SegmentedMemoryMappedWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 
+/**
+ * Persists entries through memory-mapped windows of segmentSize bytes (see SegmentedMemoryMappedWriter)
+ */
 public class MemoryMappedCompressionDictionary extends CompressionDictionary {
-    private final FileChannel fc;
-    private final ByteBuffer encodedDataBuffer;
-    private final MappedByteBuffer memoryMappedBuffer;
-    private ZstdDirectBufferCompressingStream zstdDirectBufferCompressingStream = null;
+    private final SegmentedMemoryMappedWriter writer;
 
-    public MemoryMappedCompressionDictionary(final Path path, int maxBufSize, int compressionLevel)
+    public MemoryMappedCompressionDictionary(final Path path, int segmentSize, int compressionLevel)
             throws IOException {
-        fc = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
-        memoryMappedBuffer = fc.map(FileChannel.MapMode.READ_WRITE, 0, maxBufSize);
-        if (compressionLevel != 0) {
-            encodedDataBuffer = memoryMappedBuffer;
-        } else {
-            encodedDataBuffer = ByteBuffer.allocateDirect(256);   // Allocate 256 native buffer for now
-            zstdDirectBufferCompressingStream =
-                    new ZstdDirectBufferCompressingStream(memoryMappedBuffer, compressionLevel);
-        }
+        this(path, segmentSize, compressionLevel, null, 0);
+    }
+
+    /**
+     * @param pipeline see SegmentedMemoryMappedWriter
+     */
+    public MemoryMappedCompressionDictionary(final Path path, int segmentSize, int compressionLevel,
+                                             ZstdCompressionPipeline pipeline, int numBuffers) throws IOException {
+        writer = new SegmentedMemoryMappedWriter(path, segmentSize, compressionLevel, pipeline, numBuffers);
     }
 
     @Override
     public void close() throws IOException {
-        if (zstdDirectBufferCompressingStream != null) {
-            // Flush encoded data cache to zstd, compress and close
-            zstdDirectBufferCompressingStream.compress(encodedDataBuffer);
-            zstdDirectBufferCompressingStream.close();
-        }
-        // Close memory mapped file buffer
-        final int position = memoryMappedBuffer.position();
-        // TODO: It's possible this call may fail because the buffer is not unmapped. In that case,
-        // we may need to call System.gc() or use a more advanced method of forcing it to be
-        // unmapped.
-        fc.truncate(position);
-        fc.close();
+        writer.close();
+        super.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+        return writer.sync();
     }
 
     @Override
@@ -51,11 +43,10 @@ public class MemoryMappedCompressionDictionary extends CompressionDictionary {
         // Format: <unsigned short length><utf8 string><unsigned short length><utf8 string>...
         // Java doesn't have unsigned short types except for char (16bit), therefore we cast it to char
         int dictionaryKeyLength = byteArrayViewDictionaryKey.getViewSize();
-        if (dictionaryKeyLength > Character.MAX_VALUE) {
+        if (dictionaryKeyLength > MAX_ENTRY_LENGTH) {
             throw new StringIndexOutOfBoundsException("Dictionary key's length exceeds encoding capability");
         }
-        encodedDataBuffer.putChar((char) dictionaryKeyLength);
-        encodedDataBuffer.put(byteArrayViewDictionaryKey.bytes);
-        zstdDirectBufferCompressingStream.compress(encodedDataBuffer);
+        writer.putChar((char) dictionaryKeyLength);
+        writer.put(byteArrayViewDictionaryKey.bytes, byteArrayViewDictionaryKey.beginIndex, dictionaryKeyLength);
     }
 }
@@ -0,0 +1,198 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Index whose keys live in an append-only off-heap arena (direct ByteBuffer chunks), looked up
+ * through a primitive open-addressing table. Inserting an entry allocates no object: the key bytes
+ * and id are appended to the arena and the table stores (hash, arena reference) pairs in a long[].
+ * Growing the table only moves those pairs, the arena is never touched. Every hash hit is verified
+ * against the key bytes in the arena, so any digest is safe to use.
+ *
+ * Arena record: <int id><int length><key bytes>
+ * Arena reference: ((chunk index << 32) | offset in chunk) + 1, so 0 marks an empty slot
+ */
+public class OffHeapArenaDictionaryIndex implements DictionaryIndex {
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int INITIAL_CAPACITY = 1024;   // Slots, must be a power of 2
+    private static final float MAX_LOAD_FACTOR = 0.5f;
+    private static final VarHandle LONG_BE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int numChunks = 0;
+    private ByteBuffer currentChunk;
+    private long offHeapBytesReserved = 0;
+    private long offHeapBytesUsed = 0;
+
+    // Two longs per slot: hash, arena reference
+    private long[] table = new long[INITIAL_CAPACITY * 2];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size = 0;
+
+    @Override
+    public int getOrInsert(ByteArrayViewDictionaryKey key, int nextId) {
+        long hash = hashOf(key.digest);
+        int slot = (int) hash & mask;
+        while (true) {
+            long reference = table[2 * slot + 1];
+            if (0 == reference) {
+                table[2 * slot] = hash;
+                table[2 * slot + 1] = append(key, nextId);
+                if (++size > (mask + 1) * MAX_LOAD_FACTOR) {
+                    rehash();
+                }
+                return nextId;
+            }
+            if (table[2 * slot] == hash && recordEquals(reference, key)) {
+                return chunkOf(reference).getInt(offsetOf(reference));
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int get(ByteArrayViewDictionaryKey key) {
+        long hash = hashOf(key.digest);
+        int slot = (int) hash & mask;
+        while (true) {
+            long reference = table[2 * slot + 1];
+            if (0 == reference) {
+                return -1;
+            }
+            if (table[2 * slot] == hash && recordEquals(reference, key)) {
+                return chunkOf(reference).getInt(offsetOf(reference));
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getHeapBytesUsed() {
+        return (long) table.length * Long.BYTES + (long) chunks.length * 8;
+    }
+
+    @Override
+    public long getOffHeapBytesUsed() {
+        return offHeapBytesUsed;
+    }
+
+    public long getOffHeapBytesReserved() {
+        return offHeapBytesReserved;
+    }
+
+    @Override
+    public void close() {
+        // Direct buffers are freed once they become unreachable
+        chunks = new ByteBuffer[0];
+        numChunks = 0;
+        currentChunk = null;
+        table = new long[0];
+        size = 0;
+    }
+
+    /**
+     * Folds the leading (up to 8) digest bytes into a well mixed 64-bit hash
+     */
+    private static long hashOf(byte[] digest) {
+        long hash = 0;
+        int numBytes = Math.min(Long.BYTES, digest.length);
+        for (int i = 0; i < numBytes; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        // Murmur3 finalizer, so the low bits used for the slot are well distributed
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private long append(ByteArrayViewDictionaryKey key, int id) {
+        int viewSize = key.getViewSize();
+        int recordSize = RECORD_HEADER_SIZE + viewSize;
+        if (null == currentChunk || currentChunk.remaining() < recordSize) {
+            allocateChunk(Math.max(CHUNK_SIZE, recordSize));
+        }
+        int offset = currentChunk.position();
+        currentChunk.putInt(id);
+        currentChunk.putInt(viewSize);
+        currentChunk.put(key.bytes, key.beginIndex, viewSize);
+        offHeapBytesUsed += recordSize;
+        return (((long) (numChunks - 1) << 32) | offset) + 1;
+    }
+
+    private void allocateChunk(int chunkSize) {
+        if (numChunks == chunks.length) {
+            ByteBuffer[] newChunks = new ByteBuffer[chunks.length * 2];
+            System.arraycopy(chunks, 0, newChunks, 0, numChunks);
+            chunks = newChunks;
+        }
+        currentChunk = ByteBuffer.allocateDirect(chunkSize);
+        chunks[numChunks++] = currentChunk;
+        offHeapBytesReserved += chunkSize;
+    }
+
+    private ByteBuffer chunkOf(long reference) {
+        return chunks[(int) ((reference - 1) >>> 32)];
+    }
+
+    private static int offsetOf(long reference) {
+        return (int) (reference - 1);
+    }
+
+    private boolean recordEquals(long reference, ByteArrayViewDictionaryKey key) {
+        ByteBuffer chunk = chunkOf(reference);
+        int offset = offsetOf(reference);
+        int viewSize = key.getViewSize();
+        if (chunk.getInt(offset + Integer.BYTES) != viewSize) {
+            return false;
+        }
+        int recordPos = offset + RECORD_HEADER_SIZE;
+        byte[] bytes = key.bytes;
+        int keyPos = key.beginIndex;
+        int i = 0;
+        // Compare 8 bytes at a time, the chunk's default byte order is big endian
+        for (; i + Long.BYTES <= viewSize; i += Long.BYTES) {
+            if (chunk.getLong(recordPos + i) != (long) LONG_BE.get(bytes, keyPos + i)) {
+                return false;
+            }
+        }
+        for (; i < viewSize; i++) {
+            if (chunk.get(recordPos + i) != bytes[keyPos + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        long[] oldTable = table;
+        int newCapacity = (mask + 1) * 2;
+        table = new long[newCapacity * 2];
+        mask = newCapacity - 1;
+        for (int i = 0; i < oldTable.length; i += 2) {
+            long reference = oldTable[i + 1];
+            if (0 != reference) {
+                long hash = oldTable[i];
+                int slot = (int) hash & mask;
+                while (0 != table[2 * slot + 1]) {
+                    slot = (slot + 1) & mask;
+                }
+                table[2 * slot] = hash;
+                table[2 * slot + 1] = reference;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * Set of thread-private dictionary shards belonging to one archive. Logging threads only ever touch
+ * their own shard, so the dictionaries are not on the contended path. On close, all shards are merged
+ * into the regular logtype/variable dictionary files (one global id space) and a remap table per
+ * dictionary is written next to them. Shards of threads that died are handed to new threads, so
+ * short-lived threads don't use up the shard indices.
+ * Remap file format (uncompressed): <int numShards> then per shard <int numEntries><int globalId>...
+ */
+public class ShardedCompressionDictionaries {
+    private final ArrayList<DictionaryShard> shards = new ArrayList<>();
+    private final KeyHashAlgorithm keyHashAlgorithm;
+    private final boolean useOffHeapIndex;
+    private boolean merged = false;
+
+    public ShardedCompressionDictionaries(KeyHashAlgorithm keyHashAlgorithm, boolean useOffHeapIndex) {
+        this.keyHashAlgorithm = keyHashAlgorithm;
+        this.useOffHeapIndex = useOffHeapIndex;
+    }
+
+    /**
+     * @return a new shard for the thread writing the archive, which is never handed to another thread, or
+     * null if all shard indices are taken
+     */
+    public synchronized DictionaryShard createShard() throws NoSuchAlgorithmException {
+        return addShard(null);
+    }
+
+    /**
+     * @return shard for the calling thread: the shard of a thread that died, or a new one. Null if all shard
+     * indices are taken or the shards were merged.
+     */
+    public synchronized DictionaryShard acquireShard() throws NoSuchAlgorithmException {
+        if (merged) {
+            return null;
+        }
+        for (DictionaryShard shard : shards) {
+            if (shard.isReleased()) {
+                shard.setOwner(Thread.currentThread());
+                return shard;
+            }
+        }
+        return addShard(Thread.currentThread());
+    }
+
+    private DictionaryShard addShard(Thread owner) throws NoSuchAlgorithmException {
+        if (shards.size() == DictionaryShard.MAX_SHARDS) {
+            return null;
+        }
+        DictionaryShard shard = new DictionaryShard(this, shards.size(), owner, keyHashAlgorithm, useOffHeapIndex);
+        shards.add(shard);
+        return shard;
+    }
+
+    /**
+     * Must only be called once all events of the archive were written. Shards can't resolve ids anymore
+     * afterwards, logging threads still holding one move on to the next archive's shards.
+     */
+    public synchronized void merge(Path logtypeDictPath, Path logtypeRemapPath,
+                                   Path variableDictPath, Path variableRemapPath, int compressionLevel)
+            throws IOException, NoSuchAlgorithmException, DigestException {
+        merged = true;
+        for (DictionaryShard shard : shards) {
+            shard.markMerged();
+        }
+        ByteArrayViewDictionaryKey key = new ByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+
+        CompressionDictionary logtypeDict =
+                new BufferedDataOutputStreamCompressionDictionary(logtypeDictPath, compressionLevel);
+        configureIndex(logtypeDict);
+        try (DataOutputStream logtypeRemap = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(logtypeRemapPath)))) {
+            logtypeRemap.writeInt(shards.size());
+            for (DictionaryShard shard : shards) {
+                mergeShardDictionary(shard.logtypeDict, logtypeDict, logtypeRemap, key);
+            }
+        } finally {
+            logtypeDict.close();
+        }
+
+        CompressionDictionary variableDict =
+                new BufferedDataOutputStreamCompressionDictionary(variableDictPath, compressionLevel);
+        configureIndex(variableDict);
+        try (DataOutputStream variableRemap = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(variableRemapPath)))) {
+            variableRemap.writeInt(shards.size());
+            for (DictionaryShard shard : shards) {
+                mergeShardDictionary(shard.variableDict, variableDict, variableRemap, key);
+            }
+        } finally {
+            variableDict.close();
+        }
+    }
+
+    public synchronized long getHeapBytesUsed() {
+        long heapBytesUsed = 0;
+        for (DictionaryShard shard : shards) {
+            heapBytesUsed += shard.logtypeDict.getHeapBytesUsed() + shard.variableDict.getHeapBytesUsed();
+        }
+        return heapBytesUsed;
+    }
+
+    public synchronized long getOffHeapBytesUsed() {
+        long offHeapBytesUsed = 0;
+        for (DictionaryShard shard : shards) {
+            offHeapBytesUsed += shard.logtypeDict.getOffHeapBytesUsed() + shard.variableDict.getOffHeapBytesUsed();
+        }
+        return offHeapBytesUsed;
+    }
+
+    private void configureIndex(CompressionDictionary dictionary) {
+        if (useOffHeapIndex) {
+            dictionary.useOffHeapIndex();
+        }
+        if (!keyHashAlgorithm.isCryptographic) {
+            dictionary.enableByteExactVerification();
+        }
+    }
+
+    private static void mergeShardDictionary(InMemoryCompressionDictionary shardDict,
+                                             CompressionDictionary globalDict, DataOutputStream remap,
+                                             ByteArrayViewDictionaryKey key) throws IOException, DigestException {
+        int numEntries = shardDict.getNumEntries();
+        byte[] entryStorage = shardDict.getEntryStorage();
+        remap.writeInt(numEntries);
+        for (int localId = 0; localId < numEntries; localId++) {
+            key.wrap(entryStorage, shardDict.getEntryBeginIndex(localId), shardDict.getEntryEndIndex(localId));
+            remap.writeInt(globalDict.getId(key));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash;
+
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Dictionary key hash algorithms
+ * - SHA_256: cryptographic, collisions are assumed to never happen so dictionaries trust the digest
+ * - MURMUR3_128, XXH64: several times cheaper, dictionaries verify the entry bytes on every hit
+ */
+public enum KeyHashAlgorithm {
+    SHA_256(true),
+    MURMUR3_128(false),
+    XXH64(false);
+
+    public final boolean isCryptographic;
+
+    KeyHashAlgorithm(boolean isCryptographic) {
+        this.isCryptographic = isCryptographic;
+    }
+
+    public KeyHasher createHasher() throws NoSuchAlgorithmException {
+        switch (this) {
+            case MURMUR3_128:
+                return new Murmur3KeyHasher();
+            case XXH64:
+                return new XxHash64KeyHasher();
+            default:
+                return new Sha256KeyHasher();
+        }
+    }
+
+    /**
+     * Accepts the enum names as well as the usual spelling (e.g. "SHA-256", "murmur3_128")
+     */
+    public static KeyHashAlgorithm fromString(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,16 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash;
+
+import java.security.DigestException;
+
+/**
+ * Computes the fingerprint dictionaries use to look up a byte array view.
+ * Instances may hold scratch state, so each dictionary key should own its hasher.
+ */
+public interface KeyHasher {
+    /**
+     * @return number of bytes written by hash, at most 32
+     */
+    int getDigestLength();
+
+    void hash(byte[] bytes, int beginIndex, int length, byte[] digest) throws DigestException;
+}
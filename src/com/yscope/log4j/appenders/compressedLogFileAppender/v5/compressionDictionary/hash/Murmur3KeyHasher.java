@@ -0,0 +1,104 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * MurmurHash3 x64 128-bit variant (seed 0), digest is h1 followed by h2 in big endian
+ */
+public class Murmur3KeyHasher implements KeyHasher {
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    @Override
+    public int getDigestLength() {
+        return 16;
+    }
+
+    @Override
+    @SuppressWarnings("fallthrough")
+    public void hash(byte[] bytes, int beginIndex, int length, byte[] digest) {
+        long h1 = 0;
+        long h2 = 0;
+        int pos = beginIndex;
+        int blocksEnd = beginIndex + (length & ~15);
+        for (; pos < blocksEnd; pos += 16) {
+            long k1 = (long) LONG_LE.get(bytes, pos);
+            long k2 = (long) LONG_LE.get(bytes, pos + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // Tail, each case falls through to the bytes before it
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15: k2 ^= (long) (bytes[pos + 14] & 0xFF) << 48;
+            case 14: k2 ^= (long) (bytes[pos + 13] & 0xFF) << 40;
+            case 13: k2 ^= (long) (bytes[pos + 12] & 0xFF) << 32;
+            case 12: k2 ^= (long) (bytes[pos + 11] & 0xFF) << 24;
+            case 11: k2 ^= (long) (bytes[pos + 10] & 0xFF) << 16;
+            case 10: k2 ^= (long) (bytes[pos + 9] & 0xFF) << 8;
+            case 9: k2 ^= bytes[pos + 8] & 0xFF;
+                h2 ^= mixK2(k2);
+            case 8: k1 ^= (long) (bytes[pos + 7] & 0xFF) << 56;
+            case 7: k1 ^= (long) (bytes[pos + 6] & 0xFF) << 48;
+            case 6: k1 ^= (long) (bytes[pos + 5] & 0xFF) << 40;
+            case 5: k1 ^= (long) (bytes[pos + 4] & 0xFF) << 32;
+            case 4: k1 ^= (long) (bytes[pos + 3] & 0xFF) << 24;
+            case 3: k1 ^= (long) (bytes[pos + 2] & 0xFF) << 16;
+            case 2: k1 ^= (long) (bytes[pos + 1] & 0xFF) << 8;
+            case 1: k1 ^= bytes[pos] & 0xFF;
+                h1 ^= mixK1(k1);
+            default:
+                break;
+        }
+
+        // Finalization
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+
+        LONG_BE.set(digest, 0, h1);
+        LONG_BE.set(digest, 8, h2);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
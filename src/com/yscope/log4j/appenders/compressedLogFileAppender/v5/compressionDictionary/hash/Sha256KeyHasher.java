@@ -0,0 +1,24 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Sha256KeyHasher implements KeyHasher {
+    private final MessageDigest messageDigestInstance;
+
+    public Sha256KeyHasher() throws NoSuchAlgorithmException {
+        messageDigestInstance = MessageDigest.getInstance("SHA-256");
+    }
+
+    @Override
+    public int getDigestLength() {
+        return 32;
+    }
+
+    @Override
+    public void hash(byte[] bytes, int beginIndex, int length, byte[] digest) throws DigestException {
+        messageDigestInstance.update(bytes, beginIndex, length);
+        messageDigestInstance.digest(digest, 0, 32);
+    }
+}
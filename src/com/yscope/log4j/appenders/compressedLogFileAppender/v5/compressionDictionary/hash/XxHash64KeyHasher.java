@@ -0,0 +1,94 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 (seed 0), digest is the 64-bit hash in big endian
+ */
+public class XxHash64KeyHasher implements KeyHasher {
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_BE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    @Override
+    public int getDigestLength() {
+        return 8;
+    }
+
+    @Override
+    public void hash(byte[] bytes, int beginIndex, int length, byte[] digest) {
+        int pos = beginIndex;
+        int end = beginIndex + length;
+        long h;
+
+        if (length >= 32) {
+            long v1 = PRIME1 + PRIME2;
+            long v2 = PRIME2;
+            long v3 = 0;
+            long v4 = -PRIME1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, (long) LONG_LE.get(bytes, pos));
+                v2 = round(v2, (long) LONG_LE.get(bytes, pos + 8));
+                v3 = round(v3, (long) LONG_LE.get(bytes, pos + 16));
+                v4 = round(v4, (long) LONG_LE.get(bytes, pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = PRIME5;
+        }
+
+        h += length;
+
+        for (; pos + 8 <= end; pos += 8) {
+            h ^= round(0, (long) LONG_LE.get(bytes, pos));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (pos + 4 <= end) {
+            h ^= ((int) INT_LE.get(bytes, pos) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+        for (; pos < end; ++pos) {
+            h ^= (bytes[pos] & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        // Avalanche
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+
+        LONG_BE.set(digest, 0, h);
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME1 + PRIME4;
+    }
+}
@@ -1,11 +1,12 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHasher;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.Sha256KeyHasher;
 import org.apache.commons.codec.binary.Hex;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.DigestException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -20,13 +21,17 @@ public class ByteArrayViewDictionaryKey {
     public int endIndex;
 
     // Byte array view digest
-    public MessageDigest messageDigestInstance;
-    public byte[] digest;   // Must be exactly 32 bytes
+    public final KeyHasher keyHasher;
+    public final byte[] digest;   // Exactly keyHasher.getDigestLength() bytes
 
 
     public ByteArrayViewDictionaryKey() throws NoSuchAlgorithmException {
-        this.messageDigestInstance = MessageDigest.getInstance("SHA-256");
-        this.digest = new byte[32];
+        this(new Sha256KeyHasher());
+    }
+
+    public ByteArrayViewDictionaryKey(KeyHasher keyHasher) {
+        this.keyHasher = keyHasher;
+        this.digest = new byte[keyHasher.getDigestLength()];
     }
 
     public ByteArrayViewDictionaryKey(ByteBuffer heapAllocatedBuffer, int beginIndex, int endIndex)
@@ -64,16 +69,39 @@ public class ByteArrayViewDictionaryKey {
     }
 
     public ByteArrayViewDictionaryKey wrap(byte[] bytes, int beginIndex, int endIndex) throws DigestException {
+        setView(bytes, beginIndex, endIndex);
+
+        // Since view changed, we need to recompute the digest and hash code
+        computeDigest();
+        return this;
+    }
+
+    /**
+     * Wraps the byte array range without hashing it. Callers that only need the view
+     * (e.g. integer/float encoding) can skip the cost of computing the digest.
+     */
+    public ByteArrayViewDictionaryKey setView(byte[] bytes, int beginIndex, int endIndex) {
         this.bytes = bytes;
         this.beginIndex = beginIndex;
         this.endIndex = endIndex;
+        return this;
+    }
 
-        // Since view changed, we need to recompute the digest and hash code
-        messageDigestInstance.update(bytes, beginIndex, endIndex);
-        messageDigestInstance.digest(digest, 0, 32);
+    /**
+     * Wraps the byte array range along with a digest that was already computed for it
+     * (e.g. by a logging thread before the view was handed over to the dictionary owner)
+     */
+    public ByteArrayViewDictionaryKey wrapWithDigest(byte[] bytes, int beginIndex, int endIndex,
+                                                     byte[] precomputedDigest, int digestOffset) {
+        setView(bytes, beginIndex, endIndex);
+        System.arraycopy(precomputedDigest, digestOffset, digest, 0, digest.length);
         return this;
     }
 
+    public void computeDigest() throws DigestException {
+        keyHasher.hash(bytes, beginIndex, getViewSize(), digest);
+    }
+
     public int getViewSize() {
         return endIndex - beginIndex;
     }
@@ -1,5 +1,7 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHasher;
+
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -14,10 +16,19 @@ public class CompactVariableByteArrayViewDictionaryKey extends VariableByteArray
         super();
     }
 
+    public CompactVariableByteArrayViewDictionaryKey(KeyHasher keyHasher) {
+        super(keyHasher);
+    }
+
     public int getCompactVariableEncoding() {
         return signedIntBackedEncoding;
     }
 
+    @Override
+    public long getVariableEncoding() {
+        return signedIntBackedEncoding;
+    }
+
     /**
      * Parses the variable as an unsigned int if possible
      * Java rarely print unsigned int, conversion logic is partially adapted from JDK9's Int class
@@ -40,20 +51,26 @@ public class CompactVariableByteArrayViewDictionaryKey extends VariableByteArray
         // Check for a negative sign
         if ('-' == currByte) {
             negative = true;
-            currByte = bytes[++i];
-        }
-        // Integer can't be a lone "-" or ""
-        if (i >= endIndex) {
-            return false;
+            // Integer can't be a lone "-"
+            if (++i >= endIndex) {
+                return false;
+            }
+            currByte = bytes[i];
         }
         // If there is more than one digit, ensure value is not zero-padded
         if (i + 1 < endIndex && '0' == currByte) {
             return false;
         }
+        // "-0" can't be reproduced from the encoded value
+        if (negative && '0' == currByte) {
+            return false;
+        }
 
         int result = 0;
         int limit = -Integer.MAX_VALUE;
-        for (; i < endIndex; currByte = bytes[++i]) {
+        int multmin = limit / 10;
+        for (; i < endIndex; ++i) {
+            currByte = bytes[i];
             // Accumulating negatively avoids surprises near MAX_VALUE
             int digit;
             if (currByte < '0' || '9' < currByte) {
@@ -61,6 +78,9 @@ public class CompactVariableByteArrayViewDictionaryKey extends VariableByteArray
             }
             digit =  currByte - '0';
 
+            if (result < multmin) {
+                return false;
+            }
             result *= 10;
             if (result < limit + digit) {
                 return false;
@@ -104,9 +124,9 @@ public class CompactVariableByteArrayViewDictionaryKey extends VariableByteArray
         int maxLength = MAX_DIGITS_IN_REPRESENTABLE_DOUBLE_VAR + 1;   // +1 for decimal point
 
         // Check for a negative sign and assign negative bit to the intRepresentation
-        signedIntBackedEncoding = 0;
+        boolean negative = false;
         if ('-' == bytes[pos]) {
-            signedIntBackedEncoding = -1;   // Set top bit to 1
+            negative = true;
             ++pos;
             // Include sign in max length
             ++maxLength;
@@ -133,7 +153,7 @@ public class CompactVariableByteArrayViewDictionaryKey extends VariableByteArray
                 return false;
             }
         }
-        if (decimalPointPos == endIndex - 1) {
+        if (decimalPointPos >= endIndex - 1) {
             // No decimal point found, decimal point is the last character (one before endIndex), or no digits found
             // Note: numDigit must be greater than 0 at this point, therefore there is no need to check numDigits
             return false;
@@ -144,8 +164,12 @@ public class CompactVariableByteArrayViewDictionaryKey extends VariableByteArray
             return false;
         }
 
-        // Encode remaining payload and or with the intRepresentation
-        signedIntBackedEncoding |= (digits << 8) + ((numDigits - 1) << 3) + (decimalPointPos - beginIndex - 1);
+        // Encode payload, then set the top bit if the value is negative
+        int numDigitsAfterDecimalPoint = endIndex - 1 - decimalPointPos;
+        signedIntBackedEncoding = (digits << 6) | ((numDigits - 1) << 3) | (numDigitsAfterDecimalPoint - 1);
+        if (negative) {
+            signedIntBackedEncoding |= Integer.MIN_VALUE;
+        }
 
         return true;
     }
@@ -1,5 +1,7 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHasher;
+
 import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.NoSuchAlgorithmException;
@@ -14,6 +16,10 @@ public class LogtypeByteArrayViewDictionaryKey extends ByteArrayViewDictionaryKe
         super();
     }
 
+    public LogtypeByteArrayViewDictionaryKey(KeyHasher keyHasher) {
+        super(keyHasher);
+    }
+
     public LogtypeByteArrayViewDictionaryKey(ByteBuffer variable, int beginIndex, int endIndex)
             throws NoSuchAlgorithmException, DigestException {
         super(variable.array(), beginIndex, endIndex);
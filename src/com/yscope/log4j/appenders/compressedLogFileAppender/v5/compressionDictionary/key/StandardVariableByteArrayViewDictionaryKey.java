@@ -1,5 +1,7 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHasher;
+
 import java.security.NoSuchAlgorithmException;
 
 /**
@@ -14,10 +16,19 @@ public class StandardVariableByteArrayViewDictionaryKey extends VariableByteArra
         super();
     }
 
+    public StandardVariableByteArrayViewDictionaryKey(KeyHasher keyHasher) {
+        super(keyHasher);
+    }
+
     public long getStandardVariableEncoding() {
         return signedLongBackedEncoding;
     }
 
+    @Override
+    public long getVariableEncoding() {
+        return signedLongBackedEncoding;
+    }
+
     /**
      * Parses the variable as a 64bit integer if possible
      * Java rarely print unsigned long, conversion logic is partially adapted from JDK9's Long class
@@ -40,20 +51,26 @@ public class StandardVariableByteArrayViewDictionaryKey extends VariableByteArra
         // Check for a negative sign
         if ('-' == currByte) {
             negative = true;
-            currByte = bytes[++i];
-        }
-        // Integer can't be a lone "-" or ""
-        if (i >= endIndex) {
-            return false;
+            // Integer can't be a lone "-"
+            if (++i >= endIndex) {
+                return false;
+            }
+            currByte = bytes[i];
         }
         // If there is more than one digit, ensure value is not zero-padded
         if (i + 1 < endIndex && '0' == currByte) {
             return false;
         }
+        // "-0" can't be reproduced from the encoded value
+        if (negative && '0' == currByte) {
+            return false;
+        }
 
         long result = 0;
         long limit = -Long.MAX_VALUE;
-        for (; i < endIndex; currByte = bytes[++i]) {
+        long multmin = limit / 10;
+        for (; i < endIndex; ++i) {
+            currByte = bytes[i];
             // Accumulating negatively avoids surprises near MAX_VALUE
             int digit;
             if (currByte < '0' || '9' < currByte) {
@@ -61,6 +78,9 @@ public class StandardVariableByteArrayViewDictionaryKey extends VariableByteArra
             }
             digit =  currByte - '0';
 
+            if (result < multmin) {
+                return false;
+            }
             result *= 10;
             if (result < limit + digit) {
                 return false;
@@ -105,9 +125,9 @@ public class StandardVariableByteArrayViewDictionaryKey extends VariableByteArra
         int maxLength = MAX_DIGITS_IN_REPRESENTABLE_DOUBLE_VAR + 1;   // +1 for decimal point
 
         // Check for a negative sign and assign negative bit to the longRepresentation
-        signedLongBackedEncoding = 0;
+        boolean negative = false;
         if ('-' == bytes[pos]) {
-            signedLongBackedEncoding = -1;   // Set top bit to 1
+            negative = true;
             ++pos;
             // Include sign in max length
             ++maxLength;
@@ -134,14 +154,23 @@ public class StandardVariableByteArrayViewDictionaryKey extends VariableByteArra
                 return false;
             }
         }
-        if (decimalPointPos == endIndex - 1) {
+        if (decimalPointPos >= endIndex - 1) {
             // No decimal point found, decimal point is the last character (one before endIndex), or no digits found
             // Note: numDigit must be greater than 0 at this point, therefore there is no need to check numDigits
             return false;
         }
 
-        // Encode remaining payload and or with the longRepresentation
-        signedLongBackedEncoding |= (digits << 8) + ((numDigits - 1L) << 4) + (decimalPointPos - beginIndex - 1);
+        if ((digits >> 53) > 0) {
+            // We can only represent up to 53 of binary digits (up to 9,007,199,254,740,992)
+            return false;
+        }
+
+        // Encode payload, then set the top bit if the value is negative
+        long numDigitsAfterDecimalPoint = endIndex - 1 - decimalPointPos;
+        signedLongBackedEncoding = (digits << 8) | ((numDigits - 1L) << 4) | (numDigitsAfterDecimalPoint - 1);
+        if (negative) {
+            signedLongBackedEncoding |= Long.MIN_VALUE;
+        }
 
         return true;
     }
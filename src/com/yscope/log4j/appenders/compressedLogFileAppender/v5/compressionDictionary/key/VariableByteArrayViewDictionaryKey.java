@@ -1,5 +1,7 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHasher;
+
 import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.NoSuchAlgorithmException;
@@ -14,6 +16,10 @@ public abstract class VariableByteArrayViewDictionaryKey extends ByteArrayViewDi
         super();
     }
 
+    public VariableByteArrayViewDictionaryKey(KeyHasher keyHasher) {
+        super(keyHasher);
+    }
+
     public VariableByteArrayViewDictionaryKey(ByteBuffer variable, int beginIndex, int endIndex)
             throws NoSuchAlgorithmException, DigestException {
         super(variable.array(), beginIndex, endIndex);
@@ -27,4 +33,10 @@ public abstract class VariableByteArrayViewDictionaryKey extends ByteArrayViewDi
     public abstract boolean encodeAsFloatType();
 
     public abstract boolean encodeAsIntegerType();
+
+    /**
+     * @return encoding produced by the last successful call to encodeAsIntegerType or encodeAsFloatType,
+     *         widened to a long
+     */
+    public abstract long getVariableEncoding();
 }
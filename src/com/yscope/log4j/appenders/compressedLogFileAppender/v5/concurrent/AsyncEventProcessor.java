@@ -0,0 +1,225 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.concurrent;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EventEncoder;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.MessageSplitPatternLayout;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples logging threads from the compression pipeline. Logging threads only render the message
+ * (and the timestamp) straight into a preallocated ring slot and publish it. A dedicated encoder thread
+ * drains the ring in batches and hands each slot to the appender's handler, which runs tokenization,
+ * dictionary lookups and IR writes. Zstd flushes or page faults in the IR therefore only stall the
+ * encoder thread, unless the ring fills up, in which case the FullRingPolicy applies.
+ *
+ * Enabled with the appender's async attribute and tuned with ringBufferSize, waitStrategy, fullRingPolicy
+ * and dropBelowLevel. Without async, useConcurrentIngestion shares the same MultiProducerRingBuffer, but the
+ * ring is drained by whichever logging thread wins the appender's drain lock instead of a dedicated thread.
+ */
+public class AsyncEventProcessor {
+    /**
+     * How a thread waits for the ring (encoder thread: for events, producers: for free slots)
+     */
+    public enum WaitStrategy {
+        BUSY_SPIN,   // Lowest latency, burns a core
+        YIELD,
+        PARK         // Lowest CPU usage, latency bounded by the park interval
+    }
+
+    /**
+     * What a logging thread does with its event if the ring is full
+     */
+    public enum FullRingPolicy {
+        BLOCK,
+        DROP,
+        DROP_BELOW_LEVEL   // Drop events less severe than the drop threshold level, block for the others
+    }
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final MultiProducerRingBuffer<EncodedEvent> ringBuffer;
+    private final MultiProducerRingBuffer.EventHandler<EncodedEvent> handler;
+    private final WaitStrategy waitStrategy;
+    private final FullRingPolicy fullRingPolicy;
+    private final Level dropThresholdLevel;
+    private final int maxBatchSize;
+    private final Thread encoderThread;
+
+    private volatile boolean running = false;
+    // Set once the encoder thread has drained the ring for good, onDrained is left to it if stop timed out.
+    // Only the first stop's onDrained is run, so stopping again doesn't close anything twice.
+    private boolean drained = false;
+    private boolean onDrainedClaimed = false;
+    private Runnable onDrained;
+    private final AtomicLong numDroppedEvents = new AtomicLong(0);
+
+    public AsyncEventProcessor(String threadName, int ringBufferSize, WaitStrategy waitStrategy,
+                               FullRingPolicy fullRingPolicy, Level dropThresholdLevel,
+                               MultiProducerRingBuffer.EventHandler<EncodedEvent> handler) {
+        this.ringBuffer = new MultiProducerRingBuffer<>(ringBufferSize, () -> new EncodedEvent(8192));
+        this.handler = handler;
+        this.waitStrategy = waitStrategy;
+        this.fullRingPolicy = fullRingPolicy;
+        this.dropThresholdLevel = dropThresholdLevel;
+        this.maxBatchSize = Math.max(1, ringBuffer.getCapacity() / 4);
+        this.encoderThread = new Thread(this::processEvents, threadName);
+        this.encoderThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        encoderThread.start();
+    }
+
+    /**
+     * Renders the log event into a ring slot and publishes it to the encoder thread
+     * @return false if the event was dropped
+     */
+    public boolean publish(LogEvent event, Layout<?> layout) {
+        return publish(event, layout, null);
+    }
+
+    /**
+     * Same as publish(LogEvent, Layout), parameterized messages are rendered through splitLayout if not null
+     * (see EventEncoder.render)
+     */
+    public boolean publish(LogEvent event, Layout<?> layout, MessageSplitPatternLayout splitLayout) {
+        return publish(event, layout, null, splitLayout);
+    }
+
+    /**
+     * Same as publish(LogEvent, Layout, MessageSplitPatternLayout), but renders through the compiled layout
+     * (see EventEncoder.render)
+     */
+    public boolean publish(LogEvent event, CompiledPatternLayout compiledLayout,
+                           MessageSplitPatternLayout splitLayout) {
+        return publish(event, null, compiledLayout, splitLayout);
+    }
+
+    private boolean publish(LogEvent event, Layout<?> layout, CompiledPatternLayout compiledLayout,
+                            MessageSplitPatternLayout splitLayout) {
+        if (!running) {
+            numDroppedEvents.incrementAndGet();
+            return false;
+        }
+
+        long sequence = ringBuffer.tryClaim();
+        if (sequence < 0) {
+            if (FullRingPolicy.DROP == fullRingPolicy || (FullRingPolicy.DROP_BELOW_LEVEL == fullRingPolicy
+                    && event.getLevel().intLevel() > dropThresholdLevel.intLevel())) {
+                numDroppedEvents.incrementAndGet();
+                return false;
+            }
+            while ((sequence = ringBuffer.tryClaim()) < 0) {
+                if (!running) {
+                    // The encoder thread may be gone, nothing would free a slot
+                    numDroppedEvents.incrementAndGet();
+                    return false;
+                }
+                idle();
+            }
+        }
+
+        // The slot must be published no matter what, otherwise the encoder thread would stall on it
+        EncodedEvent slot = ringBuffer.get(sequence);
+        if (!running) {
+            // Stopped between the check above and the claim, the encoder thread may have exited before the
+            // slot was claimed. Otherwise, the claimed slot keeps it draining until the slot is published.
+            slot.discarded = true;
+            ringBuffer.publish(sequence);
+            numDroppedEvents.incrementAndGet();
+            return false;
+        }
+        try {
+            if (null != compiledLayout) {
+                EventEncoder.render(event, compiledLayout, splitLayout, slot);
+            } else {
+                EventEncoder.render(event, layout, splitLayout, slot);
+            }
+        } catch (RuntimeException ex) {
+            slot.discarded = true;
+            throw ex;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        return true;
+    }
+
+    public long getNumDroppedEvents() {
+        return numDroppedEvents.get();
+    }
+
+    /**
+     * Stops accepting events and waits for the encoder thread to drain everything already published, then
+     * runs onDrained (e.g. closing the files the handler writes to). If the encoder thread doesn't finish
+     * within the timeout, it runs onDrained itself once it's done, so nothing is closed under it. Later calls
+     * only wait for the encoder thread.
+     * @return true if the encoder thread finished within the timeout
+     */
+    public boolean stop(long timeout, TimeUnit timeUnit, Runnable onDrained) {
+        running = false;
+        LockSupport.unpark(encoderThread);
+        try {
+            if (timeout > 0) {
+                encoderThread.join(timeUnit.toMillis(timeout));
+            } else {
+                encoderThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (onDrainedClaimed) {
+                return drained;
+            }
+            onDrainedClaimed = true;
+            if (!drained) {
+                this.onDrained = onDrained;
+                return false;
+            }
+        }
+        onDrained.run();
+        return true;
+    }
+
+    private void processEvents() {
+        while (true) {
+            if (ringBuffer.drain(handler, maxBatchSize) == 0) {
+                // Stop only once every claimed slot has been published and consumed
+                if (!running && ringBuffer.size() == 0) {
+                    break;
+                }
+                idle();
+            }
+        }
+        Runnable onDrained;
+        synchronized (this) {
+            drained = true;
+            onDrained = this.onDrained;
+        }
+        if (null != onDrained) {
+            onDrained.run();
+        }
+    }
+
+    private void idle() {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                Thread.onSpinWait();
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                LockSupport.parkNanos(PARK_NANOS);
+                break;
+        }
+    }
+}
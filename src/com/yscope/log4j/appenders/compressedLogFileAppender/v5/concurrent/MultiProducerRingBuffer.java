@@ -0,0 +1,129 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Bounded lock-free ring of preallocated slots with many producers and a single consumer
+ * - Producers claim a sequence with a CAS, fill (or exchange) the slot, then publish the sequence
+ * - The consumer walks published sequences in order and releases slots by advancing its cursor
+ * Slots are allocated once up-front and reused, so steady state publishing is garbage-free.
+ * Only one thread may consume at a time; callers are responsible for enforcing that.
+ * @param <T> slot type
+ */
+public class MultiProducerRingBuffer<T> {
+    public interface EventHandler<T> {
+        /**
+         * @param endOfBatch true if this is the last published slot currently available
+         */
+        void onEvent(T slot, long sequence, boolean endOfBatch);
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    private final int capacity;
+    // Sequence published in each slot, -1 if nothing was published in the slot yet
+    private final AtomicLongArray publishedSequences;
+    // Next sequence to hand out to producers
+    private final AtomicLong claimSequence = new AtomicLong(0);
+    // Next sequence the consumer will read, every sequence below it is free to reuse
+    private final AtomicLong consumerSequence = new AtomicLong(0);
+
+    public MultiProducerRingBuffer(int requestedCapacity, Supplier<T> slotFactory) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive");
+        }
+        // Round capacity up to a power of two so slot index is a simple mask
+        int roundedCapacity = 1;
+        while (roundedCapacity < requestedCapacity) {
+            roundedCapacity <<= 1;
+        }
+        capacity = roundedCapacity;
+        mask = capacity - 1;
+        slots = new Object[capacity];
+        publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = slotFactory.get();
+            publishedSequences.set(i, -1);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return claimed sequence, or -1 if the ring is full
+     */
+    public long tryClaim() {
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - consumerSequence.get() >= capacity) {
+                return -1;
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long sequence) {
+        return (T) slots[(int) sequence & mask];
+    }
+
+    /**
+     * Replaces the slot of a claimed (not yet published) sequence
+     * @return the previous slot object, which the caller now owns
+     */
+    @SuppressWarnings("unchecked")
+    public T exchange(long sequence, T replacement) {
+        int index = (int) sequence & mask;
+        T previous = (T) slots[index];
+        slots[index] = replacement;
+        return previous;
+    }
+
+    public void publish(long sequence) {
+        // Volatile write makes the slot contents visible to the consumer
+        publishedSequences.set((int) sequence & mask, sequence);
+    }
+
+    public boolean hasPublishedEvents() {
+        long nextSequence = consumerSequence.get();
+        return publishedSequences.get((int) nextSequence & mask) == nextSequence;
+    }
+
+    /**
+     * @return number of sequences claimed by producers but not yet consumed
+     */
+    public long size() {
+        return claimSequence.get() - consumerSequence.get();
+    }
+
+    /**
+     * Hands every published slot, in sequence order, to the handler. Must only be called by one
+     * thread at a time.
+     * @param maxBatchSize maximum number of slots to consume in this call
+     * @return number of slots consumed
+     */
+    public int drain(EventHandler<T> handler, int maxBatchSize) {
+        long nextSequence = consumerSequence.get();
+        int numConsumed = 0;
+        while (numConsumed < maxBatchSize &&
+                publishedSequences.get((int) nextSequence & mask) == nextSequence) {
+            long followingSequence = nextSequence + 1;
+            boolean endOfBatch = numConsumed + 1 == maxBatchSize ||
+                    publishedSequences.get((int) followingSequence & mask) != followingSequence;
+            try {
+                handler.onEvent(get(nextSequence), nextSequence, endOfBatch);
+            } finally {
+                nextSequence = followingSequence;
+                ++numConsumed;
+                // Release the slot so producers waiting for space can proceed
+                consumerSequence.lazySet(nextSequence);
+            }
+        }
+        return numConsumed;
+    }
+}
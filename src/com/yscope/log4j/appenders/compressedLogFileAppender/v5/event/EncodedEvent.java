@@ -0,0 +1,140 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.event;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.ShardedCompressionDictionaries;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.PatternLayoutBufferDestination;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Log event after tokenization but before dictionary lookup
+ * - message holds the rendered log message (without timestamp, and without the columns' text if rendered
+ *   with a CompiledPatternLayout)
+ * - logtype holds the static text of the message with variable placeholders
+ * - each variable is either an integer/float encoding or the bounds of a dictionary variable inside message
+ * All buffers are owned by the instance and reused, so an instance can be handed between threads
+ * (e.g. swapped into a ring buffer slot) without copying or allocating.
+ */
+public class EncodedEvent {
+    public static final byte INTEGER_ENCODED_VARIABLE_DELIM = 17;
+    public static final byte VARIABLE_ID_DELIM = 18;
+    public static final byte FLOAT_ENCODED_VARIABLE_DELIM = 19;
+
+    // Stride of the stored digests, large enough for every KeyHashAlgorithm
+    public static final int DIGEST_LENGTH = 32;
+
+    public final PatternLayoutBufferDestination message;
+    public long timestamp;
+    // Id of each column's value if the event was rendered with a CompiledPatternLayout
+    public final int[] columnIds = new int[CompiledPatternLayout.ColumnType.values().length];
+
+    public ByteBuffer logtype;
+    public final byte[] logtypeDigest = new byte[DIGEST_LENGTH];
+
+    public int numVariables = 0;
+    public byte[] variableTypes;   // One of the variable delimiters above
+    // Integer/float encoding, or (beginIndex << 32 | endIndex) of a dictionary variable inside message
+    public long[] encodedVariables;
+    public byte[] variableDigests;   // Digest of variable i is stored at i * DIGEST_LENGTH
+
+    // Set when the logging thread already resolved dictionary ids in its shard of these dictionaries (see
+    // DictionaryShard). The id of dictionary variable i is then variableIds[i], its bounds stay in
+    // encodedVariables so the event can be resolved again if it ends up in another archive.
+    public ShardedCompressionDictionaries resolvedDictionaries;
+    public long logtypeId;
+    public long[] variableIds;
+
+    // Set when the message was rendered from a parameterized message's template rather than by the layout:
+    // the layout's text before the message ends at messageBeginPos, the text after it starts at messageEndPos
+    // and parameter i spans parameterBounds[i] (packed like dictionary variable bounds)
+    public MessageTemplate messageTemplate;
+    public int messageBeginPos;
+    public int messageEndPos;
+    public long[] parameterBounds = new long[16];
+    // Scratch space for the parameters' begin/end indices in the rendered text
+    private int[] parameterIndices = new int[32];
+
+    // Set when rendering into a ring slot failed, the slot still has to be published but must be skipped
+    public boolean discarded = false;
+
+    public EncodedEvent(int initialMessageCapacity) {
+        message = new PatternLayoutBufferDestination(initialMessageCapacity);
+        logtype = ByteBuffer.allocate(initialMessageCapacity);
+        variableTypes = new byte[16];
+        encodedVariables = new long[16];
+        variableIds = new long[16];
+        variableDigests = new byte[16 * DIGEST_LENGTH];
+    }
+
+    public void reset() {
+        message.getByteBuffer().clear();
+        logtype.clear();
+        numVariables = 0;
+        resolvedDictionaries = null;
+        discarded = false;
+        messageTemplate = null;
+    }
+
+    public ByteBuffer getMessage() {
+        return message.getByteBuffer();
+    }
+
+    public void ensureLogtypeCapacity(int capacity) {
+        if (logtype.capacity() < capacity) {
+            logtype = ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * @return index of the newly added variable
+     */
+    public int addVariable(byte type, long encodedVariable) {
+        if (numVariables == variableTypes.length) {
+            int newCapacity = variableTypes.length * 2;
+            byte[] newVariableTypes = new byte[newCapacity];
+            System.arraycopy(variableTypes, 0, newVariableTypes, 0, numVariables);
+            variableTypes = newVariableTypes;
+            long[] newEncodedVariables = new long[newCapacity];
+            System.arraycopy(encodedVariables, 0, newEncodedVariables, 0, numVariables);
+            encodedVariables = newEncodedVariables;
+            variableIds = new long[newCapacity];
+            byte[] newVariableDigests = new byte[newCapacity * DIGEST_LENGTH];
+            System.arraycopy(variableDigests, 0, newVariableDigests, 0, numVariables * DIGEST_LENGTH);
+            variableDigests = newVariableDigests;
+        }
+        variableTypes[numVariables] = type;
+        encodedVariables[numVariables] = encodedVariable;
+        return numVariables++;
+    }
+
+    /**
+     * @return scratch array with room for the begin and end index of numParameters parameters
+     */
+    public int[] parameterIndices(int numParameters) {
+        if (parameterIndices.length < 2 * numParameters) {
+            parameterIndices = new int[2 * numParameters];
+        }
+        return parameterIndices;
+    }
+
+    public void setParameterBounds(int index, int beginIndex, int endIndex) {
+        if (index == parameterBounds.length) {
+            long[] newParameterBounds = new long[parameterBounds.length * 2];
+            System.arraycopy(parameterBounds, 0, newParameterBounds, 0, index);
+            parameterBounds = newParameterBounds;
+        }
+        parameterBounds[index] = packBounds(beginIndex, endIndex);
+    }
+
+    public static long packBounds(int beginIndex, int endIndex) {
+        return ((long) beginIndex << 32) | (endIndex & 0xFFFFFFFFL);
+    }
+
+    public static int unpackBeginIndex(long bounds) {
+        return (int) (bounds >>> 32);
+    }
+
+    public static int unpackEndIndex(long bounds) {
+        return (int) bounds;
+    }
+}
@@ -0,0 +1,346 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.event;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.LogtypeByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.CompiledPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.MessageSplitPatternLayout;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.PatternLayoutBufferDestination;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableMessage;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import org.apache.logging.log4j.util.StringBuilders;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Performs all per-event work that does not touch the dictionaries or the IR columns:
+ * layout encoding, tokenization, integer/float encoding and digest computation.
+ * Parameterized messages can skip most of the tokenization: the format string already is the message's
+ * static text and each parameter is a variable (see render with a MessageSplitPatternLayout).
+ * Each instance owns its scratch state, so it must only be used by one thread at a time
+ * (one instance per logging thread, or one per encoder thread).
+ */
+public class EventEncoder {
+    // Scratch space of the parameterized message fast path, which renders on the logging thread
+    private static final ThreadLocal<StringBuilder> threadLocalStringBuilder =
+            ThreadLocal.withInitial(() -> new StringBuilder(Constants.INITIAL_REUSABLE_MESSAGE_SIZE));
+    private static final ThreadLocal<StringBuilder> threadLocalFormattedMessage =
+            ThreadLocal.withInitial(() -> new StringBuilder(Constants.INITIAL_REUSABLE_MESSAGE_SIZE));
+
+    private final LogMessageTokenizer tokenizer;
+    private final ByteArrayViewDictionaryKey variableKey;
+    private final LogtypeByteArrayViewDictionaryKey logtypeKey;
+
+    public EventEncoder(boolean useCompactVariableEncoding) throws NoSuchAlgorithmException {
+        this(useCompactVariableEncoding, KeyHashAlgorithm.SHA_256);
+    }
+
+    public EventEncoder(boolean useCompactVariableEncoding, KeyHashAlgorithm keyHashAlgorithm)
+            throws NoSuchAlgorithmException {
+        tokenizer = new LogMessageTokenizer(useCompactVariableEncoding);
+        logtypeKey = new LogtypeByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+        // Only dictionary variables are hashed, the tokenizer already encoded the others
+        variableKey = new ByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+    }
+
+    /**
+     * Renders the log event with the layout into the encoded event, then tokenizes it
+     */
+    public void encode(LogEvent event, Layout<?> layout, EncodedEvent encodedEvent) throws DigestException {
+        render(event, layout, encodedEvent);
+        tokenize(encodedEvent);
+    }
+
+    /**
+     * Same as encode(LogEvent, Layout, EncodedEvent), but takes the parameterized message fast path if possible
+     * @param splitLayout layout split around its message, null to always go through the layout
+     */
+    public void encode(LogEvent event, Layout<?> layout, MessageSplitPatternLayout splitLayout,
+                       EncodedEvent encodedEvent) throws DigestException {
+        render(event, layout, splitLayout, encodedEvent);
+        tokenize(encodedEvent);
+    }
+
+    /**
+     * Same as encode(LogEvent, Layout, MessageSplitPatternLayout, EncodedEvent), but the columns of the compiled
+     * layout are not rendered (see render(LogEvent, CompiledPatternLayout, MessageSplitPatternLayout, EncodedEvent))
+     */
+    public void encode(LogEvent event, CompiledPatternLayout compiledLayout, MessageSplitPatternLayout splitLayout,
+                       EncodedEvent encodedEvent) throws DigestException {
+        render(event, compiledLayout, splitLayout, encodedEvent);
+        tokenize(encodedEvent);
+    }
+
+    /**
+     * Only renders the log event into the encoded event's message buffer. Note log message here does not
+     * contain timestamp.
+     */
+    public static void render(LogEvent event, Layout<?> layout, EncodedEvent encodedEvent) {
+        encodedEvent.reset();
+        encodedEvent.timestamp = event.getTimeMillis();
+        layout.encode(event, encodedEvent.message);
+    }
+
+    /**
+     * Renders a parameterized message from its format's cached template and its parameters, recording where
+     * each parameter ends up, so that tokenize only has to tokenize the layout's text around the message (and
+     * the template's static text that contains variables) and encode each parameter as a variable. Messages
+     * without placeholders have nothing to skip and are tokenized as a whole. Besides ParameterizedMessage/ReusableParameterizedMessage, this
+     * handles any other ReusableMessage (e.g. the MutableLogEvent/RingBufferLogEvent copies log4j makes of
+     * reusable messages), as long as its format and parameters render to its formatted text.
+     * Falls back to the layout whenever the rendered text could differ from the layout's, e.g. if the
+     * message contains a lookup.
+     * @param splitLayout layout split around its message, null to always go through the layout
+     */
+    public static void render(LogEvent event, Layout<?> layout, MessageSplitPatternLayout splitLayout,
+                              EncodedEvent encodedEvent) {
+        if (null == splitLayout || !renderParameterizedMessage(event, splitLayout, encodedEvent)) {
+            render(event, layout, encodedEvent);
+        }
+    }
+
+    /**
+     * Renders the log event with the compiled layout's message layout, and only looks up the ids of the
+     * compiled layout's column values
+     * @param splitLayout the compiled layout's message split layout, null to always go through its message layout
+     */
+    public static void render(LogEvent event, CompiledPatternLayout compiledLayout,
+                              MessageSplitPatternLayout splitLayout, EncodedEvent encodedEvent) {
+        render(event, compiledLayout.getMessageLayout(), splitLayout, encodedEvent);
+        compiledLayout.getColumnIds(event, encodedEvent.columnIds);
+    }
+
+    private static boolean renderParameterizedMessage(LogEvent event, MessageSplitPatternLayout splitLayout,
+                                                      EncodedEvent encodedEvent) {
+        Message message = event.getMessage();
+        boolean isParameterizedMessage =
+                message instanceof ParameterizedMessage || message instanceof ReusableParameterizedMessage;
+        if (!(isParameterizedMessage || message instanceof ReusableMessage) || null == message.getFormat()
+                || message.getFormat().indexOf(MessageTemplate.PLACEHOLDER) < 0) {
+            return false;
+        }
+        MessageTemplate template = MessageTemplate.get(message.getFormat());
+        if (!template.supported) {
+            return false;
+        }
+        Object[] parameters = null;
+        if (template.numPlaceholders > 0) {
+            parameters = message.getParameters();
+            // With fewer arguments than placeholders, log4j leaves the remaining placeholders as is
+            if (null == parameters || parameters.length < template.numPlaceholders) {
+                return false;
+            }
+        }
+
+        // Render everything as text first, so it can be checked before anything is encoded
+        StringBuilder text = threadLocalStringBuilder.get();
+        text.setLength(0);
+        splitLayout.formatPrefix(event, text);
+        int messageBeginIndex = text.length();
+        int[] parameterIndices = encodedEvent.parameterIndices(template.numPlaceholders);
+        for (int i = 0; i < template.numPlaceholders; i++) {
+            text.append(template.staticTexts[i]);
+            parameterIndices[2 * i] = text.length();
+            appendParameter(parameters[i], text);
+            parameterIndices[2 * i + 1] = text.length();
+        }
+        text.append(template.staticTexts[template.numPlaceholders]);
+        int messageEndIndex = text.length();
+        boolean renderedIdentically = !containsLookup(text, messageBeginIndex, messageEndIndex)
+                && (isParameterizedMessage || isFormattedMessage((ReusableMessage) message, text,
+                messageBeginIndex, messageEndIndex));
+        if (renderedIdentically) {
+            splitLayout.formatSuffix(event, text);
+            // Each part is encoded on its own, which would break up a surrogate pair spanning two parts
+            renderedIdentically = !splitsSurrogatePair(text, messageBeginIndex)
+                    && !splitsSurrogatePair(text, messageEndIndex);
+            for (int i = 0; renderedIdentically && i < 2 * template.numPlaceholders; i++) {
+                renderedIdentically = !splitsSurrogatePair(text, parameterIndices[i]);
+            }
+        }
+        if (renderedIdentically) {
+            encode(event, template, text, messageBeginIndex, messageEndIndex, parameterIndices, encodedEvent);
+        }
+        StringBuilders.trimToMaxSize(text, Constants.MAX_REUSABLE_MESSAGE_SIZE);
+        return renderedIdentically;
+    }
+
+    /**
+     * Encodes the rendered text into the encoded event's message, translating the message and parameter
+     * bounds into byte positions. A parameter too long to be a dictionary variable isn't one: the message is
+     * then tokenized as a whole, like the layout's rendering would be.
+     */
+    private static void encode(LogEvent event, MessageTemplate template, StringBuilder text,
+                               int messageBeginIndex, int messageEndIndex, int[] parameterIndices,
+                               EncodedEvent encodedEvent) {
+        encodedEvent.reset();
+        encodedEvent.timestamp = event.getTimeMillis();
+        PatternLayoutBufferDestination destination = encodedEvent.message;
+        destination.appendUtf8(text, 0, messageBeginIndex);
+        encodedEvent.messageBeginPos = destination.getByteBuffer().position();
+        int index = messageBeginIndex;
+        boolean parametersFitEntries = true;
+        for (int i = 0; i < template.numPlaceholders; i++) {
+            destination.appendUtf8(text, index, parameterIndices[2 * i]);
+            int beginPos = destination.getByteBuffer().position();
+            index = parameterIndices[2 * i + 1];
+            destination.appendUtf8(text, parameterIndices[2 * i], index);
+            int endPos = destination.getByteBuffer().position();
+            encodedEvent.setParameterBounds(i, beginPos, endPos);
+            parametersFitEntries &= endPos - beginPos <= CompressionDictionary.MAX_ENTRY_LENGTH;
+        }
+        destination.appendUtf8(text, index, messageEndIndex);
+        encodedEvent.messageEndPos = destination.getByteBuffer().position();
+        destination.appendUtf8(text, messageEndIndex, text.length());
+        encodedEvent.messageTemplate = parametersFitEntries ? template : null;
+    }
+
+    /**
+     * @return whether text[beginIndex, endIndex) is the message's formatted text
+     */
+    private static boolean isFormattedMessage(ReusableMessage message, StringBuilder text, int beginIndex,
+                                              int endIndex) {
+        StringBuilder formattedMessage = threadLocalFormattedMessage.get();
+        formattedMessage.setLength(0);
+        message.formatTo(formattedMessage);
+        boolean isFormattedMessage = formattedMessage.length() == endIndex - beginIndex;
+        for (int i = 0; isFormattedMessage && i < formattedMessage.length(); i++) {
+            isFormattedMessage = formattedMessage.charAt(i) == text.charAt(beginIndex + i);
+        }
+        StringBuilders.trimToMaxSize(formattedMessage, Constants.MAX_REUSABLE_MESSAGE_SIZE);
+        return isFormattedMessage;
+    }
+
+    /**
+     * Renders a parameter exactly like log4j's ParameterFormatter, without allocating for common types
+     */
+    private static void appendParameter(Object parameter, StringBuilder text) {
+        if (null == parameter || parameter instanceof String) {
+            text.append((String) parameter);
+        } else if (parameter instanceof Integer) {
+            text.append(((Integer) parameter).intValue());
+        } else if (parameter instanceof Long) {
+            text.append(((Long) parameter).longValue());
+        } else if (parameter instanceof Double) {
+            text.append(((Double) parameter).doubleValue());
+        } else if (parameter instanceof Boolean) {
+            text.append(((Boolean) parameter).booleanValue());
+        } else if (parameter instanceof StringBuilderFormattable) {
+            ((StringBuilderFormattable) parameter).formatTo(text);
+        } else if (parameter instanceof CharSequence) {
+            text.append((CharSequence) parameter);
+        } else {
+            // Arrays, collections, maps, dates, objects whose toString throws, ...
+            text.append(ParameterizedMessage.deepToString(parameter));
+        }
+    }
+
+    private static boolean splitsSurrogatePair(StringBuilder text, int index) {
+        return index > 0 && index < text.length() && Character.isHighSurrogate(text.charAt(index - 1))
+                && Character.isLowSurrogate(text.charAt(index));
+    }
+
+    private static boolean containsLookup(StringBuilder text, int beginIndex, int endIndex) {
+        for (int i = beginIndex; i < endIndex - 1; i++) {
+            if ('$' == text.charAt(i) && '{' == text.charAt(i + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tokenizes an already rendered message into logtype and variables
+     */
+    public void tokenize(EncodedEvent encodedEvent) throws DigestException {
+        ByteBuffer logMessage = encodedEvent.getMessage();
+
+        // Reset (and potentially extend) buffers and token bounds
+        encodedEvent.ensureLogtypeCapacity(logMessage.capacity());
+        encodedEvent.logtype.clear();
+        encodedEvent.numVariables = 0;
+        encodedEvent.resolvedDictionaries = null;
+
+        ByteBuffer logtype = encodedEvent.logtype;
+        MessageTemplate template = encodedEvent.messageTemplate;
+        if (null == template) {
+            tokenize(encodedEvent, 0, logMessage.position());
+        } else {
+            // Only the layout's text around the message needs tokenizing, the message's static text is known
+            // (and usually has no variables) and each parameter is exactly one variable
+            byte[] messageBytes = logMessage.array();
+            tokenize(encodedEvent, 0, encodedEvent.messageBeginPos);
+            int staticTextBeginPos = encodedEvent.messageBeginPos;
+            for (int i = 0; i < template.numPlaceholders; i++) {
+                long bounds = encodedEvent.parameterBounds[i];
+                int beginPos = EncodedEvent.unpackBeginIndex(bounds);
+                int endPos = EncodedEvent.unpackEndIndex(bounds);
+                putStaticText(encodedEvent, template, i, staticTextBeginPos, beginPos);
+                if (beginPos < endPos) {
+                    byte varType = tokenizer.encodeVariable(messageBytes, beginPos, endPos);
+                    logtype.put(varType);
+                    addVariable(encodedEvent, varType, beginPos, endPos);
+                }
+                staticTextBeginPos = endPos;
+            }
+            putStaticText(encodedEvent, template, template.numPlaceholders, staticTextBeginPos,
+                    encodedEvent.messageEndPos);
+            tokenize(encodedEvent, encodedEvent.messageEndPos, logMessage.position());
+        }
+
+        logtypeKey.wrap(logtype);
+        System.arraycopy(logtypeKey.digest, 0, encodedEvent.logtypeDigest, 0, logtypeKey.digest.length);
+    }
+
+    /**
+     * Adds the template's static text i, rendered at message bytes [beginPos, endPos), to the logtype
+     */
+    private void putStaticText(EncodedEvent encodedEvent, MessageTemplate template, int i, int beginPos,
+                               int endPos) throws DigestException {
+        if (template.staticTextHasVariables[i]) {
+            tokenize(encodedEvent, beginPos, endPos);
+        } else {
+            encodedEvent.logtype.put(template.encodedStaticTexts[i]);
+        }
+    }
+
+    /**
+     * Tokenizes message bytes [beginPos, endPos) into the encoded event's logtype and variables
+     */
+    private void tokenize(EncodedEvent encodedEvent, int beginPos, int endPos) throws DigestException {
+        byte[] messageBytes = encodedEvent.getMessage().array();
+        ByteBuffer logtype = encodedEvent.logtype;
+        tokenizer.reset(beginPos);
+        while (tokenizer.parseNextVar(messageBytes, endPos, logtype)) {
+            byte varType = tokenizer.getVarType();
+            logtype.put(varType);
+            addVariable(encodedEvent, varType, tokenizer.getVarBeginPos(), tokenizer.getVarEndPos());
+        }
+    }
+
+    /**
+     * Adds the variable last encoded by the tokenizer, hashing it if it's a dictionary variable
+     */
+    private void addVariable(EncodedEvent encodedEvent, byte varType, int beginPos, int endPos)
+            throws DigestException {
+        if (EncodedEvent.VARIABLE_ID_DELIM == varType) {
+            int index = encodedEvent.addVariable(varType, EncodedEvent.packBounds(beginPos, endPos));
+            variableKey.setView(encodedEvent.getMessage().array(), beginPos, endPos);
+            variableKey.computeDigest();
+            System.arraycopy(variableKey.digest, 0, encodedEvent.variableDigests,
+                    index * EncodedEvent.DIGEST_LENGTH, variableKey.digest.length);
+        } else {
+            encodedEvent.addVariable(varType, tokenizer.getVarEncoding());
+        }
+    }
+}
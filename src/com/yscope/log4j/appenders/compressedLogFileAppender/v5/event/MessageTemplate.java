@@ -0,0 +1,93 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.event;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Static text of a parameterized message's format string, split at its "{}" placeholders. The split is
+ * done by log4j itself (formatting the pattern with sentinel arguments), so escaped placeholders are
+ * handled exactly like when the message is rendered. Static text that contains variables (e.g. "retry 3 of
+ * {}") still has to be tokenized, whether it does is found once per template.
+ * Templates are immutable and cached per format string identity in a small lock-free direct-mapped cache
+ * shared by all threads, so looking one up on the logging path is an array load and a reference compare.
+ */
+public final class MessageTemplate {
+    private static final int CACHE_SIZE = 4096;   // Must be a power of 2
+    private static final MessageTemplate[] CACHE = new MessageTemplate[CACHE_SIZE];
+    // Unicode noncharacter, can't show up in the rendered format unless the format contains it
+    private static final char SENTINEL = '\uFDD0';
+    static final String PLACEHOLDER = "{}";
+
+    public final String format;
+    // numPlaceholders + 1 static texts, placeholder i sits between staticTexts[i] and staticTexts[i + 1]
+    public final String[] staticTexts;
+    public final byte[][] encodedStaticTexts;   // UTF-8 encoding of staticTexts
+    // Whether the tokenizer finds variables in staticTexts[i], otherwise it goes into the logtype as is
+    public final boolean[] staticTextHasVariables;
+    public final int numPlaceholders;
+    // False if the format can't be split reliably, such messages have to go through the tokenizer
+    public final boolean supported;
+
+    private MessageTemplate(String format) {
+        this.format = format;
+        if (format.indexOf(SENTINEL) >= 0) {
+            staticTexts = null;
+            encodedStaticTexts = null;
+            staticTextHasVariables = null;
+            numPlaceholders = 0;
+            supported = false;
+            return;
+        }
+
+        // Supply at least as many arguments as there are (possibly escaped) placeholders
+        int maxNumPlaceholders = 0;
+        for (int i = format.indexOf(PLACEHOLDER); i >= 0; i = format.indexOf(PLACEHOLDER, i + 2)) {
+            maxNumPlaceholders++;
+        }
+        Object[] sentinels = new Object[maxNumPlaceholders];
+        Arrays.fill(sentinels, String.valueOf(SENTINEL));
+        String rendered = ParameterizedMessage.format(format, sentinels);
+
+        ArrayList<String> texts = new ArrayList<>();
+        int beginIndex = 0;
+        for (int i = rendered.indexOf(SENTINEL); i >= 0; i = rendered.indexOf(SENTINEL, beginIndex)) {
+            texts.add(rendered.substring(beginIndex, i));
+            beginIndex = i + 1;
+        }
+        texts.add(rendered.substring(beginIndex));
+        staticTexts = texts.toArray(new String[0]);
+        encodedStaticTexts = new byte[staticTexts.length][];
+        staticTextHasVariables = new boolean[staticTexts.length];
+        LogMessageTokenizer tokenizer = new LogMessageTokenizer();
+        for (int i = 0; i < staticTexts.length; i++) {
+            encodedStaticTexts[i] = staticTexts[i].getBytes(StandardCharsets.UTF_8);
+            tokenizer.reset();
+            staticTextHasVariables[i] = tokenizer.getBoundsOfNextVar(
+                    ByteBuffer.wrap(encodedStaticTexts[i]).position(encodedStaticTexts[i].length));
+        }
+        numPlaceholders = staticTexts.length - 1;
+        supported = true;
+    }
+
+    /**
+     * @return the template of the format string, from the cache if the same (or an equal) format string
+     *         was seen recently
+     */
+    public static MessageTemplate get(String format) {
+        int index = System.identityHashCode(format) & (CACHE_SIZE - 1);
+        MessageTemplate template = CACHE[index];
+        if (null != template && (template.format == format || template.format.equals(format))) {
+            return template;
+        }
+        // Racing threads may both build the template, whichever is stored last wins. All fields are final,
+        // so other threads can never see a partially constructed template.
+        template = new MessageTemplate(format);
+        CACHE[index] = template;
+        return template;
+    }
+}
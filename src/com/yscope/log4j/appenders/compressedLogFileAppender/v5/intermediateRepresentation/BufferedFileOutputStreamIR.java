@@ -1,49 +1,102 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.PipelinedZstdOutputStream;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public abstract class BufferedFileOutputStreamIR implements IR {
     protected DataOutputStream bufferedDataOutputStream;
+    // Only set for uncompressed files, which are the only ones that can be synced
+    private FileChannel fileChannel;
+    private long numBytes = 0;
 
     public BufferedFileOutputStreamIR(final Path path, int compressionLevel) throws IOException {
-        if (compressionLevel != 0) {
+        this(path, compressionLevel, null, 0);
+    }
+
+    /**
+     * @param pipeline if not null (and compressionLevel isn't 0), the column is compressed by the pipeline's
+     *                 threads rather than the writing thread
+     * @param numBuffers number of buffers the column may have in the pipeline
+     */
+    public BufferedFileOutputStreamIR(final Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                      int numBuffers) throws IOException {
+        if (compressionLevel != 0 && null != pipeline) {
+            PipelinedZstdOutputStream pipelinedZstdOutputStream = new PipelinedZstdOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(path), 8192), pipeline, numBuffers);
+            bufferedDataOutputStream = new DataOutputStream(new BufferedOutputStream(pipelinedZstdOutputStream, 16384));
+        } else if (compressionLevel != 0) {
             BufferedOutputStream compressedInput = new BufferedOutputStream(Files.newOutputStream(path), 8192);
             ZstdCompressorOutputStream zstdCompressorOutputStream =
                     new ZstdCompressorOutputStream(compressedInput, compressionLevel);
             BufferedOutputStream decompressedInput = new BufferedOutputStream(zstdCompressorOutputStream, 16384);
             bufferedDataOutputStream = new DataOutputStream(decompressedInput);
         } else {
-            bufferedDataOutputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            bufferedDataOutputStream = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(fileChannel)));
         }
     }
 
+    /**
+     * Writes straight into outputStream (e.g. a section of an archive container), without buffering or
+     * compression
+     */
+    public BufferedFileOutputStreamIR(OutputStream outputStream) {
+        bufferedDataOutputStream = new DataOutputStream(outputStream);
+    }
+
     public void close() throws IOException {
         bufferedDataOutputStream.close();
     }
 
+    @Override
+    public long sync() throws IOException {
+        if (null == fileChannel) {
+            throw new IOException("Only uncompressed files can be synced");
+        }
+        bufferedDataOutputStream.flush();
+        fileChannel.force(false);
+        return fileChannel.position();
+    }
+
+    @Override
+    public long getNumBytes() {
+        return numBytes;
+    }
+
     @Override
     public void putByte(byte val) throws IOException {
         bufferedDataOutputStream.writeByte(val);
+        numBytes += Byte.BYTES;
     }
 
     @Override
     public void putChar(char val) throws IOException {
         bufferedDataOutputStream.writeChar(val);
+        numBytes += Character.BYTES;
     }
 
     @Override
     public void putInt(int val) throws IOException {
         bufferedDataOutputStream.writeInt(val);
+        numBytes += Integer.BYTES;
     }
 
     @Override
     public void putLong(long val) throws IOException {
         bufferedDataOutputStream.writeLong(val);
+        numBytes += Long.BYTES;
     }
 }
@@ -0,0 +1,129 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uncompressed IR column accumulated in NUM_BUFFERS direct buffers of bufferSize bytes and written to its
+ * file with a single gathering write once all of them are full. Values are stored with absolute puts in the
+ * platform's native byte order, so a put is a bounds check and a plain store rather than the chain of
+ * single byte writes DataOutputStream makes. Readers must read the file in the byte order recorded in the
+ * archive's metadata (see ArchiveSettings.columnByteOrder).
+ */
+public abstract class GatheringFileChannelIR implements IR {
+    private static final int NUM_BUFFERS = 4;
+
+    private final FileChannel fileChannel;
+    private final int bufferSize;
+    private final ByteBuffer[] buffers = new ByteBuffer[NUM_BUFFERS];
+    private int bufferIndex = 0;
+    private ByteBuffer buffer;
+    private int position = 0;   // Write position in the current buffer
+    private long flushedBytes = 0;
+
+    public GatheringFileChannelIR(Path path, int bufferSize) throws IOException {
+        this.bufferSize = bufferSize;
+        fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        for (int i = 0; i < NUM_BUFFERS; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+        }
+        buffer = buffers[0];
+    }
+
+    /**
+     * Moves on to the next buffer, writing all of them once they are full
+     */
+    private void nextBuffer() throws IOException {
+        buffer.limit(position);
+        if (++bufferIndex == NUM_BUFFERS) {
+            flush();
+        } else {
+            buffer = buffers[bufferIndex];
+            position = 0;
+        }
+    }
+
+    private void flush() throws IOException {
+        int numBuffers = Math.min(bufferIndex + 1, NUM_BUFFERS);
+        if (bufferIndex < NUM_BUFFERS) {
+            buffer.limit(position);
+        }
+        long numBytes = 0;
+        for (int i = 0; i < numBuffers; i++) {
+            numBytes += buffers[i].remaining();
+        }
+        flushedBytes += numBytes;
+        while (numBytes > 0) {
+            numBytes -= fileChannel.write(buffers, 0, numBuffers);
+        }
+        for (ByteBuffer buffer : buffers) {
+            buffer.clear();
+        }
+        bufferIndex = 0;
+        buffer = buffers[0];
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        fileChannel.close();
+    }
+
+    @Override
+    public long sync() throws IOException {
+        flush();
+        fileChannel.force(false);
+        return fileChannel.position();
+    }
+
+    @Override
+    public long getNumBytes() {
+        long numBytes = flushedBytes + position;
+        for (int i = 0; i < bufferIndex; i++) {
+            numBytes += buffers[i].limit();
+        }
+        return numBytes;
+    }
+
+    @Override
+    public void putByte(byte val) throws IOException {
+        if (position + Byte.BYTES > bufferSize) {
+            nextBuffer();
+        }
+        buffer.put(position, val);
+        position += Byte.BYTES;
+    }
+
+    @Override
+    public void putChar(char val) throws IOException {
+        if (position + Character.BYTES > bufferSize) {
+            nextBuffer();
+        }
+        buffer.putChar(position, val);
+        position += Character.BYTES;
+    }
+
+    @Override
+    public void putInt(int val) throws IOException {
+        if (position + Integer.BYTES > bufferSize) {
+            nextBuffer();
+        }
+        buffer.putInt(position, val);
+        position += Integer.BYTES;
+    }
+
+    @Override
+    public void putLong(long val) throws IOException {
+        if (position + Long.BYTES > bufferSize) {
+            nextBuffer();
+        }
+        buffer.putLong(position, val);
+        position += Long.BYTES;
+    }
+}
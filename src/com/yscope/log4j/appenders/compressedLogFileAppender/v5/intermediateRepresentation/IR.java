@@ -4,6 +4,15 @@ import java.io.IOException;
 
 public interface IR {
     void close() throws IOException;
+    /**
+     * Forces everything written so far to disk (see ArchiveWriter.commit)
+     * @return length of the column's file on disk
+     */
+    long sync() throws IOException;
+    /**
+     * @return number of bytes put so far, i.e. the column's uncompressed length (see TimeIndex)
+     */
+    long getNumBytes();
     void putByte(byte val) throws IOException;
     void putChar(char val) throws IOException;
     void putInt(int val) throws IOException;
@@ -0,0 +1,28 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.BufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+public class ColumnBufferedFileOutputStreamIR extends BufferedFileOutputStreamIR implements ColumnIR {
+    public ColumnBufferedFileOutputStreamIR(Path path, int compressionLevel) throws IOException {
+        super(path, compressionLevel);
+    }
+
+    public ColumnBufferedFileOutputStreamIR(Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                            int numBuffers) throws IOException {
+        super(path, compressionLevel, pipeline, numBuffers);
+    }
+
+    public ColumnBufferedFileOutputStreamIR(OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    @Override
+    public void putId(int id) throws IOException {
+        putInt(id);
+    }
+}
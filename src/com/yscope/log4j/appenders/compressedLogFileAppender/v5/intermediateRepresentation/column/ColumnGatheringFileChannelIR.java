@@ -0,0 +1,17 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class ColumnGatheringFileChannelIR extends GatheringFileChannelIR implements ColumnIR {
+    public ColumnGatheringFileChannelIR(Path path, int bufferSize) throws IOException {
+        super(path, bufferSize);
+    }
+
+    @Override
+    public void putId(int id) throws IOException {
+        putInt(id);
+    }
+}
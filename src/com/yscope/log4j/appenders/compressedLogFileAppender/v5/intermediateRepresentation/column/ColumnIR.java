@@ -0,0 +1,10 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.IR;
+
+import java.io.IOException;
+
+public interface ColumnIR extends IR {
+    void putId(int id) throws IOException;
+    void close() throws IOException;
+}
@@ -0,0 +1,23 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.column;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.MemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class ColumnMemoryMappedIR extends MemoryMappedIR implements ColumnIR {
+    public ColumnMemoryMappedIR(Path path, int segmentSize, int compressionLevel) throws IOException {
+        super(path, segmentSize, compressionLevel);
+    }
+
+    public ColumnMemoryMappedIR(Path path, int segmentSize, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                int numBuffers) throws IOException {
+        super(path, segmentSize, compressionLevel, pipeline, numBuffers);
+    }
+
+    @Override
+    public void putId(int id) throws IOException {
+        putInt(id);
+    }
+}
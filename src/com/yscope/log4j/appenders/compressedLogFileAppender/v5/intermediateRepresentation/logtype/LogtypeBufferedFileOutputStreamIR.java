@@ -1,8 +1,10 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype;
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.BufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
 public class LogtypeBufferedFileOutputStreamIR extends BufferedFileOutputStreamIR implements LogtypeIR {
@@ -10,6 +12,15 @@ public class LogtypeBufferedFileOutputStreamIR extends BufferedFileOutputStreamI
         super(path, compressionLevel);
     }
 
+    public LogtypeBufferedFileOutputStreamIR(Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                             int numBuffers) throws IOException {
+        super(path, compressionLevel, pipeline, numBuffers);
+    }
+
+    public LogtypeBufferedFileOutputStreamIR(OutputStream outputStream) {
+        super(outputStream);
+    }
+
     @Override
     public void putLogtype(long logtype) throws IOException {
         putLong(logtype);
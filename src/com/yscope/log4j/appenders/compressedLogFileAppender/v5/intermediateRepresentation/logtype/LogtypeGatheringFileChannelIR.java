@@ -0,0 +1,17 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class LogtypeGatheringFileChannelIR extends GatheringFileChannelIR implements LogtypeIR {
+    public LogtypeGatheringFileChannelIR(Path path, int bufferSize) throws IOException {
+        super(path, bufferSize);
+    }
+
+    @Override
+    public void putLogtype(long logtype) throws IOException {
+        putLong(logtype);
+    }
+}
@@ -1,8 +1,10 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.IR;
+
 import java.io.IOException;
 
-public interface LogtypeIR {
+public interface LogtypeIR extends IR {
     void putLogtype(long logtype) throws IOException;
     void close() throws IOException;
 }
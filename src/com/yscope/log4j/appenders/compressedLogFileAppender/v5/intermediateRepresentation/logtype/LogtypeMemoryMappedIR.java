@@ -1,14 +1,20 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype;
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.MemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
 import java.nio.file.Path;
 
 public class LogtypeMemoryMappedIR extends MemoryMappedIR implements LogtypeIR {
 
-    public LogtypeMemoryMappedIR(Path path, int maxBufSize, Integer compressionLevel) throws IOException {
-        super(path, maxBufSize, compressionLevel);
+    public LogtypeMemoryMappedIR(Path path, int segmentSize, Integer compressionLevel) throws IOException {
+        super(path, segmentSize, compressionLevel);
+    }
+
+    public LogtypeMemoryMappedIR(Path path, int segmentSize, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                 int numBuffers) throws IOException {
+        super(path, segmentSize, compressionLevel, pipeline, numBuffers);
     }
 
     @Override
@@ -0,0 +1,31 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.BufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Timestamp column encoded with a DeltaTimestampCodec
+ */
+public class DeltaTimestampBufferedFileOutputStreamIR extends BufferedFileOutputStreamIR implements TimestampIR {
+    private final DeltaTimestampCodec codec;
+
+    public DeltaTimestampBufferedFileOutputStreamIR(Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                                    int numBuffers, int blockSize) throws IOException {
+        super(path, compressionLevel, pipeline, numBuffers);
+        codec = new DeltaTimestampCodec(blockSize);
+    }
+
+    public DeltaTimestampBufferedFileOutputStreamIR(OutputStream outputStream, int blockSize) {
+        super(outputStream);
+        codec = new DeltaTimestampCodec(blockSize);
+    }
+
+    @Override
+    public void putTimestamp(long timestamp) throws IOException {
+        codec.encode(timestamp, this);
+    }
+}
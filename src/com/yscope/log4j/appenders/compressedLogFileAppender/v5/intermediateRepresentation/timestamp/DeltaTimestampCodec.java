@@ -0,0 +1,68 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.IR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.VarintEncoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Delta-of-delta timestamp encoding: the first timestamp of every block of blockSize events is the block's
+ * base, every following timestamp is stored as the difference between its delta and the previous delta, as
+ * a zigzag varint. Events logged at a steady rate, or with small out-of-order jitter between threads, mostly
+ * take a single byte instead of 8. Blocks line up with the chunks of an archive container, so every chunk's
+ * timestamps can be decoded on their own.
+ * Encoder and decoder keep state, one instance per column.
+ */
+public class DeltaTimestampCodec {
+    private final int blockSize;
+    private int numTimestampsInBlock = 0;
+    private long previousTimestamp;
+    private long previousDelta;
+
+    public DeltaTimestampCodec(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void encode(long timestamp, IR ir) throws IOException {
+        VarintEncoding.putVarint(ir, VarintEncoding.zigzagEncode(next(timestamp)));
+    }
+
+    public long decode(ByteBuffer buffer) {
+        long value = VarintEncoding.zigzagDecode(VarintEncoding.getVarint(buffer));
+        long timestamp;
+        if (0 == numTimestampsInBlock) {
+            timestamp = value;
+            previousDelta = 0;
+        } else {
+            previousDelta += value;
+            timestamp = previousTimestamp + previousDelta;
+        }
+        advance(timestamp);
+        return timestamp;
+    }
+
+    /**
+     * @return value to store for timestamp
+     */
+    private long next(long timestamp) {
+        long value;
+        if (0 == numTimestampsInBlock) {
+            value = timestamp;
+            previousDelta = 0;
+        } else {
+            long delta = timestamp - previousTimestamp;
+            value = delta - previousDelta;
+            previousDelta = delta;
+        }
+        advance(timestamp);
+        return value;
+    }
+
+    private void advance(long timestamp) {
+        previousTimestamp = timestamp;
+        if (++numTimestampsInBlock == blockSize) {
+            numTimestampsInBlock = 0;
+        }
+    }
+}
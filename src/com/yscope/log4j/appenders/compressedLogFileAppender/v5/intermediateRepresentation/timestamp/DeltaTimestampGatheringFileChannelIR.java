@@ -0,0 +1,23 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Timestamp column encoded with a DeltaTimestampCodec
+ */
+public class DeltaTimestampGatheringFileChannelIR extends GatheringFileChannelIR implements TimestampIR {
+    private final DeltaTimestampCodec codec;
+
+    public DeltaTimestampGatheringFileChannelIR(Path path, int bufferSize, int blockSize) throws IOException {
+        super(path, bufferSize);
+        codec = new DeltaTimestampCodec(blockSize);
+    }
+
+    @Override
+    public void putTimestamp(long timestamp) throws IOException {
+        codec.encode(timestamp, this);
+    }
+}
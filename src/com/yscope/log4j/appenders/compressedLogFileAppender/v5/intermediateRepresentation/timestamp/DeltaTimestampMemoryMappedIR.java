@@ -0,0 +1,26 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.MemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Timestamp column encoded with a DeltaTimestampCodec
+ */
+public class DeltaTimestampMemoryMappedIR extends MemoryMappedIR implements TimestampIR {
+    private final DeltaTimestampCodec codec;
+
+    public DeltaTimestampMemoryMappedIR(Path path, int segmentSize, int compressionLevel,
+                                        ZstdCompressionPipeline pipeline, int numBuffers, int blockSize)
+            throws IOException {
+        super(path, segmentSize, compressionLevel, pipeline, numBuffers);
+        codec = new DeltaTimestampCodec(blockSize);
+    }
+
+    @Override
+    public void putTimestamp(long timestamp) throws IOException {
+        codec.encode(timestamp, this);
+    }
+}
@@ -1,8 +1,10 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.BufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
 public class TimestampBufferedFileOutputStreamIR extends BufferedFileOutputStreamIR implements TimestampIR {
@@ -10,6 +12,15 @@ public class TimestampBufferedFileOutputStreamIR extends BufferedFileOutputStrea
         super(path, compressionLevel);
     }
 
+    public TimestampBufferedFileOutputStreamIR(Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                               int numBuffers) throws IOException {
+        super(path, compressionLevel, pipeline, numBuffers);
+    }
+
+    public TimestampBufferedFileOutputStreamIR(OutputStream outputStream) {
+        super(outputStream);
+    }
+
     @Override
     public void putTimestamp(long timestamp) throws IOException {
         putLong(timestamp);
@@ -0,0 +1,17 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class TimestampGatheringFileChannelIR extends GatheringFileChannelIR implements TimestampIR {
+    public TimestampGatheringFileChannelIR(Path path, int bufferSize) throws IOException {
+        super(path, bufferSize);
+    }
+
+    @Override
+    public void putTimestamp(long timestamp) throws IOException {
+        putLong(timestamp);
+    }
+}
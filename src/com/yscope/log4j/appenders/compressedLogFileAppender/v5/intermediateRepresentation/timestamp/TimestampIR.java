@@ -1,8 +1,10 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
 
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.IR;
+
 import java.io.IOException;
 
-public interface TimestampIR {
+public interface TimestampIR extends IR {
     void putTimestamp(long timestamp) throws IOException;
     void close() throws IOException;
 }
@@ -1,13 +1,19 @@
 package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp;
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.MemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
 import java.nio.file.Path;
 
 public class TimestampMemoryMappedIR extends MemoryMappedIR implements TimestampIR {
-    public TimestampMemoryMappedIR(Path path, int maxBufSize, Integer compressionLevel) throws IOException {
-        super(path, maxBufSize, compressionLevel);
+    public TimestampMemoryMappedIR(Path path, int segmentSize, Integer compressionLevel) throws IOException {
+        super(path, segmentSize, compressionLevel);
+    }
+
+    public TimestampMemoryMappedIR(Path path, int segmentSize, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                   int numBuffers) throws IOException {
+        super(path, segmentSize, compressionLevel, pipeline, numBuffers);
     }
 
     @Override
@@ -4,8 +4,10 @@ import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictio
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.CompactVariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.BufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
 public class CompactVariableBufferedFileOutputStreamIR extends BufferedFileOutputStreamIR implements VariableIR {
@@ -13,6 +15,15 @@ public class CompactVariableBufferedFileOutputStreamIR extends BufferedFileOutpu
         super(path, compressionLevel);
     }
 
+    public CompactVariableBufferedFileOutputStreamIR(Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                                     int numBuffers) throws IOException {
+        super(path, compressionLevel, pipeline, numBuffers);
+    }
+
+    public CompactVariableBufferedFileOutputStreamIR(OutputStream outputStream) {
+        super(outputStream);
+    }
+
     @Override
     public void putDecimalEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
             throws IOException {
@@ -27,6 +38,11 @@ public class CompactVariableBufferedFileOutputStreamIR extends BufferedFileOutpu
                 getCompactVariableEncoding());
     }
 
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
+        putInt((int) encodedVariable);
+    }
+
     @Override
     public void putVariableID(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey,
                               CompressionDictionary variableDict) throws IOException, CloneNotSupportedException {
@@ -0,0 +1,40 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.CompactVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class CompactVariableGatheringFileChannelIR extends GatheringFileChannelIR implements VariableIR {
+    public CompactVariableGatheringFileChannelIR(Path path, int bufferSize) throws IOException {
+        super(path, bufferSize);
+    }
+
+    @Override
+    public void putDecimalEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
+            throws IOException {
+        putInt(((CompactVariableByteArrayViewDictionaryKey)variableByteArrayViewDictionaryKey).
+                getCompactVariableEncoding());
+    }
+
+    @Override
+    public void putIntegerEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
+            throws IOException {
+        putInt(((CompactVariableByteArrayViewDictionaryKey)variableByteArrayViewDictionaryKey).
+                getCompactVariableEncoding());
+    }
+
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
+        putInt((int) encodedVariable);
+    }
+
+    @Override
+    public void putVariableID(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey,
+                              CompressionDictionary variableDict) throws IOException, CloneNotSupportedException {
+        putInt(variableDict.getCompactId(variableByteArrayViewDictionaryKey));
+    }
+}
@@ -4,8 +4,10 @@ import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictio
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.StandardVariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.BufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
 
 public class StandardVariableBufferedFileOutputStreamIR extends BufferedFileOutputStreamIR implements VariableIR {
@@ -13,6 +15,15 @@ public class StandardVariableBufferedFileOutputStreamIR extends BufferedFileOutp
         super(path, compressionLevel);
     }
 
+    public StandardVariableBufferedFileOutputStreamIR(Path path, int compressionLevel, ZstdCompressionPipeline pipeline,
+                                                      int numBuffers) throws IOException {
+        super(path, compressionLevel, pipeline, numBuffers);
+    }
+
+    public StandardVariableBufferedFileOutputStreamIR(OutputStream outputStream) {
+        super(outputStream);
+    }
+
     @Override
     public void putDecimalEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
             throws IOException {
@@ -27,6 +38,11 @@ public class StandardVariableBufferedFileOutputStreamIR extends BufferedFileOutp
                 getStandardVariableEncoding());
     }
 
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
+        putLong(encodedVariable);
+    }
+
     @Override
     public void putVariableID(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey,
                               CompressionDictionary variableDict) throws IOException, CloneNotSupportedException {
@@ -0,0 +1,40 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.StandardVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public class StandardVariableGatheringFileChannelIR extends GatheringFileChannelIR implements VariableIR {
+    public StandardVariableGatheringFileChannelIR(Path path, int bufferSize) throws IOException {
+        super(path, bufferSize);
+    }
+
+    @Override
+    public void putDecimalEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
+            throws IOException {
+        putLong(((StandardVariableByteArrayViewDictionaryKey)variableByteArrayViewDictionaryKey).
+                getStandardVariableEncoding());
+    }
+
+    @Override
+    public void putIntegerEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
+            throws IOException {
+        putLong(((StandardVariableByteArrayViewDictionaryKey)variableByteArrayViewDictionaryKey).
+                getStandardVariableEncoding());
+    }
+
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
+        putLong(encodedVariable);
+    }
+
+    @Override
+    public void putVariableID(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey,
+                              CompressionDictionary variableDict) throws IOException, CloneNotSupportedException {
+        putLong(variableDict.getId(variableByteArrayViewDictionaryKey));
+    }
+}
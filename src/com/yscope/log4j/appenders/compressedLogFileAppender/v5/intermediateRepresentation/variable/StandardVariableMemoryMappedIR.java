@@ -4,13 +4,19 @@ import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictio
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.StandardVariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.MemoryMappedIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
 
 import java.io.IOException;
 import java.nio.file.Path;
 
 public class StandardVariableMemoryMappedIR extends MemoryMappedIR implements VariableIR {
-    public StandardVariableMemoryMappedIR(final Path path, int maxBufSize, Integer compressionLevel) throws IOException {
-        super(path, maxBufSize, compressionLevel);
+    public StandardVariableMemoryMappedIR(final Path path, int segmentSize, Integer compressionLevel) throws IOException {
+        super(path, segmentSize, compressionLevel);
+    }
+
+    public StandardVariableMemoryMappedIR(Path path, int segmentSize, int compressionLevel,
+                                          ZstdCompressionPipeline pipeline, int numBuffers) throws IOException {
+        super(path, segmentSize, compressionLevel, pipeline, numBuffers);
     }
 
     @Override
@@ -27,6 +33,11 @@ public class StandardVariableMemoryMappedIR extends MemoryMappedIR implements Va
                 getStandardVariableEncoding());
     }
 
+    @Override
+    public void putEncodedVariable(long encodedVariable) throws IOException {
+        putLong(encodedVariable);
+    }
+
     @Override
     public void putVariableID(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey,
                               CompressionDictionary variableDict) throws IOException, CloneNotSupportedException {
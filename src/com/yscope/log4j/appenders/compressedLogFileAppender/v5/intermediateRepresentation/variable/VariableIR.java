@@ -2,14 +2,16 @@ package com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepr
 
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
 import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.IR;
 
 import java.io.IOException;
 
-public interface VariableIR {
+public interface VariableIR extends IR {
     void putDecimalEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
             throws IOException;
     void putIntegerEncodedVariable(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey)
             throws IOException;
+    void putEncodedVariable(long encodedVariable) throws IOException;
     void putVariableID(VariableByteArrayViewDictionaryKey variableByteArrayViewDictionaryKey,
                        CompressionDictionary variableDict) throws IOException, CloneNotSupportedException;
     void close() throws IOException;
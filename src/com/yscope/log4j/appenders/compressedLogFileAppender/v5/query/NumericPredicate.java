@@ -0,0 +1,150 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.query;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.DecompressionDictionaryEntry;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Range or equality predicate on a numeric variable of the log messages, e.g. "completed in {} ms" > 500.
+ * The variable is the integer or float encoded placeholder ('{}') of the messages whose logtype has the
+ * template's text right before and after it, so the predicate is evaluated on the variable's encoding
+ * without rendering the message (see appliesTo). Values are compared as numbers: 500, 500.0 and
+ * 500.00 are equal. Variables that weren't encoded (e.g. too many digits, zero-padded or "-0") are stored in
+ * the variable dictionary and never match.
+ * Floats are compared as doubles: the encodings hold up to 16 significant digits (8 for compact ones), which
+ * round to distinct doubles, and a bound parsed by Double.parseDouble rounds the same way.
+ */
+public class NumericPredicate {
+    public static final String PLACEHOLDER = "{}";
+
+    public enum Operator {
+        EQUAL("=="),
+        NOT_EQUAL("!="),
+        LESS("<"),
+        LESS_OR_EQUAL("<="),
+        GREATER(">"),
+        GREATER_OR_EQUAL(">=");
+
+        public final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Accepts the symbols (and "=") as well as the enum names
+         */
+        public static Operator fromString(String name) {
+            String trimmedName = name.trim();
+            if ("=".equals(trimmedName)) {
+                return EQUAL;
+            }
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(trimmedName)) {
+                    return operator;
+                }
+            }
+            return valueOf(trimmedName.toUpperCase());
+        }
+
+        private boolean test(int comparison) {
+            switch (this) {
+                case EQUAL:
+                    return comparison == 0;
+                case NOT_EQUAL:
+                    return comparison != 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    // Powers of ten up to the most digits after the decimal point of a float encoding
+    private static final double[] POWERS_OF_TEN = new double[17];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final String template;
+    private final byte[] textBefore;
+    private final byte[] textAfter;
+    private final Operator operator;
+    private final String value;
+    private final double bound;
+    // Integers are compared exactly to integral bounds that fit into a long
+    private final boolean isIntegralBound;
+    private final long integralBound;
+
+    /**
+     * @param template text around the variable, with '{}' in place of the variable
+     * @param value number the variable is compared to
+     * @throws IllegalArgumentException if the template has no placeholder or the value isn't a number
+     */
+    public NumericPredicate(String template, Operator operator, String value) {
+        int placeholderIndex = template.indexOf(PLACEHOLDER);
+        if (placeholderIndex < 0) {
+            throw new IllegalArgumentException("Template " + template + " has no " + PLACEHOLDER + " placeholder");
+        }
+        this.template = template;
+        textBefore = template.substring(0, placeholderIndex).getBytes(StandardCharsets.UTF_8);
+        textAfter = template.substring(placeholderIndex + PLACEHOLDER.length()).getBytes(StandardCharsets.UTF_8);
+        this.operator = operator;
+        this.value = value.trim();
+        bound = Double.parseDouble(this.value);
+        isIntegralBound = bound == Math.rint(bound) && Math.abs(bound) < 0x1p63;
+        integralBound = (long) bound;
+    }
+
+    @Override
+    public String toString() {
+        return template + " " + operator.symbol + " " + value;
+    }
+
+    /**
+     * @param position position of an integer or float placeholder in the logtype
+     * @return whether the predicate applies to the placeholder's variable, i.e. the template's text surrounds it
+     */
+    public boolean appliesTo(DecompressionDictionaryEntry logtype, int position) {
+        return hasTextAt(logtype, position - textBefore.length, textBefore)
+                && hasTextAt(logtype, position + 1, textAfter);
+    }
+
+    private static boolean hasTextAt(DecompressionDictionaryEntry logtype, int position, byte[] text) {
+        if (position < 0 || position + text.length > logtype.length) {
+            return false;
+        }
+        for (int i = 0; i < text.length; i++) {
+            if (logtype.getByte(position + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean testInteger(long variable) {
+        if (isIntegralBound) {
+            return operator.test(Long.compare(variable, integralBound));
+        }
+        return operator.test(Double.compare(variable, bound));
+    }
+
+    /**
+     * Tests the float whose decimal representation has the digits, with numDigitsAfterDecimalPoint of them
+     * after the decimal point (see RangeDecoder.fillDecimalBytes)
+     */
+    public boolean testFloat(boolean negative, long digits, int numDigitsAfterDecimalPoint) {
+        double variable = digits / POWERS_OF_TEN[numDigitsAfterDecimalPoint];
+        // -0.0 and 0.0 are equal numbers, but not to Double.compare
+        return operator.test(Double.compare(negative && digits != 0 ? -variable : variable, bound == 0 ? 0 : bound));
+    }
+}
@@ -0,0 +1,330 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.query;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.DecompressionDictionaryEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Wildcard pattern searched for in the lines of an archive, like grep: it may match anywhere in a line
+ * (without the line's timestamp). '*' matches any number of bytes, '?' a single byte (i.e. a single ASCII
+ * character) and '\' escapes the next character.
+ * Besides matching decoded lines, the query tells whether a logtype can produce a matching line at all (see
+ * canMatch), so readers only decode the events of the logtypes that can. The logtype's placeholders stand
+ * for what their variables can be: integers and floats only consist of digits, '-' and '.', dictionary
+ * variables can be anything (e.g. parameters of parameterized messages may contain spaces, or be empty).
+ * Logtypes that can only match if part of the match is in one of their dictionary variables (see
+ * canMatchOutsideDictionaryVariables) only need their events decoded if one of these variables may be part
+ * of a match (see mayBePartOfMatch).
+ * Both checks are run on the pattern as a sequence of elements that match one byte of a set, or any number
+ * of bytes of a set, which makes them linear in the length of the line (or logtype) times the pattern's.
+ */
+public class WildcardQuery {
+    private static final byte[] INTEGER_BYTES = "-0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FLOAT_BYTES = "-.0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Element of a pattern: one byte of the set, or with repeated, any number of them
+     */
+    private static class Element {
+        private static final Element ANY_BYTE = new Element(allBytes(), false);
+        private static final Element ANY_BYTES = new Element(allBytes(), true);
+        private static final Element INTEGER_BYTE = new Element(bytes(INTEGER_BYTES), false);
+        private static final Element INTEGER_BYTES_REPEATED = new Element(bytes(INTEGER_BYTES), true);
+        private static final Element FLOAT_BYTE = new Element(bytes(FLOAT_BYTES), false);
+        private static final Element FLOAT_BYTES_REPEATED = new Element(bytes(FLOAT_BYTES), true);
+
+        // Bit set of the 256 byte values
+        private final long[] set;
+        private final boolean repeated;
+
+        private Element(long[] set, boolean repeated) {
+            this.set = set;
+            this.repeated = repeated;
+        }
+
+        private static Element literal(byte b) {
+            long[] set = new long[4];
+            set[(b & 0xFF) >>> 6] |= 1L << (b & 0x3F);
+            return new Element(set, false);
+        }
+
+        private static long[] allBytes() {
+            return new long[] {-1L, -1L, -1L, -1L};
+        }
+
+        private static long[] bytes(byte[] bytes) {
+            long[] set = new long[4];
+            for (byte b : bytes) {
+                set[(b & 0xFF) >>> 6] |= 1L << (b & 0x3F);
+            }
+            return set;
+        }
+
+        private boolean matches(byte b) {
+            return (set[(b & 0xFF) >>> 6] & (1L << (b & 0x3F))) != 0;
+        }
+
+        private boolean intersects(Element other) {
+            for (int i = 0; i < set.length; i++) {
+                if ((set[i] & other.set[i]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final String pattern;
+    // Pattern without leading and trailing '*', since it may match anywhere in a line anyway
+    private final Element[] elements;
+    // Same, surrounded by '*', to be matched against a whole logtype
+    private final Element[] substringElements;
+    // Runs of the pattern's elements matching a single byte, i.e. the parts between its '*'
+    private final ArrayList<Element[]> segments = new ArrayList<>();
+
+    public WildcardQuery(String pattern) {
+        this.pattern = pattern;
+        ArrayList<Element> elements = new ArrayList<>();
+        byte[] bytes = pattern.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            if ('\\' == bytes[i] && i + 1 < bytes.length) {
+                elements.add(Element.literal(bytes[++i]));
+            } else if ('*' == bytes[i]) {
+                // Consecutive '*' are the same as one
+                if (elements.isEmpty() || Element.ANY_BYTES != elements.get(elements.size() - 1)) {
+                    elements.add(Element.ANY_BYTES);
+                }
+            } else if ('?' == bytes[i]) {
+                elements.add(Element.ANY_BYTE);
+            } else {
+                elements.add(Element.literal(bytes[i]));
+            }
+        }
+        while (!elements.isEmpty() && Element.ANY_BYTES == elements.get(0)) {
+            elements.remove(0);
+        }
+        while (!elements.isEmpty() && Element.ANY_BYTES == elements.get(elements.size() - 1)) {
+            elements.remove(elements.size() - 1);
+        }
+        this.elements = elements.toArray(new Element[0]);
+        substringElements = new Element[this.elements.length + 2];
+        substringElements[0] = Element.ANY_BYTES;
+        System.arraycopy(this.elements, 0, substringElements, 1, this.elements.length);
+        substringElements[substringElements.length - 1] = Element.ANY_BYTES;
+        int segmentBegin = 0;
+        for (int i = 0; i <= this.elements.length; i++) {
+            if (i == this.elements.length || this.elements[i].repeated) {
+                if (i > segmentBegin) {
+                    segments.add(Arrays.copyOfRange(this.elements, segmentBegin, i));
+                }
+                segmentBegin = i + 1;
+            }
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return whether the pattern matches somewhere in bytes[beginIndex, endIndex)
+     */
+    public boolean matches(byte[] bytes, int beginIndex, int endIndex) {
+        // States are the number of elements matched so far, a new match may start at every byte
+        boolean[] states = new boolean[elements.length + 1];
+        boolean[] nextStates = new boolean[elements.length + 1];
+        for (int i = beginIndex; i <= endIndex; i++) {
+            states[0] = true;
+            if (addEmptyMatches(states)) {
+                return true;
+            }
+            if (i == endIndex) {
+                break;
+            }
+            step(states, nextStates, bytes[i]);
+            boolean[] swap = states;
+            states = nextStates;
+            nextStates = swap;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether a match of the pattern can start in prefix[0, length) and end there or in whatever
+     * follows it (e.g. in the message following the columns of a compiled pattern layout)
+     */
+    public boolean mayStartMatchIn(byte[] prefix, int length) {
+        boolean[] states = new boolean[elements.length + 1];
+        boolean[] nextStates = new boolean[elements.length + 1];
+        boolean anyState = false;
+        for (int i = 0; i < length; i++) {
+            states[0] = true;
+            if (addEmptyMatches(states)) {
+                return true;
+            }
+            anyState = step(states, nextStates, prefix[i]);
+            boolean[] swap = states;
+            states = nextStates;
+            nextStates = swap;
+        }
+        return anyState;
+    }
+
+    /**
+     * Follows the elements matching no byte
+     * @return whether the whole pattern was matched
+     */
+    private boolean addEmptyMatches(boolean[] states) {
+        for (int i = 0; i < elements.length; i++) {
+            if (states[i] && elements[i].repeated) {
+                states[i + 1] = true;
+            }
+        }
+        return states[elements.length];
+    }
+
+    /**
+     * @return whether any state is left
+     */
+    private boolean step(boolean[] states, boolean[] nextStates, byte b) {
+        boolean anyState = false;
+        nextStates[0] = false;
+        for (int i = 0; i < elements.length; i++) {
+            nextStates[i + 1] = false;
+        }
+        for (int i = 0; i < elements.length; i++) {
+            if (states[i] && elements[i].matches(b)) {
+                int nextState = elements[i].repeated ? i : i + 1;
+                nextStates[nextState] = true;
+                anyState = true;
+            }
+        }
+        return anyState;
+    }
+
+    /**
+     * @return whether a line whose message has the logtype may match, whatever its variables are
+     */
+    public boolean canMatch(DecompressionDictionaryEntry logtype) {
+        return intersect(substringElements, toElements(logtype, Element.ANY_BYTES));
+    }
+
+    /**
+     * @return whether a line whose message has the logtype may match without any byte of its dictionary
+     * variables being matched by anything but a '*'. If not, every match has part of the pattern in one of
+     * the variables.
+     */
+    public boolean canMatchOutsideDictionaryVariables(DecompressionDictionaryEntry logtype) {
+        // Since only '*' may match them, the variables can as well be left out
+        return intersect(substringElements, toElements(logtype, null));
+    }
+
+    /**
+     * @param dictionaryVariable element standing for dictionary variables, or null to leave them out
+     */
+    private static Element[] toElements(DecompressionDictionaryEntry logtype, Element dictionaryVariable) {
+        ArrayList<Element> logtypeElements = new ArrayList<>(logtype.length);
+        for (int i = 0; i < logtype.length; i++) {
+            byte b = logtype.getByte(i);
+            if (EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM == b) {
+                logtypeElements.add(Element.INTEGER_BYTE);
+                logtypeElements.add(Element.INTEGER_BYTES_REPEATED);
+            } else if (EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM == b) {
+                logtypeElements.add(Element.FLOAT_BYTE);
+                logtypeElements.add(Element.FLOAT_BYTES_REPEATED);
+            } else if (EncodedEvent.VARIABLE_ID_DELIM == b) {
+                if (null != dictionaryVariable) {
+                    logtypeElements.add(dictionaryVariable);
+                }
+            } else {
+                logtypeElements.add(Element.literal(b));
+            }
+        }
+        return logtypeElements.toArray(new Element[0]);
+    }
+
+    /**
+     * A dictionary variable with bytes matched by a segment of the pattern (a part between '*') holds a run of
+     * the segment: all of it, or a part of it which continues past the variable's start or end.
+     * @return whether bytes of the dictionary variable may be matched by a segment of the pattern
+     */
+    public boolean mayBePartOfMatch(DecompressionDictionaryEntry variable) {
+        int length = variable.length;
+        if (0 == length) {
+            return false;
+        }
+        for (Element[] segment : segments) {
+            // The whole segment is in the variable
+            for (int position = 0; position + segment.length <= length; position++) {
+                if (matchesAt(segment, 0, segment.length, variable, position)) {
+                    return true;
+                }
+            }
+            for (int i = 1; i < segment.length; i++) {
+                // The segment begins before the variable, or ends after it
+                if (segment.length - i <= length && matchesAt(segment, i, segment.length, variable, 0)) {
+                    return true;
+                }
+                if (i <= length && matchesAt(segment, 0, i, variable, length - i)) {
+                    return true;
+                }
+                // The segment begins before the variable and ends after it
+                if (i + length < segment.length && matchesAt(segment, i, i + length, variable, 0)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether segment[beginIndex, endIndex) matches the variable's bytes from position on
+     */
+    private static boolean matchesAt(Element[] segment, int beginIndex, int endIndex,
+                                     DecompressionDictionaryEntry variable, int position) {
+        for (int i = beginIndex; i < endIndex; i++) {
+            if (!segment[i].matches(variable.getByte(position + i - beginIndex))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether some byte string matches both patterns, found by walking both at once: a state is how
+     * many elements of each were matched so far, and both only ever move forward
+     */
+    private static boolean intersect(Element[] a, Element[] b) {
+        boolean[][] reached = new boolean[a.length + 1][b.length + 1];
+        reached[0][0] = true;
+        for (int i = 0; i <= a.length; i++) {
+            for (int j = 0; j <= b.length; j++) {
+                if (!reached[i][j]) {
+                    continue;
+                }
+                if (i == a.length && j == b.length) {
+                    return true;
+                }
+                // Repeated elements may match no byte
+                if (i < a.length && a[i].repeated) {
+                    reached[i + 1][j] = true;
+                }
+                if (j < b.length && b[j].repeated) {
+                    reached[i][j + 1] = true;
+                }
+                // Both match the next byte, repeated elements may match more
+                if (i < a.length && j < b.length && a[i].intersects(b[j])) {
+                    if (!a[i].repeated) {
+                        reached[i + 1][b[j].repeated ? j : j + 1] = true;
+                    } else if (!b[j].repeated) {
+                        reached[i][j + 1] = true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
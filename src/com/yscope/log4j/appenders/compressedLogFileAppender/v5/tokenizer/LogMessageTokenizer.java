@@ -0,0 +1,387 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits a rendered log message into static text (logtype) and variables
+ * - A token is a run of non-delimiter characters
+ * - A token is treated as a variable if it contains a decimal digit, if it follows "=" and contains
+ *   an alphabet, or if it could be a multi-digit hex value
+ * - A variable is encoded as an integer or a float if possible, otherwise it is a dictionary variable
+ * Each instance keeps its own token bounds, so it must only be used by one thread at a time.
+ *
+ * Everything is done in a single pass over the message: each byte is looked up in a 256-entry byte
+ * class table, which drives both the token boundary detection and a small number-parsing state machine
+ * accumulating the integer/float encoding. The variable's type and encoding are therefore known as soon as
+ * its end is found, without parsing it again.
+ * No token longer than NUMBER_PROBE_LENGTH can be encoded as a number, so the rest of long tokens (and of
+ * long delimiter runs) is handed to a bulk TokenScanner: a Vector API scanner when it was compiled (see
+ * VectorTokenScanner in src-vector) and the JVM runs with --add-modules jdk.incubator.vector, a scalar
+ * scanner otherwise. Both find exactly the same tokens.
+ */
+public class LogMessageTokenizer {
+    // Byte classes, each a bit in a token's class mask
+    private static final byte DELIMITER = 0;
+    private static final byte DIGIT = 1;
+    private static final byte HEX_ALPHABET = 2;   // a-f, A-F
+    private static final byte ALPHABET = 3;   // Other letters
+    private static final byte MINUS = 4;
+    private static final byte PERIOD = 5;
+    private static final byte OTHER = 6;   // '+', '/', '\', '_'
+    private static final int NUM_BYTE_CLASSES = 8;
+    private static final byte[] BYTE_CLASSES = new byte[256];
+
+    private static final int ALPHABET_CLASSES = (1 << HEX_ALPHABET) | (1 << ALPHABET);
+    private static final int HEX_CLASSES = (1 << DIGIT) | (1 << HEX_ALPHABET);
+
+    // Number-parsing states, a number is [-]digits or [-][digits].digits
+    private static final byte START = 0;
+    private static final byte SIGN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte FRACTION = 3;
+    private static final byte NOT_A_NUMBER = 4;
+    private static final byte[] NUMBER_TRANSITIONS = new byte[5 * NUM_BYTE_CLASSES];
+
+    // Longer than any encodable integer ("-9223372036854775807") or float
+    private static final int NUMBER_PROBE_LENGTH = 24;
+    // Delimiter runs are usually a single space
+    private static final int DELIMITER_PROBE_LENGTH = 16;
+
+    private static final int MAX_COMPACT_FLOAT_DIGITS = 8;
+    private static final int MAX_STANDARD_FLOAT_DIGITS = 16;
+
+    private static final TokenScanner TOKEN_SCANNER = createTokenScanner();
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            byte b = (byte) c;
+            byte byteClass;
+            if (isDelimiter(b)) {
+                byteClass = DELIMITER;
+            } else if ('0' <= b && b <= '9') {
+                byteClass = DIGIT;
+            } else if (('a' <= b && b <= 'f') || ('A' <= b && b <= 'F')) {
+                byteClass = HEX_ALPHABET;
+            } else if (('a' <= b && b <= 'z') || ('A' <= b && b <= 'Z')) {
+                byteClass = ALPHABET;
+            } else if ('-' == b) {
+                byteClass = MINUS;
+            } else if ('.' == b) {
+                byteClass = PERIOD;
+            } else {
+                byteClass = OTHER;
+            }
+            BYTE_CLASSES[c] = byteClass;
+        }
+
+        Arrays.fill(NUMBER_TRANSITIONS, NOT_A_NUMBER);
+        NUMBER_TRANSITIONS[START * NUM_BYTE_CLASSES + MINUS] = SIGN;
+        NUMBER_TRANSITIONS[START * NUM_BYTE_CLASSES + DIGIT] = INTEGER;
+        NUMBER_TRANSITIONS[START * NUM_BYTE_CLASSES + PERIOD] = FRACTION;
+        NUMBER_TRANSITIONS[SIGN * NUM_BYTE_CLASSES + DIGIT] = INTEGER;
+        NUMBER_TRANSITIONS[SIGN * NUM_BYTE_CLASSES + PERIOD] = FRACTION;
+        NUMBER_TRANSITIONS[INTEGER * NUM_BYTE_CLASSES + DIGIT] = INTEGER;
+        NUMBER_TRANSITIONS[INTEGER * NUM_BYTE_CLASSES + PERIOD] = FRACTION;
+        NUMBER_TRANSITIONS[FRACTION * NUM_BYTE_CLASSES + DIGIT] = FRACTION;
+    }
+
+    private final boolean useCompactVariableEncoding;
+    private final TokenBounds tokenBounds = new TokenBounds();
+    private byte varType;
+    private long varEncoding;
+
+    static class TokenBounds {
+        public int beginPos = 0;
+        public int endPos = 0;
+        // Character classes of the token, only filled in by TokenScanner.scanToken
+        public boolean containsDecimalDigit = false;
+        public boolean containsAlphabet = false;
+        public boolean containsNonHexCharacter = false;
+
+        public void reset() {
+            beginPos = 0;
+            endPos = 0;
+        }
+    }
+
+    public LogMessageTokenizer() {
+        this(true);
+    }
+
+    /**
+     * @param useCompactVariableEncoding whether numbers are encoded into 32 bits (as
+     *                                   CompactVariableByteArrayViewDictionaryKey) or 64 bits (as
+     *                                   StandardVariableByteArrayViewDictionaryKey)
+     */
+    public LogMessageTokenizer(boolean useCompactVariableEncoding) {
+        this.useCompactVariableEncoding = useCompactVariableEncoding;
+    }
+
+    /**
+     * Uses the Vector API scanner if it was compiled, the jdk.incubator.vector module is available and the
+     * platform has wide enough vectors, unless disabled with -Dyscope.tokenizer.useVectorApi=false
+     */
+    private static TokenScanner createTokenScanner() {
+        if (Boolean.parseBoolean(System.getProperty("yscope.tokenizer.useVectorApi", "true"))) {
+            try {
+                Class<?> vectorTokenScannerClass =
+                        Class.forName(LogMessageTokenizer.class.getPackageName() + ".VectorTokenScanner");
+                return (TokenScanner) vectorTokenScannerClass.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+                // Fall back to the scalar scanner
+            }
+        }
+        return new ScalarTokenScanner();
+    }
+
+    /**
+     * @return name of the token scanner implementation in use
+     */
+    public static String getTokenScannerName() {
+        return TOKEN_SCANNER.getClass().getSimpleName();
+    }
+
+    public void reset() {
+        tokenBounds.reset();
+    }
+
+    /**
+     * Resets the tokenizer to start at beginPos, e.g. to only tokenize part of a message
+     */
+    public void reset(int beginPos) {
+        tokenBounds.beginPos = beginPos;
+        tokenBounds.endPos = beginPos;
+    }
+
+    public int getVarBeginPos() {
+        return tokenBounds.beginPos;
+    }
+
+    public int getVarEndPos() {
+        return tokenBounds.endPos;
+    }
+
+    /**
+     * @return placeholder of the last variable found: EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM,
+     *         FLOAT_ENCODED_VARIABLE_DELIM or VARIABLE_ID_DELIM
+     */
+    public byte getVarType() {
+        return varType;
+    }
+
+    /**
+     * @return integer/float encoding of the last variable found (an int widened to a long when using
+     *         the compact encoding), only valid if it isn't a dictionary variable
+     */
+    public long getVarEncoding() {
+        return varEncoding;
+    }
+
+    public static boolean isDelimiter(byte c) {
+        return !('+' == c || ('-' <= c && c <= '9') || ('A' <= c && c <= 'Z') || '\\' == c || '_' == c || ('a' <= c && c <= 'z'));
+    }
+
+    public static boolean couldBeMultiDigitHexValue(byte[] str, int beginPos, int endPos) {
+        if (endPos - beginPos < 2) {
+            return false;
+        }
+
+        for (int i = beginPos; i < endPos; ++i) {
+            byte c = str[i];
+            if (!(('a' <= c && c <= 'f') || ('A' <= c && c <= 'F') || ('0' <= c && c <= '9'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the bounds of the next variable in the log message starting from the end of the last variable,
+     * and determines its type and encoding
+     * @param logMessage heap allocated buffer whose position marks the end of the message
+     * @return false if there are no more variables, otherwise true
+     */
+    public boolean getBoundsOfNextVar(ByteBuffer logMessage) {
+        return getBoundsOfNextVar(logMessage.array(), logMessage.position());
+    }
+
+    private boolean getBoundsOfNextVar(byte[] bytes, int endPos) {
+        if (tokenBounds.endPos >= endPos) {
+            // Message ends with a variable, collapse the bounds so no trailing text is copied
+            tokenBounds.beginPos = tokenBounds.endPos;
+            return false;
+        }
+
+        int pos = tokenBounds.endPos;
+        while (true) {
+            // Find next non-delimiter
+            int probeEndPos = Math.min(pos + DELIMITER_PROBE_LENGTH, endPos);
+            while (pos < probeEndPos && DELIMITER == BYTE_CLASSES[bytes[pos] & 0xFF]) {
+                ++pos;
+            }
+            if (pos == probeEndPos && pos < endPos) {
+                pos = TOKEN_SCANNER.skipDelimiters(bytes, pos, endPos);
+            }
+            if (endPos == pos) {
+                tokenBounds.beginPos = endPos;
+                return false;
+            }
+
+            // Find next delimiter, classifying the token's bytes and parsing it as a number on the way
+            int beginPos = pos;
+            int classMask = 0;
+            byte numberState = START;
+            long digits = 0;
+            int numDigits = 0;
+            int decimalPointPos = -1;
+            probeEndPos = Math.min(pos + NUMBER_PROBE_LENGTH, endPos);
+            for (; pos < probeEndPos; ++pos) {
+                byte c = bytes[pos];
+                byte byteClass = BYTE_CLASSES[c & 0xFF];
+                if (DELIMITER == byteClass) {
+                    break;
+                }
+                classMask |= 1 << byteClass;
+                numberState = NUMBER_TRANSITIONS[numberState * NUM_BYTE_CLASSES + byteClass];
+                if (DIGIT == byteClass) {
+                    // May silently overflow past 19 digits, such tokens aren't encodable anyway
+                    digits = digits * 10 + (c - '0');
+                    ++numDigits;
+                } else if (PERIOD == byteClass) {
+                    decimalPointPos = pos;
+                }
+            }
+            if (pos == probeEndPos && pos < endPos && DELIMITER != BYTE_CLASSES[bytes[pos] & 0xFF]) {
+                tokenBounds.containsDecimalDigit = false;
+                tokenBounds.containsAlphabet = false;
+                tokenBounds.containsNonHexCharacter = false;
+                pos = TOKEN_SCANNER.scanToken(bytes, pos, endPos, tokenBounds);
+                if (tokenBounds.containsDecimalDigit) {
+                    classMask |= 1 << DIGIT;
+                }
+                if (tokenBounds.containsAlphabet) {
+                    classMask |= 1 << ALPHABET;
+                }
+                if (tokenBounds.containsNonHexCharacter) {
+                    classMask |= 1 << OTHER;
+                }
+                numberState = NOT_A_NUMBER;
+            }
+
+            if (0 != (classMask & (1 << DIGIT)) ||
+                    (beginPos > 0 && '=' == bytes[beginPos - 1] && 0 != (classMask & ALPHABET_CLASSES)) ||
+                    (pos - beginPos >= 2 && 0 == (classMask & ~HEX_CLASSES))) {
+                tokenBounds.beginPos = beginPos;
+                tokenBounds.endPos = pos;
+                encodeVariable(bytes, beginPos, pos, numberState, digits, numDigits, decimalPointPos);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Determines the variable's type and encoding from the number-parsing state, producing exactly the
+     * encodings of Compact/StandardVariableByteArrayViewDictionaryKey's encodeAsIntegerType and
+     * encodeAsFloatType
+     */
+    private void encodeVariable(byte[] bytes, int beginPos, int endPos, byte numberState, long digits,
+                                int numDigits, int decimalPointPos) {
+        varType = EncodedEvent.VARIABLE_ID_DELIM;
+        boolean negative = '-' == bytes[beginPos];
+        if (INTEGER == numberState) {
+            // Zero-padded values and "-0" can't be reproduced from the encoded value
+            if ('0' == bytes[negative ? beginPos + 1 : beginPos] && (numDigits > 1 || negative)) {
+                return;
+            }
+            boolean representable;
+            if (useCompactVariableEncoding) {
+                representable = numDigits <= 10 && digits <= Integer.MAX_VALUE;
+            } else {
+                // Up to 19 digits can't overflow an unsigned long, so a negative value means > Long.MAX_VALUE
+                representable = numDigits <= 19 && digits >= 0;
+            }
+            if (representable) {
+                varType = EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM;
+                varEncoding = negative ? -digits : digits;
+            }
+        } else if (FRACTION == numberState && decimalPointPos < endPos - 1) {
+            int maxLength = (useCompactVariableEncoding ? MAX_COMPACT_FLOAT_DIGITS : MAX_STANDARD_FLOAT_DIGITS)
+                    + 1 + (negative ? 1 : 0);
+            if (endPos - beginPos > maxLength) {
+                return;
+            }
+            int numDigitsAfterDecimalPoint = endPos - 1 - decimalPointPos;
+            if (useCompactVariableEncoding) {
+                if ((digits >> 25) > 0) {
+                    return;
+                }
+                int encoding = ((int) digits << 6) | ((numDigits - 1) << 3) | (numDigitsAfterDecimalPoint - 1);
+                if (negative) {
+                    encoding |= Integer.MIN_VALUE;
+                }
+                varEncoding = encoding;
+            } else {
+                if ((digits >> 53) > 0) {
+                    return;
+                }
+                varEncoding = (digits << 8) | ((numDigits - 1L) << 4) | (numDigitsAfterDecimalPoint - 1);
+                if (negative) {
+                    varEncoding |= Long.MIN_VALUE;
+                }
+            }
+            varType = EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM;
+        }
+    }
+
+    /**
+     * Determines the type and encoding of a variable whose bounds are already known (e.g. a parameter of a
+     * parameterized message), as if the whole range were a single token
+     * @return placeholder of the variable, see getVarType()
+     */
+    public byte encodeVariable(byte[] bytes, int beginPos, int endPos) {
+        if (endPos - beginPos > NUMBER_PROBE_LENGTH) {
+            varType = EncodedEvent.VARIABLE_ID_DELIM;
+            return varType;
+        }
+        byte numberState = START;
+        long digits = 0;
+        int numDigits = 0;
+        int decimalPointPos = -1;
+        for (int pos = beginPos; pos < endPos; ++pos) {
+            byte c = bytes[pos];
+            byte byteClass = BYTE_CLASSES[c & 0xFF];
+            numberState = NUMBER_TRANSITIONS[numberState * NUM_BYTE_CLASSES + byteClass];
+            if (DIGIT == byteClass) {
+                digits = digits * 10 + (c - '0');
+                ++numDigits;
+            } else if (PERIOD == byteClass) {
+                decimalPointPos = pos;
+            }
+        }
+        encodeVariable(bytes, beginPos, endPos, numberState, digits, numDigits, decimalPointPos);
+        return varType;
+    }
+
+    /**
+     * Finds the next variable and copies the static text preceding it into the logtype. The caller is
+     * expected to append the variable's placeholder (getVarType()) to the logtype.
+     * @return false if there are no more variables, otherwise true
+     */
+    public boolean parseNextVar(ByteBuffer logMessage, ByteBuffer logtype) {
+        return parseNextVar(logMessage.array(), logMessage.position(), logtype);
+    }
+
+    /**
+     * Same as parseNextVar(ByteBuffer, ByteBuffer), but the message ends at endPos
+     */
+    public boolean parseNextVar(byte[] logMessage, int endPos, ByteBuffer logtype) {
+        int lastVarEndPos = tokenBounds.endPos;
+        boolean foundVar = getBoundsOfNextVar(logMessage, endPos);
+        logtype.put(logMessage, lastVarEndPos, tokenBounds.beginPos - lastVarEndPos);
+        return foundVar;
+    }
+}
@@ -0,0 +1,43 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer;
+
+/**
+ * Classifies one byte at a time. Used on platforms without (useful) Vector API support, and by
+ * VectorTokenScanner for the tails shorter than a vector.
+ */
+class ScalarTokenScanner implements TokenScanner {
+    @Override
+    public int skipDelimiters(byte[] bytes, int pos, int endPos) {
+        for (; pos < endPos; ++pos) {
+            if (!LogMessageTokenizer.isDelimiter(bytes[pos])) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    @Override
+    public int scanToken(byte[] bytes, int pos, int endPos, LogMessageTokenizer.TokenBounds token) {
+        boolean containsDecimalDigit = false;
+        boolean containsAlphabet = false;
+        boolean containsNonHexCharacter = false;
+        for (; pos < endPos; ++pos) {
+            byte c = bytes[pos];
+            if ('0' <= c && c <= '9') {
+                containsDecimalDigit = true;
+            } else if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) {
+                containsAlphabet = true;
+                if (!(('a' <= c && c <= 'f') || ('A' <= c && c <= 'F'))) {
+                    containsNonHexCharacter = true;
+                }
+            } else if (LogMessageTokenizer.isDelimiter(c)) {
+                break;
+            } else {
+                containsNonHexCharacter = true;
+            }
+        }
+        token.containsDecimalDigit |= containsDecimalDigit;
+        token.containsAlphabet |= containsAlphabet;
+        token.containsNonHexCharacter |= containsNonHexCharacter;
+        return pos;
+    }
+}
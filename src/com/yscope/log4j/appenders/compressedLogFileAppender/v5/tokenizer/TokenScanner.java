@@ -0,0 +1,19 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer;
+
+/**
+ * Bulk scanning of delimiter runs and tokens (runs of non-delimiter characters). LogMessageTokenizer hands
+ * over to a TokenScanner once a run is longer than what it handles byte by byte. Every implementation must
+ * stop at exactly the same positions as ScalarTokenScanner.
+ */
+interface TokenScanner {
+    /**
+     * @return position of the first non-delimiter in [pos, endPos), or endPos if there is none
+     */
+    int skipDelimiters(byte[] bytes, int pos, int endPos);
+
+    /**
+     * Accumulates the character classes of the token's bytes from pos on into token
+     * @return position of the first delimiter in [pos, endPos), or endPos if there is none
+     */
+    int scanToken(byte[] bytes, int pos, int endPos, LogMessageTokenizer.TokenBounds token);
+}
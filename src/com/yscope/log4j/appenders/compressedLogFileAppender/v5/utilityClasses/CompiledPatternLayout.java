@@ -0,0 +1,251 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.layout.AbstractStringLayout;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.pattern.LevelPatternConverter;
+import org.apache.logging.log4j.core.pattern.LiteralPatternConverter;
+import org.apache.logging.log4j.core.pattern.LogEventPatternConverter;
+import org.apache.logging.log4j.core.pattern.LoggerPatternConverter;
+import org.apache.logging.log4j.core.pattern.MessagePatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternFormatter;
+import org.apache.logging.log4j.core.pattern.ThreadNamePatternConverter;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pattern layout compiled into columns: everything before the (first) message converter must be literal
+ * text or level, logger and thread name converters. Each of these converters becomes a column of small
+ * ids, its rendered values are only rendered and encoded once per distinct level/logger name/thread name.
+ * The literal text is implied by the pattern, so only the message and the rest of the pattern after it
+ * (see getMessageLayout) still have to be rendered and tokenized per event.
+ * Readers rebuild the text in front of the message from the pattern (see getPrefixLiterals) and the
+ * column values.
+ */
+public class CompiledPatternLayout {
+    public enum ColumnType {
+        LEVEL("level", LevelPatternConverter.class),
+        LOGGER("logger", LoggerPatternConverter.class),
+        THREAD("thread", ThreadNamePatternConverter.class);
+
+        public final String columnName;
+        private final Class<? extends LogEventPatternConverter> converterClass;
+
+        ColumnType(String columnName, Class<? extends LogEventPatternConverter> converterClass) {
+            this.columnName = columnName;
+            this.converterClass = converterClass;
+        }
+
+        /**
+         * @return what the converter's output depends on
+         */
+        private Object getKey(LogEvent event) {
+            switch (this) {
+                case LEVEL:
+                    return event.getLevel();
+                case LOGGER:
+                    return event.getLoggerName();
+                default:
+                    return event.getThreadName();
+            }
+        }
+
+        private static ColumnType of(LogEventPatternConverter converter) {
+            for (ColumnType columnType : values()) {
+                if (columnType.converterClass.isInstance(converter)) {
+                    return columnType;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Dictionary of the values a column converter rendered, shared by every thread using the layout
+     */
+    public static class Column {
+        private static final Object NULL_KEY = new Object();
+
+        public final ColumnType type;
+        private final PatternFormatter formatter;
+        private final Charset charset;
+        private final ConcurrentHashMap<Object, Integer> keyIds = new ConcurrentHashMap<>();
+        // Guarded by this
+        private final HashMap<String, Integer> valueIds = new HashMap<>();
+        private final ArrayList<byte[]> values = new ArrayList<>();
+
+        private Column(ColumnType type, PatternFormatter formatter, Charset charset) {
+            this.type = type;
+            this.formatter = formatter;
+            this.charset = charset;
+        }
+
+        public int getId(LogEvent event) {
+            Object key = type.getKey(event);
+            if (null == key) {
+                key = NULL_KEY;
+            }
+            Integer id = keyIds.get(key);
+            return null != id ? id : addValue(key, event);
+        }
+
+        private synchronized int addValue(Object key, LogEvent event) {
+            Integer id = keyIds.get(key);
+            if (null != id) {
+                return id;
+            }
+            StringBuilder text = new StringBuilder();
+            formatter.format(event, text);
+            String value = text.toString();
+            // Different keys can render identically (e.g. abbreviated logger names), they share an id
+            id = valueIds.get(value);
+            if (null == id) {
+                id = values.size();
+                values.add(value.getBytes(charset));
+                valueIds.put(value, id);
+            }
+            keyIds.put(key, id);
+            return id;
+        }
+
+        /**
+         * @return encoded value of each id
+         */
+        public synchronized List<byte[]> getValues() {
+            return new ArrayList<>(values);
+        }
+    }
+
+    /**
+     * Renders the message converter and everything after it, exactly like the full pattern layout would
+     */
+    public static class MessageLayout extends AbstractStringLayout {
+        private final PatternFormatter[] formatters;
+
+        private MessageLayout(PatternLayout layout, List<PatternFormatter> formatters) {
+            super(layout.getConfiguration(), layout.getCharset(), null, null);
+            this.formatters = formatters.toArray(new PatternFormatter[0]);
+        }
+
+        private StringBuilder toText(LogEvent event, StringBuilder text) {
+            for (PatternFormatter formatter : formatters) {
+                formatter.format(event, text);
+            }
+            return text;
+        }
+
+        @Override
+        public String toSerializable(LogEvent event) {
+            StringBuilder text = toText(event, getStringBuilder());
+            String serialized = text.toString();
+            trimToMaxSize(text);
+            return serialized;
+        }
+
+        @Override
+        public void encode(LogEvent event, ByteBufferDestination destination) {
+            StringBuilder text = toText(event, getStringBuilder());
+            getStringBuilderEncoder().encode(text, destination);
+            trimToMaxSize(text);
+        }
+    }
+
+    private final String pattern;
+    private final Column[] columns;
+    // numColumns + 1 literals, column i sits between prefixLiterals[i] and prefixLiterals[i + 1]
+    private final byte[][] prefixLiterals;
+    private final MessageLayout messageLayout;
+    private final MessageSplitPatternLayout messageSplitPatternLayout;
+
+    private CompiledPatternLayout(String pattern, Column[] columns, byte[][] prefixLiterals,
+                                  MessageLayout messageLayout, MessageSplitPatternLayout messageSplitPatternLayout) {
+        this.pattern = pattern;
+        this.columns = columns;
+        this.prefixLiterals = prefixLiterals;
+        this.messageLayout = messageLayout;
+        this.messageSplitPatternLayout = messageSplitPatternLayout;
+    }
+
+    /**
+     * @param layout layout built from pattern with the PatternLayout builder's defaults
+     * @return null if the pattern can't be compiled into columns
+     */
+    public static CompiledPatternLayout create(PatternLayout layout, String pattern) {
+        List<PatternFormatter> formatters = MessageSplitPatternLayout.parse(layout, pattern);
+        Charset charset = layout.getCharset();
+        ArrayList<Column> columns = new ArrayList<>();
+        ArrayList<byte[]> prefixLiterals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int messageIndex = -1;
+        for (int i = 0; i < formatters.size() && messageIndex < 0; i++) {
+            PatternFormatter formatter = formatters.get(i);
+            LogEventPatternConverter converter = formatter.getConverter();
+            ColumnType columnType = ColumnType.of(converter);
+            if (converter instanceof MessagePatternConverter) {
+                messageIndex = i;
+            } else if (converter instanceof LiteralPatternConverter) {
+                String text = ((LiteralPatternConverter) converter).getLiteral();
+                // Literals containing lookups are substituted per event
+                if (text.contains("${")) {
+                    return null;
+                }
+                literal.append(text);
+            } else if (null != columnType && columns.stream().noneMatch(column -> column.type == columnType)) {
+                prefixLiterals.add(literal.toString().getBytes(charset));
+                literal.setLength(0);
+                columns.add(new Column(columnType, formatter, charset));
+            } else {
+                return null;
+            }
+        }
+        if (messageIndex < 0 || columns.isEmpty()) {
+            return null;
+        }
+        prefixLiterals.add(literal.toString().getBytes(charset));
+
+        List<PatternFormatter> messageFormatters = formatters.subList(messageIndex, formatters.size());
+        return new CompiledPatternLayout(pattern, columns.toArray(new Column[0]),
+                prefixLiterals.toArray(new byte[0][]), new MessageLayout(layout, messageFormatters),
+                MessageSplitPatternLayout.create(layout, pattern, messageFormatters));
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public Column[] getColumns() {
+        return columns;
+    }
+
+    public byte[][] getPrefixLiterals() {
+        return prefixLiterals;
+    }
+
+    /**
+     * @return layout rendering the message and the rest of the pattern after it
+     */
+    public MessageLayout getMessageLayout() {
+        return messageLayout;
+    }
+
+    /**
+     * @return the message layout split around its message, null if it can't be split
+     */
+    public MessageSplitPatternLayout getMessageSplitPatternLayout() {
+        return messageSplitPatternLayout;
+    }
+
+    /**
+     * @param columnIds receives the id of each column's value for the event
+     */
+    public void getColumnIds(LogEvent event, int[] columnIds) {
+        for (int i = 0; i < columns.length; i++) {
+            columnIds[i] = columns[i].getId(event);
+        }
+    }
+}
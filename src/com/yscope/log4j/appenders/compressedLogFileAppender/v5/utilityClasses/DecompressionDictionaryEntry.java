@@ -21,8 +21,8 @@ public class DecompressionDictionaryEntry {
 
     public byte[] getBytes() {
         byte[] bytes = new byte[length];
-        directByteBufferReference.position(beginIndex);
-        directByteBufferReference.get(bytes);
+        // Absolute read, entries of a dictionary are read concurrently by parallel decompression
+        directByteBufferReference.get(beginIndex, bytes);
         return bytes;
     }
 
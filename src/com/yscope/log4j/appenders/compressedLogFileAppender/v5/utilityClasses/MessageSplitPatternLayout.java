@@ -0,0 +1,87 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.core.pattern.FormattingInfo;
+import org.apache.logging.log4j.core.pattern.MessagePatternConverter;
+import org.apache.logging.log4j.core.pattern.PatternFormatter;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Same formatters as a pattern layout, split around its message converter, so the text before and after
+ * the message can be rendered on its own while the message itself is rendered by the caller.
+ * Only patterns with exactly one plain top level message converter can be split (no format modifier,
+ * no options, not nested in another converter).
+ */
+public class MessageSplitPatternLayout {
+    private static final Pattern MESSAGE_CONVERTER_WITH_OPTIONS = Pattern.compile("%[-.\\d]*(m|msg|message)\\{");
+
+    private final PatternFormatter[] prefixFormatters;
+    private final PatternFormatter[] suffixFormatters;
+
+    private MessageSplitPatternLayout(PatternFormatter[] prefixFormatters, PatternFormatter[] suffixFormatters) {
+        this.prefixFormatters = prefixFormatters;
+        this.suffixFormatters = suffixFormatters;
+    }
+
+    /**
+     * @param layout layout built from pattern with the PatternLayout builder's defaults
+     * @return null if the layout can't be split around its message
+     */
+    public static MessageSplitPatternLayout create(PatternLayout layout, String pattern) {
+        return create(layout, pattern, parse(layout, pattern));
+    }
+
+    /**
+     * @param formatters formatters of pattern (see parse), or the tail of them that starts at its message
+     * @return null if the formatters can't be split around their message
+     */
+    public static MessageSplitPatternLayout create(PatternLayout layout, String pattern,
+                                                   List<PatternFormatter> formatters) {
+        if (!StandardCharsets.UTF_8.equals(layout.getCharset())
+                || MESSAGE_CONVERTER_WITH_OPTIONS.matcher(pattern).find()) {
+            return null;
+        }
+        int messageIndex = -1;
+        for (int i = 0; i < formatters.size(); i++) {
+            if (formatters.get(i).getConverter() instanceof MessagePatternConverter) {
+                if (messageIndex >= 0 || FormattingInfo.getDefault() != formatters.get(i).getFormattingInfo()) {
+                    return null;
+                }
+                messageIndex = i;
+            }
+        }
+        if (messageIndex < 0) {
+            return null;
+        }
+        return new MessageSplitPatternLayout(
+                formatters.subList(0, messageIndex).toArray(new PatternFormatter[0]),
+                formatters.subList(messageIndex + 1, formatters.size()).toArray(new PatternFormatter[0]));
+    }
+
+    /**
+     * @return the formatters the layout uses for pattern
+     */
+    public static List<PatternFormatter> parse(PatternLayout layout, String pattern) {
+        // Same arguments as the PatternLayout builder's defaults, so the formatters are identical to the layout's
+        PropertiesUtil properties = PropertiesUtil.getProperties();
+        boolean disableAnsi = properties.isOsWindows() && properties.getBooleanProperty("log4j.skipJansi", true);
+        return PatternLayout.createPatternParser(layout.getConfiguration()).parse(pattern, true, disableAnsi, false);
+    }
+
+    public void formatPrefix(LogEvent event, StringBuilder text) {
+        for (PatternFormatter formatter : prefixFormatters) {
+            formatter.format(event, text);
+        }
+    }
+
+    public void formatSuffix(LogEvent event, StringBuilder text) {
+        for (PatternFormatter formatter : suffixFormatters) {
+            formatter.format(event, text);
+        }
+    }
+}
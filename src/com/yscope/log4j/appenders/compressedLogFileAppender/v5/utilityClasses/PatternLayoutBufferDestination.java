@@ -53,6 +53,57 @@ public class PatternLayoutBufferDestination implements ByteBufferDestination {
         buf.flip();
     }
 
+    /**
+     * Appends the UTF-8 encoding of the text after the current position, unpaired surrogates are
+     * replaced by '?' like the layout's encoder does
+     */
+    public void appendUtf8(CharSequence text) {
+        appendUtf8(text, 0, text.length());
+    }
+
+    /**
+     * Same as appendUtf8(CharSequence) for text[beginIndex, endIndex), growing the buffer (and keeping its
+     * content) if needed
+     */
+    public void appendUtf8(CharSequence text, int beginIndex, int endIndex) {
+        ensureRemaining((endIndex - beginIndex) * 3);
+        byte[] bytes = buf.array();
+        int pos = buf.position();
+        for (int i = beginIndex; i < endIndex; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[pos++] = (byte) (0xC0 | (c >> 6));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < endIndex && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                    bytes[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    bytes[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    bytes[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    bytes[pos++] = '?';
+                }
+            } else {
+                bytes[pos++] = (byte) (0xE0 | (c >> 12));
+                bytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf.position(pos);
+    }
+
+    private void ensureRemaining(int length) {
+        if (buf.remaining() < length) {
+            int newCapacity = Math.max(buf.capacity() * 2, buf.position() + length);
+            ByteBuffer newBuf = ByteBuffer.allocate(newCapacity);
+            buf.flip();
+            newBuf.put(buf);
+            buf = newBuf;
+        }
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,131 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Zstd compressing output stream that doesn't compress on the writing thread: once its buffer is full, the
+ * buffer is handed to the pipeline's compressor threads and writing continues into a free buffer. Frames
+ * are written to the underlying stream in order, by the writing thread, whenever they are done.
+ * Each stream owns at most numBuffers buffers, when all of them are in flight the writer waits for the
+ * oldest one (recorded as a producer stall by the pipeline).
+ * Not thread-safe, like the other column writers.
+ */
+public class PipelinedZstdOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final ZstdCompressionPipeline pipeline;
+    private final int numBuffers;
+    private int numAllocatedBuffers = 0;
+    private final ArrayDeque<ZstdCompressionPipeline.Frame> freeFrames = new ArrayDeque<>();
+    // Frames in flight, in the order they have to be written
+    private final ArrayDeque<Future<ZstdCompressionPipeline.Frame>> pendingFrames = new ArrayDeque<>();
+    private ZstdCompressionPipeline.Frame frame;
+    private boolean closed = false;
+
+    /**
+     * @param numBuffers number of buffers of the stream, at least 2
+     */
+    public PipelinedZstdOutputStream(OutputStream out, ZstdCompressionPipeline pipeline, int numBuffers) {
+        this.out = out;
+        this.pipeline = pipeline;
+        this.numBuffers = Math.max(2, numBuffers);
+        frame = new ZstdCompressionPipeline.Frame(pipeline.getBufferSize());
+        numAllocatedBuffers++;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (frame.length == frame.buffer.length) {
+            submitFrame();
+        }
+        frame.buffer[frame.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (frame.length == frame.buffer.length) {
+                submitFrame();
+            }
+            int numBytes = Math.min(length, frame.buffer.length - frame.length);
+            System.arraycopy(bytes, offset, frame.buffer, frame.length, numBytes);
+            frame.length += numBytes;
+            offset += numBytes;
+            length -= numBytes;
+        }
+    }
+
+    /**
+     * Hands the current buffer to the compressor threads and switches to a free one
+     */
+    private void submitFrame() throws IOException {
+        pendingFrames.add(pipeline.submit(frame));
+        frame = null;
+        writeCompressedFrames(false);
+        if (freeFrames.isEmpty()) {
+            if (numAllocatedBuffers < numBuffers) {
+                freeFrames.add(new ZstdCompressionPipeline.Frame(pipeline.getBufferSize()));
+                numAllocatedBuffers++;
+            } else {
+                long start = System.nanoTime();
+                writeNextFrame();
+                pipeline.recordProducerStall(System.nanoTime() - start);
+            }
+        }
+        frame = freeFrames.poll();
+        frame.length = 0;
+    }
+
+    /**
+     * Writes the frames that are done, in order
+     * @param waitForAll whether to wait for all frames in flight
+     */
+    private void writeCompressedFrames(boolean waitForAll) throws IOException {
+        while (!pendingFrames.isEmpty() && (waitForAll || pendingFrames.peek().isDone())) {
+            writeNextFrame();
+        }
+    }
+
+    private void writeNextFrame() throws IOException {
+        ZstdCompressionPipeline.Frame compressedFrame;
+        try {
+            compressedFrame = pendingFrames.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a frame to be compressed");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress frame", e.getCause());
+        }
+        out.write(compressedFrame.compressed, 0, compressedFrame.compressedLength);
+        freeFrames.add(compressedFrame);
+    }
+
+    /**
+     * Compresses and writes everything written so far
+     */
+    @Override
+    public void flush() throws IOException {
+        if (frame.length > 0) {
+            submitFrame();
+        }
+        writeCompressedFrames(true);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
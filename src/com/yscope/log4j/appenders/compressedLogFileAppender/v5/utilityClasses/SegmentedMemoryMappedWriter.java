@@ -0,0 +1,233 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import com.github.luben.zstd.ZstdDirectBufferCompressingStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to a file through a memory-mapped window of segmentSize bytes. Once the window can't hold the
+ * next value, it is unmapped and the next window is mapped right where the data ends, so files can grow
+ * without any upfront sizing. close() truncates the file to the exact length written.
+ * With a non-zero compression level, values are staged in a small direct buffer and zstd compressed into
+ * the windows (one frame per file), or handed to a ZstdCompressionPipeline which compresses them on its own
+ * threads (one frame per pipeline buffer).
+ * Windows are unmapped explicitly rather than by the GC, so the writer must not be used after close().
+ */
+public class SegmentedMemoryMappedWriter implements Closeable {
+    private static final int STAGING_BUFFER_SIZE = 64 * 1024;
+    // Unsafe.invokeCleaner, null if unavailable, in which case unmapping is left to the GC
+    private static final MethodHandle INVOKE_CLEANER = lookupInvokeCleaner();
+
+    private final FileChannel fc;
+    private final int segmentSize;
+    private long segmentOffset = 0;   // File offset of the current window
+    private MappedByteBuffer segment;
+    private long syncedLength = 0;
+
+    private ByteBuffer stagingBuffer;
+    private ZstdDirectBufferCompressingStream zstdDirectBufferCompressingStream = null;
+    private PipelinedZstdOutputStream pipelinedZstdOutputStream = null;
+
+    public SegmentedMemoryMappedWriter(Path path, int segmentSize, int compressionLevel) throws IOException {
+        this(path, segmentSize, compressionLevel, null, 0);
+    }
+
+    /**
+     * @param pipeline if not null (and compressionLevel isn't 0), data is compressed by the pipeline's threads
+     * @param numBuffers number of buffers the file may have in the pipeline
+     */
+    public SegmentedMemoryMappedWriter(Path path, int segmentSize, int compressionLevel,
+                                       ZstdCompressionPipeline pipeline, int numBuffers) throws IOException {
+        this.segmentSize = segmentSize;
+        fc = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+        segment = fc.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        if (compressionLevel != 0 && null != pipeline) {
+            stagingBuffer = ByteBuffer.allocate(STAGING_BUFFER_SIZE);
+            // Frames are written by the writing thread, straight into the windows
+            pipelinedZstdOutputStream = new PipelinedZstdOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    putIntoSegments(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    putIntoSegments(bytes, offset, length);
+                }
+            }, pipeline, numBuffers);
+        } else if (compressionLevel != 0) {
+            stagingBuffer = ByteBuffer.allocateDirect(STAGING_BUFFER_SIZE);
+            zstdDirectBufferCompressingStream = new ZstdDirectBufferCompressingStream(segment, compressionLevel) {
+                @Override
+                protected ByteBuffer flushBuffer(ByteBuffer toFlush) throws IOException {
+                    // Also called when the stream is flushed, the window only changes once it's full
+                    return toFlush.hasRemaining() ? toFlush : nextSegment(1);
+                }
+            };
+        } else {
+            stagingBuffer = segment;
+        }
+    }
+
+    /**
+     * @return buffer with room for numBytes to write into
+     */
+    private ByteBuffer ensureRemaining(int numBytes) throws IOException {
+        if (stagingBuffer.remaining() < numBytes) {
+            if (stagingBuffer != segment) {
+                flushStagingBuffer();
+            } else {
+                stagingBuffer = nextSegment(numBytes);
+            }
+        }
+        return stagingBuffer;
+    }
+
+    private void flushStagingBuffer() throws IOException {
+        if (null != pipelinedZstdOutputStream) {
+            pipelinedZstdOutputStream.write(stagingBuffer.array(), 0, stagingBuffer.position());
+        } else {
+            stagingBuffer.flip();
+            zstdDirectBufferCompressingStream.compress(stagingBuffer);
+        }
+        stagingBuffer.clear();
+    }
+
+    private void putIntoSegments(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!segment.hasRemaining()) {
+                nextSegment(1);
+            }
+            int numBytes = Math.min(length, segment.remaining());
+            segment.put(bytes, offset, numBytes);
+            offset += numBytes;
+            length -= numBytes;
+        }
+    }
+
+    /**
+     * Unmaps the current window and maps the next one, starting where the data written so far ends
+     */
+    private MappedByteBuffer nextSegment(int numBytes) throws IOException {
+        if (numBytes > segmentSize) {
+            throw new IllegalArgumentException(numBytes + " bytes don't fit into a " + segmentSize + " byte window");
+        }
+        long nextSegmentOffset = segmentOffset + segment.position();
+        unmap(segment);
+        segment = null;   // Never keep a reference to an unmapped window, accessing it would crash the JVM
+        segment = fc.map(FileChannel.MapMode.READ_WRITE, nextSegmentOffset, segmentSize);
+        segmentOffset = nextSegmentOffset;
+        return segment;
+    }
+
+    public void putByte(byte val) throws IOException {
+        ensureRemaining(Byte.BYTES).put(val);
+    }
+
+    public void putChar(char val) throws IOException {
+        ensureRemaining(Character.BYTES).putChar(val);
+    }
+
+    public void putInt(int val) throws IOException {
+        ensureRemaining(Integer.BYTES).putInt(val);
+    }
+
+    public void putLong(long val) throws IOException {
+        ensureRemaining(Long.BYTES).putLong(val);
+    }
+
+    public void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer buffer = ensureRemaining(1);
+            int numBytes = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, numBytes);
+            offset += numBytes;
+            length -= numBytes;
+        }
+    }
+
+    /**
+     * @return number of bytes written to the file so far (excluding data still staged for compression)
+     */
+    public long getLength() {
+        return segmentOffset + segment.position();
+    }
+
+    /**
+     * Forces the data written since the last sync to disk, only uncompressed files can be synced (compressed
+     * data only becomes decodable once its frame is complete). Until closed, the file keeps its window's
+     * zero padding past the returned length.
+     * @return number of bytes of the file that are on disk
+     */
+    public long sync() throws IOException {
+        if (stagingBuffer != segment) {
+            throw new IOException("Compressed files can't be synced");
+        }
+        long length = getLength();
+        if (syncedLength < segmentOffset) {
+            // Part of the data was written through windows that are unmapped by now
+            fc.force(false);
+        } else {
+            int index = (int) (syncedLength - segmentOffset);
+            segment.force(index, segment.position() - index);
+        }
+        syncedLength = length;
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null == segment) {
+            return;
+        }
+        if (null != pipelinedZstdOutputStream) {
+            flushStagingBuffer();
+            pipelinedZstdOutputStream.close();
+        } else if (null != zstdDirectBufferCompressingStream) {
+            flushStagingBuffer();
+            zstdDirectBufferCompressingStream.close();
+        }
+        long length = getLength();
+        unmap(segment);
+        segment = null;
+        stagingBuffer = null;
+        fc.truncate(length);
+        fc.close();
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (null == INVOKE_CLEANER) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static MethodHandle lookupInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.IR;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 style variable length integers: 7 bits per byte, least significant group first, the high bit of
+ * each byte tells whether another byte follows. Signed values are zigzag encoded first so small negative
+ * values stay short too.
+ */
+public class VarintEncoding {
+    public static final int MAX_VARINT_LENGTH = 10;
+
+    public static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void putVarint(IR ir, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            ir.putByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        ir.putByte((byte) value);
+    }
+
+    public static void putVarint(OutputStream outputStream, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            outputStream.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        outputStream.write((int) value);
+    }
+
+    public static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
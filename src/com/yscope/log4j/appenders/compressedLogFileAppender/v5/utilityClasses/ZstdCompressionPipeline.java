@@ -0,0 +1,113 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import com.github.luben.zstd.Zstd;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small pool of compressor threads shared by the PipelinedZstdOutputStreams of one archive. Each full
+ * column buffer is compressed into an independent zstd frame, so buffers of all columns can be compressed
+ * in parallel (a sequence of frames is still a valid zstd file).
+ * Also keeps the pipeline's statistics, in particular how often (and how long) producers had to wait for
+ * a buffer to be compressed because all buffers of their column were in flight.
+ */
+public class ZstdCompressionPipeline {
+    /**
+     * Column buffer together with the space its frame is compressed into, recycled once the frame is written
+     */
+    static class Frame {
+        final byte[] buffer;
+        int length = 0;
+        final byte[] compressed;
+        int compressedLength = 0;
+
+        Frame(int bufferSize) {
+            buffer = new byte[bufferSize];
+            compressed = new byte[(int) Zstd.compressBound(bufferSize)];
+        }
+    }
+
+    private final ExecutorService compressorThreads;
+    private final int compressionLevel;
+    private final int bufferSize;
+
+    private final AtomicLong numFrames = new AtomicLong(0);
+    private final AtomicLong numUncompressedBytes = new AtomicLong(0);
+    private final AtomicLong numCompressedBytes = new AtomicLong(0);
+    private final AtomicLong compressionNanos = new AtomicLong(0);
+    private final AtomicLong numProducerStalls = new AtomicLong(0);
+    private final AtomicLong producerStallNanos = new AtomicLong(0);
+
+    /**
+     * @param bufferSize size of each column buffer, i.e. the uncompressed size of a frame
+     */
+    public ZstdCompressionPipeline(String threadNamePrefix, int numThreads, int compressionLevel, int bufferSize) {
+        this.compressionLevel = compressionLevel;
+        this.bufferSize = bufferSize;
+        AtomicInteger threadNum = new AtomicInteger(0);
+        compressorThreads = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-zstd-" + threadNum.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    Future<Frame> submit(Frame frame) {
+        return compressorThreads.submit(() -> compress(frame));
+    }
+
+    private Frame compress(Frame frame) throws IOException {
+        long start = System.nanoTime();
+        long result = Zstd.compressByteArray(frame.compressed, 0, frame.compressed.length,
+                frame.buffer, 0, frame.length, compressionLevel);
+        if (Zstd.isError(result)) {
+            throw new IOException("Failed to compress frame: " + Zstd.getErrorName(result));
+        }
+        frame.compressedLength = (int) result;
+        compressionNanos.addAndGet(System.nanoTime() - start);
+        numFrames.incrementAndGet();
+        numUncompressedBytes.addAndGet(frame.length);
+        numCompressedBytes.addAndGet(frame.compressedLength);
+        return frame;
+    }
+
+    void recordProducerStall(long nanos) {
+        numProducerStalls.incrementAndGet();
+        producerStallNanos.addAndGet(nanos);
+    }
+
+    public long getNumProducerStalls() {
+        return numProducerStalls.get();
+    }
+
+    public long getProducerStallNanos() {
+        return producerStallNanos.get();
+    }
+
+    /**
+     * @return human readable summary of the pipeline's statistics
+     */
+    public String getStatistics() {
+        return "compressed " + numFrames.get() + " frames (" + numUncompressedBytes.get() + " -> "
+                + numCompressedBytes.get() + " bytes) in " + TimeUnit.NANOSECONDS.toMillis(compressionNanos.get())
+                + " ms, producers stalled " + numProducerStalls.get() + " times for "
+                + TimeUnit.NANOSECONDS.toMillis(producerStallNanos.get()) + " ms";
+    }
+
+    /**
+     * Must only be called once every stream using the pipeline is closed
+     */
+    public void close() {
+        compressorThreads.shutdown();
+    }
+}
@@ -0,0 +1,274 @@
+package com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses;
+
+import com.github.luben.zstd.ZstdDirectBufferDecompressingStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a zstd compressed file (one or more frames) through a direct window of windowSize bytes instead of
+ * decompressing it as a whole: the compressed file is memory-mapped and decompressed into the window as it
+ * is consumed. Readers call fill with the number of bytes they are about to read, the window only grows if a
+ * single read needs more than it holds.
+ * Bytes read between startCapture and endCapture are also copied aside, so a range of the file can be
+ * handed to another thread after a first pass over it.
+ * skipTo moves forward to an offset of the decompressed file (e.g. from a TimeIndex). If the headers of the
+ * file's frames record their decompressed size, as the frames of a ZstdCompressionPipeline do, it restarts
+ * decompressing at the frame holding the offset, so only the bytes before the offset in that frame are
+ * decompressed. Otherwise (e.g. a single streamed frame), the bytes in between are decompressed but not handed
+ * to the reader.
+ */
+public class ZstdStreamingReader implements Closeable {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int FRAME_MAGIC = 0xFD2FB528;
+    private static final int SKIPPABLE_FRAME_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int SKIPPABLE_FRAME_MAGIC = 0x184D2A50;
+    private static final int RLE_BLOCK = 1;
+    private static final int CHECKSUM_SIZE = 4;
+
+    private final FileChannel fileChannel;
+    private final ByteBuffer compressedFile;
+    private ZstdDirectBufferDecompressingStream stream;
+    private ByteBuffer window;   // Positioned at the next unread byte, limited to the decompressed bytes
+    private long windowOffset = 0;   // Offset of the window's first byte in the decompressed file
+    private boolean endOfStream;
+
+    // Compressed and decompressed offsets at which each frame starts, built on the first skip past the window.
+    // Empty if a frame doesn't record its decompressed size.
+    private long[] frameOffsets;
+    private long[] frameDecompressedOffsets;
+
+    // Null unless capturing
+    private ByteArrayOutputStream capture;
+    private int captureStart;
+    private byte[] copyBuffer;
+
+    public ZstdStreamingReader(Path path, int windowSize, ByteOrder byteOrder) throws IOException {
+        fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+        compressedFile = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        stream = new ZstdDirectBufferDecompressingStream(compressedFile.duplicate());
+        endOfStream = 0 == fileChannel.size();
+        window = ByteBuffer.allocateDirect(windowSize).order(byteOrder);
+        window.limit(0);
+    }
+
+    /**
+     * Makes sure the window holds at least numBytes unread bytes, unless the file ends before
+     * @return the window, positioned at the next unread byte. It may be a new buffer if the window had to grow.
+     */
+    public ByteBuffer fill(int numBytes) throws IOException {
+        if (window.remaining() >= numBytes || endOfStream) {
+            return window;
+        }
+        if (null != capture) {
+            copyCapturedBytes();
+            captureStart = 0;
+        }
+        windowOffset += window.position();
+        if (numBytes > window.capacity()) {
+            ByteBuffer largerWindow = ByteBuffer.allocateDirect(Math.max(2 * window.capacity(), numBytes))
+                    .order(window.order());
+            window = largerWindow.put(window);
+        } else {
+            window.compact();
+        }
+        while (window.hasRemaining()) {
+            if (!stream.hasRemaining()) {
+                endOfStream = true;
+                break;
+            }
+            stream.read(window);
+        }
+        return window.flip();
+    }
+
+    public boolean hasRemaining() throws IOException {
+        return fill(1).hasRemaining();
+    }
+
+    /**
+     * Moves forward to the offset of the decompressed file, or to its end if it's shorter
+     */
+    public void skipTo(long offset) throws IOException {
+        if (offset > windowOffset + window.limit() && null == capture) {
+            skipFramesTo(offset);
+        }
+        while (windowOffset + window.position() < offset && hasRemaining()) {
+            window.position((int) Math.min(window.limit(), offset - windowOffset));
+        }
+    }
+
+    /**
+     * Restarts decompressing at the frame holding the offset of the decompressed file, if it starts after the
+     * decompressed bytes
+     */
+    private void skipFramesTo(long offset) throws IOException {
+        if (null == frameOffsets) {
+            indexFrames();
+        }
+        // Last frame starting at or before the offset (frames may be empty)
+        int frameIndex = Arrays.binarySearch(frameDecompressedOffsets, offset);
+        if (frameIndex < 0) {
+            frameIndex = -frameIndex - 2;
+        } else {
+            while (frameIndex + 1 < frameDecompressedOffsets.length
+                    && frameDecompressedOffsets[frameIndex + 1] == offset) {
+                frameIndex++;
+            }
+        }
+        if (frameIndex < 0 || frameDecompressedOffsets[frameIndex] <= windowOffset + window.limit()) {
+            return;
+        }
+        stream.close();
+        stream = new ZstdDirectBufferDecompressingStream(
+                compressedFile.duplicate().position((int) frameOffsets[frameIndex]).slice());
+        windowOffset = frameDecompressedOffsets[frameIndex];
+        window.clear().limit(0);
+        endOfStream = false;
+    }
+
+    /**
+     * Walks the headers of the file's frames and blocks (see RFC 8878) to find where each frame starts
+     */
+    private void indexFrames() {
+        ByteBuffer file = compressedFile.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int numFrames = 0;
+        long[] offsets = new long[16];
+        long[] decompressedOffsets = new long[16];
+        long decompressedOffset = 0;
+        while (file.remaining() >= Integer.BYTES) {
+            int frameOffset = file.position();
+            int magic = file.getInt();
+            long contentSize;
+            if ((magic & SKIPPABLE_FRAME_MAGIC_MASK) == SKIPPABLE_FRAME_MAGIC) {
+                contentSize = skipSkippableFrame(file);
+                if (contentSize == 0) {
+                    continue;
+                }
+            } else {
+                contentSize = FRAME_MAGIC == magic ? skipFrame(file) : -1;
+            }
+            if (contentSize < 0) {
+                numFrames = 0;
+                break;
+            }
+            if (numFrames == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * numFrames);
+                decompressedOffsets = Arrays.copyOf(decompressedOffsets, 2 * numFrames);
+            }
+            offsets[numFrames] = frameOffset;
+            decompressedOffsets[numFrames] = decompressedOffset;
+            numFrames++;
+            decompressedOffset += contentSize;
+        }
+        frameOffsets = Arrays.copyOf(offsets, numFrames);
+        frameDecompressedOffsets = Arrays.copyOf(decompressedOffsets, numFrames);
+    }
+
+    /**
+     * Moves the file past the skippable frame whose magic number was just read
+     * @return 0, or -1 if the frame is truncated
+     */
+    private static long skipSkippableFrame(ByteBuffer file) {
+        if (file.remaining() < Integer.BYTES) {
+            return -1;
+        }
+        long frameSize = file.getInt() & 0xFFFFFFFFL;
+        if (frameSize > file.remaining()) {
+            return -1;
+        }
+        file.position(file.position() + (int) frameSize);
+        return 0;
+    }
+
+    /**
+     * Moves the file past the frame whose magic number was just read
+     * @return the frame's decompressed size, -1 if the header doesn't record it or the frame is truncated
+     */
+    private static long skipFrame(ByteBuffer file) {
+        try {
+            int descriptor = file.get() & 0xFF;
+            int contentSizeFlag = descriptor >>> 6;
+            boolean singleSegment = (descriptor & 0x20) != 0;
+            boolean hasChecksum = (descriptor & 0x04) != 0;
+            int dictionaryIdSize = new int[] {0, 1, 2, 4}[descriptor & 0x03];
+            int contentSizeSize = new int[] {singleSegment ? 1 : 0, 2, 4, 8}[contentSizeFlag];
+            if (0 == contentSizeSize) {
+                return -1;
+            }
+            file.position(file.position() + (singleSegment ? 0 : 1) + dictionaryIdSize);
+            long contentSize;
+            switch (contentSizeSize) {
+                case 1:
+                    contentSize = file.get() & 0xFF;
+                    break;
+                case 2:
+                    contentSize = (file.getShort() & 0xFFFF) + 256;
+                    break;
+                case 4:
+                    contentSize = file.getInt() & 0xFFFFFFFFL;
+                    break;
+                default:
+                    contentSize = file.getLong();
+                    break;
+            }
+
+            boolean lastBlock;
+            do {
+                int blockHeader = (file.get() & 0xFF) | (file.get() & 0xFF) << 8 | (file.get() & 0xFF) << 16;
+                lastBlock = (blockHeader & 1) != 0;
+                int blockSize = blockHeader >>> 3;
+                file.position(file.position() + (RLE_BLOCK == ((blockHeader >>> 1) & 0x03) ? 1 : blockSize));
+            } while (!lastBlock);
+            if (hasChecksum) {
+                file.position(file.position() + CHECKSUM_SIZE);
+            }
+            return contentSize;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Starts copying aside the bytes read from now on
+     */
+    public void startCapture() {
+        capture = new ByteArrayOutputStream();
+        captureStart = window.position();
+        if (null == copyBuffer) {
+            copyBuffer = new byte[COPY_BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * @return bytes read since startCapture, in the window's byte order
+     */
+    public ByteBuffer endCapture() {
+        copyCapturedBytes();
+        ByteBuffer captured = ByteBuffer.wrap(capture.toByteArray()).order(window.order());
+        capture = null;
+        return captured;
+    }
+
+    private void copyCapturedBytes() {
+        for (int offset = captureStart; offset < window.position(); offset += COPY_BUFFER_SIZE) {
+            int length = Math.min(COPY_BUFFER_SIZE, window.position() - offset);
+            window.get(offset, copyBuffer, 0, length);
+            capture.write(copyBuffer, 0, length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+        fileChannel.close();
+    }
+}
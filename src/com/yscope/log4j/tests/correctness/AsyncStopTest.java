@@ -0,0 +1,56 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.CompressedLogFileV5;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops an async appender with a full ring and a timeout too short for the encoder thread to drain it, and
+ * checks that the stop is reported as unsuccessful, and that the archive, closed by the encoder thread once it
+ * has drained the ring rather than under it, holds every event.
+ */
+public class AsyncStopTest {
+    private static final int NUM_EVENTS = 200_000;
+    private static final String[] ATTRIBUTES = {"async=true", "ringBufferSize=65536", "compressionLevel=19",
+            "useCompactVariableEncoding=false"};
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        Path logDir = TestLogs.createTempLogDir("asyncStop");
+        try {
+            check(logDir);
+        } finally {
+            TestLogs.deleteRecursively(logDir);
+        }
+    }
+
+    private static void check(Path logDir) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, ATTRIBUTES);
+        Logger logger = context.getLogger(AsyncStopTest.class.getName());
+        CompressedLogFileV5 appender = context.getConfiguration().getAppender(TestLogs.APPENDER_NAME);
+        TestLogs.log(logger, 0, NUM_EVENTS);
+
+        boolean stopped = appender.stop(1, TimeUnit.MILLISECONDS);
+        Thread encoderThread = findThread(TestLogs.APPENDER_NAME + "-encoder");
+        if (null != encoderThread) {
+            TestLogs.check(!stopped, "stop succeeded while the encoder thread was still running");
+            encoderThread.join();
+        }
+
+        TestLogs.checkLines(TestLogs.expectedLines(0, NUM_EVENTS), TestLogs.decompress(logDir, null),
+                String.join(" ", ATTRIBUTES));
+        System.out.println("OK async stop " + (stopped ? "within" : "past") + " its timeout");
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name)) {
+                return thread;
+            }
+        }
+        return null;
+    }
+}
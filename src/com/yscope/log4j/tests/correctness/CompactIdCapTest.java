@@ -0,0 +1,132 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.DictionaryIdCapException;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.InMemoryCompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills the logtype and variable dictionaries up to the 65,535 cap of compact ids, and checks that only the
+ * events needing one more id are rejected: the events logged after them, with ids already assigned, read back
+ * with their own timestamps and variables. A rejected key must not be added to the dictionary.
+ */
+public class CompactIdCapTest {
+    private static final int NUM_COMPACT_IDS = Character.MAX_VALUE + 1;
+
+    private static final String[][] MODES = {
+            {},
+            {"useMemoryMappedIO=false"},
+            {"useMemoryMappedIO=false", "usePostingsIndex=true"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        checkDictionary();
+        System.out.println("OK compact id cap of the dictionary");
+        TestLogs.installClock();
+        for (String[] attributes : MODES) {
+            Path logDir = TestLogs.createTempLogDir("compactIdCap");
+            try {
+                check(logDir, attributes);
+            } finally {
+                TestLogs.deleteRecursively(logDir);
+            }
+            System.out.println("OK compact id cap with " + String.join(" ", attributes));
+        }
+    }
+
+    private static void check(Path logDir, String[] attributes) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, attributes);
+        Logger logger = context.getLogger(CompactIdCapTest.class.getName());
+        SimpleDateFormat dateFormat = new SimpleDateFormat(TestLogs.TIMESTAMP_PATTERN);
+        List<String> expectedLines = new ArrayList<>();
+        int eventNum = 0;
+
+        // Logtypes with a dictionary and an encoded variable, reserved before every other logtype id is taken
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(0) + " done v0", false);
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(0) + " done 42", false);
+
+        // Every logtype id, then a new logtype (twice, it mustn't take an id) and ones with ids
+        for (int i = 2; i < NUM_COMPACT_IDS; i++) {
+            eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(i) + " done", false);
+        }
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(NUM_COMPACT_IDS) + " done", true);
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(NUM_COMPACT_IDS) + " done", true);
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(2) + " done", false);
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(7) + " done", false);
+
+        // Every variable id, then a new variable and ones with ids
+        for (int i = 1; i < NUM_COMPACT_IDS; i++) {
+            eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(0) + " done v" + i, false);
+        }
+        eventNum = log(logger, dateFormat, expectedLines, eventNum,
+                "task " + word(0) + " done v" + NUM_COMPACT_IDS, true);
+        eventNum = log(logger, dateFormat, expectedLines, eventNum, "task " + word(0) + " done v7", false);
+        log(logger, dateFormat, expectedLines, eventNum, "task " + word(0) + " done 43", false);
+        context.stop();
+
+        TestLogs.checkLines(expectedLines, TestLogs.decompress(logDir, null), String.join(" ", attributes));
+    }
+
+    private static void checkDictionary() throws Exception {
+        CompressionDictionary dictionary = new InMemoryCompressionDictionary();
+        ByteArrayViewDictionaryKey key = new ByteArrayViewDictionaryKey();
+        for (int i = 0; i < NUM_COMPACT_IDS; i++) {
+            key.wrap(word(i).getBytes(StandardCharsets.UTF_8));
+            TestLogs.check(dictionary.getCompactId(key) == i, "key " + i + " didn't get the next id");
+        }
+        long numEntryBytes = dictionary.getNumEntryBytes();
+        key.wrap(word(NUM_COMPACT_IDS).getBytes(StandardCharsets.UTF_8));
+        boolean rejected = false;
+        try {
+            dictionary.getCompactId(key);
+        } catch (DictionaryIdCapException e) {
+            rejected = true;
+        }
+        TestLogs.check(rejected, "a key past the cap got a compact id");
+        TestLogs.check(dictionary.getNumEntries() == NUM_COMPACT_IDS && dictionary.getNumEntryBytes() == numEntryBytes,
+                "the rejected key was added to the dictionary");
+        key.wrap(word(7).getBytes(StandardCharsets.UTF_8));
+        TestLogs.check(dictionary.getCompactId(key) == 7, "a key with an id didn't get it back once the cap was hit");
+    }
+
+    /**
+     * Logs the message and checks whether it was rejected
+     * @return number of the next event
+     */
+    private static int log(Logger logger, SimpleDateFormat dateFormat, List<String> expectedLines, int eventNum,
+                           String message, boolean overCap) {
+        SettableClock.setTimeMillis(TestLogs.timestamp(eventNum));
+        boolean rejected = false;
+        try {
+            logger.info(message);
+        } catch (AppenderLoggingException e) {
+            rejected = true;
+        }
+        TestLogs.check(rejected == overCap, "\"" + message + "\" was " + (rejected ? "" : "not ") + "rejected");
+        if (!overCap) {
+            expectedLines.add(dateFormat.format(TestLogs.timestamp(eventNum)) + " INFO  - " + message);
+        }
+        return eventNum + 1;
+    }
+
+    /**
+     * @return distinct word for each number, made of letters that aren't hex digits so it stays in the logtype
+     */
+    private static String word(int number) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append((char) ('g' + number % 20));
+            number /= 20;
+        } while (number > 0);
+        return word.toString();
+    }
+}
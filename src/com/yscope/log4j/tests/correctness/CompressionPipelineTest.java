@@ -0,0 +1,137 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.PipelinedZstdOutputStream;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes several columns at once through PipelinedZstdOutputStreams sharing one ZstdCompressionPipeline, with
+ * few buffers per column so the writers keep waiting for the compressor threads, and checks that each column
+ * decompresses to exactly what was written: frames come out in order, every frame is a complete zstd frame,
+ * and a flush makes everything written so far decodable.
+ */
+public class CompressionPipelineTest {
+    private static final int NUM_COLUMNS = 4;
+    private static final int NUM_WRITES = 200_000;
+    private static final int BUFFER_SIZE = 1000;
+    private static final int ZSTD_FRAME_MAGIC = 0xFD2FB528;
+
+    public static void main(String[] args) throws Exception {
+        for (int numThreads : new int[]{1, 3}) {
+            ZstdCompressionPipeline pipeline = new ZstdCompressionPipeline("compressionPipelineTest", numThreads, 3,
+                    BUFFER_SIZE);
+            try {
+                check(pipeline, numThreads);
+            } finally {
+                pipeline.close();
+            }
+            System.out.println("OK compression pipeline with " + numThreads + " threads, "
+                    + pipeline.getStatistics());
+        }
+    }
+
+    private static void check(ZstdCompressionPipeline pipeline, int numThreads) throws IOException {
+        Random random = new Random(numThreads);
+        ByteArrayOutputStream[] compressed = new ByteArrayOutputStream[NUM_COLUMNS];
+        ByteArrayOutputStream[] expected = new ByteArrayOutputStream[NUM_COLUMNS];
+        PipelinedZstdOutputStream[] columns = new PipelinedZstdOutputStream[NUM_COLUMNS];
+        for (int c = 0; c < NUM_COLUMNS; c++) {
+            compressed[c] = new ByteArrayOutputStream();
+            expected[c] = new ByteArrayOutputStream();
+            columns[c] = new PipelinedZstdOutputStream(compressed[c], pipeline, 2 + c % 2);
+        }
+
+        for (int i = 0; i < NUM_WRITES; i++) {
+            int c = random.nextInt(NUM_COLUMNS);
+            if (random.nextBoolean()) {
+                int b = random.nextInt(256);
+                columns[c].write(b);
+                expected[c].write(b);
+            } else {
+                // Half compressible, and sometimes longer than a buffer
+                byte[] bytes = new byte[random.nextInt(random.nextInt(10) == 0 ? 3 * BUFFER_SIZE : 50)];
+                for (int j = 0; j < bytes.length; j++) {
+                    bytes[j] = (byte) (j % 2 == 0 ? random.nextInt(256) : c);
+                }
+                columns[c].write(bytes, 0, bytes.length);
+                expected[c].write(bytes, 0, bytes.length);
+            }
+            if (random.nextInt(20_000) == 0) {
+                columns[c].flush();
+                check(compressed[c].toByteArray(), expected[c].toByteArray(), "flushed column " + c);
+            }
+        }
+        for (int c = 0; c < NUM_COLUMNS; c++) {
+            columns[c].close();
+            check(compressed[c].toByteArray(), expected[c].toByteArray(), "column " + c);
+        }
+    }
+
+    private static void check(byte[] compressed, byte[] expected, String description) throws IOException {
+        byte[] actual;
+        try (InputStream inputStream = new ZstdInputStream(new ByteArrayInputStream(compressed))) {
+            actual = inputStream.readAllBytes();
+        }
+        TestLogs.check(Arrays.equals(expected, actual), description + " decompressed to " + actual.length
+                + " bytes that differ from the " + expected.length + " bytes written");
+
+        ByteBuffer frames = ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN);
+        while (frames.hasRemaining()) {
+            int frameOffset = frames.position();
+            long contentSize;
+            try {
+                contentSize = skipFrame(frames);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                contentSize = -1;
+            }
+            TestLogs.check(0 < contentSize && contentSize <= BUFFER_SIZE,
+                    description + " holds a frame of " + contentSize + " bytes at " + frameOffset);
+        }
+    }
+
+    /**
+     * Moves past the frame at the buffer's position, walking its header and blocks (see RFC 8878)
+     * @return the frame's decompressed size, -1 if it isn't a zstd frame recording it
+     */
+    private static long skipFrame(ByteBuffer frames) {
+        if (frames.getInt() != ZSTD_FRAME_MAGIC) {
+            return -1;
+        }
+        int descriptor = frames.get() & 0xFF;
+        boolean singleSegment = (descriptor & 0x20) != 0;
+        int contentSizeSize = new int[]{singleSegment ? 1 : 0, 2, 4, 8}[descriptor >>> 6];
+        if (0 == contentSizeSize) {
+            return -1;
+        }
+        frames.position(frames.position() + (singleSegment ? 0 : 1) + new int[]{0, 1, 2, 4}[descriptor & 0x03]);
+        long contentSize;
+        if (1 == contentSizeSize) {
+            contentSize = frames.get() & 0xFF;
+        } else if (2 == contentSizeSize) {
+            contentSize = (frames.getShort() & 0xFFFF) + 256;
+        } else {
+            contentSize = 4 == contentSizeSize ? frames.getInt() & 0xFFFFFFFFL : frames.getLong();
+        }
+        boolean lastBlock;
+        do {
+            int blockHeader = (frames.get() & 0xFF) | (frames.get() & 0xFF) << 8 | (frames.get() & 0xFF) << 16;
+            lastBlock = (blockHeader & 1) != 0;
+            // RLE blocks hold a single byte
+            frames.position(frames.position() + (1 == ((blockHeader >>> 1) & 0x03) ? 1 : blockHeader >>> 3));
+        } while (!lastBlock);
+        if ((descriptor & 0x04) != 0) {
+            frames.position(frames.position() + Integer.BYTES);
+        }
+        return contentSize;
+    }
+}
@@ -0,0 +1,159 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.CommitLog;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Crashes a child JVM while it logs with group commits, then checks that
+ *  - the unclosed archive reads as exactly the events of its last commit, without being modified
+ *  - restarting the appender recovers that commit, moving the recovered archive aside when it isn't rolled
+ *  - the events logged after the restart read back after (or apart from) the recovered ones
+ */
+public class CrashRecoveryTest {
+    private static final String CRASH_CHILD_ARG = "--crash-child";
+    private static final int GROUP_COMMIT_EVENTS = 100;
+    // Logged before the crash, not a multiple of GROUP_COMMIT_EVENTS so the last events aren't committed
+    private static final int NUM_CRASHED_EVENTS = 5050;
+    private static final int NUM_RESTARTED_EVENTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        if (args.length > 0 && args[0].equals(CRASH_CHILD_ARG)) {
+            logAndCrash(Paths.get(args[1]), Boolean.parseBoolean(args[2]));
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean rolling : new boolean[] {false, true}) {
+                Path logDir = TestLogs.createTempLogDir("crashRecovery");
+                try {
+                    check(logDir, rolling, pool);
+                } finally {
+                    TestLogs.deleteRecursively(logDir);
+                }
+                System.out.println("OK crash recovery " + (rolling ? "with" : "without") + " rolling");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String[] getAttributes(boolean rolling) {
+        List<String> attributes = new ArrayList<>(List.of("useMemoryMappedIO=false",
+                "groupCommitEvents=" + GROUP_COMMIT_EVENTS));
+        if (rolling) {
+            attributes.add("rollingMaxEvents=2000");
+        }
+        return attributes.toArray(new String[0]);
+    }
+
+    private static void logAndCrash(Path logDir, boolean rolling) {
+        LoggerContext context = TestLogs.startLogging(logDir, getAttributes(rolling));
+        TestLogs.log(context.getLogger(CrashRecoveryTest.class.getName()), 0, NUM_CRASHED_EVENTS);
+        // Skips the shutdown hooks, which would close the archive
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void check(Path logDir, boolean rolling, ForkJoinPool pool) throws Exception {
+        runCrashChild(logDir, rolling);
+
+        List<Path> archiveDirs = TestLogs.listArchives(logDir);
+        Path crashedArchiveDir = archiveDirs.get(archiveDirs.size() - 1);
+        TestLogs.check(CommitLog.needsRecovery(crashedArchiveDir), crashedArchiveDir + " doesn't need recovery");
+        CommitLog.Commit commit = CommitLog.readLastCommit(crashedArchiveDir);
+        TestLogs.check(null != commit, "no commit in " + crashedArchiveDir);
+
+        // Every event but the ones since the last group commit
+        Map<Path, Long> fileSizes = getFileSizes(logDir);
+        List<String> lines = TestLogs.decompress(logDir, null);
+        int numCommittedEvents = lines.size();
+        TestLogs.check(numCommittedEvents > NUM_CRASHED_EVENTS - GROUP_COMMIT_EVENTS
+                && numCommittedEvents < NUM_CRASHED_EVENTS, numCommittedEvents + " of " + NUM_CRASHED_EVENTS
+                + " events read after the crash");
+        if (!rolling) {
+            TestLogs.check(commit.numEvents == numCommittedEvents, "read " + numCommittedEvents
+                    + " events but the last commit holds " + commit.numEvents);
+        }
+        List<String> committedLines = TestLogs.expectedLines(0, numCommittedEvents);
+        TestLogs.checkLines(committedLines, lines, "unclosed archive");
+        TestLogs.checkLines(committedLines, TestLogs.decompress(logDir, pool),
+                "unclosed archive decoded in parallel");
+        TestLogs.check(fileSizes.equals(getFileSizes(logDir)), "reading the unclosed archive modified it");
+
+        LoggerContext context = TestLogs.startLogging(logDir, getAttributes(rolling));
+        TestLogs.log(context.getLogger(CrashRecoveryTest.class.getName()), NUM_CRASHED_EVENTS,
+                NUM_RESTARTED_EVENTS);
+        context.stop();
+        TestLogs.check(!CommitLog.needsRecovery(crashedArchiveDir), crashedArchiveDir + " wasn't recovered");
+
+        List<String> restartedLines = TestLogs.expectedLines(NUM_CRASHED_EVENTS, NUM_RESTARTED_EVENTS);
+        List<Path> recoveredArchiveDirs = listRecoveredArchives(logDir);
+        if (rolling) {
+            // Recovered in place, the new archives follow it
+            TestLogs.check(recoveredArchiveDirs.isEmpty(), "rolled archive moved into " + recoveredArchiveDirs);
+            List<String> expectedLines = new ArrayList<>(committedLines);
+            expectedLines.addAll(restartedLines);
+            TestLogs.checkLines(expectedLines, TestLogs.decompress(logDir, null), "recovered and rolled archives");
+        } else {
+            TestLogs.check(recoveredArchiveDirs.size() == 1, "recovered archives " + recoveredArchiveDirs);
+            Path recoveredArchiveDir = recoveredArchiveDirs.get(0);
+            TestLogs.checkLines(committedLines, TestLogs.decompress(recoveredArchiveDir, null),
+                    "recovered archive");
+            TestLogs.checkLines(restartedLines, TestLogs.decompress(logDir, null), "archive written after recovery");
+        }
+    }
+
+    /**
+     * Runs logAndCrash in a JVM started with the same options and class path
+     */
+    private static void runCrashChild(Path logDir, boolean rolling) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CrashRecoveryTest.class.getName());
+        command.add(CRASH_CHILD_ARG);
+        command.add(logDir.toString());
+        command.add(Boolean.toString(rolling));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        TestLogs.check(process.waitFor() == 0, "crash child exited with " + process.exitValue());
+    }
+
+    private static List<Path> listRecoveredArchives(Path logDir) throws IOException {
+        Pattern recoveredArchiveDirPattern = Pattern.compile(
+                ArchiveWriter.RECOVERED_ARCHIVE_DIR_FORMAT.replace("%d", "\\d+"));
+        try (Stream<Path> paths = Files.list(logDir)) {
+            return paths.filter(path -> recoveredArchiveDirPattern.matcher(path.getFileName().toString()).matches())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Map<Path, Long> getFileSizes(Path dir) throws IOException {
+        Map<Path, Long> fileSizes = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isRegularFile(path)) {
+                    fileSizes.put(path, Files.size(path));
+                }
+            }
+        }
+        return fileSizes;
+    }
+}
@@ -0,0 +1,74 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.DeltaTimestampBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.DeltaTimestampCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Encodes timestamp sequences with the delta-of-delta timestamp column and decodes them with a
+ * DeltaTimestampCodec, for several block sizes: steady rates, out-of-order jitter, and extreme values whose
+ * deltas and deltas of deltas overflow a long (Long.MIN_VALUE/Long.MAX_VALUE jumps, random longs). Every
+ * timestamp must come back exactly, and a steady rate must take about a byte per timestamp.
+ */
+public class DeltaTimestampTest {
+    private static final int NUM_TIMESTAMPS = 10_000;
+    private static final int[] BLOCK_SIZES = {1, 2, 7, 1000, Integer.MAX_VALUE};
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(14);
+        long[] steady = new long[NUM_TIMESTAMPS];
+        long[] jittered = new long[NUM_TIMESTAMPS];
+        long[] extremes = new long[NUM_TIMESTAMPS];
+        long[] randomLongs = new long[NUM_TIMESTAMPS];
+        long[] specialValues = {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, 1, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1};
+        for (int i = 0; i < NUM_TIMESTAMPS; i++) {
+            steady[i] = TestLogs.timestamp(i);
+            jittered[i] = TestLogs.timestamp(i) + random.nextInt(21) - 10;
+            extremes[i] = random.nextInt(4) == 0 ? TestLogs.timestamp(i)
+                    : specialValues[random.nextInt(specialValues.length)];
+            randomLongs[i] = random.nextLong();
+        }
+
+        for (int blockSize : BLOCK_SIZES) {
+            check("steady", steady, blockSize);
+            check("jittered", jittered, blockSize);
+            check("extreme", extremes, blockSize);
+            check("random", randomLongs, blockSize);
+            System.out.println("OK delta-of-delta timestamps with blocks of " + blockSize);
+        }
+
+        // After a block's base, a steady rate only stores zeros
+        int blockSize = 1000;
+        int numBytes = encode(steady, blockSize).length;
+        int maxNumBytes = NUM_TIMESTAMPS + (NUM_TIMESTAMPS / blockSize) * 10;
+        TestLogs.check(numBytes <= maxNumBytes, "steady timestamps took " + numBytes + " bytes, more than "
+                + maxNumBytes);
+    }
+
+    private static void check(String description, long[] timestamps, int blockSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encode(timestamps, blockSize));
+        DeltaTimestampCodec decoder = new DeltaTimestampCodec(blockSize);
+        for (int i = 0; i < timestamps.length; i++) {
+            long timestamp = decoder.decode(buffer);
+            TestLogs.check(timestamp == timestamps[i], description + " timestamp " + i + " with blocks of "
+                    + blockSize + " decoded to " + timestamp + " instead of " + timestamps[i]);
+        }
+        TestLogs.check(!buffer.hasRemaining(), description + " timestamps with blocks of " + blockSize
+                + " left " + buffer.remaining() + " bytes undecoded");
+    }
+
+    private static byte[] encode(long[] timestamps, int blockSize) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DeltaTimestampBufferedFileOutputStreamIR ir = new DeltaTimestampBufferedFileOutputStreamIR(outputStream,
+                blockSize);
+        for (long timestamp : timestamps) {
+            ir.putTimestamp(timestamp);
+        }
+        ir.close();
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,66 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.Decompressor;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveSettings;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Checks that archives store the format version they were written in, that the Decompressor refuses to read
+ * archives of a newer version, and that it still reads archives written before the version was stored.
+ */
+public class FormatVersionTest {
+    private static final int NUM_EVENTS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        Path logDir = TestLogs.createTempLogDir("formatVersion");
+        try {
+            LoggerContext context = TestLogs.startLogging(logDir, "useMemoryMappedIO=false");
+            TestLogs.log(context.getLogger(FormatVersionTest.class.getName()), 0, NUM_EVENTS);
+            context.stop();
+            Path metadataPath = logDir.resolve(ArchiveSettings.METADATA_FILENAME);
+            Properties metadata = new Properties();
+            try (InputStream inputStream = Files.newInputStream(metadataPath)) {
+                metadata.load(inputStream);
+            }
+            TestLogs.check(String.valueOf(ArchiveSettings.FORMAT_VERSION).equals(metadata.getProperty("formatVersion")),
+                    "archive stored format version " + metadata.getProperty("formatVersion"));
+            TestLogs.checkLines(TestLogs.expectedLines(0, NUM_EVENTS), TestLogs.decompress(logDir, null),
+                    "current format version");
+
+            metadata.setProperty("formatVersion", String.valueOf(ArchiveSettings.FORMAT_VERSION + 1));
+            store(metadata, metadataPath);
+            checkRejected(logDir, "newer format version");
+            metadata.remove("formatVersion");
+            store(metadata, metadataPath);
+            TestLogs.checkLines(TestLogs.expectedLines(0, NUM_EVENTS), TestLogs.decompress(logDir, null),
+                    "no format version");
+        } finally {
+            TestLogs.deleteRecursively(logDir);
+        }
+        System.out.println("OK format version");
+    }
+
+    private static void store(Properties metadata, Path metadataPath) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(metadataPath)) {
+            metadata.store(outputStream, null);
+        }
+    }
+
+    private static void checkRejected(Path logDir, String description) {
+        boolean rejected = false;
+        try {
+            new Decompressor(logDir);
+        } catch (IOException e) {
+            rejected = e.getMessage().contains("format version");
+        }
+        TestLogs.check(rejected, "archive with " + description + " wasn't rejected");
+    }
+}
@@ -0,0 +1,141 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.CompactVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.StandardVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tokenizes random number-heavy messages with LogMessageTokenizer's single pass, and checks every variable
+ * against a separate-pass reference: tokens split on LogMessageTokenizer.isDelimiter, classified with the
+ * documented rules and encoded with the Compact/Standard variable keys' encodeAsIntegerType and
+ * encodeAsFloatType. encodeVariable must give the same result for a variable's range on its own.
+ */
+public class FusedTokenizerTest {
+    private static final int NUM_MESSAGES = 100_000;
+    private static final String[] NUMBERS = {
+            "0", "-0", "00", "007", "-", "-.", ".", ".5", "-.5", "5.", "1.0", "-1.25", "0.000",
+            String.valueOf(Integer.MAX_VALUE), String.valueOf(Integer.MIN_VALUE),
+            String.valueOf(Integer.MAX_VALUE + 1L), String.valueOf(Integer.MIN_VALUE - 1L),
+            String.valueOf(Long.MAX_VALUE), String.valueOf(Long.MIN_VALUE), "9223372036854775808",
+            "-9223372036854775809", "99999999", "999999999", "1234567.8", "12345678.9", "9007199254740993",
+            "900719925474099.3", "12345678901234567890.5", "1e10", "0x1F", "deadbeef", "DEADBEEF", "a1", "ab",
+    };
+    private static final String[] WORDS = {"task", "id=", "key=value", "=x", "host-7.example.com", "_", "+",
+            "/var/log", "\\path", "stage", "\u00e9", "\t", "  ", ",", "(", ")"};
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(7);
+        for (boolean compact : new boolean[]{true, false}) {
+            LogMessageTokenizer tokenizer = new LogMessageTokenizer(compact);
+            LogMessageTokenizer rangeTokenizer = new LogMessageTokenizer(compact);
+            VariableByteArrayViewDictionaryKey key = compact ? new CompactVariableByteArrayViewDictionaryKey()
+                    : new StandardVariableByteArrayViewDictionaryKey();
+            int numVariables = 0;
+            for (int i = 0; i < NUM_MESSAGES; i++) {
+                byte[] message = randomMessage(random).getBytes(StandardCharsets.UTF_8);
+                List<long[]> expected = referenceVariables(message, key);
+                ByteBuffer messageBuffer = ByteBuffer.wrap(message);
+                messageBuffer.position(message.length);
+                tokenizer.reset();
+                int v = 0;
+                while (tokenizer.getBoundsOfNextVar(messageBuffer)) {
+                    String description = (compact ? "compact" : "standard") + " variable " + v + " of \""
+                            + new String(message, StandardCharsets.UTF_8) + "\"";
+                    TestLogs.check(v < expected.size(), description + " isn't a variable");
+                    long[] variable = expected.get(v++);
+                    long encoding = EncodedEvent.VARIABLE_ID_DELIM == tokenizer.getVarType() ? 0
+                            : tokenizer.getVarEncoding();
+                    TestLogs.check(tokenizer.getVarBeginPos() == variable[0]
+                            && tokenizer.getVarEndPos() == variable[1] && tokenizer.getVarType() == variable[2]
+                            && encoding == variable[3],
+                            description + " is [" + tokenizer.getVarBeginPos() + ", " + tokenizer.getVarEndPos()
+                                    + ") type " + tokenizer.getVarType() + " encoding " + encoding
+                                    + " instead of [" + variable[0] + ", " + variable[1] + ") type " + variable[2]
+                                    + " encoding " + variable[3]);
+                    byte type = rangeTokenizer.encodeVariable(message, (int) variable[0], (int) variable[1]);
+                    long rangeEncoding =
+                            EncodedEvent.VARIABLE_ID_DELIM == type ? 0 : rangeTokenizer.getVarEncoding();
+                    TestLogs.check(type == variable[2] && rangeEncoding == variable[3],
+                            description + " is encoded differently on its own");
+                }
+                TestLogs.check(v == expected.size(), "only " + v + " of the " + expected.size() + " variables of \""
+                        + new String(message, StandardCharsets.UTF_8) + "\" were found");
+                numVariables += v;
+            }
+            System.out.println("OK fused tokenizer with " + (compact ? "compact" : "standard") + " encoding, "
+                    + numVariables + " variables");
+        }
+    }
+
+    private static String randomMessage(Random random) {
+        StringBuilder message = new StringBuilder();
+        int numParts = random.nextInt(12);
+        for (int i = 0; i < numParts; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    message.append(NUMBERS[random.nextInt(NUMBERS.length)]);
+                    break;
+                case 1:
+                    message.append(WORDS[random.nextInt(WORDS.length)]);
+                    break;
+                case 2:
+                    message.append(random.nextBoolean() ? random.nextLong() : random.nextInt(1000))
+                            .append(random.nextBoolean() ? "." + random.nextInt(100000) : "");
+                    break;
+                default:
+                    // Longer than any number, so it's scanned in bulk
+                    message.append("block-").append(random.nextInt(100)).append("-")
+                            .append("x".repeat(random.nextInt(40)));
+                    break;
+            }
+            if (random.nextInt(3) > 0) {
+                message.append(' ');
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * @return [beginPos, endPos, type, encoding (0 for dictionary variables)] of the message's variables
+     */
+    private static List<long[]> referenceVariables(byte[] message, VariableByteArrayViewDictionaryKey key) {
+        List<long[]> variables = new ArrayList<>();
+        int pos = 0;
+        while (pos < message.length) {
+            if (LogMessageTokenizer.isDelimiter(message[pos])) {
+                ++pos;
+                continue;
+            }
+            int beginPos = pos;
+            boolean containsDigit = false;
+            boolean containsAlphabet = false;
+            for (; pos < message.length && !LogMessageTokenizer.isDelimiter(message[pos]); ++pos) {
+                byte c = message[pos];
+                containsDigit |= '0' <= c && c <= '9';
+                containsAlphabet |= ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+            }
+            if (containsDigit || (beginPos > 0 && '=' == message[beginPos - 1] && containsAlphabet)
+                    || LogMessageTokenizer.couldBeMultiDigitHexValue(message, beginPos, pos)) {
+                key.setView(message, beginPos, pos);
+                if (key.encodeAsIntegerType()) {
+                    variables.add(new long[]{beginPos, pos, EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM,
+                            key.getVariableEncoding()});
+                } else if (key.encodeAsFloatType()) {
+                    variables.add(new long[]{beginPos, pos, EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM,
+                            key.getVariableEncoding()});
+                } else {
+                    variables.add(new long[]{beginPos, pos, EncodedEvent.VARIABLE_ID_DELIM, 0});
+                }
+            }
+        }
+        return variables;
+    }
+}
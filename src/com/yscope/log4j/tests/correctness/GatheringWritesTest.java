@@ -0,0 +1,86 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveSettings;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.GatheringFileChannelIR;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes values of every width through a GatheringFileChannelIR with buffers of sizes no value width divides,
+ * so values keep moving on to the next buffer and every few values fill all buffers and trigger a gathering
+ * write. Checks that getNumBytes, sync and the file agree with the same values put into a single buffer in
+ * the byte order the archive records (ArchiveSettings.columnByteOrder), including after a round trip of the
+ * settings.
+ */
+public class GatheringWritesTest {
+    private static final int NUM_VALUES = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        ArchiveSettings settings = new ArchiveSettings();
+        settings.columnByteOrder = ByteOrder.nativeOrder().toString();
+        ArchiveSettings loadedSettings = new ArchiveSettings();
+        loadedSettings.fromProperties(settings.toProperties());
+        ByteOrder byteOrder = loadedSettings.getColumnByteOrder();
+        TestLogs.check(ByteOrder.nativeOrder() == byteOrder, "columns would be read as " + byteOrder);
+
+        Path dir = TestLogs.createTempLogDir("gatheringWrites");
+        try {
+            for (int bufferSize : new int[]{8, 13, 4099}) {
+                check(dir.resolve("column" + bufferSize + ".bin"), bufferSize, byteOrder);
+                System.out.println("OK gathering writes with buffers of " + bufferSize + " bytes");
+            }
+        } finally {
+            TestLogs.deleteRecursively(dir);
+        }
+    }
+
+    private static void check(Path path, int bufferSize, ByteOrder byteOrder) throws Exception {
+        Random random = new Random(bufferSize);
+        ByteBuffer expected = ByteBuffer.allocate(NUM_VALUES * Long.BYTES).order(byteOrder);
+        GatheringFileChannelIR ir = new GatheringFileChannelIR(path, bufferSize) {
+        };
+        for (int i = 0; i < NUM_VALUES; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    byte b = (byte) random.nextInt();
+                    ir.putByte(b);
+                    expected.put(b);
+                    break;
+                case 1:
+                    char c = (char) random.nextInt();
+                    ir.putChar(c);
+                    expected.putChar(c);
+                    break;
+                case 2:
+                    int n = random.nextInt();
+                    ir.putInt(n);
+                    expected.putInt(n);
+                    break;
+                default:
+                    long l = random.nextLong();
+                    ir.putLong(l);
+                    expected.putLong(l);
+                    break;
+            }
+            TestLogs.check(ir.getNumBytes() == expected.position(), "column counts " + ir.getNumBytes()
+                    + " bytes instead of " + expected.position());
+            if (random.nextInt(1000) == 0) {
+                long length = ir.sync();
+                TestLogs.check(length == expected.position() && Files.size(path) == length, "synced "
+                        + length + " bytes into a file of " + Files.size(path) + " instead of "
+                        + expected.position());
+            }
+        }
+        ir.close();
+
+        byte[] actual = Files.readAllBytes(path);
+        TestLogs.check(Arrays.equals(Arrays.copyOf(expected.array(), expected.position()), actual),
+                path.getFileName() + " holds " + actual.length + " bytes that differ from the "
+                        + expected.position() + " bytes written");
+    }
+}
@@ -0,0 +1,168 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.Decompressor;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.NumericPredicate;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filters archives by predicates on their integer and float variables, in both variable encodings and the
+ * modes that change how variables are stored (containers, grouped variables, fast path...), and checks that
+ * each predicate finds exactly the lines whose variable between the template's text satisfies it, on the
+ * calling thread as well as in parallel ranges. Variables too large (or too precise) for the encoding are
+ * stored in the variable dictionary and never satisfy a predicate.
+ */
+public class NumericPredicateTest {
+    private static final int NUM_EVENTS = 20_000;
+    private static final int TIMESTAMP_LENGTH = TestLogs.TIMESTAMP_PATTERN.length();
+
+    private static final String[][] MODES = {
+            {},
+            {"useCompactVariableEncoding=false"},
+            {"useArchiveContainer=true", "compressionLevel=3", "containerChunkSize=1024"},
+            {"useArchiveContainer=true", "containerChunkSize=1024", "useTemplateGroupedVariables=true",
+                    "useCompactVariableEncoding=false"},
+            {"useCompiledPatternLayout=true", "useDeltaTimestampEncoding=true", "containerChunkSize=1024"},
+            {"useParameterizedMessageFastPath=true", "useVarintIds=true"},
+    };
+
+    // Template, operator and value of each predicate
+    private static final String[][] PREDICATES = {
+            // Integers, some of them logged as parameters
+            {"in {} ms", ">", "500"},
+            {"in {} ms", "==", "42"},
+            {"in {} ms", "<=", "10.5"},
+            {"partition {},", ">=", "190"},
+            // Part of a dictionary variable, "12/13" is a single token
+            {"({}/", ">=", "12"},
+            {"TID {},", ">", "59000"},
+            {"Temperature {} C", "<", "-40"},
+            {"Temperature {} C", "!=", "0"},
+            // Only encoded without the compact encoding
+            {"Counters {} ", ">", "0"},
+            // Floats, compared as numbers regardless of their digits
+            {"delta {},", "==", "0.25"},
+            {"delta {},", ">=", "0.5"},
+            {"estimated size {} KB", "==", "0"},
+            {"estimated size {} KB", ">", "5"},
+            {"free {} MB", "<", "1"},
+            {"stage {} (TID", "==", "3"},
+            {"at {}%", ">=", "7.25"},
+            // No variable has this text around it
+            {"after {} retries", ">", "0"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        List<String> expectedLines = TestLogs.expectedLines(0, NUM_EVENTS);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String[] attributes : MODES) {
+                boolean compact = !List.of(attributes).contains("useCompactVariableEncoding=false");
+                Path logDir = TestLogs.createTempLogDir("numericPredicate");
+                try {
+                    LoggerContext context = TestLogs.startLogging(logDir, attributes);
+                    TestLogs.log(context.getLogger(NumericPredicateTest.class.getName()), 0, NUM_EVENTS);
+                    context.stop();
+
+                    Decompressor decompressor = new Decompressor(logDir);
+                    for (String[] predicate : PREDICATES) {
+                        check(decompressor, predicate, compact, expectedLines, pool);
+                    }
+                } finally {
+                    TestLogs.deleteRecursively(logDir);
+                }
+                System.out.println("OK numeric predicates with " + String.join(" ", attributes));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void check(Decompressor decompressor, String[] predicateArgs, boolean compact,
+                              List<String> lines, ForkJoinPool pool) throws Exception {
+        NumericPredicate.Operator operator = NumericPredicate.Operator.fromString(predicateArgs[1]);
+        NumericPredicate predicate = new NumericPredicate(predicateArgs[0], operator, predicateArgs[2]);
+        String[] textAround = predicateArgs[0].split(Pattern.quote(NumericPredicate.PLACEHOLDER), 2);
+        Pattern variablePattern = Pattern.compile(Pattern.quote(textAround[0]) + "(-?[0-9.]+)"
+                + Pattern.quote(textAround[1]));
+        BigDecimal bound = new BigDecimal(predicateArgs[2]);
+        List<String> expectedLines = new ArrayList<>();
+        for (String line : lines) {
+            String message = line.substring(TIMESTAMP_LENGTH);
+            Matcher matcher = variablePattern.matcher(message);
+            while (matcher.find()) {
+                String variable = matcher.group(1);
+                if (isToken(message, matcher.start(1), matcher.end(1)) && isEncoded(variable, compact)
+                        && test(operator, new BigDecimal(variable).compareTo(bound))) {
+                    expectedLines.add(line);
+                    break;
+                }
+            }
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long numMatchingEvents = decompressor.search(predicate, outputStream);
+        TestLogs.checkLines(expectedLines, TestLogs.toLines(outputStream), "[" + predicate + "]");
+        TestLogs.check(numMatchingEvents == expectedLines.size(), "[" + predicate + "] counted " + numMatchingEvents
+                + " matches instead of " + expectedLines.size());
+
+        outputStream = new ByteArrayOutputStream();
+        numMatchingEvents = decompressor.search(predicate, outputStream, pool);
+        TestLogs.checkLines(expectedLines, TestLogs.toLines(outputStream), "[" + predicate + "] filtered in parallel");
+        TestLogs.check(numMatchingEvents == expectedLines.size(), "[" + predicate + "] counted " + numMatchingEvents
+                + " parallel matches instead of " + expectedLines.size());
+    }
+
+    /**
+     * @return whether text[beginIndex, endIndex) is a whole token, i.e. a variable rather than part of one
+     */
+    private static boolean isToken(String text, int beginIndex, int endIndex) {
+        return (0 == beginIndex || LogMessageTokenizer.isDelimiter((byte) text.charAt(beginIndex - 1)))
+                && (text.length() == endIndex || LogMessageTokenizer.isDelimiter((byte) text.charAt(endIndex)));
+    }
+
+    /**
+     * @return whether the variable is encoded as an integer or float rather than stored in the dictionary
+     */
+    private static boolean isEncoded(String variable, boolean compact) {
+        if (variable.matches("-?(0|[1-9][0-9]*)") && !variable.equals("-0")) {
+            BigDecimal limit = compact ? BigDecimal.valueOf(1L << 31)
+                    : BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.ONE);
+            return new BigDecimal(variable).abs().compareTo(limit) < 0;
+        }
+        Matcher matcher = Pattern.compile("-?([0-9]*)\\.([0-9]+)").matcher(variable);
+        if (matcher.matches()) {
+            String digits = matcher.group(1) + matcher.group(2);
+            long maxDigits = compact ? 1L << 25 : 1L << 54;
+            return digits.length() <= (compact ? 8 : 16) && Long.parseLong(digits) < maxDigits;
+        }
+        return false;
+    }
+
+    private static boolean test(NumericPredicate.Operator operator, int comparison) {
+        switch (operator) {
+            case EQUAL:
+                return comparison == 0;
+            case NOT_EQUAL:
+                return comparison != 0;
+            case LESS:
+                return comparison < 0;
+            case LESS_OR_EQUAL:
+                return comparison <= 0;
+            case GREATER:
+                return comparison > 0;
+            default:
+                return comparison >= 0;
+        }
+    }
+}
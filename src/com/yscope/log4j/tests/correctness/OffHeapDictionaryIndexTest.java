@@ -0,0 +1,81 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.OffHeapArenaDictionaryIndex;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHasher;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Inserts keys whose digests collide into an OffHeapArenaDictionaryIndex, and checks that every key keeps its
+ * own id through the probing and the table growing: keys with the same digest and length differing in any
+ * byte (within or after the 8 byte words compared at once), and a key longer than an arena chunk.
+ */
+public class OffHeapDictionaryIndexTest {
+    private static final int NUM_KEYS = 8_000;
+    // Longer than an arena chunk, so it gets a chunk of its own
+    private static final int HUGE_KEY_LENGTH = 5 * 1024 * 1024;
+
+    /**
+     * Digest of only the key's length, so every key of the same length collides
+     */
+    private static class LengthKeyHasher implements KeyHasher {
+        @Override
+        public int getDigestLength() {
+            return 8;
+        }
+
+        @Override
+        public void hash(byte[] bytes, int beginIndex, int length, byte[] digest) {
+            for (int i = 0; i < digest.length; i++) {
+                digest[i] = (byte) (length >>> (8 * (i % 4)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < NUM_KEYS; i++) {
+            // 4 lengths, each key differing from the others of its length in one byte
+            byte[] key = new byte[5 + 8 * (i % 4)];
+            key[(i / 4) % key.length] = (byte) (1 + (i / 4) / key.length);
+            key[0] ^= (byte) ((i / 4) >>> 16);
+            keys.add(key);
+        }
+        byte[] hugeKey = new byte[HUGE_KEY_LENGTH];
+        hugeKey[HUGE_KEY_LENGTH - 1] = 1;
+        keys.add(hugeKey);
+        keys.add("same length A".getBytes(StandardCharsets.UTF_8));
+        keys.add("same length B".getBytes(StandardCharsets.UTF_8));
+        removeDuplicates(keys);
+
+        OffHeapArenaDictionaryIndex index = new OffHeapArenaDictionaryIndex();
+        ByteArrayViewDictionaryKey dictionaryKey = new ByteArrayViewDictionaryKey(new LengthKeyHasher());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            // Offset view, so keys are also compared from the middle of their array
+            byte[] bytes = new byte[key.length + 3];
+            System.arraycopy(key, 0, bytes, 3, key.length);
+            dictionaryKey.wrap(bytes, 3, bytes.length);
+            TestLogs.check(index.getOrInsert(dictionaryKey, i) == i, "key " + i + " was found before it was inserted");
+        }
+        TestLogs.check(index.size() == keys.size(), "index holds " + index.size() + " keys instead of " + keys.size());
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            dictionaryKey.wrap(keys.get(i));
+            int id = index.getOrInsert(dictionaryKey, keys.size());
+            TestLogs.check(id == i, "key " + i + " has id " + id);
+        }
+        TestLogs.check(index.size() == keys.size(), "looking keys up inserted some of them");
+        index.close();
+        System.out.println("OK off-heap dictionary index with " + keys.size() + " colliding keys");
+    }
+
+    private static void removeDuplicates(List<byte[]> keys) {
+        Set<String> seen = new HashSet<>();
+        keys.removeIf(key -> !seen.add(new String(key, StandardCharsets.ISO_8859_1)));
+    }
+}
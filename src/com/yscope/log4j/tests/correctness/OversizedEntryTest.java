@@ -0,0 +1,84 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AppenderLoggingException;
+
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Logs parameterized messages with a variable or a logtype too long to be a dictionary entry between regular
+ * events, and checks that only the oversized events are rejected, when they're appended: the events around
+ * them, including the ones repeating or adding dictionary entries afterwards, read back unchanged. Only the
+ * fast path renders such messages whole, the layout's buffer keeps the end of longer messages. A parameter
+ * longer than an entry that tokenizes into shorter variables isn't rejected.
+ */
+public class OversizedEntryTest {
+    private static final String OVERSIZED_VARIABLE = "x".repeat(CompressionDictionary.MAX_ENTRY_LENGTH + 5000);
+    // Static text without variables, so it's all in the logtype
+    private static final String OVERSIZED_TEXT = "word ".repeat(CompressionDictionary.MAX_ENTRY_LENGTH / 4);
+    // Dictionary variables separated by spaces, so its logtype is much shorter than the parameter
+    private static final String LONG_PARAMETER = "block-42.part-7 ".repeat(CompressionDictionary.MAX_ENTRY_LENGTH / 12);
+
+    private static final String[][] MODES = {
+            {"useParameterizedMessageFastPath=true"},
+            {"useParameterizedMessageFastPath=true", "useMemoryMappedIO=false"},
+            {"useParameterizedMessageFastPath=true", "useVarintIds=true", "usePostingsIndex=true"},
+            {"useParameterizedMessageFastPath=true", "useArchiveContainer=true", "compressionLevel=3",
+                    "containerChunkSize=1024"},
+            {"useParameterizedMessageFastPath=true", "useShardedDictionaries=true"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        for (String[] attributes : MODES) {
+            Path logDir = TestLogs.createTempLogDir("oversizedEntry");
+            try {
+                check(logDir, attributes);
+            } finally {
+                TestLogs.deleteRecursively(logDir);
+            }
+            System.out.println("OK oversized entries with " + String.join(" ", attributes));
+        }
+    }
+
+    private static void check(Path logDir, String[] attributes) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, attributes);
+        Logger logger = context.getLogger(OversizedEntryTest.class.getName());
+        SimpleDateFormat dateFormat = new SimpleDateFormat(TestLogs.TIMESTAMP_PATTERN);
+        // Format and parameter of each event, and whether it's rejected
+        String[][] events = {
+                {"v {}", OVERSIZED_VARIABLE, "rejected"},
+                {"hello {}", "world", ""},
+                {"v {}", OVERSIZED_VARIABLE, "rejected"},
+                {"hello {}", "world", ""},
+                {"v {}", "small", ""},
+                {OVERSIZED_TEXT + "{}", "end", "rejected"},
+                {"v {}", LONG_PARAMETER, ""},
+                {"v {}", "other", ""},
+        };
+        List<String> expectedLines = new ArrayList<>();
+        for (int i = 0; i < events.length; i++) {
+            SettableClock.setTimeMillis(TestLogs.timestamp(i));
+            String message = events[i][0].replace("{}", events[i][1]);
+            boolean oversized = !events[i][2].isEmpty();
+            boolean rejected = false;
+            try {
+                logger.info(events[i][0], events[i][1]);
+            } catch (AppenderLoggingException e) {
+                rejected = true;
+            }
+            TestLogs.check(rejected == oversized, "event " + i + " was " + (rejected ? "" : "not ") + "rejected");
+            if (!oversized) {
+                expectedLines.add(dateFormat.format(TestLogs.timestamp(i)) + " INFO  - " + message);
+            }
+        }
+        context.stop();
+
+        TestLogs.checkLines(expectedLines, TestLogs.decompress(logDir, null), String.join(" ", attributes));
+    }
+}
@@ -0,0 +1,114 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.Decompressor;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logs through rolling appenders and checks that the log rolls into the expected archives, each holding
+ * the events logged while it was current, and that the archives concatenate into every logged event.
+ */
+public class RollingTest {
+    private static final int NUM_EVENTS = 20_000;
+
+    private static class Mode {
+        private final String name;
+        private final int numThreads;
+        // Events of every archive but the last, 0 if the log rolls at sizes that aren't known in advance
+        private final int numEventsPerArchive;
+        private final String[] attributes;
+
+        private Mode(String name, int numThreads, int numEventsPerArchive, String... attributes) {
+            this.name = name;
+            this.numThreads = numThreads;
+            this.numEventsPerArchive = numEventsPerArchive;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final Mode[] MODES = {
+            new Mode("by events", 1, 3000, "rollingMaxEvents=3000", "bufferSize=65536"),
+            // Events are 10ms apart from a timestamp that's a multiple of 20s
+            new Mode("by time", 1, 2000, "rollingIntervalSeconds=20", "useMemoryMappedIO=false"),
+            new Mode("by size", 1, 0, "rollingMaxBytes=65536", "compressionLevel=3", "containerChunkSize=1024"),
+            // Sized by the bytes the varint, delta and grouped encodings actually write
+            new Mode("by size of compact encodings", 1, 0, "rollingMaxBytes=65536", "useArchiveContainer=true",
+                    "compressionLevel=3", "containerChunkSize=512", "useTemplateGroupedVariables=true",
+                    "useVarintIds=true", "useDeltaTimestampEncoding=true"),
+            new Mode("containers with trained dictionaries", 1, 3000, "rollingMaxEvents=3000",
+                    "useArchiveContainer=true", "compressionLevel=3", "containerChunkSize=512",
+                    "useTrainedDictionaries=true", "trainedDictionarySampleBytes=32768", "trainedDictionarySize=4096"),
+            new Mode("delta timestamps with postings", 1, 3000, "rollingMaxEvents=3000",
+                    "useDeltaTimestampEncoding=true", "containerChunkSize=1024", "timeIndexInterval=1024",
+                    "usePostingsIndex=true"),
+            // Rolls faster than the archives are finalized
+            new Mode("every few events", 1, 5, "rollingMaxEvents=5", "useMemoryMappedIO=false"),
+            new Mode("async", 4, 0, "rollingMaxEvents=3000", "async=true", "ringBufferSize=256"),
+            new Mode("sharded dictionaries", 4, 0, "rollingMaxEvents=3000", "useShardedDictionaries=true"),
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        for (Mode mode : MODES) {
+            Path logDir = TestLogs.createTempLogDir("rolling");
+            try {
+                check(mode, logDir);
+            } finally {
+                TestLogs.deleteRecursively(logDir);
+            }
+            System.out.println("OK rolling " + mode.name);
+        }
+    }
+
+    private static void check(Mode mode, Path logDir) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, mode.attributes);
+        Logger logger = context.getLogger(RollingTest.class.getName());
+        int numEventsPerThread = NUM_EVENTS / mode.numThreads;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < mode.numThreads; t++) {
+            int firstEventNum = t * numEventsPerThread;
+            threads.add(new Thread(() -> TestLogs.log(logger, firstEventNum, numEventsPerThread)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        context.stop();
+
+        List<Path> archiveDirs = Decompressor.listRolledArchives(logDir);
+        TestLogs.check(archiveDirs.size() > 1, mode.name + ": rolled into " + archiveDirs.size() + " archives");
+        if (mode.numEventsPerArchive > 0) {
+            int numArchives = (NUM_EVENTS + mode.numEventsPerArchive - 1) / mode.numEventsPerArchive;
+            TestLogs.check(archiveDirs.size() == numArchives, mode.name + ": rolled into " + archiveDirs.size()
+                    + " archives instead of " + numArchives);
+            // Archives are read with the dictionaries trained for the whole log
+            Map<Long, ZstdDictDecompress> trainedDictionaries = Decompressor.loadTrainedDictionaries(logDir);
+            for (int i = 0; i < archiveDirs.size(); i++) {
+                int firstEventNum = i * mode.numEventsPerArchive;
+                int numEvents = Math.min(mode.numEventsPerArchive, NUM_EVENTS - firstEventNum);
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                new Decompressor(archiveDirs.get(i), trainedDictionaries).decompress(outputStream);
+                TestLogs.checkLines(TestLogs.expectedLines(firstEventNum, numEvents),
+                        TestLogs.toLines(outputStream), mode.name + " archive " + archiveDirs.get(i));
+            }
+        }
+
+        List<String> expectedLines = TestLogs.expectedLines(0, numEventsPerThread * mode.numThreads);
+        List<String> lines = TestLogs.decompress(logDir, null);
+        if (mode.numThreads > 1) {
+            Collections.sort(expectedLines);
+            Collections.sort(lines);
+        }
+        TestLogs.checkLines(expectedLines, lines, mode.name);
+    }
+}
@@ -0,0 +1,107 @@
+package com.yscope.log4j.tests.correctness;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Logs the same events through the appender in each of its writing modes and checks that the archives
+ * decompress into exactly the lines the events were rendered into, on the calling thread as well as in
+ * parallel ranges. Events logged by several threads are compared regardless of their order.
+ */
+public class RoundTripTest {
+    private static final int NUM_EVENTS = 20_000;
+
+    private static class Mode {
+        private final String name;
+        private final int numThreads;
+        private final String[] attributes;
+
+        private Mode(String name, int numThreads, String... attributes) {
+            this.name = name;
+            this.numThreads = numThreads;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final Mode[] MODES = {
+            new Mode("standard variable encoding", 1, "useMemoryMappedIO=false", "useCompactVariableEncoding=false"),
+            new Mode("memory mapped", 1, "bufferSize=65536"),
+            new Mode("compressed", 1, "useMemoryMappedIO=false", "compressionLevel=3", "containerChunkSize=1024"),
+            new Mode("compression pipeline", 1, "compressionLevel=3", "compressionThreads=2",
+                    "compressionBufferSize=16384", "containerChunkSize=1024"),
+            new Mode("container", 1, "useArchiveContainer=true", "compressionLevel=3", "containerChunkSize=1024"),
+            new Mode("container with template grouped variables and trained dictionaries", 1,
+                    "useArchiveContainer=true", "compressionLevel=3", "containerChunkSize=1024",
+                    "useTemplateGroupedVariables=true", "useTrainedDictionaries=true",
+                    "trainedDictionarySampleBytes=65536", "trainedDictionarySize=4096"),
+            new Mode("delta timestamps and varint ids", 1, "useDeltaTimestampEncoding=true", "useVarintIds=true",
+                    "containerChunkSize=1024"),
+            new Mode("gathering writes", 1, "useMemoryMappedIO=false", "useGatheringWrites=true",
+                    "gatheringBufferSize=4096"),
+            new Mode("compiled pattern layout", 1, "useCompiledPatternLayout=true", "containerChunkSize=1024"),
+            new Mode("parameterized message fast path", 1, "useParameterizedMessageFastPath=true"),
+            new Mode("non-cryptographic key hashes", 1, "keyHashAlgorithm=XXH64", "useOffHeapDictionaryIndex=true"),
+            new Mode("murmur3 key hashes", 1, "keyHashAlgorithm=MURMUR3_128"),
+            new Mode("concurrent ingestion", 4, "useConcurrentIngestion=true", "ringBufferSize=256"),
+            new Mode("sharded dictionaries", 4, "useShardedDictionaries=true", "compressionLevel=3",
+                    "containerChunkSize=1024"),
+            new Mode("sharded dictionaries in a container", 4, "useShardedDictionaries=true",
+                    "useArchiveContainer=true", "useVarintIds=true", "containerChunkSize=1024"),
+            new Mode("async", 4, "async=true", "ringBufferSize=256"),
+            new Mode("async with compiled pattern layout", 4, "async=true", "useCompiledPatternLayout=true",
+                    "useDeltaTimestampEncoding=true", "containerChunkSize=1024"),
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Mode mode : MODES) {
+                Path logDir = TestLogs.createTempLogDir("roundTrip");
+                try {
+                    check(mode, logDir, pool);
+                } finally {
+                    TestLogs.deleteRecursively(logDir);
+                }
+                System.out.println("OK " + mode.name);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void check(Mode mode, Path logDir, ForkJoinPool pool) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, mode.attributes);
+        Logger logger = context.getLogger(RoundTripTest.class.getName());
+        int numEventsPerThread = NUM_EVENTS / mode.numThreads;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < mode.numThreads; t++) {
+            int firstEventNum = t * numEventsPerThread;
+            threads.add(new Thread(() -> TestLogs.log(logger, firstEventNum, numEventsPerThread)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        context.stop();
+
+        List<String> expectedLines = TestLogs.expectedLines(0, numEventsPerThread * mode.numThreads);
+        List<String> lines = TestLogs.decompress(logDir, null);
+        List<String> parallelLines = TestLogs.decompress(logDir, pool);
+        if (mode.numThreads > 1) {
+            Collections.sort(expectedLines);
+            Collections.sort(lines);
+            Collections.sort(parallelLines);
+        }
+        TestLogs.checkLines(expectedLines, lines, mode.name);
+        TestLogs.checkLines(expectedLines, parallelLines, mode.name + " decoded in parallel");
+    }
+}
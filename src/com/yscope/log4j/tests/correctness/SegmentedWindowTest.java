@@ -0,0 +1,101 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.SegmentedMemoryMappedWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes values of every width and byte arrays longer than a window through SegmentedMemoryMappedWriter with
+ * tiny windows, so values keep landing on window boundaries, and checks that the file holds exactly the bytes
+ * a DataOutputStream writes: uncompressed (synced on the way, across unmapped windows and within the current
+ * one), zstd compressed into the windows and compressed by a ZstdCompressionPipeline.
+ */
+public class SegmentedWindowTest {
+    private static final int NUM_VALUES = 50_000;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = TestLogs.createTempLogDir("segmentedWindow");
+        try {
+            // Odd window size, so no value width divides it
+            check(dir.resolve("uncompressed.bin"), 61, 0, null);
+            System.out.println("OK uncompressed segmented windows");
+            check(dir.resolve("compressed.bin.zst"), 4099, 3, null);
+            System.out.println("OK compressed segmented windows");
+            ZstdCompressionPipeline pipeline = new ZstdCompressionPipeline("segmentedWindowTest", 2, 3, 16 * 1024);
+            try {
+                check(dir.resolve("pipelined.bin.zst"), 4099, 3, pipeline);
+            } finally {
+                pipeline.close();
+            }
+            System.out.println("OK pipelined segmented windows");
+        } finally {
+            TestLogs.deleteRecursively(dir);
+        }
+    }
+
+    private static void check(Path path, int segmentSize, int compressionLevel, ZstdCompressionPipeline pipeline)
+            throws IOException {
+        Random random = new Random(segmentSize + compressionLevel);
+        ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+        DataOutputStream expected = new DataOutputStream(expectedBytes);
+        SegmentedMemoryMappedWriter writer = new SegmentedMemoryMappedWriter(path, segmentSize, compressionLevel,
+                pipeline, 2);
+        for (int i = 0; i < NUM_VALUES; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    byte b = (byte) random.nextInt();
+                    writer.putByte(b);
+                    expected.writeByte(b);
+                    break;
+                case 1:
+                    char c = (char) random.nextInt();
+                    writer.putChar(c);
+                    expected.writeChar(c);
+                    break;
+                case 2:
+                    int n = random.nextInt();
+                    writer.putInt(n);
+                    expected.writeInt(n);
+                    break;
+                case 3:
+                    long l = random.nextLong();
+                    writer.putLong(l);
+                    expected.writeLong(l);
+                    break;
+                default:
+                    byte[] bytes = new byte[random.nextInt(3 * segmentSize)];
+                    random.nextBytes(bytes);
+                    int offset = random.nextInt(bytes.length + 1);
+                    writer.put(bytes, offset, bytes.length - offset);
+                    expected.write(bytes, offset, bytes.length - offset);
+                    break;
+            }
+            if (0 == compressionLevel && random.nextInt(100) == 0) {
+                long length = writer.sync();
+                TestLogs.check(length == expectedBytes.size(), "synced " + length + " bytes instead of "
+                        + expectedBytes.size());
+            }
+        }
+        writer.close();
+
+        byte[] actual;
+        if (0 == compressionLevel) {
+            actual = Files.readAllBytes(path);
+        } else {
+            try (InputStream inputStream = new ZstdInputStream(Files.newInputStream(path))) {
+                actual = inputStream.readAllBytes();
+            }
+        }
+        TestLogs.check(Arrays.equals(expectedBytes.toByteArray(), actual), path.getFileName() + " holds "
+                + actual.length + " bytes that differ from the " + expectedBytes.size() + " bytes written");
+    }
+}
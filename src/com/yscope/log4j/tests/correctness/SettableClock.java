@@ -0,0 +1,21 @@
+package com.yscope.log4j.tests.correctness;
+
+import org.apache.logging.log4j.core.util.Clock;
+
+/**
+ * Clock of the log events created by the correctness tests, so the timestamps written into the archives are
+ * known. Each logging thread sets its own time, which log4j reads on the thread creating the event.
+ * Installed with -Dlog4j.Clock=com.yscope.log4j.tests.correctness.SettableClock (see TestLogs.installClock).
+ */
+public class SettableClock implements Clock {
+    private static final ThreadLocal<Long> currentTimeMillis = ThreadLocal.withInitial(System::currentTimeMillis);
+
+    public static void setTimeMillis(long timeMillis) {
+        currentTimeMillis.set(timeMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return currentTimeMillis.get();
+    }
+}
@@ -0,0 +1,95 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.CompressedLogFileV5;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stops the appender while several threads keep logging through the ring buffer, and checks that the archive
+ * holds every event appended before the appender was stopped, and nothing but whole events logged by the
+ * threads: late events are dropped rather than written into the archive while it's closing.
+ */
+public class StopRaceTest {
+    private static final int NUM_THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 1_000_000;
+    private static final int EVENTS_BEFORE_STOP = 20_000;
+
+    private static final String[][] MODES = {
+            {"useConcurrentIngestion=true", "ringBufferSize=256"},
+            {"useShardedDictionaries=true", "ringBufferSize=256", "useMemoryMappedIO=false"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        for (String[] attributes : MODES) {
+            Path logDir = TestLogs.createTempLogDir("stopRace");
+            try {
+                check(logDir, attributes);
+            } finally {
+                TestLogs.deleteRecursively(logDir);
+            }
+            System.out.println("OK stop while logging with " + String.join(" ", attributes));
+        }
+    }
+
+    private static void check(Path logDir, String[] attributes) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, attributes);
+        Logger logger = context.getLogger(StopRaceTest.class.getName());
+        CompressedLogFileV5 appender = context.getConfiguration().getAppender(TestLogs.APPENDER_NAME);
+        AtomicIntegerArray numLogged = new AtomicIntegerArray(NUM_THREADS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < EVENTS_PER_THREAD && !Thread.currentThread().isInterrupted(); i++) {
+                    int eventNum = thread * EVENTS_PER_THREAD + i;
+                    SettableClock.setTimeMillis(TestLogs.timestamp(eventNum));
+                    logger.log(TestLogs.level(eventNum), TestLogs.message(eventNum));
+                    numLogged.set(thread, i + 1);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        while (numLogged.get(0) < EVENTS_BEFORE_STOP) {
+            Thread.sleep(1);
+        }
+
+        int[] numLoggedBeforeStop = new int[NUM_THREADS];
+        for (int t = 0; t < NUM_THREADS; t++) {
+            numLoggedBeforeStop[t] = numLogged.get(t);
+        }
+        // Stopped directly, the logger context would wait for the threads' appends to return first
+        appender.stop(0, TimeUnit.MILLISECONDS);
+        Thread.sleep(100);
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<String> loggedLines = new HashSet<>();
+        Set<String> linesBeforeStop = new HashSet<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            loggedLines.addAll(TestLogs.expectedLines(t * EVENTS_PER_THREAD, numLogged.get(t)));
+            linesBeforeStop.addAll(TestLogs.expectedLines(t * EVENTS_PER_THREAD, numLoggedBeforeStop[t]));
+        }
+        List<String> lines = TestLogs.decompress(logDir, null);
+        Set<String> uniqueLines = new HashSet<>(lines);
+        String description = String.join(" ", attributes);
+        TestLogs.check(uniqueLines.size() == lines.size(), description + ": archive holds duplicated events");
+        TestLogs.check(loggedLines.containsAll(uniqueLines), description + ": archive holds corrupted events");
+        TestLogs.check(uniqueLines.containsAll(linesBeforeStop),
+                description + ": events appended before the appender stopped are missing");
+    }
+}
@@ -0,0 +1,87 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TemplateGroupedVariables;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.VariableIR;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes chunks of events of many logtypes (some without variables, some chunks empty) through
+ * TemplateGroupedVariables, and reads them back the way the decoder does: the k-th event of a logtype in a
+ * chunk must find its variables as the k-th values of the logtype's sub-columns, every sub-column must hold
+ * exactly its chunk's values, and logtypes without variables must have no sub-columns.
+ */
+public class TemplateGroupedVariablesTest {
+    private static final int NUM_CHUNKS = 200;
+    private static final int NUM_LOGTYPES = 50;
+    private static final int MAX_VARIABLES = 5;
+
+    public static void main(String[] args) throws Exception {
+        for (boolean compact : new boolean[]{true, false}) {
+            check(compact);
+            System.out.println("OK template grouped variables with " + (compact ? "compact" : "standard")
+                    + " encoding");
+        }
+    }
+
+    private static void check(boolean compact) throws Exception {
+        Random random = new Random(16);
+        TemplateGroupedVariables groupedVariables = new TemplateGroupedVariables(compact);
+        ByteArrayOutputStream variableColumn = new ByteArrayOutputStream();
+        // Events of each chunk, as {logtype id, variables...}
+        List<List<long[]>> chunks = new ArrayList<>();
+        for (int c = 0; c < NUM_CHUNKS; c++) {
+            List<long[]> events = new ArrayList<>();
+            int numEvents = random.nextInt(10) == 0 ? 0 : random.nextInt(500);
+            for (int e = 0; e < numEvents; e++) {
+                // Ids beyond an int, and a fixed number of variables per logtype
+                long logtypeId = random.nextInt(NUM_LOGTYPES) * 0x1_0000_0001L;
+                int numVariables = (int) (logtypeId % (MAX_VARIABLES + 1));
+                long[] event = new long[1 + numVariables];
+                event[0] = logtypeId;
+                if (numVariables > 0) {
+                    VariableIR[] slots = groupedVariables.getSlots(logtypeId, numVariables);
+                    for (int v = 0; v < numVariables; v++) {
+                        long value = compact ? random.nextInt() : random.nextLong();
+                        slots[v].putEncodedVariable(value);
+                        event[1 + v] = value;
+                    }
+                }
+                events.add(event);
+            }
+            groupedVariables.writeChunk(variableColumn);
+            chunks.add(events);
+        }
+
+        ByteBuffer variableBuffer = ByteBuffer.wrap(variableColumn.toByteArray());
+        for (int c = 0; c < NUM_CHUNKS; c++) {
+            HashMap<Long, ByteBuffer[]> chunkSlots = TemplateGroupedVariables.readChunk(variableBuffer);
+            for (long[] event : chunks.get(c)) {
+                ByteBuffer[] slots = chunkSlots.get(event[0]);
+                String description = "chunk " + c + " logtype " + event[0];
+                if (1 == event.length) {
+                    TestLogs.check(null == slots, description + " has sub-columns but no variables");
+                    continue;
+                }
+                TestLogs.check(null != slots && slots.length == event.length - 1,
+                        description + " doesn't have a sub-column per variable");
+                for (int v = 0; v < slots.length; v++) {
+                    long value = compact ? slots[v].getInt() : slots[v].getLong();
+                    TestLogs.check(value == event[1 + v], description + " variable " + v + " is " + value
+                            + " instead of " + event[1 + v]);
+                }
+            }
+            for (ByteBuffer[] slots : chunkSlots.values()) {
+                for (ByteBuffer slot : slots) {
+                    TestLogs.check(!slot.hasRemaining(), "chunk " + c + " has values of no event");
+                }
+            }
+        }
+        TestLogs.check(!variableBuffer.hasRemaining(), variableBuffer.remaining() + " bytes follow the last chunk");
+    }
+}
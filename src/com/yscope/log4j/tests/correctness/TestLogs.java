@@ -0,0 +1,213 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.Decompressor;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.builder.api.AppenderComponentBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.apache.logging.log4j.core.util.ClockFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Helpers shared by the correctness tests: logs generated messages at known timestamps through a
+ * CompressedLogFileV5 appender configured with the given attributes, renders the lines the archives must
+ * decompress into, and reads the archives back. Failed checks throw an AssertionError, so a failing test
+ * exits with a non-zero status.
+ */
+final class TestLogs {
+    static final String APPENDER_NAME = "CompressedLogFileV5";
+    static final String PATTERN = "%d{HH:mm:ss.SSS} %-5level - %msg%n";
+    static final String TIMESTAMP_PATTERN = "HH:mm:ss.SSS";
+    // Timestamp of the first generated event, events are 10ms apart
+    static final long FIRST_TIMESTAMP = 1_600_000_000_000L;
+    static final long TIMESTAMP_STEP = 10;
+
+    private TestLogs() {
+    }
+
+    /**
+     * Makes log4j take the event timestamps from SettableClock, must be called before log4j creates any event
+     */
+    static void installClock() {
+        System.setProperty(ClockFactory.PROPERTY_NAME, SettableClock.class.getName());
+    }
+
+    /**
+     * @param attributes appender attributes as name=value
+     * @return context logging into fileName's directory, stopping it closes the archive
+     */
+    static LoggerContext startLogging(Path logDir, String... attributes) {
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.setStatusLevel(Level.WARN);
+        builder.setPackages("com.yscope.log4j.appenders.compressedLogFileAppender.v5");
+        AppenderComponentBuilder appenderBuilder = builder.newAppender(APPENDER_NAME, APPENDER_NAME);
+        // The messages aren't all ASCII, which the platform's charset may be
+        appenderBuilder.add(builder.newLayout("PatternLayout").addAttribute("pattern", PATTERN)
+                .addAttribute("charset", "UTF-8"));
+        appenderBuilder.addAttribute("fileName", logDir.resolve("test.cla").toString());
+        for (String attribute : attributes) {
+            String[] nameAndValue = attribute.split("=", 2);
+            appenderBuilder.addAttribute(nameAndValue[0], nameAndValue[1]);
+        }
+        builder.add(appenderBuilder);
+        builder.add(builder.newRootLogger(Level.DEBUG).add(builder.newAppenderRef(APPENDER_NAME)));
+        LoggerContext context = new LoggerContext(logDir.toString());
+        context.start(builder.build());
+        check(context.getConfiguration().getAppenders().containsKey(APPENDER_NAME),
+                "appender failed to start with " + Arrays.toString(attributes));
+        return context;
+    }
+
+    static long timestamp(int eventNum) {
+        return FIRST_TIMESTAMP + eventNum * TIMESTAMP_STEP;
+    }
+
+    static Level level(int eventNum) {
+        return eventNum % 5 == 0 ? Level.INFO : eventNum % 17 == 0 ? Level.WARN : Level.DEBUG;
+    }
+
+    /**
+     * @return message of the event, mixing dictionary variables with integers and floats of every kind the
+     * encodings treat specially (negative, zero-padded, too long to encode...)
+     */
+    static String message(int eventNum) {
+        int i = eventNum;
+        switch (i % 8) {
+            case 0:
+                return "Starting task " + i + ".0 in stage " + (i % 7) + ".0 (TID " + i * 3 + ", executor "
+                        + (i % 4) + ", partition " + (i % 200) + ", PROCESS_LOCAL, 7731 bytes)";
+            case 1:
+                return "Finished task " + i + " in " + (i % 1000) + " ms on host-" + (i % 5) + ".example.com ("
+                        + (i % 13) + "/13)";
+            case 2:
+                return "Block rdd_" + (i % 97) + "_" + i + " stored as values in memory (estimated size "
+                        + (i % 100) / 10.0 + " KB, free " + (i * 31 % 100000) / 100.0 + " MB)";
+            case 3:
+                return "Temperature " + -(i % 50) + " C, delta " + (i % 2 == 0 ? "-" : "") + "0."
+                        + String.format("%03d", i % 1000) + ", offset -0 and 007 and .5 and 12.";
+            case 4:
+                return "Fetching hdfs://namenode:8020/user/spark/part-" + String.format("%05d", i % 400)
+                        + " from 10.0." + (i % 256) + "." + (i * 7 % 256) + ":" + (40000 + i % 1000);
+            case 5:
+                return "Counters " + (Long.MAX_VALUE - i) + " " + Long.MIN_VALUE + " " + 12345678901234567890.5
+                        + " 0x" + Integer.toHexString(i * 0x9E3779B1) + " 1e10 " + i * 1000003L;
+            case 6:
+                return "Plain message without variables";
+            default:
+                return "Us\u00e9r \"" + (char) ('a' + i % 26) + i + "\" said: ok\t(tab) at " + (i % 10) + ".25%";
+        }
+    }
+
+    /**
+     * Logs events [firstEventNum, firstEventNum + numEvents) on the calling thread. Some of them are logged as
+     * parameterized messages, which format into the same message.
+     */
+    static void log(Logger logger, int firstEventNum, int numEvents) {
+        for (int i = firstEventNum; i < firstEventNum + numEvents; i++) {
+            SettableClock.setTimeMillis(timestamp(i));
+            if (i % 8 == 1) {
+                logger.log(level(i), "Finished task {} in {} ms on host-{}.example.com ({}/13)", i, i % 1000, i % 5,
+                        i % 13);
+            } else {
+                logger.log(level(i), message(i));
+            }
+        }
+    }
+
+    /**
+     * @return lines the events [firstEventNum, firstEventNum + numEvents) decompress into
+     */
+    static List<String> expectedLines(int firstEventNum, int numEvents) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(TIMESTAMP_PATTERN);
+        List<String> lines = new ArrayList<>();
+        for (int i = firstEventNum; i < firstEventNum + numEvents; i++) {
+            lines.add(dateFormat.format(timestamp(i)) + " " + String.format("%-5s", level(i)) + " - " + message(i));
+        }
+        return lines;
+    }
+
+    /**
+     * @return archive directories of the log, the rolled ones in the order they were written
+     */
+    static List<Path> listArchives(Path logDir) throws IOException {
+        List<Path> archiveDirs = Decompressor.listRolledArchives(logDir);
+        if (archiveDirs.isEmpty()) {
+            archiveDirs.add(logDir);
+        }
+        return archiveDirs;
+    }
+
+    /**
+     * @param pool pool to decode ranges of events on, null to decode them on the calling thread
+     * @return lines of all the log's archives
+     */
+    static List<String> decompress(Path logDir, ForkJoinPool pool) throws IOException {
+        Map<Long, ZstdDictDecompress> trainedDictionaries = Decompressor.loadTrainedDictionaries(logDir);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (Path archiveDir : listArchives(logDir)) {
+            Decompressor decompressor = new Decompressor(archiveDir, trainedDictionaries);
+            if (null != pool) {
+                decompressor.decompress(outputStream, pool);
+            } else {
+                decompressor.decompress(outputStream);
+            }
+        }
+        return toLines(outputStream);
+    }
+
+    static List<String> toLines(ByteArrayOutputStream outputStream) {
+        String text = outputStream.toString(StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split(System.lineSeparator(), -1)));
+        check(lines.remove(lines.size() - 1).isEmpty(), "output doesn't end with a line separator");
+        return lines;
+    }
+
+    /**
+     * Checks that the lines are equal, reporting the first difference
+     */
+    static void checkLines(List<String> expected, List<String> actual, String description) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            if (!expected.get(i).equals(actual.get(i))) {
+                throw new AssertionError(description + ": line " + i + " differs, expected\n  " + expected.get(i)
+                        + "\nbut got\n  " + actual.get(i));
+            }
+        }
+        check(expected.size() == actual.size(), description + ": expected " + expected.size() + " lines but got "
+                + actual.size());
+    }
+
+    static void check(boolean condition, String failure) {
+        if (!condition) {
+            throw new AssertionError(failure);
+        }
+    }
+
+    static Path createTempLogDir(String name) throws IOException {
+        return Files.createTempDirectory(name);
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
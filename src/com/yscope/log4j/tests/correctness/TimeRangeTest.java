@@ -0,0 +1,127 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.Decompressor;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TimeIndex;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads time ranges of archives indexed by a TimeIndex or by their container's chunks, as well as of
+ * archives without an index, and checks that each range decompresses into exactly the events with
+ * timestamps in it. Events logged by several threads aren't in timestamp order, so their ranges are
+ * compared regardless of the order.
+ */
+public class TimeRangeTest {
+    private static final int NUM_EVENTS = 20_000;
+
+    private static class Mode {
+        private final String name;
+        private final int numThreads;
+        private final boolean indexed;
+        private final String[] attributes;
+
+        private Mode(String name, int numThreads, boolean indexed, String... attributes) {
+            this.name = name;
+            this.numThreads = numThreads;
+            this.indexed = indexed;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final Mode[] MODES = {
+            new Mode("time index", 1, true, "timeIndexInterval=1000"),
+            new Mode("no index", 1, false, "timeIndexInterval=0", "useMemoryMappedIO=false"),
+            new Mode("time index of delta timestamps", 1, true, "timeIndexInterval=1024",
+                    "useDeltaTimestampEncoding=true", "containerChunkSize=256"),
+            new Mode("time index of compressed columns", 1, true, "timeIndexInterval=1000", "compressionLevel=3",
+                    "containerChunkSize=1024"),
+            new Mode("time index of a compiled pattern layout", 1, true, "timeIndexInterval=1000",
+                    "useCompiledPatternLayout=true", "useGatheringWrites=true", "useMemoryMappedIO=false"),
+            new Mode("container chunks", 1, true, "useArchiveContainer=true", "compressionLevel=3",
+                    "containerChunkSize=1000"),
+            new Mode("container chunks of delta timestamps", 1, true, "useArchiveContainer=true",
+                    "useDeltaTimestampEncoding=true", "containerChunkSize=1000"),
+            new Mode("time index of concurrent ingestion", 4, true, "timeIndexInterval=500",
+                    "useConcurrentIngestion=true", "ringBufferSize=64"),
+            new Mode("container chunks of async ingestion", 4, true, "useArchiveContainer=true",
+                    "containerChunkSize=500", "async=true", "ringBufferSize=64"),
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        for (Mode mode : MODES) {
+            Path logDir = TestLogs.createTempLogDir("timeRange");
+            try {
+                check(mode, logDir);
+            } finally {
+                TestLogs.deleteRecursively(logDir);
+            }
+            System.out.println("OK time ranges of " + mode.name);
+        }
+    }
+
+    private static void check(Mode mode, Path logDir) throws Exception {
+        LoggerContext context = TestLogs.startLogging(logDir, mode.attributes);
+        Logger logger = context.getLogger(TimeRangeTest.class.getName());
+        int numEventsPerThread = NUM_EVENTS / mode.numThreads;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < mode.numThreads; t++) {
+            int firstEventNum = t * numEventsPerThread;
+            threads.add(new Thread(() -> TestLogs.log(logger, firstEventNum, numEventsPerThread)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        context.stop();
+        boolean isContainer = Files.exists(logDir.resolve(ArchiveWriter.CONTAINER_FILENAME));
+        TestLogs.check(mode.indexed == (isContainer || Files.exists(logDir.resolve(TimeIndex.FILENAME))),
+                mode.name + ": archive is " + (mode.indexed ? "not " : "") + "indexed");
+
+        long[][] ranges = {
+                // Within an interval, and across intervals
+                {TestLogs.timestamp(1200), TestLogs.timestamp(1300)},
+                {TestLogs.timestamp(999), TestLogs.timestamp(7001)},
+                // Single events, the first and last ones included
+                {TestLogs.timestamp(12345), TestLogs.timestamp(12345)},
+                {TestLogs.timestamp(0), TestLogs.timestamp(0)},
+                {TestLogs.timestamp(NUM_EVENTS - 1), Long.MAX_VALUE},
+                // Between two events, before and after all of them
+                {TestLogs.timestamp(100) + 1, TestLogs.timestamp(101) - 1},
+                {Long.MIN_VALUE, TestLogs.timestamp(0) - 1},
+                {TestLogs.timestamp(NUM_EVENTS - 1) + 1, Long.MAX_VALUE},
+                {Long.MIN_VALUE, Long.MAX_VALUE},
+        };
+        List<String> lines = TestLogs.expectedLines(0, NUM_EVENTS);
+        Decompressor decompressor = new Decompressor(logDir);
+        for (long[] range : ranges) {
+            String description = mode.name + " [" + range[0] + ", " + range[1] + "]";
+            List<String> expectedLines = new ArrayList<>();
+            for (int i = 0; i < NUM_EVENTS; i++) {
+                if (TestLogs.timestamp(i) >= range[0] && TestLogs.timestamp(i) <= range[1]) {
+                    expectedLines.add(lines.get(i));
+                }
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            long numEvents = decompressor.decompress(outputStream, range[0], range[1]);
+            List<String> rangeLines = TestLogs.toLines(outputStream);
+            if (mode.numThreads > 1) {
+                Collections.sort(expectedLines);
+                Collections.sort(rangeLines);
+            }
+            TestLogs.checkLines(expectedLines, rangeLines, description);
+            TestLogs.check(numEvents == expectedLines.size(), description + ": counted " + numEvents
+                    + " events instead of " + expectedLines.size());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+/**
+ * Checks that the Vector API token scanner stops at exactly the same positions, and finds exactly the same
+ * character classes, as the scalar one, on random runs of delimiters and token characters (including
+ * non-ASCII bytes and the characters the vector scanner tests with ranges) of every length around the vector
+ * width. The scanners are package-private, so they're reached through reflection. Needs the vector scanner
+ * compiled from src-vector and --add-modules jdk.incubator.vector, otherwise only the scalar scanner is
+ * exercised.
+ */
+public class TokenScannerTest {
+    private static final String SCANNER_PACKAGE = LogMessageTokenizer.class.getPackageName();
+    private static final int NUM_MESSAGES = 20_000;
+    private static final byte[] ALPHABET =
+            " \t\n:=,;()[]\"'0123456789abcdefABCDEFxyzXYZ-./+\\_@~\u007f".getBytes();
+
+    private final Object scanner;
+    private final Method skipDelimiters;
+    private final Method scanToken;
+    private final Constructor<?> tokenBoundsConstructor;
+    private final Field[] tokenClassFields;
+
+    private TokenScannerTest(String scannerClassName) throws ReflectiveOperationException {
+        Class<?> scannerClass = Class.forName(SCANNER_PACKAGE + "." + scannerClassName);
+        Constructor<?> constructor = scannerClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        scanner = constructor.newInstance();
+        Class<?> tokenBoundsClass = Class.forName(SCANNER_PACKAGE + ".LogMessageTokenizer$TokenBounds");
+        skipDelimiters = scannerClass.getDeclaredMethod("skipDelimiters", byte[].class, int.class, int.class);
+        skipDelimiters.setAccessible(true);
+        scanToken = scannerClass.getDeclaredMethod("scanToken", byte[].class, int.class, int.class,
+                tokenBoundsClass);
+        scanToken.setAccessible(true);
+        tokenBoundsConstructor = tokenBoundsClass.getDeclaredConstructor();
+        tokenBoundsConstructor.setAccessible(true);
+        tokenClassFields = new Field[]{
+                tokenBoundsClass.getField("containsDecimalDigit"),
+                tokenBoundsClass.getField("containsAlphabet"),
+                tokenBoundsClass.getField("containsNonHexCharacter"),
+        };
+        for (Field field : tokenClassFields) {
+            field.setAccessible(true);
+        }
+    }
+
+    /**
+     * @return the scan's end position, followed by the character classes found by scanToken
+     */
+    private String scan(boolean token, byte[] bytes, int pos, int endPos) throws ReflectiveOperationException {
+        if (!token) {
+            return String.valueOf(skipDelimiters.invoke(scanner, bytes, pos, endPos));
+        }
+        Object tokenBounds = tokenBoundsConstructor.newInstance();
+        StringBuilder result = new StringBuilder(String.valueOf(scanToken.invoke(scanner, bytes, pos, endPos,
+                tokenBounds)));
+        for (Field field : tokenClassFields) {
+            result.append(' ').append(field.getBoolean(tokenBounds));
+        }
+        return result.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        TokenScannerTest scalar = new TokenScannerTest("ScalarTokenScanner");
+        TokenScannerTest vector;
+        try {
+            vector = new TokenScannerTest("VectorTokenScanner");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("SKIPPED vector token scanner, compile src-vector and run with --add-modules jdk.incubator.vector");
+            return;
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < NUM_MESSAGES; i++) {
+            byte[] bytes = randomRuns(random, random.nextInt(300));
+            int endPos = bytes.length - random.nextInt(Math.min(bytes.length, 8) + 1);
+            for (int pos = 0; pos <= endPos; pos += 1 + random.nextInt(7)) {
+                for (boolean token : new boolean[]{false, true}) {
+                    String expected = scalar.scan(token, bytes, pos, endPos);
+                    String actual = vector.scan(token, bytes, pos, endPos);
+                    TestLogs.check(expected.equals(actual), (token ? "scanToken" : "skipDelimiters") + " from "
+                            + pos + " to " + endPos + " of " + new String(bytes, 0, endPos) + " returned " + actual
+                            + " instead of " + expected);
+                }
+            }
+        }
+        System.out.println("OK vector token scanner agrees with the scalar one on " + NUM_MESSAGES + " messages");
+    }
+
+    /**
+     * @return runs of the same kind of bytes (delimiters, token characters or any byte), often longer than a
+     * vector
+     */
+    private static byte[] randomRuns(Random random, int length) {
+        byte[] bytes = new byte[length];
+        int pos = 0;
+        while (pos < length) {
+            int runLength = Math.min(length - pos, random.nextBoolean() ? random.nextInt(4) + 1
+                    : random.nextInt(130) + 1);
+            int kind = random.nextInt(3);
+            for (int i = 0; i < runLength; i++) {
+                byte b;
+                if (0 == kind) {
+                    b = ALPHABET[random.nextInt(11)];
+                } else if (1 == kind) {
+                    b = ALPHABET[11 + random.nextInt(ALPHABET.length - 11)];
+                } else {
+                    b = (byte) random.nextInt(256);
+                }
+                bytes[pos++] = b;
+            }
+        }
+        return bytes;
+    }
+}
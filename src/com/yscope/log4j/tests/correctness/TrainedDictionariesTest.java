@@ -0,0 +1,98 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TrainedDictionaries;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.Stream;
+
+/**
+ * Samples small chunks of log lines into TrainedDictionaries until a section's dictionary is trained, and
+ * checks that: only the sampled section gets a dictionary, it's stored (without leftovers) in the log
+ * directory, later chunks compressed with it are smaller than without it and decompress with the dictionary
+ * load picks by the frame's dictionary id, and a new instance (e.g. after a restart) reuses it rather than
+ * sampling again.
+ */
+public class TrainedDictionariesTest {
+    private static final String SECTION = "logtype";
+    private static final String OTHER_SECTION = "var";
+    private static final int CHUNK_NUM_LINES = 16;
+    private static final int SAMPLE_BYTES = 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = TestLogs.createTempLogDir("trainedDictionaries");
+        try {
+            check(dir);
+        } finally {
+            TestLogs.deleteRecursively(dir);
+        }
+        System.out.println("OK trained dictionaries");
+    }
+
+    private static void check(Path dir) throws Exception {
+        TrainedDictionaries trainedDictionaries = new TrainedDictionaries(dir, 3, SAMPLE_BYTES, DICTIONARY_SIZE);
+        int eventNum = 0;
+        long numSampledBytes = 0;
+        while (null == trainedDictionaries.getCompressor(SECTION)) {
+            TestLogs.check(numSampledBytes <= 2L * SAMPLE_BYTES,
+                    numSampledBytes + " bytes were sampled without training a dictionary");
+            byte[] chunk = chunk(eventNum);
+            eventNum += CHUNK_NUM_LINES;
+            trainedDictionaries.addSample(SECTION, chunk, chunk.length);
+            numSampledBytes += chunk.length;
+        }
+        TestLogs.check(null == trainedDictionaries.getCompressor(OTHER_SECTION),
+                "a section that was never sampled has a dictionary");
+        try (Stream<Path> paths = Files.list(dir)) {
+            String[] filenames = paths.map(path -> path.getFileName().toString()).toArray(String[]::new);
+            TestLogs.check(Arrays.equals(new String[]{SECTION + TrainedDictionaries.FILE_EXTENSION}, filenames),
+                    "log directory holds " + Arrays.toString(filenames) + " instead of the section's dictionary");
+        }
+
+        HashMap<Long, ZstdDictDecompress> dictionaries = TrainedDictionaries.load(dir);
+        TestLogs.check(1 == dictionaries.size(), dictionaries.size() + " dictionaries were loaded instead of 1");
+        checkCompression(trainedDictionaries.getCompressor(SECTION), dictionaries, eventNum);
+
+        // A new instance loads the stored dictionary instead of sampling again
+        TrainedDictionaries reloaded = new TrainedDictionaries(dir, 3, SAMPLE_BYTES, DICTIONARY_SIZE);
+        ZstdDictCompress compressor = reloaded.getCompressor(SECTION);
+        TestLogs.check(null != compressor, "the stored dictionary wasn't loaded");
+        byte[] chunk = chunk(0);
+        reloaded.addSample(SECTION, chunk, chunk.length);
+        TestLogs.check(compressor == reloaded.getCompressor(SECTION), "a loaded dictionary was sampled again");
+        checkCompression(compressor, dictionaries, eventNum);
+    }
+
+    private static void checkCompression(ZstdDictCompress compressor, HashMap<Long, ZstdDictDecompress> dictionaries,
+                                         int firstEventNum) {
+        long numBytesWithDictionary = 0;
+        long numBytesWithoutDictionary = 0;
+        for (int eventNum = firstEventNum; eventNum < firstEventNum + 100 * CHUNK_NUM_LINES;
+             eventNum += CHUNK_NUM_LINES) {
+            byte[] chunk = chunk(eventNum);
+            byte[] compressed = Zstd.compress(chunk, compressor);
+            ZstdDictDecompress dictionary = dictionaries.get(Zstd.getDictIdFromFrame(compressed));
+            TestLogs.check(null != dictionary, "no dictionary was loaded for the chunk's dictionary id");
+            byte[] decompressed = Zstd.decompress(compressed, dictionary, chunk.length);
+            TestLogs.check(Arrays.equals(chunk, decompressed), "chunk of event " + eventNum
+                    + " didn't decompress to itself");
+            numBytesWithDictionary += compressed.length;
+            numBytesWithoutDictionary += Zstd.compress(chunk, 3).length;
+        }
+        TestLogs.check(numBytesWithDictionary < numBytesWithoutDictionary, "chunks compressed to "
+                + numBytesWithDictionary + " bytes with the dictionary, and " + numBytesWithoutDictionary
+                + " without it");
+    }
+
+    private static byte[] chunk(int firstEventNum) {
+        return (String.join("\n", TestLogs.expectedLines(firstEventNum, CHUNK_NUM_LINES)) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
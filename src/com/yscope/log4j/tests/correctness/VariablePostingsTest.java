@@ -0,0 +1,81 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.VariablePostings;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Posts variables (rare and frequent ones, ids beyond an int) in increasing blocks to VariablePostings with
+ * memory budgets from unlimited to a few postings, so the postings are written directly, spilled into a few
+ * runs or into hundreds of them, with a variable's postings of a block split across runs. Checks that the
+ * runs are merged away and that findBlocks returns exactly the blocks of the wanted variables, whether their
+ * lists ended up delta or bitmap encoded.
+ */
+public class VariablePostingsTest {
+    private static final int NUM_BLOCKS = 2_000;
+    private static final int NUM_VARIABLES = 500;
+    private static final int POSTINGS_PER_BLOCK = 20;
+    // Id and block of a buffered posting plus its entry in the last blocks map
+    private static final int BUFFERED_POSTING_BYTES = 24;
+
+    public static void main(String[] args) throws Exception {
+        for (int maxBufferedBytes : new int[]{Integer.MAX_VALUE, 5_000 * BUFFERED_POSTING_BYTES,
+                200 * BUFFERED_POSTING_BYTES}) {
+            Path archiveDir = TestLogs.createTempLogDir("variablePostings");
+            try {
+                check(archiveDir, maxBufferedBytes);
+            } finally {
+                TestLogs.deleteRecursively(archiveDir);
+            }
+            System.out.println("OK variable postings buffered in " + maxBufferedBytes + " bytes");
+        }
+    }
+
+    private static void check(Path archiveDir, int maxBufferedBytes) throws Exception {
+        Random random = new Random(24);
+        VariablePostings postings = new VariablePostings(archiveDir, maxBufferedBytes);
+        Map<Long, BitSet> expected = new HashMap<>();
+        for (int block = 0; block < NUM_BLOCKS; block++) {
+            for (int i = 0; i < POSTINGS_PER_BLOCK; i++) {
+                // Skewed, so low ids are in most blocks and high ids in few
+                int variable = (int) (NUM_VARIABLES * Math.pow(random.nextDouble(), 3));
+                long variableId = variable * 0x1_0000_0007L;
+                postings.add(variableId, block);
+                expected.computeIfAbsent(variableId, id -> new BitSet()).set(block);
+            }
+        }
+        Path path = postings.write();
+        try (Stream<Path> paths = Files.list(archiveDir)) {
+            TestLogs.check(paths.allMatch(path::equals), "run files were left next to the index");
+        }
+
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(path));
+        for (Map.Entry<Long, BitSet> entry : expected.entrySet()) {
+            BitSet blocks = VariablePostings.findBlocks(index.duplicate(), id -> id == entry.getKey());
+            TestLogs.check(entry.getValue().equals(blocks), "variable " + entry.getKey() + " was found in "
+                    + blocks.cardinality() + " blocks instead of " + entry.getValue().cardinality());
+        }
+
+        Set<Long> wanted = new HashSet<>();
+        BitSet expectedBlocks = new BitSet();
+        for (Map.Entry<Long, BitSet> entry : expected.entrySet()) {
+            if (random.nextInt(50) == 0) {
+                wanted.add(entry.getKey());
+                expectedBlocks.or(entry.getValue());
+            }
+        }
+        TestLogs.check(expectedBlocks.equals(VariablePostings.findBlocks(index.duplicate(), wanted::contains)),
+                "the blocks of several variables aren't the union of their blocks");
+        TestLogs.check(VariablePostings.findBlocks(index.duplicate(), id -> id == 1).isEmpty(),
+                "a variable that was never posted was found");
+    }
+}
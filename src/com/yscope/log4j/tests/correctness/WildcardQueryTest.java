@@ -0,0 +1,143 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.Decompressor;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.query.WildcardQuery;
+import org.apache.logging.log4j.core.LoggerContext;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * Searches archives written in the modes that change how they're searched (postings, containers, grouped
+ * variables, compiled pattern layout...) and checks that every query finds exactly the lines a regular
+ * expression equivalent to its pattern matches, on the calling thread as well as in parallel ranges.
+ */
+public class WildcardQueryTest {
+    private static final int NUM_EVENTS = 20_000;
+    // Length of the lines' timestamp, which queries don't match
+    private static final int TIMESTAMP_LENGTH = TestLogs.TIMESTAMP_PATTERN.length();
+
+    private static final String[][] MODES = {
+            {"useCompactVariableEncoding=false"},
+            {"timeIndexInterval=1024", "usePostingsIndex=true"},
+            {"useArchiveContainer=true", "compressionLevel=3", "containerChunkSize=1024", "usePostingsIndex=true"},
+            {"useArchiveContainer=true", "containerChunkSize=1024", "useTemplateGroupedVariables=true",
+                    "useVarintIds=true"},
+            {"useCompiledPatternLayout=true", "useDeltaTimestampEncoding=true", "containerChunkSize=1024",
+                    "timeIndexInterval=2048", "usePostingsIndex=true"},
+            {"useParameterizedMessageFastPath=true", "compressionLevel=3", "containerChunkSize=1024"},
+    };
+
+    private static final String[] PATTERNS = {
+            // Integer and float variables
+            "Finished task 1?? in *",
+            "in stage 3.0 (TID",
+            "estimated size 0.? KB",
+            "Temperature -4? C",
+            "delta 0.0*",
+            "offset -0 and 007",
+            "9223372036854775*",
+            "1e10 ",
+            // Dictionary variables
+            "hdfs://namenode:8020/user/spark/part-0001*",
+            "10.0.1??.*:4000?",
+            "host-3.example.com (1?/13)",
+            "0x9*1e10",
+            "rdd_42_*",
+            // Across the message's parts
+            "WARN  - Finished",
+            "INFO*Plain message",
+            "Us\u00e9r \"b",
+            "said: ok\t(tab) at 7.25%",
+            // Escaped '*' and '?', which no line has
+            "\\*",
+            "ms\\?",
+            "partition 192, PROCESS_LOCAL",
+            "bytes)*",
+            "Plain message without variables" + System.lineSeparator(),
+            "no line has this",
+            "*",
+    };
+
+    public static void main(String[] args) throws Exception {
+        TestLogs.installClock();
+        List<String> expectedLines = TestLogs.expectedLines(0, NUM_EVENTS);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String[] attributes : MODES) {
+                Path logDir = TestLogs.createTempLogDir("wildcardQuery");
+                try {
+                    LoggerContext context = TestLogs.startLogging(logDir, attributes);
+                    TestLogs.log(context.getLogger(WildcardQueryTest.class.getName()), 0, NUM_EVENTS);
+                    context.stop();
+
+                    Decompressor decompressor = new Decompressor(logDir);
+                    for (String pattern : PATTERNS) {
+                        check(decompressor, pattern, expectedLines, pool);
+                    }
+                } finally {
+                    TestLogs.deleteRecursively(logDir);
+                }
+                System.out.println("OK wildcard queries with " + String.join(" ", attributes));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void check(Decompressor decompressor, String pattern, List<String> lines, ForkJoinPool pool)
+            throws Exception {
+        Pattern regex = toRegex(pattern);
+        List<String> expectedLines = new ArrayList<>();
+        for (String line : lines) {
+            String searchedText = toLatin1(line.substring(TIMESTAMP_LENGTH) + System.lineSeparator());
+            if (regex.matcher(searchedText).find()) {
+                expectedLines.add(line);
+            }
+        }
+
+        WildcardQuery query = new WildcardQuery(pattern);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long numMatchingEvents = decompressor.search(query, outputStream);
+        TestLogs.checkLines(expectedLines, TestLogs.toLines(outputStream), "[" + pattern + "]");
+        TestLogs.check(numMatchingEvents == expectedLines.size(), "[" + pattern + "] counted " + numMatchingEvents
+                + " matches instead of " + expectedLines.size());
+
+        outputStream = new ByteArrayOutputStream();
+        numMatchingEvents = decompressor.search(query, outputStream, pool);
+        TestLogs.checkLines(expectedLines, TestLogs.toLines(outputStream), "[" + pattern + "] searched in parallel");
+        TestLogs.check(numMatchingEvents == expectedLines.size(), "[" + pattern + "] counted " + numMatchingEvents
+                + " parallel matches instead of " + expectedLines.size());
+    }
+
+    /**
+     * @return regular expression matching the same bytes as the wildcard pattern, in text whose UTF-8 bytes
+     * were decoded as Latin-1 so '?' and '.' both match a single byte
+     */
+    private static Pattern toRegex(String pattern) {
+        String bytes = toLatin1(pattern);
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < bytes.length(); i++) {
+            char c = bytes.charAt(i);
+            if ('\\' == c && i + 1 < bytes.length()) {
+                regex.append(Pattern.quote(String.valueOf(bytes.charAt(++i))));
+            } else if ('*' == c) {
+                regex.append(".*");
+            } else if ('?' == c) {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static String toLatin1(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+}
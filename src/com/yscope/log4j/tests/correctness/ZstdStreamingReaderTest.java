@@ -0,0 +1,142 @@
+package com.yscope.log4j.tests.correctness;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdStreamingReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reads zstd files through a ZstdStreamingReader with a small window, mixing reads (some larger than the
+ * window), skips (within the window, across many frames and past the end) and captures, and checks every
+ * byte against the decompressed data. Covers the file layouts skipTo handles differently: frames recording
+ * their decompressed size (including empty frames and skippable frames in between), where it restarts at the
+ * frame holding the offset, a single streamed frame, and frames of which one doesn't record its size, where
+ * it decompresses through.
+ */
+public class ZstdStreamingReaderTest {
+    private static final int NUM_FRAMES = 300;
+    private static final int NUM_OPERATIONS = 2_000;
+    private static final int WINDOW_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = TestLogs.createTempLogDir("zstdStreamingReader");
+        try {
+            Random random = new Random(21);
+            byte[] data = randomData(random, NUM_FRAMES * 2000);
+            ByteArrayOutputStream sizedFrames = new ByteArrayOutputStream();
+            ByteArrayOutputStream mixedFrames = new ByteArrayOutputStream();
+            int offset = 0;
+            for (int i = 0; i < NUM_FRAMES && offset < data.length; i++) {
+                int length = random.nextInt(10) == 0 ? 0 : Math.min(data.length - offset, random.nextInt(4000));
+                byte[] frame = Zstd.compress(Arrays.copyOfRange(data, offset, offset + length), 3);
+                sizedFrames.write(frame);
+                if (random.nextInt(20) == 0) {
+                    writeSkippableFrame(sizedFrames, random);
+                }
+                mixedFrames.write(NUM_FRAMES / 2 == i ? streamedFrame(data, offset, length) : frame);
+                offset += length;
+            }
+            byte[] expected = Arrays.copyOf(data, offset);
+
+            check(dir.resolve("sized.zst"), sizedFrames.toByteArray(), expected, random);
+            System.out.println("OK streaming reader over frames recording their size");
+            check(dir.resolve("streamed.zst"), streamedFrame(expected, 0, expected.length), expected, random);
+            System.out.println("OK streaming reader over a single streamed frame");
+            check(dir.resolve("mixed.zst"), mixedFrames.toByteArray(), expected, random);
+            System.out.println("OK streaming reader over frames not all recording their size");
+        } finally {
+            TestLogs.deleteRecursively(dir);
+        }
+    }
+
+    private static void check(Path path, byte[] compressed, byte[] expected, Random random) throws IOException {
+        Files.write(path, compressed);
+        String description = path.getFileName().toString();
+        for (ByteOrder byteOrder : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            try (ZstdStreamingReader reader = new ZstdStreamingReader(path, WINDOW_SIZE, byteOrder)) {
+                int offset = 0;
+                int captureOffset = -1;
+                for (int i = 0; i < NUM_OPERATIONS && offset < expected.length; i++) {
+                    int operation = random.nextInt(10);
+                    if (operation < 4) {
+                        int numBytes = random.nextInt(random.nextInt(10) == 0 ? 3 * WINDOW_SIZE : 16) + 1;
+                        ByteBuffer window = reader.fill(numBytes);
+                        int numRead = Math.min(numBytes, expected.length - offset);
+                        TestLogs.check(window.remaining() >= numRead && window.order() == byteOrder,
+                                description + " filled " + window.remaining() + " bytes instead of " + numRead);
+                        byte[] bytes = new byte[numRead];
+                        window.get(bytes);
+                        TestLogs.check(Arrays.equals(Arrays.copyOfRange(expected, offset, offset + numRead), bytes),
+                                description + " read wrong bytes at " + offset);
+                        offset += numRead;
+                    } else if (operation < 8) {
+                        // Mostly within a few frames, sometimes far ahead or past the end
+                        int distance = random.nextInt(5) == 0 ? random.nextInt(expected.length / 4 + 1)
+                                : random.nextInt(operation < 6 ? WINDOW_SIZE : 10_000);
+                        reader.skipTo((long) offset + distance);
+                        offset = Math.min(expected.length, offset + distance);
+                        TestLogs.check(reader.hasRemaining() == offset < expected.length,
+                                description + " has remaining bytes past its end, or none before it");
+                    } else if (captureOffset < 0) {
+                        reader.startCapture();
+                        captureOffset = offset;
+                    } else {
+                        ByteBuffer captured = reader.endCapture();
+                        byte[] bytes = new byte[captured.remaining()];
+                        captured.get(bytes);
+                        TestLogs.check(Arrays.equals(Arrays.copyOfRange(expected, captureOffset, offset), bytes),
+                                description + " captured wrong bytes from " + captureOffset + " to " + offset);
+                        captureOffset = -1;
+                    }
+                }
+                if (offset < expected.length) {
+                    reader.skipTo(expected.length);
+                }
+                TestLogs.check(!reader.hasRemaining(), description + " has bytes past its end");
+            }
+        }
+    }
+
+    /**
+     * @return log-like data (text with numbers), so frames compress with every block type
+     */
+    private static byte[] randomData(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            if (random.nextInt(50) == 0) {
+                text.append("x".repeat(random.nextInt(500)));
+            }
+            text.append("task ").append(random.nextInt(1000)).append(" took ").append(random.nextInt(100_000))
+                    .append(" ms\n");
+        }
+        return text.substring(0, length).getBytes();
+    }
+
+    /**
+     * @return frame whose header doesn't record its decompressed size
+     */
+    private static byte[] streamedFrame(byte[] data, int offset, int length) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        try (ZstdOutputStream outputStream = new ZstdOutputStream(frame, 3)) {
+            outputStream.write(data, offset, length);
+        }
+        return frame.toByteArray();
+    }
+
+    private static void writeSkippableFrame(ByteArrayOutputStream outputStream, Random random) throws IOException {
+        byte[] payload = new byte[random.nextInt(64)];
+        random.nextBytes(payload);
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x184D2A50 + random.nextInt(16)).putInt(payload.length);
+        outputStream.write(header.array());
+        outputStream.write(payload);
+    }
+}
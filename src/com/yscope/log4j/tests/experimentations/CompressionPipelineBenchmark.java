@@ -0,0 +1,60 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.CompactVariableBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.VariableIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.ZstdCompressionPipeline;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * Writes the same variable-like values into a zstd compressed variable column, once compressing on the
+ * writing thread and once through a ZstdCompressionPipeline, and reports the throughput and the latency
+ * distribution of writes (measured per batch of writes, since a single write is too short to time).
+ * The slowest batches are the ones stalled by inline compression.
+ */
+public class CompressionPipelineBenchmark {
+    private static final int BATCH_SIZE = 64;
+
+    public static void main(String[] args) throws IOException {
+        int numValues = args.length > 0 ? Integer.parseInt(args[0]) : 50_000_000;
+        int compressionLevel = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+
+        for (int numThreads : new int[] {0, 2}) {
+            Path path = Files.createTempFile("var", ".bin.zst");
+            ZstdCompressionPipeline pipeline = numThreads > 0
+                    ? new ZstdCompressionPipeline("benchmark", numThreads, compressionLevel, 1024 * 1024) : null;
+            VariableIR variableIR = new CompactVariableBufferedFileOutputStreamIR(path, compressionLevel, pipeline, 4);
+
+            long[] batchNanos = new long[numValues / BATCH_SIZE];
+            long start = System.nanoTime();
+            long value = 0;
+            for (int batch = 0; batch < batchNanos.length; batch++) {
+                long batchStart = System.nanoTime();
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    value = value * 6364136223846793005L + 1442695040888963407L;
+                    variableIR.putEncodedVariable(batch + ((value >>> 60) & 0x7));
+                }
+                batchNanos[batch] = System.nanoTime() - batchStart;
+            }
+            variableIR.close();
+            long end = System.nanoTime();
+
+            Arrays.sort(batchNanos);
+            System.out.println((null == pipeline ? "inline compression" : numThreads + " compressor threads") + ": "
+                    + decimalFormatter.format(numValues / ((end - start) / 1e9)) + " values/s, batch of "
+                    + BATCH_SIZE + " writes p50 " + batchNanos[batchNanos.length / 2] + " ns, p99.99 "
+                    + batchNanos[(int) (batchNanos.length * 0.9999)] + " ns, max "
+                    + batchNanos[batchNanos.length - 1] + " ns, " + Files.size(path) + " bytes");
+            if (null != pipeline) {
+                System.out.println("  " + pipeline.getStatistics());
+                pipeline.close();
+            }
+            Files.delete(path);
+        }
+    }
+}
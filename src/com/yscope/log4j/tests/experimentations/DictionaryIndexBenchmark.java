@@ -0,0 +1,58 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.BufferedDataOutputStreamCompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.CompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestException;
+import java.security.NoSuchAlgorithmException;
+import java.text.DecimalFormat;
+
+/**
+ * Fills a variable dictionary with unique, request-id-like keys (the kind of high-cardinality variables
+ * that make dictionaries grow without bound) using the heap digest map index and the off-heap arena
+ * index (both persisting to a temporary dictionary file, like ArchiveWriter does), and reports the
+ * throughput, the memory held by each index and the JVM heap in use afterwards.
+ */
+public class DictionaryIndexBenchmark {
+    public static void main(String[] args) throws NoSuchAlgorithmException, DigestException, IOException {
+        int numKeys = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+
+        for (boolean useOffHeapIndex : new boolean[] {false, true}) {
+            Path dictPath = Files.createTempFile("variable", ".dict");
+            CompressionDictionary variableDict = new BufferedDataOutputStreamCompressionDictionary(dictPath, 0);
+            if (useOffHeapIndex) {
+                variableDict.useOffHeapIndex();
+            }
+            variableDict.enableByteExactVerification();
+            ByteArrayViewDictionaryKey key = new ByteArrayViewDictionaryKey(KeyHashAlgorithm.XXH64.createHasher());
+
+            long start = System.nanoTime();
+            for (int i = 0; i < numKeys; i++) {
+                byte[] bytes = ("req-" + Long.toHexString(i * 0x9E3779B97F4A7C15L)).getBytes(StandardCharsets.US_ASCII);
+                key.wrap(bytes);
+                variableDict.getId(key);
+            }
+            long end = System.nanoTime();
+
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            long jvmHeapUsed = runtime.totalMemory() - runtime.freeMemory();
+            int keysPerSecond = (int) ((double) numKeys * 1000 * 1000 * 1000 / (end - start));
+            System.out.println((useOffHeapIndex ? "off-heap arena" : "heap digest map") + ": "
+                    + decimalFormatter.format(keysPerSecond) + " keys/s, "
+                    + decimalFormatter.format(variableDict.getNumEntries()) + " entries, dictionary heap "
+                    + decimalFormatter.format(variableDict.getHeapBytesUsed()) + " B, off-heap "
+                    + decimalFormatter.format(variableDict.getOffHeapBytesUsed()) + " B, JVM heap "
+                    + decimalFormatter.format(jvmHeapUsed) + " B");
+            variableDict.close();
+            Files.delete(dictPath);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.logtype.LogtypeIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.timestamp.TimestampIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.CompactVariableBufferedFileOutputStreamIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.CompactVariableGatheringFileChannelIR;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.intermediateRepresentation.variable.VariableIR;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+
+/**
+ * Writes the same events (a timestamp, a logtype id and a few variables each) into uncompressed columns,
+ * once through the buffered DataOutputStream writers and once through GatheringFileChannelIRs, and reports
+ * the throughput of each. Repeated a few times so both writers are compiled by the JIT.
+ */
+public class GatheringWriteBenchmark {
+    private static final int NUM_VARIABLES = 3;
+
+    public static void main(String[] args) throws IOException {
+        int numEvents = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        int bufferSize = args.length > 1 ? Integer.parseInt(args[1]) : 256 * 1024;
+        int numRuns = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+
+        for (int run = 0; run < numRuns; run++) {
+            for (boolean useGatheringWrites : new boolean[] {false, true}) {
+                Path timestampPath = Files.createTempFile("ts", ".bin");
+                Path logtypePath = Files.createTempFile("logtype", ".bin");
+                Path variablePath = Files.createTempFile("var", ".bin");
+                TimestampIR timestampIR = useGatheringWrites
+                        ? new TimestampGatheringFileChannelIR(timestampPath, bufferSize)
+                        : new TimestampBufferedFileOutputStreamIR(timestampPath, 0);
+                LogtypeIR logtypeIR = useGatheringWrites
+                        ? new LogtypeGatheringFileChannelIR(logtypePath, bufferSize)
+                        : new LogtypeBufferedFileOutputStreamIR(logtypePath, 0);
+                VariableIR variableIR = useGatheringWrites
+                        ? new CompactVariableGatheringFileChannelIR(variablePath, bufferSize)
+                        : new CompactVariableBufferedFileOutputStreamIR(variablePath, 0);
+
+                long start = System.nanoTime();
+                long timestamp = 1_600_000_000_000L;
+                for (int i = 0; i < numEvents; i++) {
+                    timestampIR.putTimestamp(timestamp += i & 0x7);
+                    logtypeIR.putLogtype(i & 0xff);
+                    for (int v = 0; v < NUM_VARIABLES; v++) {
+                        variableIR.putEncodedVariable(i + v);
+                    }
+                }
+                timestampIR.close();
+                logtypeIR.close();
+                variableIR.close();
+                long end = System.nanoTime();
+
+                long numBytes = Files.size(timestampPath) + Files.size(logtypePath) + Files.size(variablePath);
+                System.out.println((useGatheringWrites ? "gathering writes" : "buffered streams") + ": "
+                        + decimalFormatter.format(numEvents / ((end - start) / 1e9)) + " events/s, "
+                        + decimalFormatter.format(numBytes) + " bytes");
+                Files.delete(timestampPath);
+                Files.delete(logtypePath);
+                Files.delete(variablePath);
+            }
+        }
+    }
+}
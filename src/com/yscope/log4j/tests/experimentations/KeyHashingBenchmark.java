@@ -0,0 +1,106 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.InMemoryCompressionDictionary;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.ByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+import com.yscope.logParser.Event;
+import com.yscope.logParser.SparkLogParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.NoSuchAlgorithmException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+/**
+ * Compares dictionary key hashing algorithms on the spark log corpus. Every message is tokenized up
+ * front, then each algorithm hashes every logtype and every token and looks it up in a dictionary
+ * (with byte-exact verification for the non-cryptographic algorithms), which is the per-event
+ * dictionary work CompressedLogFileV5 does.
+ */
+public class KeyHashingBenchmark {
+    private static final int NUM_ITERATIONS = 200;
+
+    private static class TokenizedEvent {
+        byte[] message;
+        byte[] logtype;
+        int[] tokenBounds;   // begin0, end0, begin1, end1...
+    }
+
+    public static void main(String[] args) throws NoSuchAlgorithmException, DigestException, IOException {
+        SparkLogParser sparkLogParser = new SparkLogParser(
+                args.length > 0 ? args[0] : "logs/uncompressedSparkLogs/stderr_small", true);
+        ArrayList<TokenizedEvent> events = tokenize(sparkLogParser);
+
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+        for (KeyHashAlgorithm keyHashAlgorithm : KeyHashAlgorithm.values()) {
+            ByteArrayViewDictionaryKey key = new ByteArrayViewDictionaryKey(keyHashAlgorithm.createHasher());
+
+            // Warm up, and keep the dictionary sizes to show all algorithms produce the same dictionaries
+            InMemoryCompressionDictionary logtypeDict = new InMemoryCompressionDictionary();
+            InMemoryCompressionDictionary variableDict = new InMemoryCompressionDictionary();
+            if (!keyHashAlgorithm.isCryptographic) {
+                logtypeDict.enableByteExactVerification();
+                variableDict.enableByteExactVerification();
+            }
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                hashAndLookup(events, key, logtypeDict, variableDict);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                hashAndLookup(events, key, logtypeDict, variableDict);
+            }
+            long end = System.nanoTime();
+            int nanoSecondsInSeconds = 1000 * 1000 * 1000;
+            long numEvents = (long) events.size() * NUM_ITERATIONS;
+            int eventPerSeconds = (int) ((double) numEvents * nanoSecondsInSeconds / (end - start));
+            System.out.println(keyHashAlgorithm + ": " + decimalFormatter.format(eventPerSeconds) + " msg/s ("
+                    + logtypeDict.getNumEntries() + " logtypes, " + variableDict.getNumEntries() + " variables)");
+        }
+    }
+
+    private static void hashAndLookup(ArrayList<TokenizedEvent> events, ByteArrayViewDictionaryKey key,
+                                      InMemoryCompressionDictionary logtypeDict,
+                                      InMemoryCompressionDictionary variableDict)
+            throws DigestException, IOException {
+        for (TokenizedEvent event : events) {
+            for (int i = 0; i < event.tokenBounds.length; i += 2) {
+                key.wrap(event.message, event.tokenBounds[i], event.tokenBounds[i + 1]);
+                variableDict.getId(key);
+            }
+            key.wrap(event.logtype);
+            logtypeDict.getId(key);
+        }
+    }
+
+    private static ArrayList<TokenizedEvent> tokenize(SparkLogParser sparkLogParser) {
+        ArrayList<TokenizedEvent> events = new ArrayList<>();
+        LogMessageTokenizer tokenizer = new LogMessageTokenizer();
+        for (Event event : sparkLogParser.getLogEvents()) {
+            byte[] messageBytes = event.getMsg().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer message = ByteBuffer.wrap(messageBytes);
+            message.position(messageBytes.length);
+            ByteBuffer logtype = ByteBuffer.allocate(messageBytes.length * 2 + 1);
+
+            ArrayList<Integer> bounds = new ArrayList<>();
+            tokenizer.reset();
+            while (tokenizer.parseNextVar(message, logtype)) {
+                logtype.put((byte) 18);
+                bounds.add(tokenizer.getVarBeginPos());
+                bounds.add(tokenizer.getVarEndPos());
+            }
+
+            TokenizedEvent tokenizedEvent = new TokenizedEvent();
+            tokenizedEvent.message = messageBytes;
+            tokenizedEvent.logtype = new byte[logtype.position()];
+            System.arraycopy(logtype.array(), 0, tokenizedEvent.logtype, 0, logtype.position());
+            tokenizedEvent.tokenBounds = bounds.stream().mapToInt(Integer::intValue).toArray();
+            events.add(tokenizedEvent);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,87 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.CompressedLogFilePatternLayoutContainer;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EventEncoder;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.utilityClasses.MessageSplitPatternLayout;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import java.security.DigestException;
+import java.security.NoSuchAlgorithmException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+/**
+ * Encodes the same parameterized messages (typical format strings with integer, float and string
+ * parameters) through EventEncoder with the layout + tokenizer path and with the parameterized message
+ * fast path, and reports the throughput of each. Run with -Dfile.encoding=UTF-8 if the platform's default
+ * charset isn't UTF-8, the fast path only supports UTF-8 layouts.
+ */
+public class ParameterizedMessageBenchmark {
+    private static final int NUM_ITERATIONS = 200;
+
+    public static void main(String[] args) throws NoSuchAlgorithmException, DigestException {
+        PatternLayout layout = PatternLayout.newBuilder()
+                .withPattern("%d{HH:mm:ss.SSS} %-5level [%t] %c{1}: %msg%n").build();
+        CompressedLogFilePatternLayoutContainer container = new CompressedLogFilePatternLayoutContainer(layout);
+        MessageSplitPatternLayout splitLayout = container.getMessageSplitPatternLayout();
+        if (null == splitLayout) {
+            System.out.println("Layout can't be split around its message, is the default charset UTF-8?");
+            return;
+        }
+
+        String[] formats = {
+                "Finished task {} in stage {} (TID {}). {} bytes result sent to driver",
+                "Block {} stored as values in memory (estimated size {} KiB, free {} MiB)",
+                "Fetching {} non-empty blocks including {} local blocks and {} remote blocks",
+                "Running task {} in stage {} (TID {}) on executor {} with ratio {}",
+        };
+        ArrayList<LogEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            String format = formats[i % formats.length];
+            Object[] parameters = {i % 200 + ".0", i % 7, 1000L + i, "rdd_" + i + "_" + (i % 16), 0.25 * (i % 9)};
+            events.add(Log4jLogEvent.newBuilder()
+                    .setLoggerName("org.apache.spark.executor.Executor")
+                    .setLevel(Level.INFO)
+                    .setThreadName("Executor task launch worker for task " + i % 16)
+                    .setTimeMillis(1600000000000L + i)
+                    .setMessage(new ParameterizedMessage(format, parameters))
+                    .build());
+        }
+
+        EventEncoder eventEncoder = new EventEncoder(true);
+        EncodedEvent encodedEvent = new EncodedEvent(8192);
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+        for (boolean useFastPath : new boolean[] {false, true}) {
+            PatternLayout compressedLayout = container.getCompressedLogPatternLayout();
+            MessageSplitPatternLayout eventSplitLayout = useFastPath ? splitLayout : null;
+            long checksum = 0;
+            for (int i = 0; i < NUM_ITERATIONS / 4; i++) {
+                checksum += encode(events, eventEncoder, compressedLayout, eventSplitLayout, encodedEvent);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                checksum += encode(events, eventEncoder, compressedLayout, eventSplitLayout, encodedEvent);
+            }
+            long end = System.nanoTime();
+            System.out.println((useFastPath ? "parameterized message fast path: " : "layout + tokenizer: ")
+                    + decimalFormatter.format(events.size() * NUM_ITERATIONS / ((end - start) / 1e9))
+                    + " events/s (checksum " + checksum + ")");
+        }
+    }
+
+    private static long encode(ArrayList<LogEvent> events, EventEncoder eventEncoder, PatternLayout layout,
+                               MessageSplitPatternLayout splitLayout, EncodedEvent encodedEvent)
+            throws DigestException {
+        long checksum = 0;
+        for (LogEvent event : events) {
+            eventEncoder.encode(event, layout, splitLayout, encodedEvent);
+            checksum += encodedEvent.numVariables + encodedEvent.getMessage().position();
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,125 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.CompactVariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.key.VariableByteArrayViewDictionaryKey;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.tokenizer.LogMessageTokenizer;
+import com.yscope.logParser.Event;
+import com.yscope.logParser.SparkLogParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+/**
+ * Measures the per-byte cost of turning messages into a logtype and encoded variables, on the spark log
+ * corpus and on the same messages concatenated 8 at a time to mimic long messages:
+ * - separate passes: the tokenizer only finds the variable bounds, then the variable is parsed again by
+ *   encodeAsIntegerType and encodeAsFloatType (how EventEncoder used to work)
+ * - fused: the tokenizer's single pass also yields the variable's type and encoding
+ * Pass the CPU frequency in GHz as second argument to get cycles/byte. Run once with
+ * --add-modules jdk.incubator.vector and once with -Dyscope.tokenizer.useVectorApi=false to compare the
+ * Vector API and scalar token scanners.
+ */
+public class TokenizerBenchmark {
+    private static final int NUM_ITERATIONS = 2000;
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        SparkLogParser sparkLogParser = new SparkLogParser(
+                args.length > 0 ? args[0] : "logs/uncompressedSparkLogs/stderr_small", true);
+        double cpuFrequencyGHz = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        ArrayList<byte[]> messages = new ArrayList<>();
+        for (Event event : sparkLogParser.getLogEvents()) {
+            messages.add(event.getMsg().getBytes(StandardCharsets.UTF_8));
+        }
+        ArrayList<byte[]> longMessages = new ArrayList<>();
+        for (int i = 0; i + 8 <= messages.size(); i += 8) {
+            StringBuilder longMessage = new StringBuilder();
+            for (int j = i; j < i + 8; j++) {
+                longMessage.append(new String(messages.get(j), StandardCharsets.UTF_8)).append(' ');
+            }
+            longMessages.add(longMessage.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        System.out.println("Token scanner: " + LogMessageTokenizer.getTokenScannerName());
+        for (boolean fused : new boolean[] {false, true}) {
+            benchmark("spark messages", messages, fused, cpuFrequencyGHz);
+            benchmark("long messages", longMessages, fused, cpuFrequencyGHz);
+        }
+    }
+
+    private static void benchmark(String name, ArrayList<byte[]> messages, boolean fused, double cpuFrequencyGHz)
+            throws NoSuchAlgorithmException {
+        ArrayList<ByteBuffer> logMessages = new ArrayList<>();
+        int maxLength = 0;
+        long numBytes = 0;
+        for (byte[] message : messages) {
+            ByteBuffer logMessage = ByteBuffer.wrap(message);
+            logMessage.position(message.length);
+            logMessages.add(logMessage);
+            maxLength = Math.max(maxLength, message.length);
+            numBytes += message.length;
+        }
+        LogMessageTokenizer tokenizer = new LogMessageTokenizer(true);
+        VariableByteArrayViewDictionaryKey key =
+                new CompactVariableByteArrayViewDictionaryKey(KeyHashAlgorithm.XXH64.createHasher());
+        ByteBuffer logtype = ByteBuffer.allocate(maxLength * 2 + 1);
+
+        // Warm up long enough for the Vector API code to be compiled by C2, it's very slow until then
+        for (int i = 0; i < NUM_ITERATIONS / 4; i++) {
+            tokenize(logMessages, tokenizer, key, logtype, fused);
+        }
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_ITERATIONS; i++) {
+            checksum += tokenize(logMessages, tokenizer, key, logtype, fused);
+        }
+        long end = System.nanoTime();
+
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+        double nanosPerByte = (double) (end - start) / (numBytes * NUM_ITERATIONS);
+        String cost = String.format("%.2f ns/byte", nanosPerByte);
+        if (cpuFrequencyGHz > 0) {
+            cost += String.format(", %.2f cycles/byte", nanosPerByte * cpuFrequencyGHz);
+        }
+        System.out.println((fused ? "fused, " : "separate passes, ") + name + ": "
+                + decimalFormatter.format(messages.size() * NUM_ITERATIONS / ((end - start) / 1e9)) + " msg/s, "
+                + cost + " (checksum " + checksum + ")");
+    }
+
+    private static long tokenize(ArrayList<ByteBuffer> logMessages, LogMessageTokenizer tokenizer,
+                                 VariableByteArrayViewDictionaryKey key, ByteBuffer logtype, boolean fused) {
+        long checksum = 0;
+        for (ByteBuffer logMessage : logMessages) {
+            tokenizer.reset();
+            logtype.clear();
+            while (tokenizer.parseNextVar(logMessage, logtype)) {
+                byte varType;
+                long encoding = 0;
+                if (fused) {
+                    varType = tokenizer.getVarType();
+                    if (EncodedEvent.VARIABLE_ID_DELIM != varType) {
+                        encoding = tokenizer.getVarEncoding();
+                    }
+                } else {
+                    key.setView(logMessage.array(), tokenizer.getVarBeginPos(), tokenizer.getVarEndPos());
+                    if (key.encodeAsIntegerType()) {
+                        varType = EncodedEvent.INTEGER_ENCODED_VARIABLE_DELIM;
+                        encoding = key.getVariableEncoding();
+                    } else if (key.encodeAsFloatType()) {
+                        varType = EncodedEvent.FLOAT_ENCODED_VARIABLE_DELIM;
+                        encoding = key.getVariableEncoding();
+                    } else {
+                        varType = EncodedEvent.VARIABLE_ID_DELIM;
+                    }
+                }
+                logtype.put(varType);
+                checksum += varType + encoding;
+            }
+        }
+        return checksum;
+    }
+}
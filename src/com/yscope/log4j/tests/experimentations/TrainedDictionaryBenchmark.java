@@ -0,0 +1,105 @@
+package com.yscope.log4j.tests.experimentations;
+
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.CompressedLogFilePatternLayoutContainer;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveSettings;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.ArchiveWriter;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.archive.TrainedDictionaries;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.compressionDictionary.hash.KeyHashAlgorithm;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EncodedEvent;
+import com.yscope.log4j.appenders.compressedLogFileAppender.v5.event.EventEncoder;
+import com.yscope.logParser.Event;
+import com.yscope.logParser.SparkLogParser;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the spark log corpus (repeated to get enough data) into small rolled container archives with small
+ * chunks, once compressing every chunk on its own and once with dictionaries trained on the first chunks
+ * (see TrainedDictionaries), and reports the compression ratio against the rendered log text and the
+ * throughput of each.
+ */
+public class TrainedDictionaryBenchmark {
+    public static void main(String[] args) throws Exception {
+        SparkLogParser sparkLogParser = new SparkLogParser(
+                args.length > 0 ? args[0] : "logs/uncompressedSparkLogs/stderr_small", true);
+        int numRepetitions = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        int archiveSize = args.length > 3 ? Integer.parseInt(args[3]) : 32 * 1024;
+        DecimalFormat decimalFormatter = new DecimalFormat("#,###");
+
+        PatternLayout layout = PatternLayout.newBuilder().withPattern("%d{HH:mm:ss.SSS} %-5level - %msg%n").build();
+        PatternLayout compressedLogLayout =
+                new CompressedLogFilePatternLayoutContainer(layout).getCompressedLogPatternLayout();
+        ArrayList<LogEvent> logEvents = new ArrayList<>();
+        long numLogBytes = 0;
+        long timestamp = 1_600_000_000_000L;
+        for (int i = 0; i < numRepetitions; i++) {
+            for (Event event : sparkLogParser.getLogEvents()) {
+                LogEvent logEvent = Log4jLogEvent.newBuilder().setLevel(Level.INFO)
+                        .setMessage(new SimpleMessage(event.getMsg())).setTimeMillis(timestamp += 7).build();
+                logEvents.add(logEvent);
+                numLogBytes += layout.toSerializable(logEvent).getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+
+        for (boolean useTrainedDictionaries : new boolean[] {false, true}) {
+            Path logDir = Files.createTempDirectory("trained-dictionaries");
+            ArchiveSettings settings = new ArchiveSettings();
+            settings.compressionLevel = 3;
+            settings.useArchiveContainer = true;
+            settings.containerChunkSize = chunkSize;
+            settings.useTrainedDictionaries = useTrainedDictionaries;
+            TrainedDictionaries trainedDictionaries = useTrainedDictionaries
+                    ? new TrainedDictionaries(logDir, settings.compressionLevel,
+                            settings.trainedDictionarySampleBytes, settings.trainedDictionarySize)
+                    : null;
+            EventEncoder eventEncoder = new EventEncoder(true, KeyHashAlgorithm.XXH64);
+            EncodedEvent encodedEvent = new EncodedEvent(8192);
+
+            long start = System.nanoTime();
+            ArchiveWriter archiveWriter = null;
+            int archiveNum = 0;
+            for (LogEvent logEvent : logEvents) {
+                if (null == archiveWriter || archiveWriter.getNumEvents() == archiveSize) {
+                    if (null != archiveWriter) {
+                        archiveWriter.close();
+                    }
+                    Path archiveDir = logDir.resolve(String.format(ArchiveWriter.ROLLED_ARCHIVE_DIR_FORMAT,
+                            ++archiveNum));
+                    archiveWriter = new ArchiveWriter(archiveDir, settings, null, trainedDictionaries);
+                }
+                eventEncoder.encode(logEvent, compressedLogLayout, encodedEvent);
+                archiveWriter.write(encodedEvent);
+            }
+            archiveWriter.close();
+            long end = System.nanoTime();
+
+            long numArchiveBytes = 0;
+            ArrayList<Path> paths = new ArrayList<>();
+            try (Stream<Path> files = Files.walk(logDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(paths::add);
+            }
+            for (Path path : paths) {
+                if (Files.isRegularFile(path)) {
+                    numArchiveBytes += Files.size(path);
+                }
+                Files.delete(path);
+            }
+            System.out.println((useTrainedDictionaries ? "trained dictionaries" : "no dictionaries") + ": "
+                    + archiveNum + " archives, " + decimalFormatter.format(numArchiveBytes) + " bytes (incl. "
+                    + "dictionaries), ratio " + String.format("%.2f", (double) numLogBytes / numArchiveBytes)
+                    + ", " + decimalFormatter.format(logEvents.size() / ((end - start) / 1e9)) + " events/s");
+        }
+    }
+}